@@ -1,45 +1,60 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The characters are Unicode code
+ *  points, so an alphabet may hold supplementary characters (those outside
+ *  the range of char) as well as ordinary ones; an alphabet of thousands
+ *  of characters (CJK, say) costs memory in proportion to its size.  The
+ *  char-based methods serve alphabets, and characters, within the range
+ *  of char.
  *  @author Zwea Htet
  */
 class Alphabet {
     /**
-     * Store alphabets in a string.
+     * Store the characters of the alphabet, as code points, in order.
      */
-    private String _chars;
+    private final int[] _codePoints;
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** A new alphabet containing CHARS. The K-th character (code point)
+     *  has index K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _chars = checkValidation(chars);
+        _codePoints = chars.codePoints().toArray();
+        int limit = 0;
+        for (int c : _codePoints) {
+            if (c <= Character.MAX_VALUE) {
+                limit = Math.max(limit, c + 1);
+            }
+        }
+        _indices = new int[limit];
+        Arrays.fill(_indices, -1);
+        _supplementary = new HashMap<>();
+        checkValidation();
     }
 
     /**
      * This method validates the alphabet whether it contains duplicates
-     * or other special characters (*, (, )), which are not valid .
-     * @param chars
-     * @return a validated string
+     * or other special characters (*, (, )), which are not valid, and
+     * records the index of each character.
      */
-    private String checkValidation(String chars) {
-        char[] charsArray = chars.toCharArray();
-        Map<Character, Integer> charCount = new HashMap<>();
-        for (char c: charsArray) {
+    private void checkValidation() {
+        for (int k = 0; k < _codePoints.length; k += 1) {
+            int c = _codePoints[k];
             if (c == '*' || c == '(' || c == ')') {
                 throw new EnigmaException("The \"*\", \"(\", and \")\" "
                         + "characters are not allowed to be an alphabet ");
-            } else if (charCount.containsKey(c)) {
+            } else if (containsCodePoint(c)) {
                 throw new EnigmaException("Duplicate found in input chars "
                         + "for the alphabet!");
+            } else if (c < _indices.length) {
+                _indices[c] = k;
             } else {
-                charCount.put(c, 1);
+                _supplementary.put(c, k);
             }
         }
-        return chars;
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -49,32 +64,104 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _codePoints.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.indexOf(ch) >= 0;
+        return containsCodePoint(ch);
+    }
+
+    /** Returns true if the code point C is in this alphabet. */
+    boolean containsCodePoint(int c) {
+        return index(c) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size(), which must be within the range of char. */
     char toChar(int index) {
-        if (index < 0 || index > size()) {
+        int c = toCodePoint(index);
+        if (c > Character.MAX_VALUE) {
+            throw new EnigmaException(String.format("Character %d of the "
+                    + "alphabet is not a char!", index));
+        }
+        return (char) c;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (index < 0 || index >= size()) {
             throw new EnigmaException(String.format("The index %d is "
-                    + "out of range in the current alphabet!"));
+                    + "out of range in the current alphabet!", index));
         }
-        return _chars.charAt(index);
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!contains(ch)) {
+        return toIndex(ch);
+    }
+
+    /** Returns the index of the code point C, which must be in the
+     *  alphabet.  This is the inverse of toCodePoint(). */
+    int toIndex(int c) {
+        int index = index(c);
+        if (index < 0) {
             throw new EnigmaException(String.format("%c not found in "
-                    + "the alphabet! (Invalid letter found!)", ch));
+                    + "the alphabet! (Invalid letter found!)", c));
         }
-        return _chars.indexOf(ch);
+        return index;
     }
 
+    /** Store the indices of the characters of TEXT, ignoring blanks, in
+     *  RESULT, starting at 0, and return how many there are.  RESULT must
+     *  have room for TEXT.length() indices.  Every other character of
+     *  TEXT must be in the alphabet. */
+    int toIndices(String text, int[] result) {
+        int len = 0, n = text.length();
+        for (int i = 0; i < n; i += 1) {
+            int c = text.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            int index = c < _indices.length ? _indices[c] : -1;
+            if (index < 0) {
+                c = text.codePointAt(i);
+                index = toIndex(c);
+                i += Character.charCount(c) - 1;
+            }
+            result[len] = index;
+            len += 1;
+        }
+        return len;
+    }
+
+    /** Return the text whose characters are those with the indices
+     *  INDICES[0 .. LEN-1]. */
+    String toText(int[] indices, int len) {
+        StringBuilder result = new StringBuilder(len);
+        for (int i = 0; i < len; i += 1) {
+            result.appendCodePoint(toCodePoint(indices[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the index of the code point C, or -1 if it is not in the
+     *  alphabet. */
+    private int index(int c) {
+        if (c >= 0 && c < _indices.length) {
+            return _indices[c];
+        }
+        Integer index = _supplementary.get(c);
+        return index == null ? -1 : index;
+    }
+
+    /** Index of each character within the range of char, or -1, up to
+     *  the largest in the alphabet. */
+    private final int[] _indices;
+
+    /** Index of each supplementary character. */
+    private final Map<Integer, Integer> _supplementary;
 }
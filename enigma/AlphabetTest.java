@@ -1,28 +1,44 @@
 package enigma;
 
+import java.util.Arrays;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Zwea Htet
+ */
 public class AlphabetTest {
 
     /** Testing time limit. */
     @Rule
     public Timeout globalTimeout = Timeout.seconds(5);
 
+    /* ***** TESTING UTILITIES ***** */
+
     private Alphabet _alpha = new Alphabet("ABCDE");
     private Permutation _perm = new Permutation("(BACD)", _alpha);
 
+    /** Return a string of COUNT consecutive code points from FIRST. */
+    private static String codePoints(int first, int count) {
+        StringBuilder result = new StringBuilder();
+        for (int c = first; c < first + count; c += 1) {
+            result.appendCodePoint(c);
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
     @Test(expected = EnigmaException.class)
     public void testNotInAlphabet1() {
-        try {
-            _perm.invert('F');
-        } catch (EnigmaException err) {
-            System.out.println(String.format("%s (Error detected)", err));
-        }
+        _perm.invert('F');
     }
 
     @Test
@@ -33,10 +49,48 @@ public class AlphabetTest {
 
     @Test (expected = EnigmaException.class)
     public void testDuplicateAlphabet() {
-        try {
-            Alphabet alpha = new Alphabet("ABCDA");
-        } catch (EnigmaException err) {
-            System.out.println(String.format("%s (Error detected)", err));
-        }
+        new Alphabet("ABCDA");
+    }
+
+    @Test
+    public void testCodePoints() {
+        String chars = "AB" + codePoints(0x4e00, 3) + codePoints(0x20000, 2);
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(7, alpha.size());
+        assertEquals(0x4e01, alpha.toCodePoint(3));
+        assertEquals(0x20001, alpha.toCodePoint(6));
+        assertEquals(5, alpha.toIndex(0x20000));
+        assertEquals(2, alpha.toInt('\u4e00'));
+        assertTrue(alpha.containsCodePoint(0x20001));
+        assertFalse(alpha.containsCodePoint(0x20002));
+        assertFalse(alpha.contains('C'));
+        int[] indices = new int[16];
+        String text = "B " + codePoints(0x20001, 1) + "\u4e02 A";
+        assertEquals(4, alpha.toIndices(text, indices));
+        assertArrayEquals(new int[] { 1, 6, 4, 0 },
+                          Arrays.copyOf(indices, 4));
+        assertEquals(text.replace(" ", ""), alpha.toText(indices, 4));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSupplementaryNotChar() {
+        new Alphabet("A" + codePoints(0x20000, 1)).toChar(1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateCodePoint() {
+        new Alphabet(codePoints(0x20000, 3) + codePoints(0x20001, 1));
+    }
+
+    @Test
+    public void testLargePermutation() {
+        Alphabet alpha = new Alphabet(codePoints(0x4e00, 5000));
+        Permutation perm = new Permutation(
+            "(" + codePoints(0x4e00, 2500) + ") ("
+            + codePoints(0x4e00 + 2500, 2500) + ")", alpha);
+        assertEquals(1, perm.permute(0));
+        assertEquals(0, perm.permute(2499));
+        assertEquals(4999, perm.invert(2500));
+        assertTrue(perm.derangement());
     }
 }
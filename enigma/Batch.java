@@ -0,0 +1,157 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static enigma.EnigmaException.*;
+
+/** A set of jobs, each of which converts one input file to one output
+ *  file as Main does, run concurrently in this process.  The jobs are
+ *  listed in a manifest, one per line, as
+ *
+ *      CONFIG INPUT OUTPUT
+ *
+ *  where relative file names are taken relative to the directory
+ *  containing the manifest.  Blank lines and lines starting with '#' are
+ *  ignored.  A configuration file named by several jobs is read only
+ *  once, and its Configuration (including its settings cache) shared
+ *  among them.  A failing job does not affect the others.
+ *  @author Zwea Htet
+ */
+class Batch {
+
+    /** The jobs listed in the file MANIFEST. */
+    Batch(File manifest) {
+        _jobs = new ArrayList<>();
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        LineReader lines;
+        try {
+            lines = new LineReader(new FileInputStream(manifest));
+        } catch (IOException excp) {
+            throw error("could not open %s", manifest);
+        }
+        try {
+            int lineNumber = 0;
+            while (lines.hasNextLine()) {
+                String line = lines.nextLine().trim();
+                lineNumber += 1;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] names = line.split("\\s+");
+                if (names.length != 3) {
+                    throw error("%s:%d: expected CONFIG INPUT OUTPUT",
+                                manifest, lineNumber);
+                }
+                _jobs.add(new String[] {
+                    resolve(dir, names[0]), resolve(dir, names[1]),
+                    resolve(dir, names[2])
+                });
+            }
+        } finally {
+            lines.close();
+        }
+    }
+
+    /** Return the number of jobs. */
+    int size() {
+        return _jobs.size();
+    }
+
+    /** Run all jobs on THREADS worker threads, reporting the exit status
+     *  (0 or 1) of each, with any error message, on REPORT in manifest
+     *  order.  Returns the number of jobs that failed. */
+    int run(int threads, PrintStream report) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (String[] job : _jobs) {
+                results.add(pool.submit(() -> runJob(job)));
+            }
+            int failures = 0;
+            for (int k = 0; k < results.size(); k += 1) {
+                String error = get(results.get(k));
+                if (error == null) {
+                    report.printf("job %d (%s): exit 0%n", k + 1,
+                                  _jobs.get(k)[1]);
+                } else {
+                    failures += 1;
+                    report.printf("job %d (%s): exit 1: Error: %s%n", k + 1,
+                                  _jobs.get(k)[1], error);
+                }
+            }
+            report.flush();
+            return failures;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Convert the input of JOB (CONFIG, INPUT, OUTPUT) to its output,
+     *  returning null on success or an error message.  Any failure,
+     *  including an Error, is the job's own, and is not allowed to
+     *  reach the report of the others. */
+    private String runJob(String[] job) {
+        try {
+            new Main(configuration(job[0]), job[1], job[2]).process();
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } catch (Throwable excp) {
+            return excp.toString();
+        }
+    }
+
+    /** Return the Configuration in the file named NAME, reading it only
+     *  if no other job has. */
+    private Configuration configuration(String name) {
+        FutureTask<Configuration> task =
+            new FutureTask<>(() -> Main.readConfiguration(name));
+        FutureTask<Configuration> existing =
+            _configurations.putIfAbsent(name, task);
+        if (existing == null) {
+            task.run();
+            existing = task;
+        }
+        return get(existing);
+    }
+
+    /** Return the value of FUTURE, rethrowing any exception it threw. */
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the path of NAME, taken relative to DIR if it is not
+     *  absolute. */
+    private static String resolve(File dir, String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? name : new File(dir, name).getPath();
+    }
+
+    /** The jobs, each as { CONFIG, INPUT, OUTPUT }. */
+    private final List<String[]> _jobs;
+
+    /** The configurations read so far, by file name. */
+    private final ConcurrentHashMap<String, FutureTask<Configuration>>
+        _configurations = new ConcurrentHashMap<>();
+}
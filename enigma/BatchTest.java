@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Zwea Htet
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write TEXT to the file NAME in DIR. */
+    private static void write(File dir, String name, String text)
+        throws IOException {
+        Files.write(new File(dir, name).toPath(),
+                    text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the contents of the file NAME in DIR, without trailing
+     *  line terminators. */
+    private static String read(File dir, String name) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, name).toPath()),
+                          StandardCharsets.UTF_8).replaceAll("\\s+$", "");
+    }
+
+    /** Return MESSAGE converted under SETTINGS by the naval machine, in
+     *  groups of five as Main prints it. */
+    private static String convert(String settings, String message) {
+        Configuration config = navalConfiguration();
+        Machine machine = config.newMachine();
+        Main.setUp(config, machine, settings);
+        String result = machine.convert(message);
+        StringBuilder grouped = new StringBuilder();
+        for (int i = 0; i < result.length(); i += 5) {
+            if (i > 0) {
+                grouped.append(' ');
+            }
+            grouped.append(result, i, Math.min(i + 5, result.length()));
+        }
+        return grouped.toString();
+    }
+
+    /** Delete DIR and its contents. */
+    private static void delete(File dir) throws IOException {
+        try (Stream<File> files = Files.walk(dir.toPath())
+             .sorted(Comparator.reverseOrder()).map(p -> p.toFile())) {
+            files.forEach(File::delete);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testJobs() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            write(dir, "naval.conf", NAVAL_CONFIG);
+            write(dir, "one.in", "* B Beta I II III AAAA\nHELLO WORLD\n");
+            write(dir, "two.in", "* B Beta III II I AXLE (HQ)\n"
+                  + "FROM HIS SHOULDER HIAWATHA\n");
+            write(dir, "bad.in", "* B Beta I II NOPE AAAA\nHELLO\n");
+            write(dir, "jobs.txt", "# three jobs\n"
+                  + "naval.conf one.in one.out\n"
+                  + "\n"
+                  + "naval.conf bad.in bad.out\n"
+                  + "naval.conf two.in two.out\n");
+            Batch batch = new Batch(new File(dir, "jobs.txt"));
+            assertEquals(3, batch.size());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PrintStream report = new PrintStream(bytes, true, "UTF-8");
+            assertEquals(1, batch.run(2, report));
+
+            assertEquals(convert("* B Beta I II III AAAA", "HELLOWORLD"),
+                         read(dir, "one.out"));
+            assertEquals(convert("* B Beta III II I AXLE (HQ)",
+                                 "FROMHISSHOULDERHIAWATHA"),
+                         read(dir, "two.out"));
+            String[] lines = bytes.toString("UTF-8").split("\\R");
+            assertEquals(3, lines.length);
+            assertTrue(lines[0], lines[0].matches("job 1 \\(.*one.in\\): "
+                                                  + "exit 0"));
+            assertTrue(lines[1], lines[1].matches("job 2 \\(.*bad.in\\): "
+                                                  + "exit 1: Error: .+"));
+            assertTrue(lines[2], lines[2].matches("job 3 \\(.*two.in\\): "
+                                                  + "exit 0"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadManifest() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            write(dir, "jobs.txt", "naval.conf one.in\n");
+            new Batch(new File(dir, "jobs.txt"));
+        } finally {
+            delete(dir);
+        }
+    }
+}
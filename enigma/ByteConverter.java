@@ -0,0 +1,79 @@
+package enigma;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Converts bytes with a Machine, treating each byte as the character
+ *  with the same value (that is, as ISO-8859-1).  Alphabet characters
+ *  whose codes exceed 255 have no byte encoding.  This is the shared
+ *  core of EnigmaInputStream, EnigmaOutputStream and EnigmaChannels.
+ *  @author Zwea Htet
+ */
+class ByteConverter {
+
+    /** A converter that runs bytes through M, which must already be
+     *  set up, treating bytes outside its alphabet according to
+     *  POLICY. */
+    ByteConverter(Machine M, OutsideAlphabet policy) {
+        _machine = M;
+        _policy = policy;
+        Alphabet alphabet = M.alphabet();
+        _toIndex = new int[256];
+        Arrays.fill(_toIndex, -1);
+        _toByte = new int[alphabet.size()];
+        Arrays.fill(_toByte, -1);
+        for (int k = 0; k < alphabet.size(); k += 1) {
+            int c = alphabet.toCodePoint(k);
+            if (c <= 0xff) {
+                _toIndex[c] = k;
+                _toByte[k] = c;
+            }
+        }
+    }
+
+    /** Return true iff I may drop bytes, so that my output can be
+     *  shorter than my input. */
+    boolean drops() {
+        return _policy == OutsideAlphabet.DROP;
+    }
+
+    /** Convert IN[OFF .. OFF+LEN-1] into OUT, starting at OUTOFF, and
+     *  return the number of bytes stored.  IN and OUT may be the same
+     *  array, provided that OUTOFF <= OFF. */
+    int convert(byte[] in, int off, int len, byte[] out, int outOff)
+        throws IOException {
+        int n = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            byte b = in[i];
+            int c = _toIndex[b & 0xff];
+            if (c >= 0) {
+                int d = _toByte[_machine.convert(c)];
+                if (d < 0) {
+                    throw new IOException("result has no byte encoding");
+                }
+                out[n] = (byte) d;
+                n += 1;
+            } else if (_policy == OutsideAlphabet.PASS) {
+                out[n] = b;
+                n += 1;
+            } else if (_policy == OutsideAlphabet.REJECT) {
+                throw new IOException(String.format("byte 0x%02x is not in "
+                                                    + "the alphabet",
+                                                    b & 0xff));
+            }
+        }
+        return n - outOff;
+    }
+
+    /** The machine performing conversions. */
+    private final Machine _machine;
+
+    /** Treatment of bytes outside the alphabet. */
+    private final OutsideAlphabet _policy;
+
+    /** Alphabet index of each byte value, or -1. */
+    private final int[] _toIndex;
+
+    /** Byte value of each alphabet index, or -1. */
+    private final int[] _toByte;
+}
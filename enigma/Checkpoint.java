@@ -0,0 +1,185 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A durable record of how far a run of Main has progressed: the
+ *  settings line (key) in force, the current rotor and ring settings,
+ *  and the absolute byte offsets reached in the input and output.
+ *  Resuming from it reproduces exactly the output of an uninterrupted
+ *  run.
+ *  @author Zwea Htet
+ */
+class Checkpoint {
+
+    /** Marks the start of every checkpoint record ("ENGC"). */
+    static final int MAGIC = 0x454e4743;
+
+    /** Current version of the record layout. */
+    static final int VERSION = 1;
+
+    /** A checkpoint taken under the settings line KEY, with rotor
+     *  settings POSITIONS and ring settings RINGS (both in the form
+     *  accepted by Machine.setRotors), having consumed INPUTOFFSET bytes
+     *  of input and produced OUTPUTOFFSET bytes of output. */
+    Checkpoint(String key, String positions, String rings,
+               long inputOffset, long outputOffset) {
+        _key = key;
+        _positions = positions;
+        _rings = rings;
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+    }
+
+    /** Return the settings line in force. */
+    String key() {
+        return _key;
+    }
+
+    /** Return the rotor settings. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the ring settings. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the number of input bytes consumed. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the number of output bytes produced. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return my encoding as a record: magic number, version, key,
+     *  positions, rings, offsets, followed by a CRC-32 of all of
+     *  those. */
+    byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeUTF(_key);
+            out.writeUTF(_positions);
+            out.writeUTF(_rings);
+            out.writeLong(_inputOffset);
+            out.writeLong(_outputOffset);
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw error("could not encode checkpoint");
+        }
+    }
+
+    /** Return the checkpoint encoded in DATA, as produced by toBytes. */
+    static Checkpoint fromBytes(byte[] data) {
+        if (data.length < 4) {
+            throw error("checkpoint record truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC) {
+                throw error("not a checkpoint file");
+            }
+            int version = in.readShort();
+            if (version != VERSION) {
+                throw error("unsupported checkpoint version %d", version);
+            }
+            Checkpoint result =
+                new Checkpoint(in.readUTF(), in.readUTF(), in.readUTF(),
+                               in.readLong(), in.readLong());
+            if (in.readInt() != (int) crc.getValue()) {
+                throw error("checkpoint record is corrupt");
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("checkpoint record truncated");
+        }
+    }
+
+    /** Durably write me to FILE.  The record goes to a temporary file
+     *  that is synced to disk and then renamed over FILE, so that FILE
+     *  always holds either the previous or the new checkpoint. */
+    void write(File file) {
+        write(file, toBytes());
+    }
+
+    /** Durably replace the contents of FILE with RECORD, as for
+     *  write(FILE). */
+    static void write(File file, byte[] record) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(record);
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(File file) {
+        try {
+            return fromBytes(Files.readAllBytes(file.toPath()));
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Checkpoint)) {
+            return false;
+        }
+        return Arrays.equals(toBytes(), ((Checkpoint) obj).toBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toBytes());
+    }
+
+    /** Settings line in force. */
+    private final String _key;
+
+    /** Rotor settings. */
+    private final String _positions;
+
+    /** Ring settings. */
+    private final String _rings;
+
+    /** Input bytes consumed. */
+    private final long _inputOffset;
+
+    /** Output bytes produced. */
+    private final long _outputOffset;
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Zwea Htet
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Checkpoint SAMPLE =
+        new Checkpoint("* B Beta III IV I AXLE (HQ) (EX)", "AXMF", "AAAB",
+                       123456789012L, 98765L);
+
+    @Test
+    public void testRoundTrip() {
+        Checkpoint copy = Checkpoint.fromBytes(SAMPLE.toBytes());
+        assertEquals(SAMPLE.key(), copy.key());
+        assertEquals("AXMF", copy.positions());
+        assertEquals("AAAB", copy.rings());
+        assertEquals(123456789012L, copy.inputOffset());
+        assertEquals(98765L, copy.outputOffset());
+        assertEquals(SAMPLE, copy);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCorruptRecord() {
+        byte[] data = SAMPLE.toBytes();
+        data[10] ^= 1;
+        Checkpoint.fromBytes(data);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncatedRecord() {
+        byte[] data = SAMPLE.toBytes();
+        Checkpoint.fromBytes(Arrays.copyOf(data, 20));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        File file = File.createTempFile("enigma", ".ckpt");
+        try {
+            SAMPLE.write(file);
+            assertEquals(SAMPLE, Checkpoint.read(file));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,684 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Statistics of a ciphertext file, as a first look before any search
+ *  for its key: for each section and for the whole file, the frequency
+ *  of each symbol and the index of coincidence; for the whole file, the
+ *  bigram counts; and the repeated K-grams (K being the repeat length),
+ *  with the distances between consecutive occurrences of each, in the
+ *  manner of Kasiski's examination.
+ *
+ *  The file is read as Main reads its input: a line starting with '*'
+ *  ends one section and starts another, and characters outside the
+ *  alphabet (such as blanks) are ignored.  Text before the first such
+ *  line is a section of its own, and empty sections are not counted.
+ *  Within a section, bigrams and K-grams run on across line ends.
+ *
+ *  The file is read in a single pass, in chunks of consecutive lines
+ *  that are counted in parallel, a round of one chunk per thread at a
+ *  time.  Each chunk is counted into its own arrays of primitive
+ *  counters, which are then merged, in order, with those of the earlier
+ *  chunks, taking account of the sections, bigrams and K-grams that
+ *  cross the boundary.  Memory is thus bounded by the number of threads
+ *  times the chunk size (and by the tables of K-gram positions), not by
+ *  the size of the file.
+ *  @author Zwea Htet
+ */
+class CiphertextStats {
+
+    /** Default number of bytes per chunk. */
+    static final int CHUNK_SIZE = 1 << 23;
+
+    /** Default length of the repeated sequences sought. */
+    static final int DEFAULT_REPEAT = 3;
+
+    /** Largest number of distinct K-grams. */
+    static final int MAX_GRAMS = 1 << 20;
+
+    /** Largest factor of repeat distances counted. */
+    static final int MAX_FACTOR = 30;
+
+    /** Largest number of repeats recorded as examples. */
+    static final int MAX_EXAMPLES = 10;
+
+    /** Number of bigrams reported. */
+    static final int TOP_BIGRAMS = 20;
+
+    /** Report the statistics of a ciphertext file, as specified by
+     *  ARGS:
+     *
+     *      java enigma.CiphertextStats [--threads=N] [--repeat=K]
+     *          [--lazy] CONFIG CIPHERTEXT
+     *
+     *  prints a line for each section of the file CIPHERTEXT, as it is
+     *  read, and then the statistics of the whole file, counting symbols
+     *  of the alphabet of the configuration file CONFIG, with repeated
+     *  sequences of K (by default DEFAULT_REPEAT) symbols, on N threads
+     *  (by default, one per processor). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=([1-9]\\d*) --repeat=([1-9]\\d*) "
+                                + "--lazy --=(.*){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.CiphertextStats "
+                            + "[--threads=N] [--repeat=K] [--lazy] "
+                            + "CONFIG CIPHERTEXT");
+            }
+            List<String> files = options.get("--");
+            Configuration config = Search.readConfiguration(
+                new File(files.get(0)), options.contains("--lazy"));
+            CiphertextStats stats =
+                new CiphertextStats(config.alphabet(),
+                                    options.contains("--repeat")
+                                    ? Integer.parseInt(
+                                        options.getFirst("--repeat"))
+                                    : DEFAULT_REPEAT);
+            PrintStream out = System.out;
+            stats.analyze(new File(files.get(1)),
+                          options.contains("--threads")
+                          ? Integer.parseInt(options.getFirst("--threads"))
+                          : Runtime.getRuntime().availableProcessors(),
+                          CHUNK_SIZE, out);
+            stats.report(out);
+            out.flush();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Statistics of text over ALPHABET, seeking repeated sequences of
+     *  REPEAT symbols. */
+    CiphertextStats(Alphabet alphabet, int repeat) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _repeat = repeat;
+        long grams = 1;
+        for (int k = 0; k < repeat; k += 1) {
+            grams *= _size;
+            if (grams > MAX_GRAMS) {
+                throw error("repeat length %d is too long for the alphabet",
+                            repeat);
+            }
+        }
+        _grams = (int) grams;
+        _codes = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(_codes, -1);
+        for (int c = 0; c < _size; c += 1) {
+            int cp = alphabet.toCodePoint(c);
+            if (cp < _codes.length) {
+                _codes[cp] = c;
+            }
+        }
+        _frequencies = new long[_size];
+        _bigrams = new long[_size * _size];
+        _factors = new long[MAX_FACTOR + 1];
+    }
+
+    /** Count the text of FILE, in chunks of CHUNKSIZE bytes on THREADS
+     *  threads, printing a line for each section to OUT as it is
+     *  completed. */
+    void analyze(File file, int threads, int chunkSize, PrintStream out) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long start = 0; start < size;
+                 start += (long) threads * chunkSize) {
+                List<Future<Chunk>> round = new ArrayList<>();
+                for (int t = 0; t < threads; t += 1) {
+                    long from = start + (long) t * chunkSize;
+                    if (from >= size) {
+                        break;
+                    }
+                    long to = Math.min(size, from + chunkSize);
+                    round.add(pool.submit(() -> new Chunk(this, file, from,
+                                                          to)));
+                }
+                for (Future<Chunk> chunk : round) {
+                    merge(get(chunk), out);
+                }
+            }
+            if (_open != null) {
+                finish(_open, out);
+                _open = null;
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Print the statistics of the whole text to OUT. */
+    void report(PrintStream out) {
+        out.printf("total: %d sections, %d characters, IC %.4f%n",
+                   _sections, length(), indexOfCoincidence(_frequencies));
+        out.println("frequencies:");
+        for (int c = 0; c < _size; c += 1) {
+            out.printf("  %c %d %.4f%n", _alphabet.toCodePoint(c),
+                       _frequencies[c],
+                       length() == 0 ? 0.0
+                       : (double) _frequencies[c] / length());
+        }
+        out.printf("bigrams (top %d):%n", TOP_BIGRAMS);
+        Integer[] order = new Integer[_bigrams.length];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(_bigrams[b], _bigrams[a]));
+        for (int i = 0; i < Math.min(TOP_BIGRAMS, order.length); i += 1) {
+            if (_bigrams[order[i]] > 0) {
+                out.printf("  %c%c %d%n",
+                           _alphabet.toCodePoint(order[i] / _size),
+                           _alphabet.toCodePoint(order[i] % _size),
+                           _bigrams[order[i]]);
+            }
+        }
+        out.printf("repeated %d-grams: %d%n", _repeat, _repeats);
+        out.println("repeat distance factors:");
+        for (int f = 2; f <= MAX_FACTOR; f += 1) {
+            out.printf("  %d %d%n", f, _factors[f]);
+        }
+        out.println("examples:");
+        for (long[] example : _examples) {
+            out.printf("  %s in section %d at %d and %d (distance %d)%n",
+                       gram(example[0]), example[3], example[1], example[2],
+                       example[2] - example[1]);
+        }
+    }
+
+    /** Return the number of characters counted. */
+    long length() {
+        long result = 0;
+        for (long f : _frequencies) {
+            result += f;
+        }
+        return result;
+    }
+
+    /** Return the number of non-empty sections counted. */
+    long sections() {
+        return _sections;
+    }
+
+    /** Return the number of occurrences counted of the symbol with index
+     *  C. */
+    long frequency(int c) {
+        return _frequencies[c];
+    }
+
+    /** Return the number of occurrences counted of the symbol with index
+     *  A followed by that with index B. */
+    long bigram(int a, int b) {
+        return _bigrams[a * _size + b];
+    }
+
+    /** Return the number of repeats counted: occurrences of a K-gram
+     *  that has occurred earlier in the same section. */
+    long repeats() {
+        return _repeats;
+    }
+
+    /** Return the number of distances between consecutive occurrences of
+     *  a K-gram that are divisible by F, where 2 <= F <= MAX_FACTOR. */
+    long factor(int f) {
+        return _factors[f];
+    }
+
+    /** Return the index of coincidence of the counts FREQUENCIES: the
+     *  probability that two symbols drawn at random are equal. */
+    static double indexOfCoincidence(long[] frequencies) {
+        long n = 0;
+        double pairs = 0;
+        for (long f : frequencies) {
+            n += f;
+            pairs += (double) f * (f - 1);
+        }
+        return n < 2 ? 0.0 : pairs / ((double) n * (n - 1));
+    }
+
+    /** Return the K-gram whose code is CODE. */
+    private String gram(long code) {
+        int[] result = new int[_repeat];
+        for (int k = _repeat - 1; k >= 0; k -= 1) {
+            result[k] = _alphabet.toCodePoint((int) (code % _size));
+            code /= _size;
+        }
+        return new String(result, 0, _repeat);
+    }
+
+    /** Return the alphabet index of the code point C, which is beyond the
+     *  range of char, or -1 if it is not in the alphabet. */
+    private int index(int c) {
+        return _alphabet.containsCodePoint(c) ? _alphabet.toIndex(c) : -1;
+    }
+
+    /** Merge the counts of CHUNK, which follows all chunks merged so far,
+     *  printing to OUT each section it completes. */
+    private void merge(Chunk chunk, PrintStream out) {
+        for (int c = 0; c < _size; c += 1) {
+            _frequencies[c] += chunk._frequencies[c];
+        }
+        for (int i = 0; i < _bigrams.length; i += 1) {
+            _bigrams[i] += chunk._bigrams[i];
+        }
+        for (int f = 0; f <= MAX_FACTOR; f += 1) {
+            _factors[f] += chunk._factors[f];
+        }
+        List<Piece> pieces = chunk._pieces;
+        for (int i = 0; i < pieces.size(); i += 1) {
+            Piece piece = pieces.get(i);
+            if (i == 0 && _open != null) {
+                join(_open, piece);
+            } else {
+                _open = piece;
+            }
+            if (piece._closed) {
+                finish(_open, out);
+                _open = null;
+            }
+        }
+    }
+
+    /** Append to the section OPEN the piece NEXT, which continues it,
+     *  counting the bigrams and K-grams that cross from one to the
+     *  other. */
+    private void join(Piece open, Piece next) {
+        int[] tail = open.tail(), head = next._head;
+        if (tail.length > 0 && head.length > 0) {
+            _bigrams[tail[tail.length - 1] * _size + head[0]] += 1;
+        }
+        int[] across = Arrays.copyOf(tail, tail.length + head.length);
+        System.arraycopy(head, 0, across, tail.length, head.length);
+        for (int i = 0; i + _repeat <= across.length; i += 1) {
+            if (i + _repeat > tail.length && i < tail.length) {
+                long code = 0;
+                for (int k = 0; k < _repeat; k += 1) {
+                    code = code * _size + across[i + k];
+                }
+                occur(open, (int) code, open._length - tail.length + i);
+            }
+        }
+        for (int code = 0; code < _grams; code += 1) {
+            if (next._first[code] >= 0) {
+                occur(open, code, open._length + next._first[code]);
+                open._last[code] = open._length + next._last[code];
+            }
+        }
+        for (long[] example : next._examples) {
+            if (open._examples.size() < MAX_EXAMPLES) {
+                open._examples.add(new long[] {
+                    example[0], open._length + example[1],
+                    open._length + example[2] });
+            }
+        }
+        for (int c = 0; c < _size; c += 1) {
+            open._frequencies[c] += next._frequencies[c];
+        }
+        open.append(next);
+        open._repeats += next._repeats;
+        open._closed = next._closed;
+    }
+
+    /** Record an occurrence of the K-gram CODE at POSITION in the section
+     *  OPEN, after all earlier occurrences. */
+    private void occur(Piece open, int code, long position) {
+        long last = open._last[code];
+        if (last >= 0) {
+            open._repeats += 1;
+            long distance = position - last;
+            for (int f = 2; f <= MAX_FACTOR; f += 1) {
+                if (distance % f == 0) {
+                    _factors[f] += 1;
+                }
+            }
+            if (open._examples.size() < MAX_EXAMPLES) {
+                open._examples.add(new long[] { code, last, position });
+            }
+        } else {
+            open._first[code] = position;
+        }
+        open._last[code] = position;
+    }
+
+    /** Count the completed section PIECE, printing its line to OUT,
+     *  unless it is empty. */
+    private void finish(Piece piece, PrintStream out) {
+        if (piece._length == 0) {
+            return;
+        }
+        _sections += 1;
+        _repeats += piece._repeats;
+        for (long[] example : piece._examples) {
+            if (_examples.size() < MAX_EXAMPLES) {
+                _examples.add(new long[] {
+                    example[0], example[1], example[2], _sections });
+            }
+        }
+        out.printf("section %d: %d characters, IC %.4f, %d repeated "
+                   + "%d-grams%n", _sections, piece._length,
+                   indexOfCoincidence(piece._frequencies), piece._repeats,
+                   _repeat);
+    }
+
+    /** Return the value of FUTURE, rethrowing any exception it threw. */
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("could not read input");
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** The counts of the part of a section that lies within one chunk.
+     *  Positions are numbered from the start of the piece. */
+    private static final class Piece {
+
+        /** An empty piece of a section of text over an alphabet of SIZE
+         *  symbols, seeking repeats of REPEAT symbols. */
+        Piece(int size, int repeat) {
+            _frequencies = new long[size];
+            _recent = new int[Math.max(1, repeat - 1)];
+            _head = new int[0];
+            _examples = new ArrayList<>();
+        }
+
+        /** Return my last (up to K-1) symbols, in order. */
+        int[] tail() {
+            int n = (int) Math.min(_length, _recent.length);
+            int[] result = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                result[i] = _recent[(int) ((_length - n + i)
+                                           % _recent.length)];
+            }
+            return result;
+        }
+
+        /** Record the symbol C, at position _length. */
+        void add(int c) {
+            if (_length < _recent.length) {
+                _head = Arrays.copyOf(_head, _head.length + 1);
+                _head[_head.length - 1] = c;
+            }
+            _recent[(int) (_length % _recent.length)] = c;
+            _frequencies[c] += 1;
+            _length += 1;
+        }
+
+        /** Append the last symbols of NEXT to my recent symbols, and its
+         *  length to mine. */
+        void append(Piece next) {
+            int[] tail = next.tail();
+            for (int i = 0; i < tail.length; i += 1) {
+                _recent[(int) ((_length + next._length - tail.length + i)
+                               % _recent.length)] = tail[i];
+            }
+            _length += next._length;
+        }
+
+        /** Number of symbols. */
+        private long _length;
+        /** Occurrences of each symbol. */
+        private final long[] _frequencies;
+        /** The last K-1 symbols, at positions modulo K-1. */
+        private final int[] _recent;
+        /** The first K-1 symbols. */
+        private int[] _head;
+        /** Number of repeats. */
+        private long _repeats;
+        /** Examples of repeats, as { CODE, POSITION1, POSITION2 }. */
+        private final List<long[]> _examples;
+        /** For each K-gram, the positions of its first and last
+         *  occurrences, or -1 if it does not occur.  Only kept for pieces
+         *  at the ends of a chunk. */
+        private long[] _first, _last;
+        /** True iff a settings line follows me. */
+        private boolean _closed;
+    }
+
+    /** The counts of one chunk of the file: the lines that start in a
+     *  range of byte offsets. */
+    private static final class Chunk {
+
+        /** The counts, for STATS, of the lines of FILE that start at byte
+         *  offsets FROM .. TO-1. */
+        Chunk(CiphertextStats stats, File file, long from, long to)
+            throws IOException {
+            _stats = stats;
+            int size = stats._size;
+            _frequencies = new long[size];
+            _bigrams = new long[size * size];
+            _factors = new long[MAX_FACTOR + 1];
+            _stamps = new int[stats._grams];
+            _first = new long[stats._grams];
+            _last = new long[stats._grams];
+            _pieces = new ArrayList<>();
+            try (FileChannel channel =
+                     FileChannel.open(file.toPath(),
+                                      StandardOpenOption.READ)) {
+                channel.position(Math.max(0, from - 1));
+                count(new BufferedInputStream(
+                          Channels.newInputStream(channel), 1 << 16),
+                      from - 1, to);
+            }
+        }
+
+        /** Count the lines of IN that start at byte offsets START + 1 ..
+         *  TO - 1, where IN starts at offset START (or at 0, if START is
+         *  -1).  The byte at START is read only to see whether a line
+         *  starts just after it. */
+        private void count(InputStream in, long start, long to)
+            throws IOException {
+            long offset;
+            boolean lineStart;
+            if (start < 0) {
+                lineStart = true;
+                offset = 0;
+            } else {
+                lineStart = in.read() == '\n';
+                offset = start + 1;
+                if (!lineStart) {
+                    int b;
+                    do {
+                        b = in.read();
+                        offset += 1;
+                    } while (b >= 0 && b != '\n');
+                    lineStart = true;
+                }
+            }
+            startPiece();
+            int[] codes = _stats._codes;
+            int b = 0;
+            while (offset < to || !lineStart) {
+                b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                offset += 1;
+                if (lineStart && b == '*') {
+                    _piece._closed = true;
+                    endPiece();
+                    startPiece();
+                    do {
+                        b = in.read();
+                        offset += 1;
+                    } while (b >= 0 && b != '\n');
+                    lineStart = true;
+                    continue;
+                }
+                lineStart = b == '\n';
+                int c;
+                if (b < 0x80) {
+                    c = b;
+                } else {
+                    c = decode(in, b);
+                    offset += utf8Length(b) - 1;
+                }
+                int code = c < 0 ? -1 : c < codes.length ? codes[c]
+                    : _stats.index(c);
+                if (code >= 0) {
+                    symbol(code);
+                }
+            }
+            endPiece();
+        }
+
+        /** Return the code point whose UTF-8 encoding starts with the
+         *  byte B and continues in IN, or -1 if B is a stray continuation
+         *  byte. */
+        private static int decode(InputStream in, int b) throws IOException {
+            int n = utf8Length(b);
+            int c = n == 2 ? b & 0x1f : n == 3 ? b & 0x0f : b & 0x07;
+            for (int i = 1; i < n; i += 1) {
+                c = c << 6 | (in.read() & 0x3f);
+            }
+            return n == 1 ? -1 : c;
+        }
+
+        /** Return the length of a UTF-8 sequence starting with the byte
+         *  B, treating stray continuation bytes as sequences of 1. */
+        private static int utf8Length(int b) {
+            return b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 1;
+        }
+
+        /** Start a new piece. */
+        private void startPiece() {
+            _piece = new Piece(_stats._size, _stats._repeat);
+            _stamp += 1;
+            _gram = 0;
+        }
+
+        /** Finish the current piece, keeping its K-gram positions if it
+         *  is at either end of the chunk. */
+        private void endPiece() {
+            Piece piece = _piece;
+            boolean edge = _pieces.isEmpty() || !piece._closed;
+            if (edge) {
+                int grams = _stats._grams;
+                piece._first = new long[grams];
+                piece._last = new long[grams];
+                for (int code = 0; code < grams; code += 1) {
+                    boolean seen = _stamps[code] == _stamp;
+                    piece._first[code] = seen ? _first[code] : -1;
+                    piece._last[code] = seen ? _last[code] : -1;
+                }
+            }
+            for (int c = 0; c < _frequencies.length; c += 1) {
+                _frequencies[c] += piece._frequencies[c];
+            }
+            _pieces.add(piece);
+        }
+
+        /** Count the symbol C at the end of the current piece. */
+        private void symbol(int c) {
+            Piece piece = _piece;
+            int size = _stats._size, repeat = _stats._repeat;
+            long position = piece._length;
+            if (position > 0) {
+                _bigrams[_previous * size + c] += 1;
+            }
+            _previous = c;
+            _gram = (int) (((long) _gram * size + c) % _stats._grams);
+            piece.add(c);
+            if (position + 1 >= repeat) {
+                long at = position + 1 - repeat;
+                int code = _gram;
+                if (_stamps[code] == _stamp) {
+                    piece._repeats += 1;
+                    long distance = at - _last[code];
+                    for (int f = 2; f <= MAX_FACTOR; f += 1) {
+                        if (distance % f == 0) {
+                            _factors[f] += 1;
+                        }
+                    }
+                    if (piece._examples.size() < MAX_EXAMPLES) {
+                        piece._examples.add(new long[] {
+                            code, _last[code], at });
+                    }
+                } else {
+                    _stamps[code] = _stamp;
+                    _first[code] = at;
+                }
+                _last[code] = at;
+            }
+        }
+
+        /** The statistics being gathered. */
+        private final CiphertextStats _stats;
+        /** Occurrences of each symbol in the chunk. */
+        private final long[] _frequencies;
+        /** Occurrences of each bigram within the pieces of the chunk. */
+        private final long[] _bigrams;
+        /** Counts of repeat distances by factor. */
+        private final long[] _factors;
+        /** For each K-gram, the number of the piece in which _first and
+         *  _last were last set. */
+        private final int[] _stamps;
+        /** Positions of the first and last occurrences of each K-gram in
+         *  the current piece (valid where _stamps is _stamp). */
+        private final long[] _first, _last;
+        /** The pieces of the chunk, in order. */
+        private final List<Piece> _pieces;
+        /** The current piece. */
+        private Piece _piece;
+        /** Number of the current piece. */
+        private int _stamp;
+        /** Code of the last K symbols of the current piece. */
+        private int _gram;
+        /** The last symbol of the current piece. */
+        private int _previous;
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Length of repeated sequences sought, K. */
+    private final int _repeat;
+    /** Number of distinct K-grams. */
+    private final int _grams;
+    /** Alphabet index of each char, or -1 (see also index). */
+    private final int[] _codes;
+    /** Occurrences of each symbol. */
+    private final long[] _frequencies;
+    /** Occurrences of each bigram. */
+    private final long[] _bigrams;
+    /** Counts of repeat distances by factor. */
+    private final long[] _factors;
+    /** Number of repeats. */
+    private long _repeats;
+    /** Examples of repeats, as { CODE, POSITION1, POSITION2, SECTION }. */
+    private final List<long[]> _examples = new ArrayList<>();
+    /** Number of non-empty sections completed. */
+    private long _sections;
+    /** The section continuing into the next chunk, or null. */
+    private Piece _open;
+}
@@ -0,0 +1,195 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CiphertextStats class.
+ *  @author Zwea Htet
+ */
+public class CiphertextStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Return random ciphertext over a small part of UPPER (so that
+     *  repeats are common), in lines of random length, with blanks and
+     *  settings lines (some adjacent, giving empty sections). */
+    private static String ciphertext(int lines) {
+        Random random = new Random(46);
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < lines; k += 1) {
+            if (random.nextInt(8) == 0) {
+                text.append("* B IV III I AAAA\n");
+                continue;
+            }
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i += 1) {
+                text.append(random.nextInt(6) == 0 ? ' '
+                            : UPPER_STRING.charAt(random.nextInt(5)));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return the symbols of the non-empty sections of TEXT. */
+    private static List<String> sections(String text) {
+        List<String> result = new ArrayList<>();
+        StringBuilder section = new StringBuilder();
+        for (String line : text.split("\n")) {
+            if (line.startsWith("*")) {
+                if (section.length() > 0) {
+                    result.add(section.toString());
+                }
+                section = new StringBuilder();
+            } else {
+                section.append(line.replace(" ", ""));
+            }
+        }
+        if (section.length() > 0) {
+            result.add(section.toString());
+        }
+        return result;
+    }
+
+    /** Return the statistics of TEXT with repeats of REPEAT, read in
+     *  chunks of CHUNKSIZE bytes on THREADS threads. */
+    private static CiphertextStats analyze(String text, int repeat,
+                                           int threads, int chunkSize)
+        throws IOException {
+        File file = File.createTempFile("enigma", ".txt");
+        try {
+            Files.write(file.toPath(),
+                        text.getBytes(StandardCharsets.UTF_8));
+            CiphertextStats stats = new CiphertextStats(UPPER, repeat);
+            stats.analyze(file, threads, chunkSize,
+                          new PrintStream(new ByteArrayOutputStream()));
+            return stats;
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Check STATS against direct counts of the non-empty SECTIONS, with
+     *  repeats of REPEAT. */
+    private static void check(CiphertextStats stats, List<String> sections,
+                              int repeat) {
+        long[] frequencies = new long[26], bigrams = new long[26 * 26];
+        long[] factors = new long[CiphertextStats.MAX_FACTOR + 1];
+        long repeats = 0, length = 0;
+        for (String section : sections) {
+            HashMap<String, Integer> last = new HashMap<>();
+            for (int i = 0; i < section.length(); i += 1) {
+                length += 1;
+                frequencies[UPPER.toInt(section.charAt(i))] += 1;
+                if (i > 0) {
+                    bigrams[UPPER.toInt(section.charAt(i - 1)) * 26
+                            + UPPER.toInt(section.charAt(i))] += 1;
+                }
+                if (i + repeat <= section.length()) {
+                    String gram = section.substring(i, i + repeat);
+                    Integer previous = last.put(gram, i);
+                    if (previous != null) {
+                        repeats += 1;
+                        for (int f = 2; f < factors.length; f += 1) {
+                            if ((i - previous) % f == 0) {
+                                factors[f] += 1;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(sections.size(), stats.sections());
+        assertEquals(length, stats.length());
+        for (int a = 0; a < 26; a += 1) {
+            assertEquals(frequencies[a], stats.frequency(a));
+            for (int b = 0; b < 26; b += 1) {
+                assertEquals(bigrams[a * 26 + b], stats.bigram(a, b));
+            }
+        }
+        assertEquals(repeats, stats.repeats());
+        for (int f = 2; f < factors.length; f += 1) {
+            assertEquals(factors[f], stats.factor(f));
+        }
+    }
+
+    @Test
+    public void testSingleChunk() throws IOException {
+        String text = ciphertext(200);
+        for (int repeat = 1; repeat <= 4; repeat += 1) {
+            check(analyze(text, repeat, 1, CiphertextStats.CHUNK_SIZE),
+                  sections(text), repeat);
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        String text = ciphertext(400);
+        for (int chunkSize : new int[] { 1, 7, 64, 1000 }) {
+            for (int threads = 1; threads <= 3; threads += 1) {
+                check(analyze(text, 3, threads, chunkSize),
+                      sections(text), 3);
+            }
+        }
+    }
+
+    @Test
+    public void testSupplementary() throws IOException {
+        String x = new String(Character.toChars(0x20000)),
+            y = new String(Character.toChars(0x20001));
+        Alphabet alphabet = new Alphabet("A" + x + y);
+        File file = File.createTempFile("enigma", ".txt");
+        try {
+            Files.write(file.toPath(), ("* B IV III I AAAA\n"
+                                        + "A" + x + y + " " + x + x + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            for (int chunkSize : new int[] { 1, 3, 1000 }) {
+                CiphertextStats stats = new CiphertextStats(alphabet, 2);
+                stats.analyze(file, 2, chunkSize,
+                              new PrintStream(new ByteArrayOutputStream()));
+                assertEquals(5, stats.length());
+                assertEquals(1, stats.frequency(0));
+                assertEquals(3, stats.frequency(1));
+                assertEquals(1, stats.bigram(1, 2));
+                assertEquals(1, stats.bigram(1, 1));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                stats.report(new PrintStream(bytes, true, "UTF-8"));
+                assertTrue(bytes.toString("UTF-8").contains(x + y + " 1"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testIndexOfCoincidence() {
+        assertEquals(0.0, CiphertextStats.indexOfCoincidence(new long[3]),
+                     1e-9);
+        assertEquals(1.0 / 3.0, CiphertextStats.indexOfCoincidence(
+                         new long[] { 2, 2 }), 1e-9);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatTooLong() {
+        new CiphertextStats(UPPER, 6);
+    }
+}
@@ -0,0 +1,268 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Compressed input and output.  Input compressed in the gzip format
+ *  (RFC 1952), or as a zlib stream (RFC 1950, without a preset
+ *  dictionary) of the deflate format, is recognized by its first two
+ *  bytes and decompressed as it is read, so that it never needs to be
+ *  expanded on disk first.  Output may be
+ *  compressed in the gzip format by a stream that hands its buffers to a
+ *  thread of its own, which compresses them while the caller goes on
+ *  producing more; the buffers are recycled between the two, so that
+ *  only BUFFERS of them are allocated, and one more should the thread
+ *  fail (to release a writer waiting for a free buffer).
+ *  @author Zwea Htet
+ */
+class Compression {
+
+    /** Formats returned by format: not compressed, gzip and zlib. */
+    static final int NONE = 0, GZIP = 1, ZLIB = 2;
+
+    /** Size of the buffers used in decompressing and compressing. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of buffers of output that may be waiting to be compressed
+     *  (or being filled) at once. */
+    static final int BUFFERS = 4;
+
+    /** Return the format (NONE, GZIP or ZLIB) in which IN (which must
+     *  support mark) is compressed, leaving IN unchanged. */
+    static int format(InputStream in) {
+        try {
+            in.mark(2);
+            int b0 = in.read(), b1 = in.read();
+            in.reset();
+            if (b0 == 0x1f && b1 == 0x8b) {
+                return GZIP;
+            } else if (b0 >= 0 && b1 >= 0 && (b0 & 0x0f) == 8
+                       && (b0 >> 4) <= 7 && (b1 & 0x20) == 0
+                       && (b0 << 8 | b1) % 31 == 0) {
+                return ZLIB;
+            }
+            return NONE;
+        } catch (IOException excp) {
+            throw error("error reading input");
+        }
+    }
+
+    /** Return a stream of the decompressed contents of IN, which is
+     *  compressed in FORMAT (GZIP or ZLIB). */
+    static InputStream decompress(InputStream in, int format) {
+        try {
+            if (format == GZIP) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+        } catch (IOException excp) {
+            throw error("compressed input is corrupt");
+        }
+    }
+
+    /** Return a stream that compresses what is written to it in the gzip
+     *  format, on a thread of its own, and writes the result to OUT.
+     *  Flushing it flushes all that has been written so far through to
+     *  OUT; closing it completes the compressed stream and closes OUT. */
+    static OutputStream compress(OutputStream out) {
+        return new Compressor(out);
+    }
+
+    /** The stream returned by compress. */
+    private static class Compressor extends OutputStream {
+
+        /** A stream compressing to OUT. */
+        Compressor(OutputStream out) {
+            for (int i = 0; i < BUFFERS; i += 1) {
+                _free.add(new Buffer());
+            }
+            _buffer = take(_free);
+            _thread = new Thread(() -> run(out), "enigma-compressor");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_buffer == null || _buffer._length == BUFFER_SIZE) {
+                send(false);
+            }
+            _buffer._data[_buffer._length] = (byte) b;
+            _buffer._length += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_buffer == null || _buffer._length == BUFFER_SIZE) {
+                    send(false);
+                }
+                int n = Math.min(len, BUFFER_SIZE - _buffer._length);
+                System.arraycopy(b, off, _buffer._data, _buffer._length, n);
+                _buffer._length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /** Hand over what has been written, waiting until it has been
+         *  compressed and flushed through. */
+        @Override
+        public void flush() throws IOException {
+            send(true);
+            synchronized (this) {
+                while (_flushed < _flushes && _failure == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException excp) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted");
+                    }
+                }
+            }
+            check();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_buffer == null) {
+                return;
+            }
+            _buffer._last = true;
+            send(false);
+            _buffer = null;
+            try {
+                _thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+            check();
+        }
+
+        /** Hand the current buffer to the compressing thread, asking it
+         *  to flush after compressing it iff FLUSH, and start another
+         *  (unless it is the last). */
+        private void send(boolean flush) throws IOException {
+            check();
+            if (_buffer == null) {
+                throw new IOException("stream closed");
+            }
+            _buffer._flush = flush;
+            if (flush) {
+                synchronized (this) {
+                    _flushes += 1;
+                }
+            }
+            boolean last = _buffer._last;
+            put(_full, _buffer);
+            if (!last) {
+                _buffer = take(_free);
+                _buffer._length = 0;
+                _buffer._flush = _buffer._last = false;
+            }
+        }
+
+        /** Throw the exception that stopped the compressing thread, if
+         *  it has stopped with one. */
+        private synchronized void check() throws IOException {
+            if (_failure != null) {
+                throw _failure;
+            }
+        }
+
+        /** Compress the buffers handed over, in order, writing the result
+         *  to OUT, until the last. */
+        private void run(OutputStream out) {
+            try (GZIPOutputStream gzip =
+                     new GZIPOutputStream(out, BUFFER_SIZE, true)) {
+                while (true) {
+                    Buffer buffer = take(_full);
+                    gzip.write(buffer._data, 0, buffer._length);
+                    if (buffer._last) {
+                        break;
+                    }
+                    if (buffer._flush) {
+                        gzip.flush();
+                        synchronized (this) {
+                            _flushed += 1;
+                            notifyAll();
+                        }
+                    }
+                    put(_free, buffer);
+                }
+            } catch (IOException excp) {
+                fail(excp);
+            } catch (EnigmaException excp) {
+                fail(new IOException(excp.getMessage()));
+            } catch (RuntimeException | Error excp) {
+                fail(new IOException("compression failed: " + excp, excp));
+            }
+        }
+
+        /** Record EXCP as the reason the compressing thread stopped, and
+         *  release the writer, if waiting. */
+        private synchronized void fail(IOException excp) {
+            _failure = excp;
+            _free.offer(new Buffer());
+            notifyAll();
+        }
+
+        /** Return the next item of QUEUE, waiting if need be. */
+        private Buffer take(BlockingQueue<Buffer> queue) {
+            try {
+                return queue.take();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            }
+        }
+
+        /** Add BUFFER to QUEUE, waiting if need be. */
+        private void put(BlockingQueue<Buffer> queue, Buffer buffer) {
+            try {
+                queue.put(buffer);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            }
+        }
+
+        /** A buffer of output, with what is to be done after it. */
+        private static class Buffer {
+            /** The bytes. */
+            private final byte[] _data = new byte[BUFFER_SIZE];
+            /** Number of bytes in _data. */
+            private int _length;
+            /** True iff the compressed output is to be flushed after
+             *  these bytes. */
+            private boolean _flush;
+            /** True iff these are the last bytes. */
+            private boolean _last;
+        }
+
+        /** The buffer being filled, or null once closed. */
+        private Buffer _buffer;
+        /** Buffers free to be filled. */
+        private final BlockingQueue<Buffer> _free =
+            new ArrayBlockingQueue<>(BUFFERS + 1);
+        /** Buffers waiting to be compressed. */
+        private final BlockingQueue<Buffer> _full =
+            new ArrayBlockingQueue<>(BUFFERS);
+        /** The compressing thread. */
+        private final Thread _thread;
+        /** Numbers of flushes requested and completed. */
+        private long _flushes, _flushed;
+        /** The exception that stopped the compressing thread, or null. */
+        private IOException _failure;
+    }
+}
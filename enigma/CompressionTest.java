@@ -0,0 +1,140 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for Compression.
+ *  @author Zwea Htet
+ */
+public class CompressionTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Test input: a settings line and some messages. */
+    private static final byte[] TEXT =
+        ("* B Beta III IV I AXLE (HQ) (EX)\nFROM HIS SHOULDER\n"
+         + "HIAWATHA\n").getBytes(StandardCharsets.UTF_8);
+
+    /** Return DATA compressed in the gzip format iff GZIP, and as a zlib
+     *  stream otherwise. */
+    private static byte[] compressed(byte[] data, boolean gzip)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = gzip ? new GZIPOutputStream(bytes)
+            : new DeflaterOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** Return the format detected in DATA, and check that DATA
+     *  decompresses to TEXT. */
+    private static int check(byte[] data) throws IOException {
+        InputStream in =
+            new BufferedInputStream(new ByteArrayInputStream(data));
+        int format = Compression.format(in);
+        if (format != Compression.NONE) {
+            in = Compression.decompress(in, format);
+        }
+        assertArrayEquals(TEXT, in.readAllBytes());
+        return format;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFormat() throws IOException {
+        assertEquals(Compression.NONE, check(TEXT));
+        assertEquals(Compression.GZIP, check(compressed(TEXT, true)));
+        assertEquals(Compression.ZLIB, check(compressed(TEXT, false)));
+        for (String text : new String[] { "", "x", "x ABC", "H\n" }) {
+            assertEquals(Compression.NONE, Compression.format(
+                new BufferedInputStream(new ByteArrayInputStream(
+                    text.getBytes(StandardCharsets.UTF_8)))));
+        }
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        byte[] data = new byte[Compression.BUFFER_SIZE
+                               * (Compression.BUFFERS + 3) + 17];
+        Random random = new Random(50);
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) ('A' + random.nextInt(4));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = Compression.compress(bytes);
+        int half = data.length / 2;
+        for (int i = 0; i < 1000; i += 1) {
+            out.write(data[i]);
+        }
+        out.write(data, 1000, half - 1000);
+        out.flush();
+        byte[] prefix =
+            new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+            .readNBytes(half);
+        assertArrayEquals(Arrays.copyOf(data, half), prefix);
+        out.write(data, half, data.length - half);
+        out.close();
+        out.close();
+        assertArrayEquals(data, new GZIPInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())).readAllBytes());
+    }
+
+    @Test
+    public void testFailure() {
+        OutputStream out = Compression.compress(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        });
+        try {
+            for (int i = 0; i < 100; i += 1) {
+                out.write(new byte[Compression.BUFFER_SIZE]);
+            }
+            out.close();
+            fail("expected IOException");
+        } catch (IOException excp) {
+            assertEquals("disk full", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testRuntimeFailure() {
+        OutputStream out = Compression.compress(new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        try {
+            for (int i = 0; i < 100; i += 1) {
+                out.write(new byte[Compression.BUFFER_SIZE]);
+            }
+            out.close();
+            fail("expected IOException");
+        } catch (IOException excp) {
+            assertTrue(excp.getCause() instanceof IllegalStateException);
+        }
+    }
+}
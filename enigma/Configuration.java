@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** The contents of a configuration file: an alphabet, the numbers of
+ *  rotor slots and pawls, and the available rotors.  A Configuration is
+ *  not changed once read, so one may be shared by any number of
+ *  Machines, each of which gets its own copies of the rotors it uses
+ *  (sharing their permutations), and all of which share one cache of
+ *  compiled settings lines.
+ *  @author Zwea Htet
+ */
+class Configuration {
+
+    /** A configuration with alphabet ALPHABET, NUMROTORS rotor slots,
+     *  NUMPAWLS pawls, and the rotors in CATALOG, whose compiled settings
+     *  lines are cached in a SettingsCache holding at most CACHESIZE
+     *  entries. */
+    Configuration(Alphabet alphabet, int numRotors, int numPawls,
+                  RotorCatalog catalog, int cacheSize) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _catalog = catalog;
+        _settingsCache = new SettingsCache(cacheSize);
+    }
+
+    /** Return the configuration described by CONFIG, caching at most
+     *  CACHESIZE compiled settings lines. */
+    static Configuration read(Scanner config, int cacheSize) {
+        try {
+            RotorCatalog catalog = new RotorCatalog();
+            String alphabetChars = config.next();
+            Alphabet alphabet = new Alphabet(alphabetChars);
+
+            int numRotors = config.nextInt();
+            int numPawls = config.nextInt();
+
+            while (config.hasNextLine()) {
+                String rotorDesc = config.nextLine().trim();
+
+                if (RotorCatalog.ROTOR_DESC.matcher(rotorDesc).matches()) {
+                    while (config.hasNext("(?U)(?:\\s*\\([\\w|.]"
+                            + "*\\)\\s*)*+")) {
+                        rotorDesc += config.nextLine().trim();
+                    }
+                    if (rotorDesc.equals("")) {
+                        continue;
+                    } else {
+                        String[] components = rotorDesc
+                                .split("[\s|\t]+");
+                        catalog.add(readRotor(components, alphabet,
+                                              catalog));
+                    }
+                }
+            }
+            return new Configuration(alphabet, numRotors, numPawls,
+                                     catalog, cacheSize);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Return the configuration described by the configuration file FILE,
+     *  caching at most CACHESIZE compiled settings lines, whose rotors are
+     *  only indexed (see RotorCatalog) and parsed when first used.  Unlike
+     *  read, this requires every rotor description to start on a line of
+     *  its own, and reports errors in a rotor description only when that
+     *  rotor is used. */
+    static Configuration index(File file, int cacheSize) {
+        LineReader lines;
+        try {
+            lines = new LineReader(new FileInputStream(file));
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        try {
+            Scanner header = new Scanner("");
+            List<String> tokens = new ArrayList<>();
+            while (tokens.size() < 3 && lines.hasNextLine()) {
+                header = new Scanner(lines.nextLine());
+                while (tokens.size() < 3 && header.hasNext()) {
+                    tokens.add(header.next());
+                }
+            }
+            if (tokens.size() < 3 || header.hasNext()) {
+                throw error("configuration file truncated");
+            }
+            Alphabet alphabet = new Alphabet(tokens.get(0));
+            int numRotors = Integer.parseInt(tokens.get(1));
+            int numPawls = Integer.parseInt(tokens.get(2));
+            return new Configuration(alphabet, numRotors, numPawls,
+                                     RotorCatalog.index(file, alphabet,
+                                                        lines),
+                                     cacheSize);
+        } catch (NumberFormatException excp) {
+            throw error("configuration file truncated");
+        } finally {
+            lines.close();
+        }
+    }
+
+    /**
+     * Return a rotor over ALPHABET, reading its description from
+     * COMPONENTS, whose permutation is shared with any rotor in CATALOG
+     * having the same wiring.
+     * @param components String array of rotor descriptions
+     * @param alphabet the alphabet of the rotor
+     * @param catalog the catalog that will hold the rotor
+     * @return a Rotor
+     */
+    static Rotor readRotor(String[] components, Alphabet alphabet,
+                           RotorCatalog catalog) {
+        try {
+            String rotorName = "", rotorTypeAndNotches = "", cycles = "";
+            for (int i = 0; i < components.length; i++) {
+                if (i == 0) {
+                    rotorName = components[i];
+                } else if (i == 1) {
+                    rotorTypeAndNotches = components[i];
+                } else {
+                    cycles += components[i];
+                }
+            }
+            Permutation perm =
+                catalog.intern(new Permutation(cycles, alphabet));
+            char rotorType = rotorTypeAndNotches.charAt(0);
+            if (rotorType == 'M') {
+                String notches = rotorTypeAndNotches.substring(1);
+                return new MovingRotor(rotorName, perm, notches);
+            } else if (rotorType == 'N') {
+                return new FixedRotor(rotorName, perm);
+            } else if (rotorType == 'R') {
+                return new Reflector(rotorName, perm);
+            } else {
+                throw new EnigmaException("Invalid rotor type found!");
+            }
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Return a new Machine using my alphabet, slots and pawls, which
+     *  takes its own copies of my rotors as it needs them. */
+    Machine newMachine() {
+        return new Machine(_alphabet, _numRotors, _numPawls, _catalog);
+    }
+
+    /** Return my rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return the cache of settings lines compiled for my Machines. */
+    SettingsCache settingsCache() {
+        return _settingsCache;
+    }
+
+    /** Alphabet of all my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _numPawls;
+
+    /** All available rotors. */
+    private final RotorCatalog _catalog;
+
+    /** Compiled settings lines. */
+    private final SettingsCache _settingsCache;
+}
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Keeps the current Configuration read from a configuration file that
+ *  may be changed while it is in use.  The Configuration is held behind
+ *  an atomically swapped reference: a background thread polls the file
+ *  and, when its length or modification time has changed and then held
+ *  steady over two polls (so that a file still being written is not
+ *  read), reads and validates it and publishes the result, so that
+ *  readers only ever see complete Configurations and never wait.  A
+ *  Configuration, once published, is not changed, so that work begun
+ *  with it (a section, say) may finish with it while later work uses
+ *  its replacement.  A changed file that cannot be read, whose alphabet
+ *  differs from the current one, or that lacks a rotor in use (see
+ *  inUse), is reported on the standard error and otherwise ignored;
+ *  the current Configuration stays in use, and polling continues.
+ *  @author Zwea Htet
+ */
+class ConfigurationReloader {
+
+    /** Default interval between polls of the file, in milliseconds. */
+    static final long POLL_INTERVAL = 500;
+
+    /** A reloader for the configuration file FILE, whose contents are
+     *  currently INITIAL, reading it with READER when it changes, which
+     *  checks for changes every INTERVAL milliseconds once started. */
+    ConfigurationReloader(File file, Configuration initial,
+                          Function<File, Configuration> reader,
+                          long interval) {
+        _file = file;
+        _reader = reader;
+        _interval = interval;
+        _current = new AtomicReference<>(initial);
+        _length = _polledLength = file.length();
+        _modified = _polledModified = file.lastModified();
+    }
+
+    /** Return the most recently published Configuration. */
+    Configuration current() {
+        return _current.get();
+    }
+
+    /** Return the number of Configurations published since the
+     *  first. */
+    synchronized int reloads() {
+        return _reloads;
+    }
+
+    /** Record that the work in progress uses the rotors named NAMES, so
+     *  that a changed file lacking any of them is not published. */
+    synchronized void inUse(String... names) {
+        _inUse = names.clone();
+    }
+
+    /** Start polling the file on a daemon thread. */
+    synchronized void start() {
+        if (_poller == null) {
+            _poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "enigma-reloader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            _poller.scheduleWithFixedDelay(this::check, _interval,
+                                           _interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Stop polling. */
+    synchronized void stop() {
+        if (_poller != null) {
+            _poller.shutdownNow();
+            _poller = null;
+        }
+    }
+
+    /** If the file has changed since last read, and its length and
+     *  modification time are those seen by the previous check, read it
+     *  and, if it is valid, publish it.  Returns true iff a new
+     *  Configuration was published. */
+    synchronized boolean check() {
+        try {
+            long length = _file.length(), modified = _file.lastModified();
+            if (length != _polledLength || modified != _polledModified) {
+                _polledLength = length;
+                _polledModified = modified;
+                return false;
+            }
+            if (length == _length && modified == _modified) {
+                return false;
+            }
+            _length = length;
+            _modified = modified;
+            Configuration config = _reader.apply(_file);
+            validate(config);
+            _current.set(config);
+            _reloads += 1;
+            return true;
+        } catch (EnigmaException excp) {
+            System.err.printf("Warning: not reloading %s: %s%n", _file,
+                              excp.getMessage());
+            return false;
+        } catch (RuntimeException excp) {
+            System.err.printf("Warning: not reloading %s: %s%n", _file,
+                              excp);
+            return false;
+        }
+    }
+
+    /** Check that CONFIG may replace the current Configuration: that it
+     *  has the same alphabet, and all the rotors in use. */
+    private void validate(Configuration config) {
+        if (!sameAlphabet(config.alphabet(), current().alphabet())) {
+            throw error("its alphabet has changed");
+        }
+        for (String name : _inUse) {
+            if (!config.catalog().contains(name)) {
+                throw error("rotor %s, which is in use, is missing", name);
+            }
+        }
+    }
+
+    /** Return true iff A and B have the same characters in the same
+     *  order. */
+    private static boolean sameAlphabet(Alphabet a, Alphabet b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int k = 0; k < a.size(); k += 1) {
+            if (a.toCodePoint(k) != b.toCodePoint(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The configuration file. */
+    private final File _file;
+
+    /** Reads the configuration file. */
+    private final Function<File, Configuration> _reader;
+
+    /** Interval between polls, in milliseconds. */
+    private final long _interval;
+
+    /** The current Configuration. */
+    private final AtomicReference<Configuration> _current;
+
+    /** Length and modification time of the file when last read. */
+    private long _length, _modified;
+
+    /** Length and modification time of the file at the last check. */
+    private long _polledLength, _polledModified;
+
+    /** Names of the rotors in use. */
+    private String[] _inUse = new String[0];
+
+    /** Number of Configurations published since the first. */
+    private int _reloads;
+
+    /** Executor running the polls, or null if not started. */
+    private ScheduledExecutorService _poller;
+}
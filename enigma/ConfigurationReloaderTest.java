@@ -0,0 +1,188 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigurationReloader class.
+ *  @author Zwea Htet
+ */
+public class ConfigurationReloaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return the text of a configuration over ALPHABET whose rotor I has
+     *  wiring CYCLES. */
+    private static String config(String alphabet, String cycles) {
+        return alphabet + " 3 1\n"
+            + "I MQ " + cycles + "\n"
+            + "II N " + NAVALA.get("II") + "\n"
+            + "B R " + NAVALA.get("B") + "\n";
+    }
+
+    /** Replace the contents of FILE by TEXT, making sure that its
+     *  modification time changes. */
+    private static void rewrite(File file, String text) throws IOException {
+        long modified = file.lastModified();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        file.setLastModified(modified + 2000);
+    }
+
+    /** Return the configuration in FILE. */
+    private static Configuration read(File file) {
+        try {
+            return Configuration.read(new Scanner(file), 4);
+        } catch (FileNotFoundException excp) {
+            throw new EnigmaException("missing " + file);
+        }
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        try {
+            rewrite(file, config(UPPER_STRING, NAVALA.get("I")));
+            Configuration first = read(file);
+            ConfigurationReloader reloader =
+                new ConfigurationReloader(
+                    file, first, ConfigurationReloaderTest::read,
+                    ConfigurationReloader.POLL_INTERVAL);
+            assertFalse(reloader.check());
+            assertSame(first, reloader.current());
+
+            Machine old = first.newMachine();
+            Main.setUp(first, old, "* B II I AA");
+            String expected = old.convert("HELLOWORLD");
+            Main.setUp(first, old, "* B II I AA");
+
+            rewrite(file, config(UPPER_STRING, NAVALA.get("III")));
+            assertFalse(reloader.check());
+            assertSame(first, reloader.current());
+            assertTrue(reloader.check());
+            Configuration second = reloader.current();
+            assertNotSame(first, second);
+            assertEquals(1, reloader.reloads());
+            Machine fresh = second.newMachine();
+            Main.setUp(second, fresh, "* B II I AA");
+            assertNotEquals(expected, fresh.convert("HELLOWORLD"));
+            assertEquals(expected, old.convert("HELLOWORLD"));
+
+            rewrite(file, "ABC 3");
+            assertFalse(reloader.check());
+            assertFalse(reloader.check());
+            rewrite(file, config("ABCDEFGHIJKLMNOPQRSTUVWXYZ.",
+                                 NAVALA.get("I")));
+            assertFalse(reloader.check());
+            assertFalse(reloader.check());
+            assertSame(second, reloader.current());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGrowing() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        try {
+            rewrite(file, config(UPPER_STRING, NAVALA.get("I")));
+            Configuration first = read(file);
+            ConfigurationReloader reloader =
+                new ConfigurationReloader(
+                    file, first, ConfigurationReloaderTest::read,
+                    ConfigurationReloader.POLL_INTERVAL);
+            String text = config(UPPER_STRING, NAVALA.get("III"));
+            for (int end = 10; end < text.length(); end += 10) {
+                rewrite(file, text.substring(0, end));
+                assertFalse(reloader.check());
+            }
+            rewrite(file, text);
+            assertFalse(reloader.check());
+            assertTrue(reloader.check());
+            assertEquals(1, reloader.reloads());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRotorsInUse() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        try {
+            rewrite(file, config(UPPER_STRING, NAVALA.get("I")));
+            Configuration first = read(file);
+            ConfigurationReloader reloader =
+                new ConfigurationReloader(
+                    file, first, ConfigurationReloaderTest::read,
+                    ConfigurationReloader.POLL_INTERVAL);
+            reloader.inUse("B", "II", "I");
+            rewrite(file, config(UPPER_STRING, NAVALA.get("I"))
+                    .replace("I MQ", "III MQ"));
+            assertFalse(reloader.check());
+            assertFalse(reloader.check());
+            assertSame(first, reloader.current());
+
+            reloader.inUse("B", "II", "III");
+            rewrite(file, config(UPPER_STRING, NAVALA.get("IV"))
+                    .replace("I MQ", "III MQ"));
+            assertFalse(reloader.check());
+            assertTrue(reloader.check());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReaderFailure() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        try {
+            rewrite(file, config(UPPER_STRING, NAVALA.get("I")));
+            Configuration first = read(file);
+            ConfigurationReloader reloader =
+                new ConfigurationReloader(
+                    file, first, f -> {
+                        throw new IllegalStateException("unreadable");
+                    }, ConfigurationReloader.POLL_INTERVAL);
+            rewrite(file, config(UPPER_STRING, NAVALA.get("III")));
+            assertFalse(reloader.check());
+            assertFalse(reloader.check());
+            assertSame(first, reloader.current());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        File file = File.createTempFile("enigma", ".conf");
+        try {
+            rewrite(file, config(UPPER_STRING, NAVALA.get("I")));
+            ConfigurationReloader reloader =
+                new ConfigurationReloader(file, read(file),
+                                          ConfigurationReloaderTest::read,
+                                          10);
+            reloader.start();
+            rewrite(file, config(UPPER_STRING, NAVALA.get("III")));
+            while (reloader.reloads() == 0) {
+                Thread.sleep(10);
+            }
+            reloader.stop();
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristics, in Rejewski's sense, of the keys of
+ *  a configuration.  If P1 .. P6 are the substitutions a machine applies
+ *  to the first six characters of a message, the characteristic of its
+ *  key is the cycle structure (the multiset of cycle lengths) of each of
+ *  the products P4 P1, P5 P2 and P6 P3.  Since the plugboard merely
+ *  conjugates these products, the characteristic depends only on the
+ *  rotor order and settings.  When each message starts with its own
+ *  three-character message key, enciphered twice under the key of the
+ *  day, enough such indicators reveal the three products, and so the
+ *  characteristic, without revealing the plugboard.
+ *
+ *  The catalog holds, for every key of a KeySpace (without ring
+ *  settings or plugboard), a code that is a hash of its characteristic,
+ *  as a KeyIndexFile, whose header holds, in little-endian order, the
+ *  ints MAGIC, VERSION and the alphabet size N, then the alphabet as
+ *  ints, then padding to a multiple of 8 bytes, then the long S, the size
+ *  of the KeySpace.  Keys found through a code are checked against the
+ *  full characteristic, so that hash collisions do no harm.
+ *  @author Zwea Htet
+ */
+class CycleCatalog {
+
+    /** Marks the start of every catalog file ("ENGY"). */
+    static final int MAGIC = 0x454e4759;
+
+    /** Current version of the file layout. */
+    static final int VERSION = 1;
+
+    /** Number of bits in a code. */
+    static final int CODE_BITS = 40;
+
+    /** Number of characters in an indicator. */
+    static final int INDICATOR_LENGTH = 6;
+
+    /** Build or consult a catalog, as specified by ARGS:
+     *
+     *      java enigma.CycleCatalog --build [--threads=N] [--lazy]
+     *          CONFIG CATALOG
+     *
+     *  writes to the file CATALOG the characteristics of the keys of the
+     *  configuration file CONFIG (with rings at the first letter), on N
+     *  threads (by default, one per processor).
+     *
+     *      java enigma.CycleCatalog [--lazy] CONFIG CATALOG INDICATORS
+     *
+     *  prints the settings lines of the keys whose characteristic is that
+     *  of the indicators (groups of six characters, separated by
+     *  whitespace) in the file INDICATORS. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--build --threads=([1-9]\\d*) --lazy "
+                                + "--=(.*){2,3}", args);
+            boolean build = options.contains("--build");
+            List<String> files = options.get("--");
+            if (!options.ok() || files.size() != (build ? 2 : 3)
+                || (!build && options.contains("--threads"))) {
+                throw error("Usage: java enigma.CycleCatalog --build "
+                            + "[--threads=N] [--lazy] CONFIG CATALOG%n"
+                            + "   or: java enigma.CycleCatalog [--lazy] "
+                            + "CONFIG CATALOG INDICATORS");
+            }
+            Configuration config = Search.readConfiguration(
+                new File(files.get(0)), options.contains("--lazy"));
+            if (build) {
+                build(config,
+                      options.contains("--threads")
+                      ? Integer.parseInt(options.getFirst("--threads"))
+                      : Runtime.getRuntime().availableProcessors(),
+                      new File(files.get(1)));
+            } else {
+                List<String> indicators = new ArrayList<>();
+                try {
+                    String text = Files.readString(
+                        new File(files.get(2)).toPath());
+                    for (String word : text.trim().split("\\s+")) {
+                        if (!word.isEmpty()) {
+                            indicators.add(word);
+                        }
+                    }
+                } catch (IOException excp) {
+                    throw error("could not read %s", files.get(2));
+                }
+                CycleCatalog catalog =
+                    new CycleCatalog(new File(files.get(1)), config);
+                PrintStream out = System.out;
+                for (String line : catalog.lookup(indicators)) {
+                    out.println(line);
+                }
+                out.flush();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write to FILE (replacing it atomically) a catalog of the keys of
+     *  CONFIG, working on THREADS threads. */
+    static void build(Configuration config, int threads, File file) {
+        build(config, threads, file, KeyIndexFile.RUN_SIZE);
+    }
+
+    /** As for build(CONFIG, THREADS, FILE), but sorting at most RUNSIZE
+     *  keys at a time. */
+    static void build(Configuration config, int threads, File file,
+                      int runSize) {
+        Alphabet alphabet = config.alphabet();
+        KeySpace keys = new KeySpace(config, false);
+        int headerSize = headerSize(alphabet.size());
+        ByteBuffer header = ByteBuffer.allocate(headerSize)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(alphabet.size());
+        for (int c = 0; c < alphabet.size(); c += 1) {
+            header.putInt(alphabet.toCodePoint(c));
+        }
+        header.putLong(headerSize - 8, keys.size());
+
+        KeyIndexFile.write(file, header.array(), keys.size(), CODE_BITS,
+                           threads, runSize, () -> {
+                               Machine M = config.newMachine();
+                               KeySpace.Cursor cursor = keys.cursor();
+                               int[][] subs =
+                                   new int[INDICATOR_LENGTH][alphabet.size()];
+                               return key -> {
+                                   cursor.set(M, key);
+                                   return code(characteristic(M, subs));
+                               };
+                           });
+    }
+
+    /** The catalog in FILE, mapped read-only into memory, which must be
+     *  for CONFIG. */
+    CycleCatalog(File file, Configuration config) {
+        _config = config;
+        Alphabet alphabet = config.alphabet();
+        int size = alphabet.size();
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int headerSize = headerSize(size);
+            ByteBuffer header = ByteBuffer.allocate(headerSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw error("%s is not a cycle catalog for this "
+                                + "alphabet", file);
+                }
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw error("%s is not a cycle catalog", file);
+            } else if (header.getInt(8) != size) {
+                throw error("%s is for a different alphabet", file);
+            }
+            for (int c = 0; c < size; c += 1) {
+                if (header.getInt(12 + 4 * c) != alphabet.toCodePoint(c)) {
+                    throw error("%s is for a different alphabet", file);
+                }
+            }
+            _keys = new KeySpace(config, false);
+            if (header.getLong(headerSize - 8) != _keys.size()) {
+                throw error("%s is for a different configuration", file);
+            }
+            _records = new KeyIndexFile(file, channel, headerSize);
+            if (_records.size() != _keys.size()) {
+                throw error("%s is corrupt", file);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the number of keys catalogued. */
+    long size() {
+        return _records.size();
+    }
+
+    /** Return the numbers of the keys whose characteristic is
+     *  CHARACTERISTIC (as returned by characteristic), in increasing
+     *  order. */
+    long[] keys(int[][] characteristic) {
+        long[] candidates = _records.keys(code(characteristic));
+        Machine M = _config.newMachine();
+        KeySpace.Cursor cursor = _keys.cursor();
+        int[][] subs = new int[INDICATOR_LENGTH][_config.alphabet().size()];
+        int n = 0;
+        for (long key : candidates) {
+            cursor.set(M, key);
+            if (Arrays.deepEquals(characteristic(M, subs), characteristic)) {
+                candidates[n] = key;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    /** Return the settings lines (without plugboard) of the keys whose
+     *  characteristic is that revealed by INDICATORS. */
+    List<String> lookup(List<String> indicators) {
+        List<String> result = new ArrayList<>();
+        for (long key :
+                 keys(characteristic(indicators, _config.alphabet()))) {
+            result.add(_keys.settingsLine(key, ""));
+        }
+        return result;
+    }
+
+    /** Return the characteristic of the current key of M, as three
+     *  arrays of cycle lengths in increasing order, leaving M
+     *  unchanged. */
+    static int[][] characteristic(Machine M) {
+        return characteristic(
+            M, new int[INDICATOR_LENGTH][M.alphabet().size()]);
+    }
+
+    /** Return the characteristic of the current key of M, as for
+     *  characteristic(M), using SUBS (INDICATOR_LENGTH arrays of the
+     *  alphabet size) as scratch space. */
+    private static int[][] characteristic(Machine M, int[][] subs) {
+        Machine.Snapshot start = M.snapshot();
+        for (int c = 0; c < subs[0].length; c += 1) {
+            M.restore(start);
+            for (int i = 0; i < INDICATOR_LENGTH; i += 1) {
+                subs[i][c] = M.convert(c);
+            }
+        }
+        M.restore(start);
+        int half = INDICATOR_LENGTH / 2;
+        int[][] result = new int[half][];
+        int[] product = new int[subs[0].length];
+        for (int i = 0; i < half; i += 1) {
+            for (int c = 0; c < product.length; c += 1) {
+                product[c] = subs[i + half][subs[i][c]];
+            }
+            result[i] = cycleLengths(product);
+        }
+        return result;
+    }
+
+    /** Return the characteristic revealed by INDICATORS, each of which
+     *  is the encipherment of a message key of INDICATOR_LENGTH / 2
+     *  characters over ALPHABET, repeated.  There must be enough of them
+     *  to determine each product completely. */
+    static int[][] characteristic(List<String> indicators,
+                                  Alphabet alphabet) {
+        int half = INDICATOR_LENGTH / 2;
+        int[][] products = new int[half][alphabet.size()];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        for (String indicator : indicators) {
+            int[] chars = indicator.codePoints().toArray();
+            if (chars.length != INDICATOR_LENGTH) {
+                throw error("indicator %s does not have %d characters",
+                            indicator, INDICATOR_LENGTH);
+            }
+            for (int i = 0; i < half; i += 1) {
+                int from = toIndex(alphabet, chars[i]),
+                    to = toIndex(alphabet, chars[i + half]);
+                if (products[i][from] >= 0 && products[i][from] != to) {
+                    throw error("indicators are inconsistent");
+                }
+                products[i][from] = to;
+            }
+        }
+        int[][] result = new int[half][];
+        for (int i = 0; i < half; i += 1) {
+            for (int c : products[i]) {
+                if (c < 0) {
+                    throw error("too few indicators to determine the "
+                                + "characteristic");
+                }
+            }
+            result[i] = cycleLengths(products[i]);
+        }
+        return result;
+    }
+
+    /** Return the index of the code point C in ALPHABET, which must
+     *  contain it. */
+    private static int toIndex(Alphabet alphabet, int c) {
+        if (!alphabet.containsCodePoint(c)) {
+            throw error("%c is not in the alphabet", c);
+        }
+        return alphabet.toIndex(c);
+    }
+
+    /** Return the lengths of the cycles of PERM, a permutation of 0 ..
+     *  PERM.length-1, in increasing order. */
+    static int[] cycleLengths(int[] perm) {
+        boolean[] seen = new boolean[perm.length];
+        int[] lengths = new int[perm.length];
+        int n = 0;
+        for (int c = 0; c < perm.length; c += 1) {
+            if (!seen[c]) {
+                int length = 0;
+                for (int d = c; !seen[d]; d = perm[d]) {
+                    if (d < 0 || d >= perm.length) {
+                        throw error("not a permutation");
+                    }
+                    seen[d] = true;
+                    length += 1;
+                }
+                lengths[n] = length;
+                n += 1;
+            }
+        }
+        int[] result = Arrays.copyOf(lengths, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the code of CHARACTERISTIC: a CODE_BITS-bit hash. */
+    static long code(int[][] characteristic) {
+        long hash = 0xcbf29ce484222325L;
+        for (int[] lengths : characteristic) {
+            for (int length : lengths) {
+                hash = (hash ^ length) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xff) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 29;
+        return hash & ((1L << CODE_BITS) - 1);
+    }
+
+    /** Return the size of the header of a catalog for an alphabet of SIZE
+     *  characters. */
+    private static int headerSize(int size) {
+        return (4 * (3 + size) + 7) / 8 * 8 + 8;
+    }
+
+    /** The configuration of my keys. */
+    private final Configuration _config;
+
+    /** My keys. */
+    private final KeySpace _keys;
+
+    /** My records. */
+    private final KeyIndexFile _records;
+}
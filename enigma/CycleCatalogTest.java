@@ -0,0 +1,113 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Zwea Htet
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Return a configuration with a reflector and two of the naval
+     *  rotors I, II and III, all moving. */
+    private static Configuration smallConfiguration() {
+        String config = UPPER_STRING + " 3 2\n"
+            + "I MQ " + NAVALA.get("I") + "\n"
+            + "II ME " + NAVALA.get("II") + "\n"
+            + "III MV " + NAVALA.get("III") + "\n"
+            + "B R " + NAVALA.get("B") + "\n";
+        return Configuration.read(new Scanner(config), 4);
+    }
+
+    /** Return COUNT indicators: random message keys of three letters,
+     *  each enciphered twice by a machine of CONFIG set to SETTINGS. */
+    private static List<String> indicators(Configuration config,
+                                           String settings, int count) {
+        Random random = new Random(41);
+        Machine M = config.newMachine();
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < count; k += 1) {
+            String key = "";
+            for (int i = 0; i < 3; i += 1) {
+                key += UPPER_STRING.charAt(random.nextInt(26));
+            }
+            Main.setUp(config, M, settings);
+            result.add(M.convert(key + key));
+        }
+        return result;
+    }
+
+    @Test
+    public void testCycleLengths() {
+        assertArrayEquals(new int[] { 1, 2, 3 },
+                          CycleCatalog.cycleLengths(
+                              new int[] { 1, 2, 0, 3, 5, 4 }));
+    }
+
+    @Test
+    public void testPlugboardInvariant() {
+        Configuration config = smallConfiguration();
+        Machine M = config.newMachine();
+        Main.setUp(config, M, "* B III I QR");
+        int[][] plain = CycleCatalog.characteristic(M);
+        assertEquals("QR", M.rotorSettings());
+        Main.setUp(config, M, "* B III I QR (AB) (CX) (DY)");
+        assertArrayEquals(plain[0], CycleCatalog.characteristic(M)[0]);
+        assertArrayEquals(plain[2], CycleCatalog.characteristic(M)[2]);
+        int total = 0;
+        for (int length : plain[1]) {
+            total += length;
+        }
+        assertEquals(26, total);
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        Configuration config = smallConfiguration();
+        File file = File.createTempFile("enigma", ".cyc");
+        try {
+            CycleCatalog.build(config, 2, file, 1000);
+            CycleCatalog catalog = new CycleCatalog(file, config);
+            assertEquals(6 * 26 * 26, catalog.size());
+            String settings = "* B II III KM (AT) (BL) (EW)";
+            List<String> found =
+                catalog.lookup(indicators(config, settings, 300));
+            assertTrue(found.contains("* B II III KM AA"));
+            for (String line : found) {
+                Machine M = config.newMachine();
+                Main.setUp(config, M, line);
+                Machine N = config.newMachine();
+                Main.setUp(config, N, settings);
+                assertTrue(Arrays.deepEquals(CycleCatalog.characteristic(N),
+                                             CycleCatalog.characteristic(M)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTooFewIndicators() {
+        Configuration config = smallConfiguration();
+        CycleCatalog.characteristic(
+            indicators(config, "* B II III KM", 3), UPPER);
+    }
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.List;
+
+/** Chooses, for a section of a given length, the EnigmaEngine that
+ *  converts it fastest, counting both the cost of compiling a path and
+ *  the cost per character of using it.  Those costs are measured by a
+ *  short calibration run the first time a machine with a given alphabet
+ *  size, number of rotors and number of pawls asks for a choice, so
+ *  that they reflect this JVM on this hardware.
+ *  @author Zwea Htet
+ */
+class EngineSelector {
+
+    /** Sections shorter than this are always converted directly, without
+     *  calibrating. */
+    static final long MIN_LENGTH = 64;
+
+    /** Number of characters converted by each engine when calibrating. */
+    static final int CALIBRATION_LENGTH = 1 << 12;
+
+    /** Number of timed calibration rounds per engine; the fastest counts.
+     *  The first round also serves to warm up. */
+    static final int CALIBRATION_ROUNDS = 2;
+
+    /** A selector choosing among ENGINES. */
+    EngineSelector(List<EnigmaEngine> engines) {
+        _engines = engines;
+    }
+
+    /** Return the engine that M, in its current state, should use for a
+     *  section of LENGTH characters. */
+    EnigmaEngine choose(Machine M, long length) {
+        if (length < MIN_LENGTH) {
+            return EnigmaEngine.DIRECT;
+        }
+        double[][] costs = costs(M);
+        int best = 0;
+        for (int i = 1; i < _engines.size(); i += 1) {
+            if (cost(costs[i], length) < cost(costs[best], length)) {
+                best = i;
+            }
+        }
+        return _engines.get(best);
+    }
+
+    /** Return the measured costs, as for calibrate, for machines like
+     *  M, calibrating on M if they have not yet been measured. */
+    synchronized double[][] costs(Machine M) {
+        String key = M.alphabet().size() + "/" + M.numRotors() + "/"
+            + M.numPawls();
+        double[][] costs = _costs.get(key);
+        if (costs == null) {
+            costs = calibrate(M);
+            _costs.put(key, costs);
+        }
+        return costs;
+    }
+
+    /** Return the time in nanoseconds taken, according to COSTS, to
+     *  convert LENGTH characters. */
+    private static double cost(double[] costs, long length) {
+        return costs[0] + costs[1] * length;
+    }
+
+    /** Return, for each of my engines, the time in nanoseconds it takes
+     *  to compile a path for the current rotors and plugboard of M and
+     *  the time it takes to convert each character, measured on forks of
+     *  M (M itself is unchanged). */
+    private double[][] calibrate(Machine M) {
+        int[] msg = new int[CALIBRATION_LENGTH];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = i * 7 % M.alphabet().size();
+        }
+        double[][] result = new double[_engines.size()][2];
+        for (int e = 0; e < _engines.size(); e += 1) {
+            EnigmaEngine engine = _engines.get(e);
+            result[e][0] = result[e][1] = Double.MAX_VALUE;
+            for (int r = 0; r < CALIBRATION_ROUNDS; r += 1) {
+                Machine fork = M.fork();
+                long start = System.nanoTime();
+                RotorPath path = fork.compile(engine);
+                long compiled = System.nanoTime();
+                if (path == null && engine != EnigmaEngine.DIRECT) {
+                    break;
+                }
+                fork.usePath(path);
+                fork.convert(msg, 0, msg.length, msg);
+                long end = System.nanoTime();
+                result[e][0] = Math.min(result[e][0], compiled - start);
+                result[e][1] = Math.min(result[e][1],
+                                        (double) (end - compiled)
+                                        / msg.length);
+            }
+        }
+        return result;
+    }
+
+    /** The engines I choose among. */
+    private final List<EnigmaEngine> _engines;
+
+    /** Measured costs, keyed by alphabet size, number of rotors and number
+     *  of pawls. */
+    private final HashMap<String, double[][]> _costs = new HashMap<>();
+}
@@ -0,0 +1,160 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/** Factory methods for byte channels that convert the bytes passing
+ *  through them with a Machine, as EnigmaInputStream and
+ *  EnigmaOutputStream do for streams.  Heap buffers are converted in
+ *  place; direct buffers go through a private array.  The underlying
+ *  channels should be in blocking mode.
+ *  @author Zwea Htet
+ */
+class EnigmaChannels {
+
+    /** Size of the conversion buffer of each channel. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** Not instantiable. */
+    private EnigmaChannels() {
+    }
+
+    /** Return a channel whose reads return the bytes read from IN,
+     *  converted by M (already set up), treating bytes outside its
+     *  alphabet according to POLICY. */
+    static ReadableByteChannel newReader(ReadableByteChannel in, Machine M,
+                                         OutsideAlphabet policy) {
+        return new Reader(in, new ByteConverter(M, policy));
+    }
+
+    /** Return a channel that writes the bytes written to it to OUT,
+     *  converted by M (already set up), treating bytes outside its
+     *  alphabet according to POLICY. */
+    static WritableByteChannel newWriter(WritableByteChannel out, Machine M,
+                                         OutsideAlphabet policy) {
+        return new Writer(out, new ByteConverter(M, policy));
+    }
+
+    /** A converting ReadableByteChannel. */
+    private static class Reader implements ReadableByteChannel {
+
+        /** A channel converting the bytes read from IN with
+         *  CONVERTER. */
+        Reader(ReadableByteChannel in, ByteConverter converter) {
+            _in = in;
+            _converter = converter;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int start = dst.position();
+            while (true) {
+                int n = _in.read(dst);
+                if (n <= 0) {
+                    return n;
+                }
+                n = convert(dst, start, n);
+                dst.position(start + n);
+                if (n > 0) {
+                    return n;
+                }
+            }
+        }
+
+        /** Convert the LEN bytes of DST starting at START in place,
+         *  returning the length of the result. */
+        private int convert(ByteBuffer dst, int start, int len)
+            throws IOException {
+            if (dst.hasArray()) {
+                int off = dst.arrayOffset() + start;
+                return _converter.convert(dst.array(), off, len,
+                                          dst.array(), off);
+            }
+            int result = 0;
+            for (int k = 0; k < len; k += _buffer.length) {
+                int chunk = Math.min(_buffer.length, len - k);
+                dst.get(start + k, _buffer, 0, chunk);
+                int n = _converter.convert(_buffer, 0, chunk, _buffer, 0);
+                dst.put(start + result, _buffer, 0, n);
+                result += n;
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _in.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** Source of bytes. */
+        private final ReadableByteChannel _in;
+
+        /** Converter applied to each read. */
+        private final ByteConverter _converter;
+
+        /** Conversion buffer for direct buffers. */
+        private final byte[] _buffer = new byte[BUFFER_SIZE];
+    }
+
+    /** A converting WritableByteChannel. */
+    private static class Writer implements WritableByteChannel {
+
+        /** A channel writing the bytes written to it to OUT, converted by
+         *  CONVERTER. */
+        Writer(WritableByteChannel out, ByteConverter converter) {
+            _out = out;
+            _converter = converter;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int total = src.remaining();
+            while (src.hasRemaining()) {
+                int chunk = Math.min(src.remaining(), BUFFER_SIZE);
+                int n;
+                if (src.hasArray()) {
+                    n = _converter.convert(src.array(),
+                                           src.arrayOffset()
+                                           + src.position(),
+                                           chunk, _buffer.array(), 0);
+                    src.position(src.position() + chunk);
+                } else {
+                    src.get(_buffer.array(), 0, chunk);
+                    n = _converter.convert(_buffer.array(), 0, chunk,
+                                           _buffer.array(), 0);
+                }
+                _buffer.clear().limit(n);
+                while (_buffer.hasRemaining()) {
+                    _out.write(_buffer);
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _out.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+
+        /** Destination of converted bytes. */
+        private final WritableByteChannel _out;
+
+        /** Converter applied to each write. */
+        private final ByteConverter _converter;
+
+        /** Converted bytes on their way to _out. */
+        private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A strategy by which a Machine converts characters under one choice of
+ *  rotors and plugboard: it compiles their tables into a RotorPath.
+ *  Every engine produces exactly the results of the Machine's own
+ *  conversion, but they differ in the cost of compiling a path and the
+ *  cost per character of using one, so that which is fastest depends on
+ *  the length of the message (see EngineSelector).
+ *  @author Zwea Htet
+ */
+interface EnigmaEngine {
+
+    /** Return my name, as given to --engine. */
+    String name();
+
+    /** Return a RotorPath for an alphabet of SIZE characters, plugboard
+     *  table PLUGBOARD, and rotors whose forward and inverse tables are
+     *  FORWARD[K] and BACKWARD[K] (rotor #0 being the reflector), or null
+     *  if the machine is to convert with its own rotors. */
+    RotorPath compile(int size, int[] plugboard,
+                      int[][] forward, int[][] backward);
+
+    /** Converts with the machine's own rotors, rotor by rotor, at no cost
+     *  to compile. */
+    EnigmaEngine DIRECT = new EnigmaEngine() {
+        @Override
+        public String name() {
+            return "direct";
+        }
+
+        @Override
+        public RotorPath compile(int size, int[] plugboard,
+                                 int[][] forward, int[][] backward) {
+            return null;
+        }
+    };
+
+    /** Converts through copies of the rotors' tables in a loop. */
+    EnigmaEngine TABLE = new EnigmaEngine() {
+        @Override
+        public String name() {
+            return "table";
+        }
+
+        @Override
+        public RotorPath compile(int size, int[] plugboard,
+                                 int[][] forward, int[][] backward) {
+            return new TablePath(size, plugboard, forward, backward);
+        }
+    };
+
+    /** Converts with code generated by Specializer, falling back to the
+     *  machine's own rotors if generation fails. */
+    EnigmaEngine SPECIALIZED = new EnigmaEngine() {
+        @Override
+        public String name() {
+            return "specialized";
+        }
+
+        @Override
+        public RotorPath compile(int size, int[] plugboard,
+                                 int[][] forward, int[][] backward) {
+            return Specializer.specialize(size, plugboard, forward,
+                                          backward);
+        }
+    };
+
+    /** Converts through the fast rotor and a table, rebuilt whenever the
+     *  other rotors move, fusing all the others.  A machine with no
+     *  rotor but the reflector has no fast rotor, and converts with its
+     *  own. */
+    EnigmaEngine FUSED = new EnigmaEngine() {
+        @Override
+        public String name() {
+            return "fused";
+        }
+
+        @Override
+        public RotorPath compile(int size, int[] plugboard,
+                                 int[][] forward, int[][] backward) {
+            if (forward.length < 2) {
+                return null;
+            }
+            return new FusedPath(size, plugboard, forward, backward);
+        }
+    };
+
+    /** Converts through the fast rotor, the reflector and a balanced
+     *  tree composing all the others, updating only the parts of the
+     *  tree for rotors that move.  Like FUSED, it leaves a machine with
+     *  no rotor but the reflector to convert with its own. */
+    EnigmaEngine TREE = new EnigmaEngine() {
+        @Override
+        public String name() {
+            return "tree";
+        }
+
+        @Override
+        public RotorPath compile(int size, int[] plugboard,
+                                 int[][] forward, int[][] backward) {
+            if (forward.length < 2) {
+                return null;
+            }
+            return new TreePath(size, plugboard, forward, backward);
+        }
+    };
+
+    /** All engines, in order of increasing cost to compile. */
+    List<EnigmaEngine> ENGINES =
+        Arrays.asList(DIRECT, TABLE, FUSED, TREE, SPECIALIZED);
+
+    /** Return the engine named NAME. */
+    static EnigmaEngine forName(String name) {
+        for (EnigmaEngine engine : ENGINES) {
+            if (engine.name().equals(name)) {
+                return engine;
+            }
+        }
+        throw error("no engine named %s", name);
+    }
+}
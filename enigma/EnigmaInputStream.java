@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** An input stream that converts the bytes read from another stream
+ *  with a Machine, in the manner of javax.crypto.CipherInputStream.
+ *  Each byte is taken as the character with the same value; bytes
+ *  outside the machine's alphabet are treated according to an
+ *  OutsideAlphabet policy.  Bytes are converted a buffer at a time, in
+ *  place.  The machine must be set up beforehand and advances as bytes
+ *  are read (or skipped); mark and reset are not supported.
+ *  @author Zwea Htet
+ */
+class EnigmaInputStream extends FilterInputStream {
+
+    /** A stream converting the bytes of IN with M, which is already set
+     *  up, treating bytes outside its alphabet according to POLICY. */
+    EnigmaInputStream(InputStream in, Machine M, OutsideAlphabet policy) {
+        super(in);
+        _converter = new ByteConverter(M, policy);
+    }
+
+    /** A stream converting the bytes of IN with M, passing bytes outside
+     *  its alphabet through unchanged. */
+    EnigmaInputStream(InputStream in, Machine M) {
+        this(in, M, OutsideAlphabet.PASS);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n;
+        do {
+            n = read(_one, 0, 1);
+        } while (n == 0);
+        return n < 0 ? -1 : _one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = in.read(b, off, len);
+            if (n <= 0) {
+                return n;
+            }
+            n = _converter.convert(b, off, n, b, off);
+            if (n > 0) {
+                return n;
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] discard = new byte[(int) Math.min(Math.max(n, 0), SKIP_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(discard, 0,
+                         (int) Math.min(discard.length, n - skipped));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return _converter.drops() ? 0 : in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /** Largest buffer used by skip. */
+    private static final int SKIP_SIZE = 8192;
+
+    /** Converter applied to each buffer read. */
+    private final ByteConverter _converter;
+
+    /** Buffer for single-byte reads. */
+    private final byte[] _one = new byte[1];
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** An output stream that converts the bytes written to it with a
+ *  Machine before passing them to another stream, in the manner of
+ *  javax.crypto.CipherOutputStream.  Each byte is taken as the character
+ *  with the same value; bytes outside the machine's alphabet are treated
+ *  according to an OutsideAlphabet policy.  Bytes are converted into an
+ *  internal buffer and passed on a buffer at a time, without further
+ *  buffering.  The machine must be set up beforehand.
+ *  @author Zwea Htet
+ */
+class EnigmaOutputStream extends FilterOutputStream {
+
+    /** Size of the conversion buffer. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** A stream converting bytes with M, which is already set up, and
+     *  writing them to OUT, treating bytes outside its alphabet
+     *  according to POLICY. */
+    EnigmaOutputStream(OutputStream out, Machine M,
+                       OutsideAlphabet policy) {
+        super(out);
+        _converter = new ByteConverter(M, policy);
+    }
+
+    /** A stream converting bytes with M and writing them to OUT,
+     *  passing bytes outside its alphabet through unchanged. */
+    EnigmaOutputStream(OutputStream out, Machine M) {
+        this(out, M, OutsideAlphabet.PASS);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _one[0] = (byte) b;
+        write(_one, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int k = Math.min(len, BUFFER_SIZE);
+            int n = _converter.convert(b, off, k, _buffer, 0);
+            if (n > 0) {
+                out.write(_buffer, 0, n);
+            }
+            off += k;
+            len -= k;
+        }
+    }
+
+    /** Converter applied to each buffer written. */
+    private final ByteConverter _converter;
+
+    /** Converted bytes on their way to OUT. */
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+
+    /** Buffer for single-byte writes. */
+    private final byte[] _one = new byte[1];
+}
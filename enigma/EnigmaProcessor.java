@@ -0,0 +1,430 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** A Flow.Processor that converts a stream of text with a Machine of a
+ *  given Configuration.  The text is read as Main reads its input: a
+ *  line that starts with '*' is a settings line, which reconfigures the
+ *  machine (through the Configuration's settings cache) and is not
+ *  passed on; in all other lines, blanks are dropped, line terminators
+ *  are passed on unchanged, and every other character is converted.
+ *  Lines, including settings lines, may be split across items in any
+ *  way.  As in Main, it is an error for text to precede the first
+ *  settings line; errors are reported to the subscriber through onError,
+ *  after cancelling the upstream subscription.
+ *
+ *  The processor requests one item at a time from upstream, and only
+ *  while its subscriber has outstanding demand and all output from
+ *  earlier items has been delivered, so that it holds at most one input
+ *  item and its conversion at any time: a slow subscriber stalls the
+ *  publisher rather than growing a queue.  Output items are taken from a
+ *  pool of buffers of a fixed size.  A subscriber that is finished with
+ *  an item may hand it back with release, so that steady-state streams
+ *  allocate nothing; items that are never released are simply left to
+ *  the garbage collector.  Input items become the property of the
+ *  processor when passed to onNext, but are never modified.
+ *
+ *  There may be only one subscriber.
+ *  @author Zwea Htet
+ */
+class EnigmaProcessor implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** Default capacity of output buffers, in characters. */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Default maximum number of idle buffers kept for reuse. */
+    static final int DEFAULT_POOL_SIZE = 16;
+
+    /** Maximum length of a settings line. */
+    static final int MAX_SETTINGS_LINE = 1 << 16;
+
+    /** A processor converting with a new machine of CONFIG, producing
+     *  items of at most BUFFERSIZE characters and keeping up to POOLSIZE
+     *  released items for reuse. */
+    EnigmaProcessor(Configuration config, int bufferSize, int poolSize) {
+        if (bufferSize <= 0 || poolSize <= 0) {
+            throw error("buffer and pool sizes must be positive");
+        }
+        _config = config;
+        _alphabet = config.alphabet();
+        _machine = config.newMachine();
+        _bufferSize = bufferSize;
+        _pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /** A processor converting with a new machine of CONFIG, with the
+     *  default buffer and pool sizes. */
+    EnigmaProcessor(Configuration config) {
+        this(config, DEFAULT_BUFFER_SIZE, DEFAULT_POOL_SIZE);
+    }
+
+    /** Return BUFFER, an item previously delivered by me, to my pool. */
+    void release(CharBuffer buffer) {
+        if (buffer.capacity() == _bufferSize && !buffer.isReadOnly()) {
+            _pool.offer(buffer.clear());
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!_downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("EnigmaProcessor "
+                                                         + "allows only one "
+                                                         + "subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Downstream());
+        _subscribed = true;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (_upstream != null || _cancelled) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(CharBuffer item) {
+        _inbox.offer(Objects.requireNonNull(item));
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        _error.compareAndSet(null, Objects.requireNonNull(throwable));
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        drain();
+    }
+
+    /** My subscriber's subscription. */
+    private class Downstream implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _error.compareAndSet(null, new IllegalArgumentException(
+                    "non-positive request: " + n));
+                _done = true;
+            } else {
+                _demand.getAndAccumulate(n, (a, b) ->
+                                         a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            Flow.Subscription upstream = _upstream;
+            if (upstream != null) {
+                upstream.cancel();
+            }
+            drain();
+        }
+    }
+
+    /** Deliver whatever signals are currently possible.  Calls from
+     *  different threads (or reentrant calls from the subscriber) are
+     *  serialized: only one caller runs step at a time, and it runs step
+     *  again if others arrived meanwhile. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (missed != 0) {
+            step();
+            missed = _wip.addAndGet(-missed);
+        }
+    }
+
+    /** Deliver output while there is demand, converting input and
+     *  requesting more from upstream as needed. */
+    private void step() {
+        Flow.Subscriber<? super CharBuffer> down = _downstream.get();
+        while (!_terminated) {
+            if (_cancelled) {
+                _terminated = true;
+                _inbox.clear();
+                _outbox.clear();
+                return;
+            }
+            boolean done = _done;
+            if (done && _error.get() != null) {
+                if (_subscribed) {
+                    fail(down, _error.get());
+                }
+                return;
+            }
+            if (!_outbox.isEmpty()) {
+                if (_demand.get() == 0) {
+                    return;
+                }
+                if (_demand.get() != Long.MAX_VALUE) {
+                    _demand.decrementAndGet();
+                }
+                down.onNext(_outbox.poll());
+                continue;
+            }
+            CharBuffer item = _inbox.poll();
+            if (item != null) {
+                _requested = false;
+                try {
+                    convert(item);
+                } catch (RuntimeException excp) {
+                    fail(down, excp);
+                    return;
+                }
+            } else if (done) {
+                if (_subscribed) {
+                    finish(down);
+                }
+                return;
+            } else if (!_requested && _upstream != null
+                       && _demand.get() > 0) {
+                _requested = true;
+                _upstream.request(1);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Complete DOWN after handling any final, unterminated settings
+     *  line. */
+    private void finish(Flow.Subscriber<? super CharBuffer> down) {
+        try {
+            if (_settingsLine != null) {
+                endSettingsLine();
+            }
+            if (_surrogate != 0) {
+                throw error("input ends within a surrogate pair");
+            }
+        } catch (RuntimeException excp) {
+            fail(down, excp);
+            return;
+        }
+        _terminated = true;
+        down.onComplete();
+    }
+
+    /** Cancel my upstream subscription and report EXCP to DOWN. */
+    private void fail(Flow.Subscriber<? super CharBuffer> down,
+                      Throwable excp) {
+        _terminated = true;
+        _inbox.clear();
+        _outbox.clear();
+        Flow.Subscription upstream = _upstream;
+        if (upstream != null) {
+            upstream.cancel();
+        }
+        down.onError(excp);
+    }
+
+    /** Convert the characters remaining in ITEM, adding the results to
+     *  _outbox. */
+    private void convert(CharBuffer item) {
+        CharBuffer out = null;
+        while (item.hasRemaining()) {
+            char c = item.get();
+            if (_settingsLine != null) {
+                if (c == '\n') {
+                    endSettingsLine();
+                    _atLineStart = true;
+                } else if (_settingsLine.length() == MAX_SETTINGS_LINE) {
+                    throw error("settings line too long");
+                } else {
+                    _settingsLine.append(c);
+                }
+                continue;
+            }
+            if (_atLineStart && c == '*') {
+                _settingsLine = new StringBuilder("*");
+                continue;
+            }
+            if (!_configured) {
+                throw error("Missing or Invalid setting!");
+            }
+            _atLineStart = c == '\n';
+            if (c == ' ') {
+                continue;
+            }
+            if (_surrogate != 0) {
+                char high = _surrogate;
+                _surrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    out = put(out, encipher(Character.toCodePoint(high, c)));
+                    continue;
+                }
+                out = put(out, encipher(high));
+            }
+            if (c == '\n' || c == '\r') {
+                out = put(out, c);
+            } else if (Character.isHighSurrogate(c)) {
+                _surrogate = c;
+            } else {
+                out = put(out, encipher(c));
+            }
+        }
+        if (out != null) {
+            _outbox.add(out.flip());
+        }
+    }
+
+    /** Return the code point to which my machine converts the code
+     *  point C. */
+    private int encipher(int c) {
+        return _alphabet.toCodePoint(_machine.convert(_alphabet.toIndex(c)));
+    }
+
+    /** Add the character C (a code point) to OUT, or if OUT is null or
+     *  full, to a new buffer after adding OUT to _outbox; a surrogate
+     *  pair may be split between buffers.  Return the buffer added
+     *  to. */
+    private CharBuffer put(CharBuffer out, int c) {
+        if (Character.isBmpCodePoint(c)) {
+            return put(out, (char) c);
+        }
+        out = put(out, Character.highSurrogate(c));
+        return put(out, Character.lowSurrogate(c));
+    }
+
+    /** Add the char C to OUT, as for put(OUT, int). */
+    private CharBuffer put(CharBuffer out, char c) {
+        if (out == null || !out.hasRemaining()) {
+            if (out != null) {
+                _outbox.add(out.flip());
+            }
+            out = takeBuffer();
+        }
+        out.put(c);
+        return out;
+    }
+
+    /** Apply the settings line accumulated in _settingsLine. */
+    private void endSettingsLine() {
+        int len = _settingsLine.length();
+        if (_settingsLine.charAt(len - 1) == '\r') {
+            _settingsLine.setLength(len - 1);
+        }
+        String line = _settingsLine.toString();
+        _settingsLine = null;
+        if (!Main.isSettingsLine(line)) {
+            throw error("invalid settings line: %s", line);
+        }
+        Main.setUp(_config, _machine, line);
+        _configured = true;
+    }
+
+    /** Return an empty buffer from my pool, or a new one if the pool is
+     *  empty. */
+    private CharBuffer takeBuffer() {
+        CharBuffer buffer = _pool.poll();
+        return buffer == null ? CharBuffer.allocate(_bufferSize) : buffer;
+    }
+
+    /** The configuration of _machine. */
+    private final Configuration _config;
+
+    /** The alphabet of _config. */
+    private final Alphabet _alphabet;
+
+    /** The machine performing conversions. */
+    private final Machine _machine;
+
+    /** Capacity of my output buffers. */
+    private final int _bufferSize;
+
+    /** Released buffers available for reuse. */
+    private final ArrayBlockingQueue<CharBuffer> _pool;
+
+    /** My subscriber, or null. */
+    private final AtomicReference<Flow.Subscriber<? super CharBuffer>>
+        _downstream = new AtomicReference<>();
+
+    /** True once my subscriber's onSubscribe has returned. */
+    private volatile boolean _subscribed;
+
+    /** My subscription to my publisher, or null. */
+    private volatile Flow.Subscription _upstream;
+
+    /** Unfulfilled demand from my subscriber (Long.MAX_VALUE meaning
+     *  unbounded). */
+    private final AtomicLong _demand = new AtomicLong();
+
+    /** Items received from upstream and not yet converted. */
+    private final ConcurrentLinkedQueue<CharBuffer> _inbox =
+        new ConcurrentLinkedQueue<>();
+
+    /** Converted items not yet delivered.  Accessed only in step. */
+    private final ArrayDeque<CharBuffer> _outbox = new ArrayDeque<>();
+
+    /** Count of pending calls to drain. */
+    private final AtomicInteger _wip = new AtomicInteger();
+
+    /** The first error to report, or null. */
+    private final AtomicReference<Throwable> _error =
+        new AtomicReference<>();
+
+    /** True once upstream has completed or failed, or my subscriber
+     *  has broken the protocol. */
+    private volatile boolean _done;
+
+    /** True once my subscriber has cancelled. */
+    private volatile boolean _cancelled;
+
+    /** True once a terminal signal has been sent.  Accessed only in
+     *  step. */
+    private boolean _terminated;
+
+    /** True while an item requested from upstream has not arrived.
+     *  Accessed only in step. */
+    private boolean _requested;
+
+    /** True iff the next character begins a line.  Accessed only in
+     *  step. */
+    private boolean _atLineStart = true;
+
+    /** The first half of a surrogate pair whose second half has not yet
+     *  arrived, or 0.  Accessed only in step. */
+    private char _surrogate;
+
+    /** The settings line being read, or null.  Accessed only in step. */
+    private StringBuilder _settingsLine;
+
+    /** True once a settings line has been applied.  Accessed only in
+     *  step. */
+    private boolean _configured;
+}
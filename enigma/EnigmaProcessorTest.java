@@ -0,0 +1,148 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Zwea Htet
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** An upstream subscription recording the number of items
+     *  requested. */
+    private static class Upstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /** Total number of items requested. */
+        private long requested;
+        /** True iff cancelled. */
+        private boolean cancelled;
+    }
+
+    /** A subscriber recording everything it receives. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(CharBuffer item) {
+            text.append(item);
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        /** My subscription. */
+        private Flow.Subscription subscription;
+        /** Concatenation of the items received. */
+        private StringBuilder text = new StringBuilder();
+        /** The items received. */
+        private List<CharBuffer> items = new ArrayList<>();
+        /** Error received, or null. */
+        private Throwable error;
+        /** True iff completed. */
+        private boolean complete;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvert() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalConfiguration(), 4, 2);
+        Upstream up = new Upstream();
+        Collector down = new Collector();
+        proc.onSubscribe(up);
+        proc.subscribe(down);
+        down.subscription.request(Long.MAX_VALUE);
+        String[] chunks = {
+            "* B Beta I II III A", "AAA (AQ) (EP)\r\nHELLO W", "ORLD\n",
+            "* B Beta I II III AAAA (AQ) (EP)\nIHBDQ QMTQZ"
+        };
+        for (String chunk : chunks) {
+            assertEquals(1, up.requested);
+            up.requested = 0;
+            proc.onNext(CharBuffer.wrap(chunk));
+        }
+        proc.onComplete();
+        assertNull(down.error);
+        assertTrue(down.complete);
+        assertEquals("IHBDQQMTQZ\nHELLOWORLD", down.text.toString());
+        for (CharBuffer item : down.items) {
+            assertTrue(item.capacity() <= 4);
+        }
+    }
+
+    @Test
+    public void testBackpressure() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalConfiguration(), 4, 2);
+        Upstream up = new Upstream();
+        Collector down = new Collector();
+        proc.subscribe(down);
+        proc.onSubscribe(up);
+        assertEquals(0, up.requested);
+        down.subscription.request(1);
+        assertEquals(1, up.requested);
+        proc.onNext(CharBuffer.wrap("* B Beta I II III AAAA\nHELLOWORLD"));
+        assertEquals(1, down.items.size());
+        assertEquals(1, up.requested);
+        down.subscription.request(1);
+        assertEquals(2, down.items.size());
+        assertEquals(1, up.requested);
+        down.subscription.request(2);
+        assertEquals(3, down.items.size());
+        assertEquals(2, up.requested);
+        proc.release(down.items.get(0));
+        proc.onNext(CharBuffer.wrap("ABC"));
+        assertEquals(4, down.items.size());
+        assertSame(down.items.get(0), down.items.get(3));
+        down.subscription.cancel();
+        assertTrue(up.cancelled);
+    }
+
+    @Test
+    public void testMissingSettings() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalConfiguration());
+        Upstream up = new Upstream();
+        Collector down = new Collector();
+        proc.onSubscribe(up);
+        proc.subscribe(down);
+        down.subscription.request(10);
+        proc.onNext(CharBuffer.wrap("HELLO\n"));
+        assertTrue(down.error instanceof EnigmaException);
+        assertTrue(up.cancelled);
+        assertFalse(down.complete);
+    }
+}
@@ -0,0 +1,121 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaInputStream, EnigmaOutputStream
+ *  and EnigmaChannels.
+ *  @author Zwea Htet
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line used for all tests. */
+    private static final String SETTINGS = "* B Beta I II III AAAA (AQ) (EP)";
+
+    /** Return a machine set up according to SETTINGS. */
+    private static Machine machine() {
+        Configuration config = navalConfiguration();
+        Machine M = config.newMachine();
+        Main.setUp(config, M, SETTINGS);
+        return M;
+    }
+
+    /** Return the bytes of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Return the string whose bytes are B. */
+    private static String string(byte[] b) {
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testInputStream() throws IOException {
+        InputStream in =
+            new EnigmaInputStream(new ByteArrayInputStream(
+                                      bytes("HELLO WORLD\r\n")),
+                                  machine());
+        assertEquals('I', in.read());
+        assertEquals(1, in.skip(1));
+        assertEquals("BDQ QMTQZ\r\n", string(in.readAllBytes()));
+        assertEquals(-1, in.read());
+
+        in = new EnigmaInputStream(new ByteArrayInputStream(
+                                       bytes("HELLO WORLD\r\n")),
+                                   machine(), OutsideAlphabet.DROP);
+        assertEquals("IHBDQQMTQZ", string(in.readAllBytes()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReject() throws IOException {
+        new EnigmaInputStream(new ByteArrayInputStream(bytes("HELLO WORLD")),
+                              machine(), OutsideAlphabet.REJECT)
+            .readAllBytes();
+    }
+
+    @Test
+    public void testOutputStream() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new EnigmaOutputStream(bytes, machine())) {
+            out.write('I');
+            out.write(bytes("HBDQ QMTQZ"));
+        }
+        assertEquals("HELLO WORLD", string(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testChannels() throws IOException {
+        byte[] text = new byte[3 * EnigmaChannels.BUFFER_SIZE + 7];
+        for (int k = 0; k < text.length; k += 1) {
+            text[k] = (byte) (k % 10 == 9 ? '\n' : 'A' + k % 26);
+        }
+        ByteArrayOutputStream cipher = new ByteArrayOutputStream();
+        try (WritableByteChannel out =
+                 EnigmaChannels.newWriter(Channels.newChannel(cipher),
+                                          machine(),
+                                          OutsideAlphabet.PASS)) {
+            out.write(ByteBuffer.wrap(text));
+        }
+        byte[] expected =
+            new EnigmaInputStream(new ByteArrayInputStream(text),
+                                  machine()).readAllBytes();
+        assertArrayEquals(expected, cipher.toByteArray());
+
+        ReadableByteChannel in =
+            EnigmaChannels.newReader(Channels.newChannel(
+                                         new ByteArrayInputStream(
+                                             cipher.toByteArray())),
+                                     machine(), OutsideAlphabet.PASS);
+        ByteBuffer plain = ByteBuffer.allocateDirect(text.length);
+        while (plain.hasRemaining() && in.read(plain) >= 0) {
+            continue;
+        }
+        byte[] result = new byte[text.length];
+        plain.flip().get(result);
+        assertArrayEquals(text, result);
+    }
+}
@@ -13,6 +13,11 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    @Override
+    FixedRotor copy() {
+        return new FixedRotor(name(), permutation());
+    }
+
     @Override
     public String toString() {
         return "FixedRotor " + name();
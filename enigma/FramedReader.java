@@ -0,0 +1,220 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Reads input in the framed format, meant for machine-generated input,
+ *  in which every settings line and message line is a frame that gives
+ *  its kind and length up front, so that it is classified by its first
+ *  byte and sliced out without scanning for line terminators or
+ *  matching it against Main.SETTINGS_LINE.  There are two variants.
+ *  A binary framed file is
+ *
+ *      MAGIC VERSION
+ *
+ *  (an int and a short), followed by frames of the form
+ *
+ *      TAG LENGTH BYTES
+ *
+ *  where TAG is the byte SECTION (for a settings line) or MESSAGE (for a
+ *  message line), LENGTH an int, and BYTES the LENGTH bytes of the line
+ *  in UTF-8.  A text framed file is the line TEXT_HEADER, followed by
+ *  frames of the form
+ *
+ *      TAG LENGTH ' ' CHARS '\n'
+ *
+ *  (with no blanks between the parts), where TAG is as before, LENGTH is
+ *  a decimal numeral, and CHARS the LENGTH characters of the line, in
+ *  UTF-8.  Message lines are converted as in Main's ordinary input, so
+ *  blanks in them are ignored.
+ *  @author Zwea Htet
+ */
+class FramedReader {
+
+    /** Marks the start of every binary framed file ("ENGF"). */
+    static final int MAGIC = 0x454e4746;
+
+    /** Current version of the binary format. */
+    static final int VERSION = 1;
+
+    /** First line of every text framed file. */
+    static final String TEXT_HEADER = "ENGT";
+
+    /** Frame tags. */
+    static final char SECTION = 'S', MESSAGE = 'M';
+
+    /** Variants of the format returned by framing: none (not framed),
+     *  binary and text. */
+    static final int NONE = 0, BINARY = 1, TEXT = 2;
+
+    /** Kinds of frame returned by next: a settings line, a message line,
+     *  and the end of the input. */
+    static final int SECTION_FRAME = 0, MESSAGE_FRAME = 1, END = 2;
+
+    /** Return the variant of the framed format (NONE, BINARY or TEXT) in
+     *  which IN (which must support mark) starts, leaving IN
+     *  unchanged. */
+    static int framing(InputStream in) {
+        try {
+            in.mark(4);
+            int magic = 0;
+            for (int k = 0; k < 4; k += 1) {
+                int b = in.read();
+                if (b < 0) {
+                    in.reset();
+                    return NONE;
+                }
+                magic = magic << 8 | b;
+            }
+            in.reset();
+            if (magic == MAGIC) {
+                return BINARY;
+            }
+            for (int k = 0; k < 4; k += 1) {
+                if (TEXT_HEADER.charAt(k) != (magic >>> (24 - 8 * k) & 0xff)) {
+                    return NONE;
+                }
+            }
+            return TEXT;
+        } catch (IOException excp) {
+            throw error("error reading input");
+        }
+    }
+
+    /** A reader of the framed input IN, in the variant FRAMING (BINARY
+     *  or TEXT), whose header it reads at once. */
+    FramedReader(InputStream in, int framing) {
+        try {
+            if (framing == BINARY) {
+                _data = new DataInputStream(in);
+                _text = null;
+                if (_data.readInt() != MAGIC) {
+                    throw error("input is not in framed format");
+                }
+                int version = _data.readShort();
+                if (version != VERSION) {
+                    throw error("unsupported framed format version %d",
+                                version);
+                }
+            } else {
+                _data = null;
+                _text = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8));
+                if (!TEXT_HEADER.equals(_text.readLine())) {
+                    throw error("input is not in framed format");
+                }
+            }
+        } catch (EOFException excp) {
+            throw error("framed input truncated");
+        } catch (IOException excp) {
+            throw error("error reading input");
+        }
+    }
+
+    /** Read the next frame, returning its kind (SECTION_FRAME,
+     *  MESSAGE_FRAME or END). */
+    int next() {
+        try {
+            int tag = _data != null ? _data.read() : _text.read();
+            if (tag < 0) {
+                return END;
+            } else if (tag != SECTION && tag != MESSAGE) {
+                throw error("framed input is corrupt");
+            }
+            _line = _data != null ? readBinary() : readText();
+            return tag == SECTION ? SECTION_FRAME : MESSAGE_FRAME;
+        } catch (EOFException excp) {
+            throw error("framed input truncated");
+        } catch (IOException excp) {
+            throw error("error reading input");
+        }
+    }
+
+    /** Return the line of the last frame read. */
+    String line() {
+        return _line;
+    }
+
+    /** Close the underlying stream. */
+    void close() {
+        try {
+            if (_data != null) {
+                _data.close();
+            } else {
+                _text.close();
+            }
+        } catch (IOException excp) {
+            throw error("could not close input");
+        }
+    }
+
+    /** Return the line of a binary frame, following its tag. */
+    private String readBinary() throws IOException {
+        int length = _data.readInt();
+        if (length < 0) {
+            throw error("framed input is corrupt");
+        }
+        if (_bytes.length < length) {
+            _bytes = new byte[Math.max(length, 2 * _bytes.length)];
+        }
+        _data.readFully(_bytes, 0, length);
+        return new String(_bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /** Return the line of a text frame, following its tag. */
+    private String readText() throws IOException {
+        long length = 0;
+        int c = _text.read();
+        if (c < '0' || c > '9') {
+            throw error("framed input is corrupt");
+        }
+        for (; c >= '0' && c <= '9'; c = _text.read()) {
+            length = 10 * length + c - '0';
+            if (length > Integer.MAX_VALUE) {
+                throw error("framed input is corrupt");
+            }
+        }
+        if (c != ' ') {
+            throw error(c < 0 ? "framed input truncated"
+                        : "framed input is corrupt");
+        }
+        if (_chars.length < length) {
+            _chars = new char[(int) Math.max(length, 2 * _chars.length)];
+        }
+        for (int n = 0; n < length; ) {
+            int k = _text.read(_chars, n, (int) length - n);
+            if (k < 0) {
+                throw error("framed input truncated");
+            }
+            n += k;
+        }
+        c = _text.read();
+        if (c != '\n') {
+            throw error(c < 0 ? "framed input truncated"
+                        : "framed input is corrupt");
+        }
+        return new String(_chars, 0, (int) length);
+    }
+
+    /** Source of a binary framed file, or null. */
+    private final DataInputStream _data;
+
+    /** Source of a text framed file, or null. */
+    private final BufferedReader _text;
+
+    /** The line of the last frame read. */
+    private String _line;
+
+    /** Buffer for the bytes of a binary frame. */
+    private byte[] _bytes = new byte[256];
+
+    /** Buffer for the characters of a text frame. */
+    private char[] _chars = new char[256];
+}
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for FramedReader.
+ *  @author Zwea Htet
+ */
+public class FramedTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Lines of the test input, settings lines first in each section. */
+    private static final String[] LINES = {
+        "* B Beta III IV I AXLE (HQ) (EX)", "FROM HIS SHOULDER", "",
+        "* B Beta I II III AAAA", "HIAWATHA\nTOOK", "Z",
+    };
+
+    /** Return the kind of frame for line #I of LINES. */
+    private static char tag(int i) {
+        return LINES[i].startsWith("*") ? FramedReader.SECTION
+            : FramedReader.MESSAGE;
+    }
+
+    /** Return LINES in the binary framed format. */
+    private static byte[] binary() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FramedReader.MAGIC);
+        out.writeShort(FramedReader.VERSION);
+        for (int i = 0; i < LINES.length; i += 1) {
+            byte[] line = LINES[i].getBytes(StandardCharsets.UTF_8);
+            out.writeByte(tag(i));
+            out.writeInt(line.length);
+            out.write(line);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Return LINES in the text framed format. */
+    private static byte[] text() {
+        StringBuilder out = new StringBuilder(FramedReader.TEXT_HEADER);
+        out.append("\n");
+        for (int i = 0; i < LINES.length; i += 1) {
+            out.append(tag(i)).append(LINES[i].length()).append(' ')
+                .append(LINES[i]).append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Check that DATA, in the framed format variant FRAMING, holds
+     *  LINES. */
+    private static void checkFrames(byte[] data, int framing) {
+        InputStream in =
+            new BufferedInputStream(new ByteArrayInputStream(data));
+        assertEquals(framing, FramedReader.framing(in));
+        FramedReader reader = new FramedReader(in, framing);
+        for (int i = 0; i < LINES.length; i += 1) {
+            assertEquals(tag(i) == FramedReader.SECTION
+                         ? FramedReader.SECTION_FRAME
+                         : FramedReader.MESSAGE_FRAME, reader.next());
+            assertEquals(LINES[i], reader.line());
+        }
+        assertEquals(FramedReader.END, reader.next());
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        checkFrames(binary(), FramedReader.BINARY);
+    }
+
+    @Test
+    public void testText() {
+        checkFrames(text(), FramedReader.TEXT);
+    }
+
+    @Test
+    public void testNotFramed() {
+        for (String start : new String[] { "", "EN", "* B Beta", "ENGP" }) {
+            InputStream in = new BufferedInputStream(
+                new ByteArrayInputStream(start.getBytes()));
+            assertEquals(FramedReader.NONE, FramedReader.framing(in));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncated() {
+        byte[] data = text();
+        InputStream in = new ByteArrayInputStream(data, 0, data.length - 3);
+        FramedReader reader = new FramedReader(in, FramedReader.TEXT);
+        while (reader.next() != FramedReader.END) {
+            continue;
+        }
+    }
+
+    @Test
+    public void testIsSettingsLine() {
+        assertTrue(Main.isSettingsLine("* B Beta III IV I AXLE (HQ) (EX)"));
+        assertFalse(Main.isSettingsLine(""));
+        assertFalse(Main.isSettingsLine("HELLO WORLD"));
+        assertFalse(Main.isSettingsLine(" * B Beta III IV I AXLE"));
+        assertFalse(Main.isSettingsLine("*"));
+    }
+}
@@ -0,0 +1,143 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A RotorPath that passes a character through the plugboard and the
+ *  fast rotor (the last) by table lookup, as in TablePath, and through
+ *  all the other rotors at once by a single fused table.  The fused
+ *  table depends on the offsets of those rotors, which change only
+ *  once every alphabet-size characters or so; it is rebuilt when they
+ *  do.  A machine passing the same array of offsets each time says
+ *  which may have changed, so that they need not all be compared on
+ *  every character.  A FusedPath may be shared between threads: each
+ *  fused table is immutable, and a thread that finds the current one
+ *  stale builds its own.
+ *  @author Zwea Htet
+ */
+class FusedPath implements RotorPath {
+
+    /** A path for an alphabet of SIZE characters, plugboard table
+     *  PLUGBOARD, and rotors whose forward and inverse tables are
+     *  FORWARD[K] and BACKWARD[K] (rotor #0 being the reflector).  There
+     *  must be at least one rotor besides the reflector. */
+    FusedPath(int size, int[] plugboard, int[][] forward,
+              int[][] backward) {
+        _size = size;
+        _wrap = TablePath.wrapTable(size);
+        _plugboard = plugboard;
+        _forward = forward;
+        _backward = backward;
+        _fast = forward.length - 1;
+        _fused = new Fused(new int[_fast], null, null);
+    }
+
+    /** A path like PATH, starting with its current fused table, but with
+     *  plugboard table PLUGBOARD. */
+    private FusedPath(FusedPath path, int[] plugboard) {
+        _size = path._size;
+        _wrap = path._wrap;
+        _plugboard = plugboard;
+        _forward = path._forward;
+        _backward = path._backward;
+        _fast = path._fast;
+        _fused = path._fused;
+    }
+
+    @Override
+    public RotorPath withPlugboard(int[] plugboard) {
+        return new FusedPath(this, plugboard);
+    }
+
+    @Override
+    public int convert(int c, int[] offsets) {
+        return convert(c, offsets, 0);
+    }
+
+    @Override
+    public int convert(int c, int[] offsets, int changed) {
+        Fused fused = _fused;
+        if (fused._source != offsets || changed < _fast) {
+            int from = fused._source == offsets ? changed : 0;
+            if (!fused.matches(offsets, from)) {
+                fused = fuse(offsets);
+            } else if (fused._source != offsets) {
+                fused = new Fused(fused._offsets, fused._table, offsets);
+            }
+            _fused = fused;
+        }
+        int[] wrap = _wrap;
+        int n = _size, d = offsets[_fast];
+        c = _plugboard[c];
+        c = wrap[_forward[_fast][wrap[c + d + n]] - d + n];
+        c = fused._table[c];
+        c = wrap[_backward[_fast][wrap[c + d + n]] - d + n];
+        return _plugboard[c];
+    }
+
+    /** Return the fused table of all rotors but the fast one, at
+     *  OFFSETS. */
+    private Fused fuse(int[] offsets) {
+        int n = _size;
+        int[] table = new int[n];
+        for (int c0 = 0; c0 < n; c0 += 1) {
+            int c = c0;
+            for (int k = _fast - 1; k >= 0; k -= 1) {
+                int d = offsets[k];
+                c = _wrap[_forward[k][_wrap[c + d + n]] - d + n];
+            }
+            for (int k = 1; k < _fast; k += 1) {
+                int d = offsets[k];
+                c = _wrap[_backward[k][_wrap[c + d + n]] - d + n];
+            }
+            table[c0] = c;
+        }
+        return new Fused(Arrays.copyOf(offsets, _fast), table, offsets);
+    }
+
+    /** A fused table and the offsets for which it was built. */
+    private static final class Fused {
+
+        /** The fused TABLE for rotors at OFFSETS (or no table, if TABLE
+         *  is null), last found to match the caller's array SOURCE. */
+        Fused(int[] offsets, int[] table, int[] source) {
+            _offsets = offsets;
+            _table = table;
+            _source = source;
+        }
+
+        /** Return true iff I am the table for OFFSETS, given that
+         *  OFFSETS[0 .. FROM-1] match mine. */
+        boolean matches(int[] offsets, int from) {
+            if (_table == null) {
+                return false;
+            }
+            for (int k = from; k < _offsets.length; k += 1) {
+                if (_offsets[k] != offsets[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Offsets of all rotors but the fast one. */
+        private final int[] _offsets;
+        /** Fused table. */
+        private final int[] _table;
+        /** The array of offsets (belonging to the caller of convert)
+         *  with which I was last found to agree, or null. */
+        private final int[] _source;
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+    /** Wrap-around table. */
+    private final int[] _wrap;
+    /** Plugboard table. */
+    private final int[] _plugboard;
+    /** Forward and inverse tables of the rotors. */
+    private final int[][] _forward, _backward;
+    /** Index of the fast rotor. */
+    private final int _fast;
+    /** The most recently built fused table. */
+    private Fused _fused;
+}
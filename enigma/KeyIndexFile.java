@@ -0,0 +1,278 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** The records of an index from codes computed for keys (numbered as in
+ *  a KeySpace) to those keys, as used by PrefixIndex and CycleCatalog.
+ *  An index file consists of a header, whose form is up to its user,
+ *  followed (at a multiple of 8 bytes) by the little-endian long M and
+ *  then M records of two longs, CODE and KEY, sorted by CODE and then
+ *  KEY.  The keys with a given code are thus found by binary search of
+ *  the file, which is mapped read-only into memory.
+ *
+ *  Index files are built on a pool of threads, each of which computes
+ *  and sorts the codes of a run of consecutive keys into a temporary
+ *  file; the runs are then merged.
+ *  @author Zwea Htet
+ */
+class KeyIndexFile {
+
+    /** Default largest number of keys sorted at once by one thread. */
+    static final int RUN_SIZE = 1 << 22;
+
+    /** Number of records per mapped segment of an index file. */
+    private static final int SEGMENT_RECORDS = 1 << 26;
+
+    /** Write to FILE (replacing it atomically) HEADER, whose length must
+     *  be a multiple of 8, followed by the records for keys 0 ..
+     *  NUMKEYS-1, on THREADS threads.  Each thread computes the codes of
+     *  up to RUNSIZE keys at a time, using a function from key numbers to
+     *  codes supplied by CODERS; codes must be non-negative and have at
+     *  most CODEBITS bits. */
+    static void write(File file, byte[] header, long numKeys, int codeBits,
+                      int threads, int runSize,
+                      Supplier<LongUnaryOperator> coders) {
+        if (header.length % 8 != 0) {
+            throw new IllegalArgumentException("misaligned header");
+        }
+        int size = (int) Math.min(runSize, 1L << (63 - codeBits));
+        long numRuns = (numKeys + size - 1) / size;
+        File dir = file.getAbsoluteFile().getParentFile();
+        List<File> runs = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (long r = 0; r < numRuns; r += 1) {
+                long start = r * size;
+                int count = (int) Math.min(size, numKeys - start);
+                results.add(pool.submit(
+                    () -> sortRun(coders.get(), start, count, 63 - codeBits,
+                                  dir)));
+            }
+            RuntimeException failure = null;
+            for (Future<File> result : results) {
+                try {
+                    runs.add(get(result));
+                } catch (RuntimeException excp) {
+                    failure = failure == null ? excp : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            merge(header, numKeys, runs, file);
+        } finally {
+            pool.shutdownNow();
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /** The records of the index file FILE, open on CHANNEL, which follow
+     *  a header of HEADERSIZE bytes. */
+    KeyIndexFile(File file, FileChannel channel, long headerSize)
+        throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer count = ByteBuffer.allocate(8)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        if (headerSize % 8 != 0 || channel.read(count, headerSize) != 8) {
+            throw error("%s is corrupt", file);
+        }
+        _size = count.getLong(0);
+        if (_size < 0 || (fileSize - headerSize - 8) / 16 != _size
+            || (fileSize - headerSize - 8) % 16 != 0) {
+            throw error("%s is corrupt", file);
+        }
+        _segments = new LongBuffer[
+            (int) ((_size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+        for (int s = 0; s < _segments.length; s += 1) {
+            long first = (long) s * SEGMENT_RECORDS;
+            long records = Math.min(SEGMENT_RECORDS, _size - first);
+            _segments[s] =
+                channel.map(FileChannel.MapMode.READ_ONLY,
+                            headerSize + 8 + 16 * first, 16 * records)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        }
+    }
+
+    /** Return the number of records. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the code of record I. */
+    long code(long i) {
+        return _segments[(int) (i / SEGMENT_RECORDS)]
+            .get((int) (2 * (i % SEGMENT_RECORDS)));
+    }
+
+    /** Return the key of record I. */
+    long key(long i) {
+        return _segments[(int) (i / SEGMENT_RECORDS)]
+            .get((int) (2 * (i % SEGMENT_RECORDS) + 1));
+    }
+
+    /** Return the keys whose code is CODE, in increasing order. */
+    long[] keys(long code) {
+        long lo = 0, hi = _size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (code(mid) < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long end = lo;
+        while (end < _size && code(end) == code) {
+            end += 1;
+        }
+        long[] result = new long[(int) (end - lo)];
+        for (long i = lo; i < end; i += 1) {
+            result[(int) (i - lo)] = key(i);
+        }
+        return result;
+    }
+
+    /** Return a temporary file in DIR holding the records for the COUNT
+     *  keys from START, whose codes are given by CODER, sorted.  Codes
+     *  are shifted left by SHIFT bits to sort them together with the
+     *  keys' offsets from START. */
+    private static File sortRun(LongUnaryOperator coder, long start,
+                                int count, int shift, File dir)
+        throws IOException {
+        long[] entries = new long[count];
+        for (int j = 0; j < count; j += 1) {
+            entries[j] = coder.applyAsLong(start + j) << shift | j;
+        }
+        Arrays.sort(entries);
+        long mask = (1L << shift) - 1;
+        File run = File.createTempFile("enigma", ".run", dir);
+        try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(
+                                          new FileOutputStream(run)))) {
+            for (long entry : entries) {
+                out.writeLong(entry >>> shift);
+                out.writeLong(start + (entry & mask));
+            }
+        } catch (IOException excp) {
+            run.delete();
+            throw excp;
+        }
+        return run;
+    }
+
+    /** Write HEADER, then the NUMKEYS records in the sorted RUNS, merged,
+     *  to FILE. */
+    private static void merge(byte[] header, long numKeys, List<File> runs,
+                              File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        List<DataInputStream> inputs = new ArrayList<>();
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(header);
+            ByteBuffer records = ByteBuffer.allocate(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            records.putLong(numKeys);
+            PriorityQueue<long[]> heads =
+                new PriorityQueue<>((a, b) -> a[0] != b[0]
+                                    ? Long.compare(a[0], b[0])
+                                    : Long.compare(a[1], b[1]));
+            for (File run : runs) {
+                DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(
+                                            new FileInputStream(run)));
+                inputs.add(in);
+                advance(in, inputs.size() - 1, heads);
+            }
+            while (!heads.isEmpty()) {
+                long[] head = heads.poll();
+                if (records.remaining() < 16) {
+                    out.write(records.array(), 0, records.position());
+                    records.clear();
+                }
+                records.putLong(head[0]).putLong(head[1]);
+                advance(inputs.get((int) head[2]), (int) head[2], heads);
+            }
+            out.write(records.array(), 0, records.position());
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw error("could not write %s", tmp);
+        } finally {
+            for (DataInputStream in : inputs) {
+                try {
+                    in.close();
+                } catch (IOException excp) {
+                    /* Ignore: the run is deleted anyway. */
+                }
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Add the next record of IN, run number RUN, to HEADS as { CODE,
+     *  KEY, RUN }, unless IN is exhausted. */
+    private static void advance(DataInputStream in, int run,
+                                PriorityQueue<long[]> heads)
+        throws IOException {
+        try {
+            long code = in.readLong();
+            heads.add(new long[] { code, in.readLong(), run });
+        } catch (EOFException excp) {
+            return;
+        }
+    }
+
+    /** Return the value of FUTURE, rethrowing any exception it threw. */
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("could not write index run");
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Number of records. */
+    private final long _size;
+
+    /** The records, in segments of SEGMENT_RECORDS. */
+    private final LongBuffer[] _segments;
+}
@@ -0,0 +1,423 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The keys of a Configuration: every choice of rotors for the slots of
+ *  its machines (a reflector, then distinct fixed rotors, then distinct
+ *  moving rotors), combined with every rotor setting and, optionally,
+ *  every ring setting, under a fixed plugboard.  Keys are numbered
+ *  0 .. size()-1 so that they can be handed out by index: key number
+ *
+ *      (ORDER * numRings() + RINGS) * numPositions() + POSITIONS
+ *
+ *  uses rotor order ORDER, ring settings RINGS and rotor settings
+ *  POSITIONS, the settings being numbered as base-N numerals (N the
+ *  alphabet size) whose most significant digit is that of the leftmost
+ *  rotor.  Consecutive keys thus share their rotor order wherever
+ *  possible, and successive rotor settings differ, as when a machine
+ *  steps, mostly in the rightmost rotor alone.  Rotors are taken in order
+ *  of name, so that all KeySpaces of equal configurations number keys
+ *  alike.
+ *
+ *  A key's number is recovered from its rotors and settings by key, so
+ *  that ranges of keys can be resumed or handed out, and the keys of a
+ *  range are streamed, in parallel, by stream, whose Spliterator splits
+ *  ranges evenly and, where it can, on the boundaries between rotor
+ *  orders and ring settings, so that each part costs its Cursor as few
+ *  changes of rotors as possible.
+ *  @author Zwea Htet
+ */
+class KeySpace {
+
+    /** The keys of CONFIG, including all ring settings iff RINGS, and
+     *  otherwise only ring settings of all 0s. */
+    KeySpace(Configuration config, boolean rings) {
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _numFixed = config.numRotors() - config.numPawls() - 1;
+        _numMoving = config.numPawls();
+        RotorCatalog catalog = config.catalog();
+        for (String name : catalog.names()) {
+            Rotor rotor = catalog.rotor(name);
+            if (rotor instanceof Reflector) {
+                _reflectors.add(name);
+            } else if (rotor instanceof MovingRotor) {
+                _moving.add(name);
+            } else {
+                _fixed.add(name);
+            }
+        }
+        try {
+            _numOrders = Math.multiplyExact(
+                _reflectors.size(),
+                Math.multiplyExact(arrangements(_fixed.size(), _numFixed),
+                                   arrangements(_moving.size(),
+                                                _numMoving)));
+            _numPositions = power(_alphabet.size(), _numRotors - 1);
+            _numRings = rings ? _numPositions : 1;
+            _size = Math.multiplyExact(_numOrders,
+                                       Math.multiplyExact(_numRings,
+                                                          _numPositions));
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of rotor orders. */
+    long numOrders() {
+        return _numOrders;
+    }
+
+    /** Return the number of ring settings per rotor order. */
+    long numRings() {
+        return _numRings;
+    }
+
+    /** Return the number of rotor settings per ring setting. */
+    long numPositions() {
+        return _numPositions;
+    }
+
+    /** Return the alphabet of my configuration. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the names of the rotors, reflector first, of rotor order
+     *  number ORDER. */
+    String[] order(long order) {
+        String[] result = new String[_numRotors];
+        result[0] = _reflectors.get((int) (order % _reflectors.size()));
+        order /= _reflectors.size();
+        order = choose(_fixed, _numFixed, order, result, 1);
+        choose(_moving, _numMoving, order, result, 1 + _numFixed);
+        return result;
+    }
+
+    /** Store in DIGITS the base-N digits (N the alphabet size) of the
+     *  rotor or ring settings numbered SETTINGS, most significant
+     *  first. */
+    void digits(long settings, int[] digits) {
+        for (int k = digits.length - 1; k >= 0; k -= 1) {
+            digits[k] = (int) (settings % _alphabet.size());
+            settings /= _alphabet.size();
+        }
+    }
+
+    /** Return the number of the rotor or ring settings whose base-N
+     *  digits (N the alphabet size) are DIGITS, most significant first.
+     *  This is the inverse of digits. */
+    long settings(int[] digits) {
+        long result = 0;
+        for (int digit : digits) {
+            if (digit < 0 || digit >= _alphabet.size()) {
+                throw error("setting out of range");
+            }
+            result = result * _alphabet.size() + digit;
+        }
+        return result;
+    }
+
+    /** Return the number of the rotor order whose rotors are named
+     *  ROTORS, reflector first.  This is the inverse of order. */
+    long orderNumber(String[] rotors) {
+        if (rotors.length != _numRotors) {
+            throw error("wrong number of rotors");
+        }
+        int reflector = _reflectors.indexOf(rotors[0]);
+        if (reflector < 0) {
+            throw error("%s is not a reflector", rotors[0]);
+        }
+        long fixed = unchoose(_fixed, _numFixed, rotors, 1);
+        long moving = unchoose(_moving, _numMoving, rotors, 1 + _numFixed);
+        return reflector + _reflectors.size()
+            * (fixed + arrangements(_fixed.size(), _numFixed) * moving);
+    }
+
+    /** Return the number of the key with the rotors named ROTORS
+     *  (reflector first), rotor settings POSITIONS and ring settings
+     *  RINGS (as digits, one for each rotor but the reflector).  This is
+     *  the inverse of settingsLine and Cursor.set. */
+    long key(String[] rotors, int[] positions, int[] rings) {
+        if (positions.length != _numRotors - 1
+            || rings.length != _numRotors - 1) {
+            throw error("wrong number of settings");
+        }
+        long ringNumber = settings(rings);
+        if (ringNumber >= _numRings) {
+            throw error("ring settings are not in this key space");
+        }
+        return (orderNumber(rotors) * _numRings + ringNumber)
+            * _numPositions + settings(positions);
+    }
+
+    /** Return a Spliterator over the keys numbered FROM .. TO-1, in
+     *  order. */
+    Spliterator.OfLong spliterator(long from, long to) {
+        if (from < 0 || from > to || to > _size) {
+            throw error("key range out of bounds");
+        }
+        return new Keys(from, to);
+    }
+
+    /** Return a parallel stream of the keys numbered FROM .. TO-1. */
+    LongStream stream(long from, long to) {
+        return StreamSupport.longStream(spliterator(from, to), true);
+    }
+
+    /** Return the settings line (as accepted by Main) for key number
+     *  KEY, with plugboard PLUGBOARD (a possibly empty string of
+     *  cycles). */
+    String settingsLine(long key, String plugboard) {
+        long positions = key % _numPositions;
+        long rings = (key / _numPositions) % _numRings;
+        long order = key / _numPositions / _numRings;
+        StringBuilder line = new StringBuilder("*");
+        for (String name : order(order)) {
+            line.append(' ').append(name);
+        }
+        line.append(' ').append(letters(positions));
+        line.append(' ').append(letters(rings));
+        if (!plugboard.isBlank()) {
+            line.append(' ').append(plugboard.trim());
+        }
+        return line.toString();
+    }
+
+    /** Return a Cursor for setting machines to my keys. */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Sets machines to keys, changing only what differs from the last
+     *  key set. */
+    class Cursor {
+
+        /** Set the rotors of M, a machine of my configuration, to those
+         *  of key number KEY.  M's plugboard is unchanged.  Setting M to
+         *  the key after the last one set costs, on average, only the
+         *  rotors that differ between the two (usually the rightmost
+         *  alone), however M has moved since. */
+        void set(Machine M, long key) {
+            long positions = key % _numPositions;
+            long rest = key / _numPositions;
+            if (M != _machine || rest != _rest) {
+                long order = rest / _numRings;
+                if (M != _machine || order != _order) {
+                    M.insertRotors(order(order));
+                    _order = order;
+                }
+                digits(rest % _numRings, _rings);
+                digits(positions, _positions);
+                M.setPositions(_positions, _rings);
+                _machine = M;
+                _rest = rest;
+                _last = positions;
+                return;
+            }
+            if (positions == _last + 1) {
+                int k = _positions.length - 1;
+                while (_positions[k] == _alphabet.size() - 1) {
+                    _positions[k] = 0;
+                    k -= 1;
+                }
+                _positions[k] += 1;
+            } else {
+                digits(positions, _positions);
+            }
+            _last = positions;
+            for (int k = 0; k < _positions.length; k += 1) {
+                if (M.getRotor(k + 1).setting() != _positions[k]) {
+                    M.setPosition(k + 1, _positions[k]);
+                }
+            }
+        }
+
+        /** The machine last set. */
+        private Machine _machine;
+        /** The rotor order last set. */
+        private long _order = -1;
+        /** The key number last set, divided by numPositions(). */
+        private long _rest = -1;
+        /** The rotor settings number last set. */
+        private long _last = -1;
+        /** Digits of the current ring settings. */
+        private final int[] _rings = new int[_numRotors - 1];
+        /** Digits of the current rotor settings. */
+        private final int[] _positions = new int[_numRotors - 1];
+    }
+
+    /** A Spliterator over a range of key numbers. */
+    private class Keys implements Spliterator.OfLong {
+
+        /** A Spliterator over the keys numbered FROM .. TO-1. */
+        Keys(long from, long to) {
+            _next = from;
+            _end = to;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (_next >= _end) {
+                return false;
+            }
+            action.accept(_next);
+            _next += 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long end = _end;
+            for (long key = _next; key < end; key += 1) {
+                action.accept(key);
+            }
+            _next = end;
+        }
+
+        /** Split off the first half of my keys or so, preferring to split
+         *  at the start of a rotor order, or failing that, of a ring
+         *  setting, if one lies in the middle half of my range. */
+        @Override
+        public Keys trySplit() {
+            long n = _end - _next;
+            if (n < 2) {
+                return null;
+            }
+            long mid = _next + n / 2;
+            long lo = _next + n / 4, hi = _end - n / 4;
+            for (long block : new long[] { _numRings * _numPositions,
+                                           _numPositions }) {
+                long aligned = mid - mid % block;
+                if (aligned >= lo && aligned > _next) {
+                    mid = aligned;
+                    break;
+                } else if (aligned + block <= hi && aligned + block < _end) {
+                    mid = aligned + block;
+                    break;
+                }
+            }
+            Keys prefix = new Keys(_next, mid);
+            _next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _end - _next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED
+                | NONNULL | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+
+        /** The next key, and the end of my range. */
+        private long _next, _end;
+    }
+
+    /** Return the rotor or ring settings numbered SETTINGS as a string of
+     *  letters. */
+    private String letters(long settings) {
+        int[] digits = new int[_numRotors - 1];
+        digits(settings, digits);
+        StringBuilder result = new StringBuilder();
+        for (int digit : digits) {
+            result.appendCodePoint(_alphabet.toCodePoint(digit));
+        }
+        return result.toString();
+    }
+
+    /** Store in RESULT[START .. START+K-1] arrangement number INDEX of K
+     *  of the NAMES, returning INDEX divided by the number of such
+     *  arrangements. */
+    private static long choose(List<String> names, int k, long index,
+                               String[] result, int start) {
+        List<String> remaining = new ArrayList<>(names);
+        for (int j = 0; j < k; j += 1) {
+            int n = remaining.size();
+            result[start + j] = remaining.remove((int) (index % n));
+            index /= n;
+        }
+        return index;
+    }
+
+    /** Return the number of the arrangement of K of the NAMES found in
+     *  ROTORS[START .. START+K-1], as for choose. */
+    private static long unchoose(List<String> names, int k, String[] rotors,
+                                 int start) {
+        List<String> remaining = new ArrayList<>(names);
+        long index = 0, scale = 1;
+        for (int j = 0; j < k; j += 1) {
+            int n = remaining.size();
+            int i = remaining.indexOf(rotors[start + j]);
+            if (i < 0) {
+                throw error("rotor %s is misplaced or repeated",
+                            rotors[start + j]);
+            }
+            remaining.remove(i);
+            index += i * scale;
+            scale *= n;
+        }
+        return index;
+    }
+
+    /** Return the number of arrangements of K of N distinct items. */
+    private static long arrangements(int n, int k) {
+        long result = 1;
+        for (int j = 0; j < k; j += 1) {
+            result = Math.multiplyExact(result, n - j);
+        }
+        return result;
+    }
+
+    /** Return BASE ** EXP. */
+    private static long power(long base, int exp) {
+        long result = 1;
+        for (int k = 0; k < exp; k += 1) {
+            result = Math.multiplyExact(result, base);
+        }
+        return result;
+    }
+
+    /** Alphabet of my configuration. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of fixed-rotor slots. */
+    private final int _numFixed;
+
+    /** Number of moving-rotor slots. */
+    private final int _numMoving;
+
+    /** Names of the reflectors, fixed rotors and moving rotors. */
+    private final List<String> _reflectors = new ArrayList<>(),
+        _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+
+    /** Numbers of rotor orders, ring settings and rotor settings. */
+    private final long _numOrders, _numRings, _numPositions;
+
+    /** Total number of keys. */
+    private final long _size;
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Zwea Htet
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testSize() {
+        KeySpace keys = new KeySpace(navalConfiguration(), false);
+        assertEquals(6, keys.numOrders());
+        assertEquals(1, keys.numRings());
+        assertEquals(26 * 26 * 26 * 26, keys.numPositions());
+        assertEquals(6 * 26 * 26 * 26 * 26, keys.size());
+        assertEquals(6 * 26L * 26 * 26 * 26 * 26 * 26 * 26 * 26,
+                     new KeySpace(navalConfiguration(), true).size());
+    }
+
+    @Test
+    public void testSettingsLine() {
+        KeySpace keys = new KeySpace(navalConfiguration(), true);
+        assertEquals("* B Beta I II III AAAA AAAA (AQ)",
+                     keys.settingsLine(0, " (AQ) "));
+        long last = keys.size() - 1;
+        assertEquals("* B Beta III II I ZZZZ ZZZZ",
+                     keys.settingsLine(last, ""));
+        assertEquals("* B Beta II I III AAAB AAAC",
+                     keys.settingsLine(keys.numPositions()
+                                       * (keys.numRings() + 2) + 1, ""));
+    }
+
+    @Test
+    public void testCursor() {
+        Configuration config = navalConfiguration();
+        KeySpace keys = new KeySpace(config, true);
+        KeySpace.Cursor cursor = keys.cursor();
+        Machine M = config.newMachine();
+        M.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        String msg = "HELLOWORLD";
+        long step = keys.size() / 97;
+        for (long key = 5; key < keys.size(); key += step) {
+            cursor.set(M, key);
+            Machine expected = config.newMachine();
+            Main.setUp(config, expected,
+                       keys.settingsLine(key, "(AQ) (EP)"));
+            assertEquals(expected.convert(msg), M.convert(msg));
+        }
+    }
+
+    @Test
+    public void testKey() {
+        KeySpace keys = new KeySpace(navalConfiguration(), true);
+        int[] positions = new int[4], rings = new int[4];
+        long step = keys.size() / 101;
+        for (long key = 3; key < keys.size(); key += step) {
+            long rest = key / keys.numPositions();
+            keys.digits(key % keys.numPositions(), positions);
+            keys.digits(rest % keys.numRings(), rings);
+            String[] rotors = keys.order(rest / keys.numRings());
+            assertEquals(rest / keys.numRings(), keys.orderNumber(rotors));
+            assertEquals(key, keys.key(rotors, positions, rings));
+        }
+        KeySpace plain = new KeySpace(navalConfiguration(), false);
+        assertEquals(plain.numPositions() * 5 + 27,
+                     plain.key(new String[] { "B", "Beta", "III", "II",
+                                              "I" },
+                               new int[] { 0, 0, 1, 1 }, new int[4]));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testKeyRings() {
+        new KeySpace(navalConfiguration(), false)
+            .key(new String[] { "B", "Beta", "I", "II", "III" },
+                 new int[4], new int[] { 0, 0, 0, 1 });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testKeyMisplaced() {
+        new KeySpace(navalConfiguration(), false)
+            .orderNumber(new String[] { "B", "I", "Beta", "II", "III" });
+    }
+
+    @Test
+    public void testSpliterator() {
+        KeySpace keys = new KeySpace(navalConfiguration(), false);
+        long from = 1000, to = keys.size() - 77;
+        AtomicLongArray seen = new AtomicLongArray((int) (to - from));
+        new ForkJoinPool(4).submit(
+            () -> keys.stream(from, to)
+                .forEach(key -> seen.incrementAndGet((int) (key - from))))
+            .join();
+        for (int i = 0; i < seen.length(); i += 1) {
+            assertEquals(1, seen.get(i));
+        }
+        Spliterator.OfLong all = keys.spliterator(0, keys.size());
+        Spliterator.OfLong first = all.trySplit();
+        assertEquals(0, first.estimateSize() % keys.numPositions());
+        assertEquals(keys.size(),
+                     first.estimateSize() + all.estimateSize());
+        assertNull(keys.spliterator(5, 6).trySplit());
+    }
+
+    @Test
+    public void testCursorSteps() {
+        Configuration config = navalConfiguration();
+        KeySpace keys = new KeySpace(config, true);
+        KeySpace.Cursor cursor = keys.cursor();
+        Machine M = config.newMachine();
+        String msg = "HELLOWORLD";
+        long start = keys.numPositions() * (keys.numRings() + 3) - 700;
+        for (long key = start; key < start + 1400; key += 1) {
+            cursor.set(M, key);
+            Machine expected = config.newMachine();
+            Main.setUp(config, expected, keys.settingsLine(key, ""));
+            assertEquals(expected.convert(msg), M.convert(msg));
+        }
+    }
+}
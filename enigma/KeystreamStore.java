@@ -0,0 +1,517 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.zip.CRC32C;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A file of precomputed keystreams: for each of a few keys, the
+ *  substitution that a machine set to that key applies at each position
+ *  of a message, so that converting a character takes a single table
+ *  lookup.  A store is built once (see main) and then mapped read-only
+ *  into memory by any number of processes, which share its pages and
+ *  do no precomputation of their own.
+ *
+ *  Keys are identified by a fingerprint of the complete state of a
+ *  configured machine (see fingerprint), so that any settings line that
+ *  sets a machine to that state finds its keystream, whatever the
+ *  configuration file or spelling of the line.  Each key's keystream
+ *  covers either a prefix of the messages it may convert, or, if built
+ *  with --period, every position: the rotor settings of a machine are
+ *  eventually periodic, and positions past the first period are mapped
+ *  back into it.
+ *
+ *  The file holds, in little-endian order, the ints MAGIC, VERSION, the
+ *  alphabet size N, the number R of rotor settings per position and the
+ *  number K of keys, then each alphabet character as an int, then K
+ *  directory entries of the longs FINGERPRINT, OFFSET, ROWS and CYCLE
+ *  and the ints CRC and 0, then the CRC32C of everything before it, as
+ *  an int, and 0.  Key FINGERPRINT's data start at byte OFFSET: ROWS + 1
+ *  rows of N + R cells (bytes if N <= 256, and otherwise chars), where
+ *  the first N cells of row I give the conversion of each character at
+ *  position I, and the last R the rotor settings before converting it.
+ *  (The last row has only meaningful settings.)  Position P >= ROWS is
+ *  converted as position CYCLE + (P - CYCLE) % (ROWS - CYCLE) if CYCLE
+ *  is non-negative, and is not covered otherwise.  CRC is the CRC32C of
+ *  the key's data, checked the first time the key is used.
+ *  @author Zwea Htet
+ */
+class KeystreamStore {
+
+    /** Marks the start of every store ("ENGK"). */
+    static final int MAGIC = 0x454e474b;
+
+    /** Current version of the file layout. */
+    static final int VERSION = 1;
+
+    /** Default number of positions per key. */
+    static final int DEFAULT_LENGTH = 1 << 16;
+
+    /** Size of a directory entry, in bytes. */
+    private static final int ENTRY_SIZE = 40;
+
+    /** Build a store: "java enigma.KeystreamStore [--length=N | --period]
+     *  [--lazy] CONFIG KEYS STORE", where KEYS is a file of settings
+     *  lines for CONFIG, one per key, and STORE the file to be (atomically)
+     *  replaced.  Each key covers N positions (default DEFAULT_LENGTH)
+     *  or, with --period, its entire stepping period. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--length=([1-9]\\d*) --period --lazy "
+                                + "--=(.*){3}", args);
+            if (!options.ok()
+                || (options.contains("--length")
+                    && options.contains("--period"))) {
+                throw error("Usage: java enigma.KeystreamStore "
+                            + "[--length=N | --period] [--lazy] "
+                            + "CONFIG KEYS STORE");
+            }
+            List<String> files = options.get("--");
+            Configuration config = Search.readConfiguration(
+                new File(files.get(0)), options.contains("--lazy"));
+            List<String> keys = new ArrayList<>();
+            try (Scanner lines = new Scanner(new File(files.get(1)))) {
+                while (lines.hasNextLine()) {
+                    String line = lines.nextLine();
+                    if (!line.isBlank()) {
+                        keys.add(line);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", files.get(1));
+            }
+            int length = options.contains("--period") ? -1
+                : options.contains("--length")
+                ? Integer.parseInt(options.getFirst("--length"))
+                : DEFAULT_LENGTH;
+            build(config, keys, length, new File(files.get(2)));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write to FILE (replacing it atomically) a store holding the
+     *  keystreams of CONFIG under each of the settings lines KEYS, each
+     *  covering LENGTH positions, or every position if LENGTH is -1.
+     *  Lines giving the same key as an earlier line are ignored. */
+    static void build(Configuration config, List<String> keys, int length,
+                      File file) {
+        Alphabet alphabet = config.alphabet();
+        int size = alphabet.size(), numSettings = config.numRotors() - 1;
+        int width = size <= 256 ? 1 : 2;
+        long rowSize = (long) (size + numSettings) * width;
+        List<Machine> machines = new ArrayList<>();
+        List<long[]> entries = new ArrayList<>();
+        HashMap<Long, Integer> seen = new HashMap<>();
+        long offset = 0;
+        for (String key : keys) {
+            if (!Main.isSettingsLine(key)) {
+                throw error("invalid settings line: %s", key);
+            }
+            Machine M = config.newMachine();
+            Main.setUp(config, M, key);
+            long fingerprint = fingerprint(M);
+            if (seen.put(fingerprint, machines.size()) != null) {
+                continue;
+            }
+            long rows = length, cycle = -1;
+            if (length < 0) {
+                long[] period = period(M.fork(), rowSize);
+                cycle = period[0];
+                rows = period[0] + period[1];
+            }
+            if ((rows + 1) * rowSize > Integer.MAX_VALUE) {
+                throw error("keystream too long for %s", key);
+            }
+            machines.add(M);
+            entries.add(new long[] { fingerprint, offset, rows, cycle });
+            offset += (rows + 1) * rowSize;
+        }
+
+        int count = entries.size();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(
+                (int) headerSize(size, count))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(header.capacity());
+            int[] crcs = new int[count];
+            for (int k = 0; k < count; k += 1) {
+                crcs[k] = writeRows(machines.get(k), (int) entries.get(k)[2],
+                                    width, numSettings, channel);
+            }
+            header.putInt(MAGIC).putInt(VERSION).putInt(size)
+                .putInt(numSettings).putInt(count);
+            for (int c = 0; c < size; c += 1) {
+                header.putInt(alphabet.toCodePoint(c));
+            }
+            for (int k = 0; k < count; k += 1) {
+                long[] entry = entries.get(k);
+                header.putLong(entry[0])
+                    .putLong(header.capacity() + entry[1]).putLong(entry[2])
+                    .putLong(entry[3]).putInt(crcs[k]).putInt(0);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, header.position());
+            header.putInt((int) crc.getValue()).putInt(0);
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw error("could not write %s", tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the store in FILE, mapped read-only into memory, checking
+     *  that it is for ALPHABET. */
+    static KeystreamStore open(File file, Alphabet alphabet) {
+        return new KeystreamStore(file, alphabet);
+    }
+
+    /** The store in FILE, which must be for ALPHABET. */
+    private KeystreamStore(File file, Alphabet alphabet) {
+        int size = alphabet.size();
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer start = ByteBuffer.allocate(20)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(start, 0);
+            if (start.position() < 20 || start.getInt(0) != MAGIC
+                || start.getInt(4) != VERSION) {
+                throw error("%s is not a keystream store", file);
+            }
+            int numSettings = start.getInt(12), count = start.getInt(16);
+            if (start.getInt(8) != size || numSettings < 1 || count < 0
+                || headerSize(size, count) > fileSize) {
+                throw error("%s is corrupt or for a different alphabet",
+                            file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(
+                (int) headerSize(size, count)).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                channel.read(header, header.position());
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, header.capacity() - 8);
+            if (header.getInt(header.capacity() - 8) != (int) crc.getValue()) {
+                throw error("%s is corrupt", file);
+            }
+            for (int c = 0; c < size; c += 1) {
+                if (header.getInt(20 + 4 * c) != alphabet.toCodePoint(c)) {
+                    throw error("%s is for a different alphabet", file);
+                }
+            }
+            int width = size <= 256 ? 1 : 2;
+            long rowSize = (long) (size + numSettings) * width;
+            for (int k = 0; k < count; k += 1) {
+                int at = 20 + 4 * size + ENTRY_SIZE * k;
+                long fingerprint = header.getLong(at);
+                long offset = header.getLong(at + 8);
+                long rows = header.getLong(at + 16);
+                long cycle = header.getLong(at + 24);
+                long bytes = (rows + 1) * rowSize;
+                if (rows < 0 || cycle >= rows || offset < 0
+                    || bytes > Integer.MAX_VALUE || offset + bytes > fileSize) {
+                    throw error("%s is corrupt", file);
+                }
+                ByteBuffer data =
+                    channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                _entries.put(fingerprint,
+                             new Entry(alphabet, numSettings, (int) rows,
+                                       (int) cycle, header.getInt(at + 32),
+                                       data));
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        _file = file;
+    }
+
+    /** Return the number of keys I hold. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the keystream of the current state of M, or null if I do
+     *  not hold it. */
+    Entry lookup(Machine M) {
+        Entry entry = _entries.get(fingerprint(M));
+        if (entry != null) {
+            entry.verify(_file);
+        }
+        return entry;
+    }
+
+    /** The keystream of one key. */
+    static final class Entry {
+
+        /** A keystream over ALPHABET with NUMSETTINGS rotor settings and
+         *  ROWS rows (see KeystreamStore), cycling from CYCLE (or -1),
+         *  whose data, with checksum CRC, are DATA. */
+        private Entry(Alphabet alphabet, int numSettings, int rows,
+                      int cycle, int crc, ByteBuffer data) {
+            _alphabet = alphabet;
+            _size = alphabet.size();
+            _wide = _size > 256;
+            _rowCells = _size + numSettings;
+            _numSettings = numSettings;
+            _rows = rows;
+            _cycle = cycle;
+            _crc = crc;
+            _data = data;
+        }
+
+        /** Return true iff I cover position POSITION. */
+        boolean covers(long position) {
+            return position < _rows || _cycle >= 0;
+        }
+
+        /** Return the number of positions stored, after which I cover
+         *  all positions iff periodic(). */
+        int rows() {
+            return _rows;
+        }
+
+        /** Return true iff I cover every position. */
+        boolean periodic() {
+            return _cycle >= 0;
+        }
+
+        /** Return the conversion of C (an alphabet index) at position
+         *  POSITION, which I must cover. */
+        int convert(long position, int c) {
+            return cell(row(position), c);
+        }
+
+        /** Convert the LEN characters (as alphabet indices) of MSG
+         *  starting at OFF, the first of them at position POSITION, storing
+         *  the results in RESULT starting at 0.  I must cover all LEN
+         *  positions.  MSG and RESULT may be the same array if OFF is
+         *  0. */
+        void convert(long position, int[] msg, int off, int len,
+                     int[] result) {
+            for (int k = 0; k < len; k += 1) {
+                result[k] = cell(row(position + k), msg[off + k]);
+            }
+        }
+
+        /** Return the rotor settings (as for Machine.setRotors) before
+         *  converting the character at position POSITION, which must be
+         *  covered or equal to rows(). */
+        String settings(long position) {
+            int row = position == _rows ? _rows : row(position);
+            StringBuilder result = new StringBuilder(_numSettings);
+            for (int k = 0; k < _numSettings; k += 1) {
+                result.appendCodePoint(
+                    _alphabet.toCodePoint(cell(row, _size + k)));
+            }
+            return result.toString();
+        }
+
+        /** Return the row holding position POSITION. */
+        private int row(long position) {
+            if (position < _rows) {
+                return (int) position;
+            }
+            return (int) (_cycle + (position - _cycle) % (_rows - _cycle));
+        }
+
+        /** Return cell K of row ROW. */
+        private int cell(int row, int k) {
+            int index = row * _rowCells + k;
+            return _wide ? _data.getChar(2 * index)
+                : _data.get(index) & 0xff;
+        }
+
+        /** Check my data against my checksum, the first time only, as
+         *  part of a store read from FILE. */
+        private void verify(File file) {
+            if (_verified) {
+                return;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(_data.duplicate().clear());
+            if ((int) crc.getValue() != _crc) {
+                throw error("%s is corrupt", file);
+            }
+            _verified = true;
+        }
+
+        /** My alphabet. */
+        private final Alphabet _alphabet;
+        /** Alphabet size. */
+        private final int _size;
+        /** True iff cells are chars rather than bytes. */
+        private final boolean _wide;
+        /** Cells per row. */
+        private final int _rowCells;
+        /** Rotor settings per row. */
+        private final int _numSettings;
+        /** Number of positions stored. */
+        private final int _rows;
+        /** First position of the repeating cycle, or -1. */
+        private final int _cycle;
+        /** Expected checksum of _data. */
+        private final int _crc;
+        /** My rows. */
+        private final ByteBuffer _data;
+        /** True once _data has been checked against _crc. */
+        private volatile boolean _verified;
+    }
+
+    /** Return a fingerprint of the state of M, which determines how it
+     *  will convert any message: its alphabet, the wiring, kind, notches
+     *  and settings of each of its rotors, and its plugboard. */
+    static long fingerprint(Machine M) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 is unavailable");
+        }
+        Alphabet alphabet = M.alphabet();
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (alphabet.size() + 4));
+        for (int c = 0; c < alphabet.size(); c += 1) {
+            buffer.putInt(alphabet.toCodePoint(c));
+        }
+        update(digest, buffer);
+        update(digest, buffer.putInt(M.numRotors()).putInt(M.numPawls()));
+        for (int k = 0; k < M.numRotors(); k += 1) {
+            Rotor rotor = M.getRotor(k);
+            if (rotor == null) {
+                throw error("machine has no rotors");
+            }
+            for (int c : rotor.permutation().forwardTable()) {
+                buffer.putInt(c);
+            }
+            buffer.putInt(rotor.rotates() ? 1 : rotor.reflecting() ? 2 : 0)
+                .putInt(rotor.setting()).putInt(rotor.ringSetting());
+            update(digest, buffer);
+            digest.update(rotor.notches().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        for (int c : M.plugboard().forwardTable()) {
+            buffer.putInt(c);
+        }
+        update(digest, buffer);
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /** Add the contents of BUFFER to DIGEST, and clear BUFFER. */
+    private static void update(MessageDigest digest, ByteBuffer buffer) {
+        digest.update(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    /** Return { START, PERIOD } such that the rotor settings of M (which
+     *  is used up) before position START + PERIOD are those before
+     *  position START, with START + PERIOD minimal, given that each
+     *  position takes ROWSIZE bytes in a store. */
+    private static long[] period(Machine M, long rowSize) {
+        HashMap<Long, Long> seen = new HashMap<>();
+        long limit = Integer.MAX_VALUE / rowSize - 1;
+        for (long position = 0; position <= limit; position += 1) {
+            Machine.Snapshot state = M.snapshot();
+            if (!state.packed()) {
+                throw error("machine too large for --period");
+            }
+            Long first = seen.put(state.positions(), position);
+            if (first != null) {
+                return new long[] { first, position - first };
+            }
+            M.convert(0);
+        }
+        throw error("stepping period too long for a keystream store");
+    }
+
+    /** Write the ROWS + 1 rows of M's keystream (cells being WIDTH bytes
+     *  and rows having NUMSETTINGS settings) to CHANNEL, at its position,
+     *  returning their checksum.  M is used up. */
+    private static int writeRows(Machine M, int rows, int width,
+                                 int numSettings, FileChannel channel)
+        throws IOException {
+        int size = M.alphabet().size();
+        ByteBuffer row = ByteBuffer.allocate((size + numSettings) * width)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i <= rows; i += 1) {
+            Machine.Snapshot before = M.snapshot();
+            row.clear();
+            for (int c = 0; c < size; c += 1) {
+                int result = 0;
+                if (i < rows) {
+                    M.restore(before);
+                    result = M.convert(c);
+                }
+                put(row, width, result);
+            }
+            M.restore(before);
+            for (int k = 1; k <= numSettings; k += 1) {
+                put(row, width, M.getRotor(k).setting());
+            }
+            if (i < rows) {
+                M.convert(0);
+            }
+            row.flip();
+            crc.update(row.duplicate());
+            while (row.hasRemaining()) {
+                channel.write(row);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /** Put the cell VALUE, WIDTH bytes wide, into ROW. */
+    private static void put(ByteBuffer row, int width, int value) {
+        if (width == 1) {
+            row.put((byte) value);
+        } else {
+            row.putChar((char) value);
+        }
+    }
+
+    /** Return the size of the header of a store for an alphabet of SIZE
+     *  characters, holding COUNT keys. */
+    private static long headerSize(int size, int count) {
+        return 20 + 4L * size + (long) ENTRY_SIZE * count + 8;
+    }
+
+    /** The file I was read from. */
+    private final File _file;
+
+    /** My keystreams, by fingerprint. */
+    private final HashMap<Long, Entry> _entries = new HashMap<>();
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamStore class.
+ *  @author Zwea Htet
+ */
+public class KeystreamStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    private static final String KEY1 = "* B Beta III II I AXLE (HQ) (EX)";
+    private static final String KEY2 = "* B Beta I II III MOON BCD";
+
+    /** Return a machine of CONFIG set to KEY. */
+    private static Machine machine(Configuration config, String key) {
+        Machine M = config.newMachine();
+        Main.setUp(config, M, key);
+        return M;
+    }
+
+    /** Check that ENTRY converts the first LEN positions as a machine
+     *  of CONFIG set to KEY does, with the same rotor settings. */
+    private static void checkEntry(KeystreamStore.Entry entry,
+                                   Configuration config, String key,
+                                   int len) {
+        Machine M = machine(config, key);
+        for (int i = 0; i < len; i += 1) {
+            int c = (7 * i) % 26;
+            assertEquals(M.rotorSettings(), entry.settings(i));
+            assertEquals(M.convert(c), entry.convert(i, c));
+        }
+    }
+
+    @Test
+    public void testPrefix() throws IOException {
+        Configuration config = navalConfiguration();
+        File file = File.createTempFile("enigma", ".ks");
+        try {
+            KeystreamStore.build(config, List.of(KEY1, KEY2, KEY1), 500,
+                                 file);
+            KeystreamStore store = KeystreamStore.open(file, UPPER);
+            assertEquals(2, store.size());
+            KeystreamStore.Entry entry =
+                store.lookup(machine(config, "*  B Beta III II I  AXLE "
+                                     + "(EX) (HQ)"));
+            assertNotNull(entry);
+            assertFalse(entry.periodic());
+            assertEquals(500, entry.rows());
+            assertTrue(entry.covers(499));
+            assertFalse(entry.covers(500));
+            checkEntry(entry, config, KEY1, 500);
+            Machine M = machine(config, KEY1);
+            M.convert(new int[500], 0, 500, new int[500]);
+            assertEquals(M.rotorSettings(), entry.settings(500));
+            checkEntry(store.lookup(machine(config, KEY2)), config, KEY2,
+                       500);
+            assertNull(store.lookup(machine(config, "* B Beta I II III "
+                                            + "MOON")));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testPeriod() throws IOException {
+        Configuration config = navalConfiguration();
+        File file = File.createTempFile("enigma", ".ks");
+        try {
+            KeystreamStore.build(config, List.of(KEY1), -1, file);
+            KeystreamStore.Entry entry =
+                KeystreamStore.open(file, UPPER)
+                .lookup(machine(config, KEY1));
+            assertTrue(entry.periodic());
+            assertEquals(26 * 25 * 26, entry.rows());
+            assertTrue(entry.covers(Long.MAX_VALUE));
+            checkEntry(entry, config, KEY1, 3 * entry.rows());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        Configuration config = navalConfiguration();
+        File file = File.createTempFile("enigma", ".ks");
+        try {
+            KeystreamStore.build(config, List.of(KEY1), 100, file);
+            try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+                data.seek(data.length() - 10);
+                int b = data.read();
+                data.seek(data.length() - 10);
+                data.write(b ^ 1);
+            }
+            KeystreamStore store = KeystreamStore.open(file, UPPER);
+            try {
+                store.lookup(machine(config, KEY1));
+                fail("corrupt keystream not detected");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            try {
+                KeystreamStore.open(file, new Alphabet("ABCD"));
+                fail("wrong alphabet not detected");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** A reader that splits a byte stream into lines, like Scanner.nextLine,
+ *  while keeping track of the absolute byte offset of the next unread
+ *  line so that a later run can seek straight back to it.  A reader may
+ *  also follow a file that is being appended to, through
+ *  hasCompleteLine.
+ *  @author Zwea Htet
+ */
+class LineReader {
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A reader for the lines of IN, whose first byte lies at absolute
+     *  offset START of the underlying file. Lines are decoded using
+     *  the default charset, as Scanner does. */
+    LineReader(InputStream in, long start) {
+        _in = in;
+        _offset = start;
+        _charset = Charset.defaultCharset();
+        _buffer = new byte[BUFFER_SIZE];
+        _line = new byte[256];
+    }
+
+    /** A reader for the lines of IN, starting at offset 0. */
+    LineReader(InputStream in) {
+        this(in, 0);
+    }
+
+    /** Return true iff there is another line to read. */
+    boolean hasNextLine() {
+        return fill();
+    }
+
+    /** Return true iff a complete (terminated) line can be read, reading
+     *  more input if necessary.  Unlike hasNextLine, this does not treat
+     *  the end of the input as final: a later call sees any bytes
+     *  appended to the input in the meantime, and an unterminated last
+     *  line is kept until its terminator arrives. */
+    boolean hasCompleteLine() {
+        try {
+            while (true) {
+                for (; _scan < _limit; _scan += 1) {
+                    if (_buffer[_scan] == '\n') {
+                        return true;
+                    }
+                }
+                if (_pos > 0) {
+                    System.arraycopy(_buffer, _pos, _buffer, 0, _limit - _pos);
+                    _limit -= _pos;
+                    _scan -= _pos;
+                    _pos = 0;
+                }
+                if (_limit == _buffer.length) {
+                    _buffer = Arrays.copyOf(_buffer, 2 * _buffer.length);
+                }
+                int n = _in.read(_buffer, _limit, _buffer.length - _limit);
+                if (n < 0) {
+                    return false;
+                }
+                _limit += n;
+                _eof = false;
+            }
+        } catch (IOException excp) {
+            throw new EnigmaException("error reading input");
+        }
+    }
+
+    /** Return the next line, without its terminator ("\n" or "\r\n"). */
+    String nextLine() {
+        if (!fill()) {
+            throw new NoSuchElementException("no more lines");
+        }
+        int len = 0;
+        while (fill()) {
+            byte b = _buffer[_pos];
+            _pos += 1;
+            _offset += 1;
+            _scan = Math.max(_scan, _pos);
+            if (b == '\n') {
+                break;
+            }
+            if (len == _line.length) {
+                _line = Arrays.copyOf(_line, 2 * len);
+            }
+            _line[len] = b;
+            len += 1;
+        }
+        if (len > 0 && _line[len - 1] == '\r') {
+            len -= 1;
+        }
+        return new String(_line, 0, len, _charset);
+    }
+
+    /** Return the absolute offset of the first byte not yet returned
+     *  as part of a line. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Close the underlying stream. */
+    void close() {
+        try {
+            _in.close();
+        } catch (IOException excp) {
+            throw new EnigmaException("could not close input");
+        }
+    }
+
+    /** Make sure there is at least one unread byte in the buffer,
+     *  returning false iff the input is exhausted. */
+    private boolean fill() {
+        try {
+            while (_pos == _limit) {
+                if (_eof) {
+                    return false;
+                }
+                int n = _in.read(_buffer);
+                if (n < 0) {
+                    _eof = true;
+                } else {
+                    _pos = 0;
+                    _limit = n;
+                    _scan = 0;
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new EnigmaException("error reading input");
+        }
+    }
+
+    /** Source of bytes. */
+    private final InputStream _in;
+
+    /** Charset used to decode lines. */
+    private final Charset _charset;
+
+    /** Bytes read from _in but not yet consumed are
+     *  _buffer[_pos .. _limit-1]. */
+    private byte[] _buffer;
+
+    /** Position of the next unread byte in _buffer. */
+    private int _pos;
+
+    /** Bytes _buffer[_pos .. _scan-1] are known to contain no line
+     *  terminator. */
+    private int _scan;
+
+    /** Number of valid bytes in _buffer. */
+    private int _limit;
+
+    /** True once _in has reported end of input. */
+    private boolean _eof;
+
+    /** Absolute offset of _buffer[_pos] in the input. */
+    private long _offset;
+
+    /** Bytes of the line being assembled. */
+    private byte[] _line;
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Zwea Htet
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Append TEXT to FILE. */
+    private static void append(File file, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes());
+        }
+    }
+
+    @Test
+    public void testLinesAndOffsets() {
+        LineReader lines = new LineReader(
+            new ByteArrayInputStream("AB\r\n\nCDE".getBytes()), 10);
+        assertTrue(lines.hasNextLine());
+        assertEquals("AB", lines.nextLine());
+        assertEquals(14, lines.offset());
+        assertEquals("", lines.nextLine());
+        assertEquals("CDE", lines.nextLine());
+        assertEquals(18, lines.offset());
+        assertFalse(lines.hasNextLine());
+    }
+
+    @Test
+    public void testFollow() throws IOException {
+        File file = File.createTempFile("enigma", ".in");
+        try {
+            append(file, "* B I II\nHELLO\nWOR");
+            LineReader lines = new LineReader(new FileInputStream(file));
+            assertTrue(lines.hasCompleteLine());
+            assertEquals("* B I II", lines.nextLine());
+            assertTrue(lines.hasCompleteLine());
+            assertEquals("HELLO", lines.nextLine());
+            assertFalse(lines.hasCompleteLine());
+            assertEquals(15, lines.offset());
+            assertFalse(lines.hasCompleteLine());
+            append(file, "LD\r\nAGAIN");
+            assertTrue(lines.hasCompleteLine());
+            assertEquals("WORLD", lines.nextLine());
+            assertEquals(22, lines.offset());
+            assertFalse(lines.hasCompleteLine());
+            append(file, "\n");
+            assertTrue(lines.hasCompleteLine());
+            assertEquals("AGAIN", lines.nextLine());
+            assertFalse(lines.hasCompleteLine());
+            lines.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFollowLongLine() throws IOException {
+        File file = File.createTempFile("enigma", ".in");
+        try {
+            String longLine = "ABCDEFGH".repeat(20000);
+            append(file, longLine.substring(0, 100000));
+            LineReader lines = new LineReader(new FileInputStream(file));
+            assertFalse(lines.hasCompleteLine());
+            append(file, longLine.substring(100000) + "\n");
+            assertTrue(lines.hasCompleteLine());
+            assertEquals(longLine, lines.nextLine());
+            assertEquals(longLine.length() + 1, lines.offset());
+            lines.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.HashMap;
+
 /** Class that represents a complete enigma machine.
  *  @author Zwea Htet
  */
@@ -15,11 +17,21 @@ class Machine {
     /** PlugBoard of Enigma machine. */
     private Permutation _plugBoard;
 
-    /** Stores all possible rotors from config file. */
+    /** Stores all possible rotors from config file, or (when I have a
+     *  _catalog) those I have taken from it so far. */
     private HashMap<String, Rotor> _allRotors;
 
-    /** Reposition all rotors in slots and set their setting. */
-    private HashMap<Integer, Rotor> _rotorsSlot;
+    /** Catalog from which I take my rotors as I need them, or null if
+     *  all are in _allRotors or _sourceRotors. */
+    private final RotorCatalog _catalog;
+
+    /** For a fork of a Machine without a catalog, the rotors given to
+     *  that Machine, of which I take copies as I need them; otherwise
+     *  null. */
+    private HashMap<String, Rotor> _sourceRotors;
+
+    /** The rotors in my slots, where _rotorsSlot[0] is the reflector. */
+    private Rotor[] _rotorsSlot;
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 < PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
@@ -34,7 +46,70 @@ class Machine {
         _pawls = pawls;
         _plugBoard = new Permutation("", alpha);
         _allRotors = allRotors;
-        _rotorsSlot = new HashMap<>();
+        _catalog = null;
+        _rotorsSlot = new Rotor[numRotors];
+        _offsets = new int[numRotors];
+        _notched = new int[numRotors];
+        _stepping = new int[numRotors];
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 < PAWLS < NUMROTORS pawls, taking copies of the rotors in
+     *  CATALOG as they are first used. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
+        if (numRotors == 0 && pawls >= numRotors) {
+            throw new EnigmaException("Invalid number of rotors and pawls");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _plugBoard = new Permutation("", alpha);
+        _allRotors = new HashMap<>();
+        _catalog = catalog;
+        _rotorsSlot = new Rotor[numRotors];
+        _offsets = new int[numRotors];
+        _notched = new int[numRotors];
+        _stepping = new int[numRotors];
+    }
+
+    /** A new machine like PARENT, but with none of its rotors yet: it
+     *  takes its own copies (sharing their wirings) as it needs them,
+     *  from PARENT's catalog or from the rotors PARENT was given. */
+    private Machine(Machine parent) {
+        _alphabet = parent._alphabet;
+        _numRotors = parent._numRotors;
+        _pawls = parent._pawls;
+        _plugBoard = parent._plugBoard;
+        _allRotors = new HashMap<>();
+        _catalog = parent._catalog;
+        if (_catalog == null) {
+            _sourceRotors = parent._sourceRotors != null
+                ? parent._sourceRotors : parent._allRotors;
+        }
+        _rotorsSlot = new Rotor[_numRotors];
+        _offsets = new int[_numRotors];
+        _notched = new int[_numRotors];
+        _stepping = new int[_numRotors];
+        _engine = parent._engine;
+        _engineThreshold = parent._engineThreshold;
+        _selector = parent._selector;
+    }
+
+    /** Return my rotor named NAME, or null if there is none. */
+    private Rotor rotor(String name) {
+        Rotor result = _allRotors.get(name);
+        if (result == null && name != null) {
+            if (_catalog != null) {
+                result = _catalog.rotor(name);
+            } else if (_sourceRotors != null) {
+                Rotor source = _sourceRotors.get(name);
+                result = source == null ? null : source.copy();
+            }
+            if (result != null) {
+                _allRotors.put(name, result);
+            }
+        }
+        return result;
     }
 
     /** Return the number of rotor slots I have. */
@@ -52,7 +127,7 @@ class Machine {
      *  undefined results. */
     Rotor getRotor(int k) {
         assert (k >= 0 && k < _numRotors);
-        return _rotorsSlot.get(k);
+        return _rotorsSlot[k];
     }
 
     Alphabet alphabet() {
@@ -66,9 +141,143 @@ class Machine {
         validateRotors(rotors);
         int index = 0;
         for (String name: rotors) {
-            _rotorsSlot.put(index, _allRotors.get(name));
+            _rotorsSlot[index] = rotor(name);
             index += 1;
         }
+        _settings = null;
+        _path = null;
+        _nextCheck = NEVER;
+        _stale = true;
+    }
+
+    /** Return the Settings that insert the rotors named ROTORS, set them
+     *  according to SETTING and RINGSETTING (as for setRotors and
+     *  setRingSetting), and use PLUGBOARD, checking that they are valid
+     *  for me.  My own state is unchanged. */
+    Settings compile(String[] rotors, String setting, String ringSetting,
+                     Permutation plugboard) {
+        validateRotors(rotors);
+        checkAlphabet(setting);
+        checkLength(setting);
+        checkAlphabet(ringSetting);
+        checkRingSettingLength(ringSetting);
+        int[] positions = indices(setting);
+        int[] rings = indices(ringSetting);
+        return new Settings(rotors.clone(), positions, rings, plugboard);
+    }
+
+    /** Configure me according to SETTINGS, which must have been compiled
+     *  by a Machine with the same rotors.  Only what differs from my
+     *  current Settings is changed: rotors already in their slots stay,
+     *  and if the rotors are the same, the paths compiled for my current
+     *  Settings are carried over to SETTINGS (rewired if the plugboard
+     *  differs), so that a change of positions alone costs time
+     *  proportional to the number of rotors. */
+    void configure(Settings settings) {
+        Settings previous = _settings;
+        for (int k = 0; k < _numRotors; k++) {
+            Rotor r = _rotorsSlot[k];
+            if (r == null || !r.name().equals(settings.rotor(k))) {
+                _rotorsSlot[k] = rotor(settings.rotor(k));
+            }
+        }
+        for (int k = 1; k < _numRotors; k++) {
+            _rotorsSlot[k].set(settings.position(k));
+        }
+        for (int k = 1; k <= settings.numRings(); k++) {
+            _rotorsSlot[k].setRingSetting(settings.ring(k));
+        }
+        _stale = true;
+        if (previous != null && previous != settings
+            && previous.sameRotors(settings)) {
+            settings.adoptPaths(previous);
+        }
+        _plugBoard = settings.plugboard();
+        _settings = settings;
+        _converted = 0;
+        EnigmaEngine engine = _selector != null ? _pathEngine : _engine;
+        _path = engine == EnigmaEngine.DIRECT || Main.verbose() ? null
+            : settings.compiled(engine);
+        if (_selector != null) {
+            _nextCheck = EngineSelector.MIN_LENGTH;
+        } else if (_path == null && _engine != EnigmaEngine.DIRECT) {
+            _nextCheck = Math.max(1, _engineThreshold);
+        } else {
+            _nextCheck = NEVER;
+        }
+    }
+
+    /** Convert with a RotorPath compiled by ENGINE for the current
+     *  Settings once that Settings has converted THRESHOLD characters
+     *  since being applied by configure, and with my own rotors until
+     *  then (or if ENGINE compiles no path). */
+    void setEngine(EnigmaEngine engine, long threshold) {
+        _engine = engine;
+        _engineThreshold = threshold;
+        _selector = null;
+        _path = null;
+        _nextCheck = NEVER;
+        _stale = true;
+    }
+
+    /** Use a RotorPath specialized for the current Settings once that
+     *  Settings has converted THRESHOLD characters since being applied by
+     *  configure.  A THRESHOLD of 0 turns specialization off. */
+    void setSpecializeThreshold(long threshold) {
+        setEngine(threshold > 0 ? EnigmaEngine.SPECIALIZED
+                  : EnigmaEngine.DIRECT, threshold);
+    }
+
+    /** Let SELECTOR choose the engine for each Settings applied by
+     *  configure, as the characters converted under it reach
+     *  EngineSelector.MIN_LENGTH and then each time they double. */
+    void setEngineSelector(EngineSelector selector) {
+        _selector = selector;
+        _path = null;
+        _nextCheck = NEVER;
+        _stale = true;
+    }
+
+    /** Convert with PATH (or with my own rotors, if PATH is null) until
+     *  my rotors or plugboard change or configure is next called.  PATH
+     *  must be for my current rotors and plugboard. */
+    void usePath(RotorPath path) {
+        _path = path;
+        _nextCheck = NEVER;
+        _stale = true;
+    }
+
+    /** Switch to the path that my engine, or that chosen by my selector,
+     *  compiles for my current Settings. */
+    private void selectPath() {
+        if (_settings == null || Main.verbose()) {
+            _nextCheck = NEVER;
+            return;
+        }
+        EnigmaEngine engine;
+        if (_selector != null) {
+            engine = _selector.choose(this, 2 * _converted);
+            _nextCheck = 2 * _converted;
+        } else {
+            engine = _engine;
+            _nextCheck = NEVER;
+        }
+        _path = _settings.path(engine, () -> compile(engine));
+        _pathEngine = engine;
+        _stale = true;
+    }
+
+    /** Return the RotorPath that ENGINE compiles for my current rotors and
+     *  plugboard, or null if it compiles none. */
+    RotorPath compile(EnigmaEngine engine) {
+        int[][] forward = new int[_numRotors][];
+        int[][] backward = new int[_numRotors][];
+        for (int k = 0; k < _numRotors; k++) {
+            forward[k] = _rotorsSlot[k].permutation().forwardTable();
+            backward[k] = _rotorsSlot[k].permutation().inverseTable();
+        }
+        return engine.compile(_alphabet.size(), _plugBoard.forwardTable(),
+                              forward, backward);
     }
 
     /**
@@ -81,7 +290,7 @@ class Machine {
     private void validateRotors(String[] rotors) {
         HashMap<String, Integer> rotorsCount = new HashMap<>();
         for (String name: rotors) {
-            if (!_allRotors.containsKey(name)) {
+            if (rotor(name) == null) {
                 throw new EnigmaException(String.format("%s is not in the "
                         + "given rotors.", name));
             } else if (rotorsCount.containsKey(name)) {
@@ -93,79 +302,277 @@ class Machine {
         }
 
         String firstRotorName = rotors[0];
-        if (!(_allRotors.get(firstRotorName) instanceof Reflector)) {
+        if (!(rotor(firstRotorName) instanceof Reflector)) {
             throw new EnigmaException(String.format("%s is not a "
                     + "Reflector rotor. First rotor should be a reflector.",
                     firstRotorName));
         }
 
         for (int position = 1; position < _numRotors - _pawls; position++) {
-            if (!(_allRotors.get(rotors[position]) instanceof FixedRotor)) {
+            if (!(rotor(rotors[position]) instanceof FixedRotor)) {
                 throw new EnigmaException("Fixed Rotor in wrong position!");
             }
         }
 
         for (int position = _numRotors - _pawls; position < _numRotors;
              position++) {
-            if (!(_allRotors.get(rotors[position]) instanceof MovingRotor)) {
+            if (!(rotor(rotors[position]) instanceof MovingRotor)) {
                 throw new EnigmaException("MovingRotor in wrong position!");
             }
         }
     }
 
     private void checkAlphabet(String str) {
-        char[] letters = str.toCharArray();
-        for (char letter: letters) {
-            if (!_alphabet.contains(letter)) {
+        int[] letters = str.codePoints().toArray();
+        for (int letter: letters) {
+            if (!_alphabet.containsCodePoint(letter)) {
                 throw new EnigmaException(String.format("%c is not in the "
                                 + "alphabet!", letter));
             }
         }
     }
 
+    /** Return the indices of the characters of STR, which must be in my
+     *  alphabet. */
+    private int[] indices(String str) {
+        return str.codePoints().map(_alphabet::toIndex).toArray();
+    }
+
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
         checkAlphabet(setting);
         checkLength(setting);
-        char[] letters = setting.toCharArray();
+        int[] letters = indices(setting);
         int index = 1;
-        for (char letter: letters) {
-            _rotorsSlot.get(index).set(letter);
+        for (int letter: letters) {
+            _rotorsSlot[index].set(letter);
             index += 1;
         }
+        _stale = true;
     }
 
     /** Set the ring setting to RINGSETTING. */
     void setRingSetting(String ringSetting) {
         checkAlphabet(ringSetting);
         checkRingSettingLength(ringSetting);
-        char[] letters = ringSetting.toCharArray();
+        int[] letters = indices(ringSetting);
         int index = 1;
-        if (ringSetting.equals("")) {
-            for (int i = 1; i < _numRotors; i++) {
-                ringSetting += _alphabet.toChar(0);
-            }
-        }
-        for (char letter: letters) {
-            _rotorsSlot.get(index).setRingSetting(letter);
+        for (int letter: letters) {
+            _rotorsSlot[index].setRingSetting(letter);
             index += 1;
         }
+        _stale = true;
+    }
+
+    /** Set the settings of my rotors 1 .. numRotors()-1 to
+     *  POSITIONS[0 .. numRotors()-2], and likewise their ring settings
+     *  to RINGS, as alphabet indices.  This is the unchecked counterpart
+     *  of setRotors and setRingSetting. */
+    void setPositions(int[] positions, int[] rings) {
+        for (int k = 1; k < _numRotors; k += 1) {
+            _rotorsSlot[k].set(positions[k - 1]);
+            _rotorsSlot[k].setRingSetting(rings[k - 1]);
+        }
+        _stale = true;
+    }
+
+    /** Set the setting of my rotor #K (0 < K < numRotors()) to POSITION,
+     *  an alphabet index.  Unlike setPositions, this costs no more than
+     *  a step of the rotor. */
+    void setPosition(int k, int position) {
+        _rotorsSlot[k].set(position);
+        if (!_stale) {
+            moved(k);
+        }
+    }
+
+    /** Return the current settings of my rotors, in the form accepted
+     *  by setRotors. */
+    String rotorSettings() {
+        StringBuilder result = new StringBuilder();
+        for (int index = 1; index < _numRotors; index++) {
+            result.appendCodePoint(
+                _alphabet.toCodePoint(_rotorsSlot[index].setting()));
+        }
+        return result.toString();
+    }
+
+    /** Return the current ring settings of my rotors, in the form
+     *  accepted by setRingSetting. */
+    String ringSettings() {
+        StringBuilder result = new StringBuilder();
+        for (int index = 1; index < _numRotors; index++) {
+            result.appendCodePoint(
+                _alphabet.toCodePoint(_rotorsSlot[index].ringSetting()));
+        }
+        return result.toString();
     }
 
     private void checkLength(String setting) {
-        if (setting.length() != (_numRotors - 1)) {
+        if (setting.codePointCount(0, setting.length())
+            != _numRotors - 1) {
             throw new EnigmaException("Bad wheel settings!");
         }
     }
 
     private void checkRingSettingLength(String setting) {
-        if (setting.length() > _numRotors - 1) {
+        if (setting.codePointCount(0, setting.length())
+            > _numRotors - 1) {
             throw new EnigmaException("Bad wheel settings!");
         }
     }
 
+    /** The complete state of a Machine at some point: the rotors in its
+     *  slots, their settings and ring settings, and its plugboard.  A
+     *  Snapshot is immutable and refers to, rather than copies, the
+     *  machine's wirings and plugboard.  Where they fit, the settings and
+     *  ring settings are each packed into a single long. */
+    static final class Snapshot {
+
+        /** The state of M. */
+        private Snapshot(Machine M) {
+            int n = M._numRotors;
+            _rotors = M._rotorsSlot.clone();
+            _plugboard = M._plugBoard;
+            _settings = M._settings;
+            _path = M._path;
+            _converted = M._converted;
+            _nextCheck = M._nextCheck;
+            int bits = M.bitsPerSetting();
+            if (bits * (n - 1) <= Long.SIZE) {
+                long positions = 0, rings = 0;
+                for (int k = 1; k < n; k += 1) {
+                    Rotor r = _rotors[k];
+                    if (r != null) {
+                        positions |= (long) r.setting() << (bits * (k - 1));
+                        rings |= (long) r.ringSetting() << (bits * (k - 1));
+                    }
+                }
+                _positions = positions;
+                _rings = rings;
+                _wide = null;
+            } else {
+                _positions = _rings = 0;
+                _wide = new int[2 * (n - 1)];
+                for (int k = 1; k < n; k += 1) {
+                    Rotor r = _rotors[k];
+                    if (r != null) {
+                        _wide[k - 1] = r.setting();
+                        _wide[n - 2 + k] = r.ringSetting();
+                    }
+                }
+            }
+        }
+
+        /** Return true iff my settings and ring settings are packed, so
+         *  that positions() and rings() describe them. */
+        boolean packed() {
+            return _wide == null;
+        }
+
+        /** Return the settings of rotors 1 .. N-1 (N the number of slots)
+         *  packed into a long, that of rotor #K in bits B*(K-1) ..
+         *  B*K-1 (B the number of bits needed for an alphabet index).
+         *  Only meaningful if packed(). */
+        long positions() {
+            return _positions;
+        }
+
+        /** Return the ring settings of my rotors, packed as for
+         *  positions().  Only meaningful if packed(). */
+        long rings() {
+            return _rings;
+        }
+
+        /** The rotors in the machine's slots. */
+        private final Rotor[] _rotors;
+        /** Packed settings and ring settings. */
+        private final long _positions, _rings;
+        /** If the settings do not fit in a long, the settings followed by
+         *  the ring settings; otherwise null. */
+        private final int[] _wide;
+        /** The machine's plugboard. */
+        private final Permutation _plugboard;
+        /** The machine's Settings, compiled path, count of characters
+         *  converted under the Settings, and when to next choose a
+         *  path. */
+        private final Settings _settings;
+        /** See _settings. */
+        private final RotorPath _path;
+        /** See _settings. */
+        private final long _converted;
+        /** See _settings. */
+        private final long _nextCheck;
+    }
+
+    /** Return my current state, for restore.  This takes time
+     *  proportional to numRotors(), and copies no wirings. */
+    Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /** Return me to the state SNAPSHOT, which must have been taken from
+     *  me or from a Machine forked from me (or from which I was
+     *  forked). */
+    void restore(Snapshot snapshot) {
+        if (snapshot._rotors.length != _numRotors) {
+            throw new EnigmaException("snapshot is of a different machine");
+        }
+        int bits = bitsPerSetting();
+        long mask = (1L << bits) - 1;
+        for (int k = 0; k < _numRotors; k += 1) {
+            Rotor r = snapshot._rotors[k];
+            if (r == null) {
+                _rotorsSlot[k] = null;
+                continue;
+            }
+            Rotor mine = _rotorsSlot[k];
+            if (mine == null || !mine.name().equals(r.name())) {
+                mine = rotor(r.name());
+                if (mine == null) {
+                    throw new EnigmaException("snapshot is of a different "
+                                              + "machine");
+                }
+                _rotorsSlot[k] = mine;
+            }
+            if (k == 0) {
+                continue;
+            } else if (snapshot._wide == null) {
+                mine.set((int) (snapshot._positions >>> (bits * (k - 1))
+                                & mask));
+                mine.setRingSetting((int) (snapshot._rings
+                                           >>> (bits * (k - 1)) & mask));
+            } else {
+                mine.set(snapshot._wide[k - 1]);
+                mine.setRingSetting(snapshot._wide[_numRotors - 2 + k]);
+            }
+        }
+        _plugBoard = snapshot._plugboard;
+        _settings = snapshot._settings;
+        _path = snapshot._path;
+        _converted = snapshot._converted;
+        _nextCheck = snapshot._nextCheck;
+        _stale = true;
+    }
+
+    /** Return a new Machine in my current state, which then changes
+     *  independently of me.  The fork shares my wirings, plugboard and
+     *  compiled settings rather than copying them, and takes its own
+     *  copies of other rotors only as it needs them. */
+    Machine fork() {
+        Machine result = new Machine(this);
+        result.restore(snapshot());
+        return result;
+    }
+
+    /** Return the number of bits needed for a rotor setting. */
+    private int bitsPerSetting() {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(
+                            _alphabet.size() - 1));
+    }
+
     /** Return the current plugboard's permutation. */
     Permutation plugboard() {
         return _plugBoard;
@@ -174,63 +581,138 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugBoard = plugboard;
+        _settings = null;
+        _path = null;
+        _nextCheck = NEVER;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (_nextCheck != NEVER) {
+            _converted += 1;
+            if (_converted >= _nextCheck) {
+                selectPath();
+            }
+        }
+        if (_stale) {
+            refresh();
+        }
         advanceRotors();
+        if (_path != null) {
+            int changed = _changed;
+            _changed = _numRotors;
+            return _path.convert(c, _offsets, changed);
+        }
         if (Main.verbose()) {
             System.err.printf("[");
             for (int r = 1; r < numRotors(); r += 1) {
                 System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+                        alphabet().toCodePoint(getRotor(r).setting()));
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            System.err.printf("] %c -> ", alphabet().toCodePoint(c));
         }
         c = plugboard().permute(c);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+            System.err.printf("%c -> ", alphabet().toCodePoint(c));
         }
         c = applyRotors(c);
         c = plugboard().permute(c);
         if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+            System.err.printf("%c%n", alphabet().toCodePoint(c));
         }
         return c;
     }
 
-    /** Advance all rotors to their next position. */
+    /** Convert the LEN characters (as alphabet indices) of MSG starting
+     *  at OFF, storing the results in RESULT starting at 0.  MSG and
+     *  RESULT may be the same array if OFF is 0. */
+    void convert(int[] msg, int off, int len, int[] result) {
+        for (int k = 0; k < len; k += 1) {
+            result[k] = convert(msg[off + k]);
+        }
+    }
+
+    /** Advance all rotors to their next position.  The rotors that
+     *  move are found from those with pawls that are at a notch
+     *  (_notched), so that the time taken follows the number of rotors
+     *  that move rather than the number of pawls. */
     private void advanceRotors() {
-        for (int position = _numRotors - _pawls; position < _numRotors;
-             position++) {
-            Rotor currentRotor = _rotorsSlot.get(position);
-            if (position == _numRotors - 1) {
-                currentRotor.advance();
-                break;
-            }
-            Rotor nextRotor = _rotorsSlot.get(position + 1);
-            if (nextRotor.atNotch()) {
-                currentRotor.advance();
-                if (position < _numRotors - 1) {
-                    nextRotor.advance();
-                    position += 1;
-                }
+        if (_pawls == 0) {
+            return;
+        }
+        int fast = _numRotors - 1, steps = 0, paired = -1;
+        for (int i = 0; i < _numNotched; i += 1) {
+            int k = _notched[i];
+            if (k - 1 != paired) {
+                _stepping[steps] = k;
+                steps += 1;
+                paired = k;
             }
         }
+        for (int i = 0; i < steps; i += 1) {
+            step(_stepping[i] - 1);
+            step(_stepping[i]);
+        }
+        if (paired != fast) {
+            step(fast);
+        }
+    }
+
+    /** Advance my rotor #K. */
+    private void step(int k) {
+        _rotorsSlot[k].advance();
+        moved(k);
+    }
+
+    /** Bring _offsets, _changed and _notched up to date with the setting
+     *  of my rotor #K, which has changed. */
+    private void moved(int k) {
+        Rotor rotor = _rotorsSlot[k];
+        _offsets[k] = rotor.setting() - rotor.ringSetting();
+        _changed = Math.min(_changed, k);
+        if (k <= _numRotors - _pawls) {
+            return;
+        }
+        int i = Arrays.binarySearch(_notched, 0, _numNotched, k);
+        if (rotor.atNotch() && i < 0) {
+            i = -i - 1;
+            System.arraycopy(_notched, i, _notched, i + 1, _numNotched - i);
+            _notched[i] = k;
+            _numNotched += 1;
+        } else if (!rotor.atNotch() && i >= 0) {
+            System.arraycopy(_notched, i + 1, _notched, i,
+                             _numNotched - i - 1);
+            _numNotched -= 1;
+        }
     }
 
+    /** Recompute _offsets and _notched from my rotors, after they or my
+     *  path have been changed other than by advanceRotors. */
+    private void refresh() {
+        _numNotched = 0;
+        for (int k = 0; k < _numRotors; k += 1) {
+            Rotor rotor = _rotorsSlot[k];
+            _offsets[k] = rotor.setting() - rotor.ringSetting();
+            if (k > _numRotors - _pawls && k > 0 && rotor.atNotch()) {
+                _notched[_numNotched] = k;
+                _numNotched += 1;
+            }
+        }
+        _changed = 0;
+        _stale = false;
+    }
 
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
         for (int position = _numRotors - 1; position >= 0; position--) {
-            Rotor currentRotor = _rotorsSlot.get(position);
+            Rotor currentRotor = _rotorsSlot[position];
             c = currentRotor.convertForward(c);
         }
         for (int position = 1; position < _numRotors; position++) {
-            Rotor currentRotor = _rotorsSlot.get(position);
+            Rotor currentRotor = _rotorsSlot[position];
             c = currentRotor.convertBackward(c);
         }
 
@@ -240,16 +722,64 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        char[] charArr = msg.toCharArray();
-        for (char c: charArr) {
-            if (c != ' ') {
-                result += _alphabet.toChar(convert(_alphabet.toInt(c)));
-            }
-        }
-        return result;
+        int[] indices = new int[msg.length()];
+        int len = _alphabet.toIndices(msg, indices);
+        convert(indices, 0, len, indices);
+        return _alphabet.toText(indices, len);
     }
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
+
+    /** The Settings last applied by configure, or null if my rotors or
+     *  plugboard have been changed since by other means. */
+    private Settings _settings;
+
+    /** Number of characters converted since configure, while there are
+     *  further engines to choose. */
+    private long _converted;
+
+    /** Value of _converted at which to choose the next path, or NEVER. */
+    private long _nextCheck = NEVER;
+
+    /** _nextCheck when there is no further choice of path to make. */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /** The engine with which to convert, unless I have a selector. */
+    private EnigmaEngine _engine = EnigmaEngine.DIRECT;
+
+    /** Number of characters after which to use _engine. */
+    private long _engineThreshold;
+
+    /** The selector choosing my engine, or null. */
+    private EngineSelector _selector;
+
+    /** The engine last chosen by _selector. */
+    private EnigmaEngine _pathEngine = EnigmaEngine.DIRECT;
+
+    /** The compiled path in use, or null. */
+    private RotorPath _path;
+
+    /** Offsets of my rotors, passed to _path. */
+    private final int[] _offsets;
+
+    /** Lowest slot whose offset may have changed since the last call of
+     *  _path.convert with _offsets (numRotors() if none). */
+    private int _changed;
+
+    /** True iff my rotors, or my path, have changed other than through
+     *  advanceRotors since _offsets and _notched were last computed. */
+    private boolean _stale = true;
+
+    /** The slots, in increasing order, of the rotors with pawls that are
+     *  at a notch (so that the rotor to their left moves with them),
+     *  excluding the leftmost rotor with a pawl:
+     *  _notched[0 .. _numNotched-1]. */
+    private final int[] _notched;
+
+    /** Number of slots in _notched. */
+    private int _numNotched;
+
+    /** Slots of the notched rotors that move on the current step. */
+    private final int[] _stepping;
 }
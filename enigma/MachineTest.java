@@ -1,6 +1,9 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -24,18 +27,24 @@ public class MachineTest {
             new HashMap<>();
 
     static {
+        navalRotors(ROTORS);
+    }
+
+    /** Add fresh copies of the naval rotors used in these tests to
+     *  ROTORS. */
+    private static void navalRotors(HashMap<String, Rotor> rotors) {
         HashMap<String, String> nav = TestUtils.NAVALA;
-        ROTORS.put("B", new Reflector("B", new Permutation(nav.get("B"), AZ)));
-        ROTORS.put("Beta",
+        rotors.put("B", new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        rotors.put("Beta",
                 new FixedRotor("Beta",
                         new Permutation(nav.get("Beta"), AZ)));
-        ROTORS.put("III",
+        rotors.put("III",
                 new MovingRotor("III",
                         new Permutation(nav.get("III"), AZ), "V"));
-        ROTORS.put("IV",
+        rotors.put("IV",
                 new MovingRotor("IV", new Permutation(nav.get("IV"), AZ),
                         "J"));
-        ROTORS.put("I",
+        rotors.put("I",
                 new MovingRotor("I", new Permutation(nav.get("I"), AZ),
                         "Q"));
     }
@@ -126,4 +135,398 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testConvertArray() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ)(EX)(IP)"
+                + "(TR)(BY)", AZ));
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        int[] text = new int[msg.length() + 1];
+        for (int k = 0; k < msg.length(); k += 1) {
+            text[k + 1] = AZ.toInt(msg.charAt(k));
+        }
+        int[] result = new int[msg.length()];
+        mach.convert(text, 1, msg.length(), result);
+        String converted = "";
+        for (int c : result) {
+            converted += AZ.toChar(c);
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", converted);
+    }
+
+    @Test
+    public void testCompileConfigure() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS);
+        Settings settings =
+            mach.compile(ROTORS1, SETTING1, "",
+                         new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ));
+        mach.configure(settings);
+        assertEquals(ROTORS.get("B"), mach.getRotor(0));
+        assertEquals(ROTORS.get("I"), mach.getRotor(4));
+        assertEquals(SETTING1, mach.rotorSettings());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+        mach.configure(settings);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCompileBadOrder() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS);
+        mach.compile(new String[] { "Beta", "B", "III", "IV", "I" },
+                     SETTING1, "", new Permutation("", AZ));
+    }
+
+    @Test
+    public void testSpecialize() {
+        HashMap<String, Rotor> genericRotors = new HashMap<>(),
+            rotors = new HashMap<>();
+        navalRotors(genericRotors);
+        navalRotors(rotors);
+        Machine generic = new Machine(AZ, 5, 3, genericRotors);
+        Machine special = new Machine(AZ, 5, 3, rotors);
+        special.setSpecializeThreshold(1);
+        Settings settings =
+            generic.compile(ROTORS1, SETTING1, "BCDE",
+                            new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ));
+        generic.configure(settings);
+        special.configure(settings);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (int i = 0; i < 40; i += 1) {
+            assertEquals(generic.convert(msg), special.convert(msg));
+        }
+        assertEquals(generic.rotorSettings(), special.rotorSettings());
+        assertNotNull(settings.compiled(EnigmaEngine.SPECIALIZED));
+    }
+
+    @Test
+    public void testEngines() {
+        HashMap<String, Rotor> genericRotors = new HashMap<>();
+        navalRotors(genericRotors);
+        Machine generic = new Machine(AZ, 5, 3, genericRotors);
+        Settings settings =
+            generic.compile(ROTORS1, SETTING1, "BCDE",
+                            new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ));
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        generic.configure(settings);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i += 1) {
+            expected.add(generic.convert(msg));
+        }
+        for (EnigmaEngine engine : EnigmaEngine.ENGINES) {
+            HashMap<String, Rotor> rotors = new HashMap<>();
+            navalRotors(rotors);
+            Machine mach = new Machine(AZ, 5, 3, rotors);
+            mach.setEngine(engine, 0);
+            mach.configure(settings);
+            for (int i = 0; i < 40; i += 1) {
+                assertEquals(engine.name(), expected.get(i),
+                             mach.convert(msg));
+            }
+        }
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        navalRotors(rotors);
+        Machine mach = new Machine(AZ, 5, 3, rotors);
+        mach.setEngineSelector(new EngineSelector(EnigmaEngine.ENGINES));
+        mach.configure(settings);
+        for (int i = 0; i < 40; i += 1) {
+            assertEquals(expected.get(i), mach.convert(msg));
+        }
+        assertEquals(generic.rotorSettings(), mach.rotorSettings());
+    }
+
+    /** Return a map of a reflector "B" and COUNT rotors "R0", "R1",
+     *  ..., with the naval wirings, of which the last MOVING move, with
+     *  notches at every other letter or so. */
+    private static HashMap<String, Rotor> manyRotors(int count,
+                                                     int moving) {
+        String[] wirings = { "I", "II", "III", "IV", "V", "VI", "VII" };
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        rotors.put("B", new Reflector("B",
+                new Permutation(TestUtils.NAVALA.get("B"), AZ)));
+        for (int k = 0; k < count; k += 1) {
+            Permutation perm = new Permutation(
+                    TestUtils.NAVALA.get(wirings[k % wirings.length]), AZ);
+            if (k < count - moving) {
+                rotors.put("R" + k, new FixedRotor("R" + k, perm));
+                continue;
+            }
+            String notch = "";
+            for (int c = k % 2; c < 26; c += 2 + k % 3) {
+                notch += AZ.toChar(c);
+            }
+            rotors.put("R" + k, new MovingRotor("R" + k, perm, notch));
+        }
+        return rotors;
+    }
+
+    /** Check that each of ENGINES, and a selector among them, converts
+     *  as the machine's own rotors do, in a machine of SLOTS slots (the
+     *  reflector and rotors from manyRotors) of which PAWLS have
+     *  pawls. */
+    private static void checkEngines(int slots, int pawls,
+                                     List<EnigmaEngine> engines) {
+        String[] names = new String[slots];
+        names[0] = "B";
+        String setting = "", rings = "";
+        for (int k = 1; k < slots; k += 1) {
+            names[k] = "R" + (k - 1);
+            setting += AZ.toChar(k * 5 % 26);
+            rings += AZ.toChar(k * 3 % 26);
+        }
+        Permutation board = new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine generic = new Machine(AZ, slots, pawls,
+                                      manyRotors(slots - 1, pawls));
+        generic.configure(generic.compile(names, setting, rings, board));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i += 1) {
+            expected.add(generic.convert(msg));
+        }
+        for (EnigmaEngine engine : engines) {
+            Machine mach = new Machine(AZ, slots, pawls,
+                                       manyRotors(slots - 1, pawls));
+            mach.setEngine(engine, 0);
+            mach.configure(mach.compile(names, setting, rings, board));
+            for (int i = 0; i < 30; i += 1) {
+                assertEquals(String.format("%s, %d slots, %d pawls",
+                                           engine.name(), slots, pawls),
+                             expected.get(i), mach.convert(msg));
+            }
+            assertEquals(generic.rotorSettings(), mach.rotorSettings());
+        }
+        Machine mach = new Machine(AZ, slots, pawls,
+                                   manyRotors(slots - 1, pawls));
+        mach.setEngineSelector(new EngineSelector(engines));
+        mach.configure(mach.compile(names, setting, rings, board));
+        for (int i = 0; i < 30; i += 1) {
+            assertEquals(expected.get(i), mach.convert(msg));
+        }
+    }
+
+    @Test
+    public void testEngineShapes() {
+        int[][] shapes = {
+            { 1, 0 }, { 2, 0 }, { 2, 1 }, { 5, 0 }, { 5, 4 },
+        };
+        for (int[] shape : shapes) {
+            checkEngines(shape[0], shape[1], EnigmaEngine.ENGINES);
+        }
+    }
+
+    @Test
+    public void testManyRotors() {
+        int count = 120;
+        String[] names = new String[count + 1];
+        names[0] = "B";
+        String setting = "", rings = "";
+        for (int k = 0; k < count; k += 1) {
+            names[k + 1] = "R" + k;
+            setting += AZ.toChar(k * 7 % 26);
+            rings += AZ.toChar(k * 11 % 26);
+        }
+        Permutation board = new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (int pawls : new int[] { 3, count }) {
+            Machine generic =
+                new Machine(AZ, count + 1, pawls, manyRotors(count, pawls));
+            Machine tree =
+                new Machine(AZ, count + 1, pawls, manyRotors(count, pawls));
+            tree.setEngine(EnigmaEngine.TREE, 0);
+            generic.configure(generic.compile(names, setting, rings,
+                                              board));
+            tree.configure(tree.compile(names, setting, rings, board));
+            for (int i = 0; i < 30; i += 1) {
+                assertEquals(generic.convert(msg), tree.convert(msg));
+            }
+            assertEquals(generic.rotorSettings(), tree.rotorSettings());
+        }
+    }
+
+    @Test
+    public void testSharedPath() {
+        int count = 40;
+        String[] names = new String[count + 1];
+        names[0] = "B";
+        String setting = "";
+        for (int k = 0; k < count; k += 1) {
+            names[k + 1] = "R" + k;
+            setting += AZ.toChar(k * 7 % 26);
+        }
+        Permutation board = new Permutation("(HQ)(EX)", AZ);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (EnigmaEngine engine : EnigmaEngine.ENGINES) {
+            Machine[] machs = new Machine[4];
+            for (int i = 0; i < machs.length; i += 1) {
+                machs[i] = new Machine(AZ, count + 1, count / 2,
+                                       manyRotors(count, count / 2));
+                if (i >= 2) {
+                    machs[i].setEngine(engine, 0);
+                }
+            }
+            Settings settings =
+                machs[0].compile(names, setting, setting, board);
+            for (Machine mach : machs) {
+                mach.configure(settings);
+            }
+            machs[1].convert(msg);
+            machs[3].convert(msg);
+            for (int i = 0; i < 20 * msg.length(); i += 1) {
+                int c = AZ.toInt(msg.charAt(i % msg.length()));
+                assertEquals(engine.name(), machs[0].convert(c),
+                             machs[2].convert(c));
+                assertEquals(engine.name(), machs[1].convert(c),
+                             machs[3].convert(c));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0x4e00; c < 0x4e00 + 4998; c += 1) {
+            chars.appendCodePoint(c);
+        }
+        chars.appendCodePoint(0x20000).appendCodePoint(0x20001);
+        int[] cps = chars.codePoints().toArray();
+        StringBuilder pairs = new StringBuilder(), cycle = new StringBuilder();
+        for (int k = 0; k < cps.length; k += 2) {
+            pairs.append('(').appendCodePoint(cps[k])
+                .appendCodePoint(cps[(k + 2501) % cps.length]).append(')');
+        }
+        for (int k = 0; k < cps.length; k += 1) {
+            cycle.appendCodePoint(cps[k * 7 % cps.length]);
+        }
+        String config = chars + " 3 1\n"
+            + "REF R " + pairs + "\n"
+            + "F N (" + cycle + ")\n"
+            + "R1 M" + new String(cps, 1, 2) + " (" + cycle.reverse()
+            + ")\n";
+        Configuration conf = Configuration.read(new Scanner(config), 4);
+        String settings = "* REF F R1 " + new String(cps, 4998, 2)
+            + " (" + new String(cps, 0, 2) + ")";
+        String msg = new String(cps, 0, 40) + " " + new String(cps, 4990, 10);
+        Machine direct = conf.newMachine();
+        Main.setUp(conf, direct, settings);
+        String cipher = direct.convert(msg);
+        assertEquals(50, cipher.codePointCount(0, cipher.length()));
+        for (EnigmaEngine engine : EnigmaEngine.ENGINES) {
+            Machine mach = conf.newMachine();
+            mach.setEngine(engine, 0);
+            Main.setUp(conf, mach, settings);
+            assertEquals(engine.name(), cipher, mach.convert(msg));
+            Main.setUp(conf, mach, settings);
+            assertEquals(engine.name(), msg.replace(" ", ""),
+                         mach.convert(cipher));
+        }
+    }
+
+    @Test
+    public void testIncrementalConfigure() {
+        HashMap<String, Rotor> genericRotors = new HashMap<>(),
+            rotors = new HashMap<>();
+        navalRotors(genericRotors);
+        navalRotors(rotors);
+        Machine generic = new Machine(AZ, 5, 3, genericRotors);
+        Machine fused = new Machine(AZ, 5, 3, rotors);
+        fused.setEngine(EnigmaEngine.FUSED, 0);
+        Permutation board = new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ);
+        Settings first = generic.compile(ROTORS1, SETTING1, "AAAA", board);
+        Settings moved = generic.compile(ROTORS1, "BYTE", "AAAA", board);
+        Settings replugged =
+            generic.compile(ROTORS1, "BYTE", "AAAA",
+                            new Permutation("(HQ)(EX)(IP)(TR)(BZ)", AZ));
+        Settings other =
+            generic.compile(new String[] { "B", "Beta", "I", "IV", "III" },
+                            "BYTE", "AAAA", board);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (Settings settings :
+                 new Settings[] { first, moved, replugged, other }) {
+            generic.configure(settings);
+            fused.configure(settings);
+            assertEquals(generic.convert(msg), fused.convert(msg));
+        }
+        assertNotNull(first.compiled(EnigmaEngine.FUSED));
+        assertSame(first.compiled(EnigmaEngine.FUSED),
+                   moved.compiled(EnigmaEngine.FUSED));
+        assertNotNull(replugged.compiled(EnigmaEngine.FUSED));
+        assertNotSame(moved.compiled(EnigmaEngine.FUSED),
+                      replugged.compiled(EnigmaEngine.FUSED));
+        assertNotSame(replugged.compiled(EnigmaEngine.FUSED),
+                      other.compiled(EnigmaEngine.FUSED));
+    }
+
+    @Test
+    public void testSnapshotRestore() {
+        Machine mach = mach1();
+        mach.setRingSetting("AAAA");
+        mach.setPlugboard(new Permutation("(HQ)(EX)(IP)(TR)(BY)", AZ));
+        Machine.Snapshot start = mach.snapshot();
+        assertTrue(start.packed());
+        assertEquals(AZ.toInt('A') | AZ.toInt('X') << 5 | AZ.toInt('L') << 10
+                     | (long) AZ.toInt('E') << 15, start.positions());
+        assertEquals(0, start.rings());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+        mach.insertRotors(new String[] { "B", "Beta", "I", "III", "IV" });
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.restore(start);
+        assertEquals(ROTORS.get("III"), mach.getRotor(2));
+        assertEquals(SETTING1, mach.rotorSettings());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testFork() {
+        Machine mach = TestUtils.navalConfiguration().newMachine();
+        Main.setUp(TestUtils.navalConfiguration(), mach,
+                   "* B Beta III II I AXLE (HQ) (EX)");
+        mach.convert("FROM");
+        Machine fork = mach.fork();
+        assertNotSame(mach.getRotor(4), fork.getRotor(4));
+        assertSame(mach.getRotor(4).permutation(),
+                   fork.getRotor(4).permutation());
+        assertSame(mach.plugboard(), fork.plugboard());
+        assertEquals(mach.rotorSettings(), fork.rotorSettings());
+        String settings = mach.rotorSettings();
+        String rest = fork.convert("HISSHOULDERHIAWATHA");
+        assertEquals(settings, mach.rotorSettings());
+        assertEquals(rest, mach.convert("HISSHOULDERHIAWATHA"));
+        fork.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        assertEquals("III", mach.getRotor(2).name());
+        fork.restore(mach.snapshot());
+        assertEquals("III", fork.getRotor(2).name());
+        assertEquals(mach.rotorSettings(), fork.rotorSettings());
+    }
+
+    @Test
+    public void testWideSnapshot() {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        rotors.put("B", ROTORS.get("B"));
+        String[] names = new String[14];
+        names[0] = "B";
+        for (int k = 1; k < 14; k += 1) {
+            names[k] = "R" + k;
+            rotors.put(names[k], new MovingRotor(names[k],
+                                                 ROTORS.get("I").permutation(),
+                                                 "Q"));
+        }
+        Machine mach = new Machine(AZ, 14, 13, rotors);
+        mach.insertRotors(names);
+        mach.setRotors("ABCDEFGHIJKLM");
+        mach.setRingSetting("ZYXWVUTSRQPON");
+        Machine.Snapshot snap = mach.snapshot();
+        assertFalse(snap.packed());
+        String msg = mach.convert("HELLOWORLD");
+        Machine fork = mach.fork();
+        fork.restore(snap);
+        mach.restore(snap);
+        assertEquals("ABCDEFGHIJKLM", fork.rotorSettings());
+        assertEquals("ZYXWVUTSRQPON", fork.ringSettings());
+        assertEquals(msg, mach.convert("HELLOWORLD"));
+        assertEquals(msg, fork.convert("HELLOWORLD"));
+    }
 }
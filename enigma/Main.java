@@ -1,12 +1,23 @@
 package enigma;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -28,18 +39,170 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  With --checkpoint=FILE, a Checkpoint is durably written to FILE
+     *  after every --interval=N converted characters (default
+     *  DEFAULT_INTERVAL).  With --resume as well, a run whose FILE
+     *  already exists picks up where that checkpoint left off, reading
+     *  the input from the recorded offset and appending to the output;
+     *  this requires both INPUT and OUTPUT to be named.
+     *
+     *  --cache=N bounds the number of distinct compiled settings lines
+     *  kept for reuse (default SettingsCache.DEFAULT_CAPACITY), and
+     *  reports the cache's hits and misses on the standard error at the
+     *  end of the run.
+     *
+     *  --specialize=N converts with a RotorPath generated by Specializer
+     *  for the current settings once N characters have been converted
+     *  under them, falling back to the general conversion if generation
+     *  fails.  It is off by default.
+     *
+     *  --engine=NAME converts every settings line with the EnigmaEngine
+     *  NAME (direct, table, fused, tree or specialized).  By default,
+     *  and with --engine=auto, an EngineSelector chooses the engine for
+     *  each settings line from the number of characters converted under
+     *  it, calibrating the engines on first use.  Every engine produces
+     *  the same output.
+     *
+     *  With --batch=MANIFEST, there are no other arguments; instead each
+     *  line of MANIFEST names a configuration file, an input file and an
+     *  output file, and the resulting jobs are run by a Batch on
+     *  --jobs=N threads (default: one per processor).  Exits with code 1
+     *  if any job fails.
+     *
+     *  With --lazy, configuration files are only indexed when read, and
+     *  each rotor is parsed when a settings line first uses it (see
+     *  Configuration.index).
+     *
+     *  With --pack, output is written in the packed format described in
+     *  PackedWriter, with a section recording each settings line, so
+     *  that packed output may be converted back by giving it as input.
+     *  Input in packed format, each of whose sections must record its
+     *  settings line, is recognized automatically.  Neither may be
+     *  checkpointed.
+     *
+     *  Input in either variant of the framed format described in
+     *  FramedReader, in which each line is prefixed by its kind and
+     *  length, is also recognized automatically.  It may not be
+     *  checkpointed or followed.
+     *
+     *  With --follow, INPUT (which must be named, and neither packed nor
+     *  framed) is treated as a file that is being appended to, as by
+     *  "tail -f": at its end, the output is flushed and the program
+     *  waits for more complete lines, converting each as it arrives with the
+     *  machine left by the previous ones, until killed.  Every message
+     *  line is then terminated.  With --checkpoint, a checkpoint is also
+     *  written whenever the end of the input is reached, so that with
+     *  --resume a restarted follower converts only what was appended
+     *  since.
+     *
+     *  With --reload, CONFIG is watched while the program runs (through
+     *  a ConfigurationReloader), and when it changes it is read again
+     *  and, if valid, over the same alphabet, and still holding the
+     *  rotors of the section in progress, used for each section that
+     *  starts afterwards; sections in progress finish with the
+     *  configuration they started with.  This is meant for use with
+     *  --follow.  It may not be combined with --lazy, since an indexed
+     *  configuration reads its file again as rotors are first used, nor
+     *  with --batch.
+     *
+     *  With --keystream=STORE, a KeystreamStore built beforehand is
+     *  mapped into memory, and each section whose key it holds is
+     *  converted by table lookup rather than by the machine, for as many
+     *  positions as the store covers.
+     *
+     *  Input compressed in the gzip or zlib format (see Compression) is
+     *  recognized automatically and decompressed as it is read; it may
+     *  not be checkpointed or followed.  With --compress, output is
+     *  compressed in the gzip format, on a separate thread; it may not
+     *  be checkpointed. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
+                new CommandArgs("--verbose --checkpoint=(.+) "
+                                + "--interval=(\\d+) --resume "
+                                + "--cache=(\\d+) --specialize=(\\d+) "
+                                + "--batch=(.+) --jobs=([1-9]\\d*) --lazy "
+                                + "--pack --follow --keystream=(.+) "
+                                + "--engine=(auto|direct|table|fused|"
+                                + "tree|specialized) --reload "
+                                + "--compress --=(.*){0,3}", args);
+            boolean batch = options.contains("--batch");
+            if (!options.ok()
+                || (options.contains("--resume")
+                    && !options.contains("--checkpoint"))
+                || batch != options.get("--").isEmpty()
+                || (batch && options.contains("--checkpoint"))
+                || ((options.contains("--pack")
+                     || options.contains("--compress"))
+                    && options.contains("--checkpoint"))
+                || (options.contains("--follow")
+                    && options.get("--").size() < 2)
+                || (options.contains("--engine")
+                    && options.contains("--specialize"))
+                || (options.contains("--reload")
+                    && (batch || options.contains("--lazy")))) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--checkpoint=FILE [--interval=N] "
+                            + "[--resume]] [--cache=N] "
+                            + "[--specialize=N | --engine=NAME] "
+                            + "[--lazy | --reload] "
+                            + "[--pack] [--compress] [--keystream=STORE] "
+                            + "CONFIG [INPUT [OUTPUT]]%n"
+                            + "   or: java enigma.Main --follow "
+                            + "[--checkpoint=FILE [--interval=N] "
+                            + "[--resume]] [--cache=N] "
+                            + "[--specialize=N | --engine=NAME] "
+                            + "[--lazy | --reload] "
+                            + "[--pack] [--compress] [--keystream=STORE] "
+                            + "CONFIG INPUT [OUTPUT]%n"
+                            + "   or: java enigma.Main --batch=MANIFEST "
+                            + "[--jobs=N] [--cache=N] "
+                            + "[--specialize=N | --engine=NAME] [--lazy] "
+                            + "[--pack] [--compress] [--keystream=STORE]");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            _lazy = options.contains("--lazy");
+            _reload = options.contains("--reload");
+            _pack = options.contains("--pack");
+            _compress = options.contains("--compress");
+            if (options.contains("--keystream")) {
+                _keystreamFile = new File(options.getFirst("--keystream"));
+            }
+            if (options.contains("--cache")) {
+                _cacheSize = Integer.parseInt(options.getFirst("--cache"));
+                _cacheStats = true;
+            }
+            if (options.contains("--specialize")) {
+                _specializeThreshold =
+                    Long.parseLong(options.getFirst("--specialize"));
+            }
+            if (options.contains("--engine")
+                && !options.getFirst("--engine").equals("auto")) {
+                _engine = EnigmaEngine.forName(options.getFirst("--engine"));
+            }
+            if (batch) {
+                int jobs = options.contains("--jobs")
+                    ? Integer.parseInt(options.getFirst("--jobs"))
+                    : Runtime.getRuntime().availableProcessors();
+                Batch runner =
+                    new Batch(new File(options.getFirst("--batch")));
+                if (runner.run(jobs, System.out) == 0) {
+                    return;
+                }
+                System.exit(1);
+            }
+            Main main = new Main(options.get("--"),
+                                 options.getFirst("--checkpoint"),
+                                 options.contains("--interval")
+                                 ? Long.parseLong(
+                                     options.getFirst("--interval"))
+                                 : DEFAULT_INTERVAL,
+                                 options.contains("--resume"),
+                                 options.contains("--follow"));
+            main.process();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -50,23 +213,85 @@ public final class Main {
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        this(args, null, DEFAULT_INTERVAL, false, false);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+     *  on main), checkpointing to the file named CHECKPOINT (if non-null)
+     *  every INTERVAL characters, resuming from it if RESUME, and following
+     *  the input file as it grows if FOLLOW. */
+    Main(List<String> args, String checkpoint, long interval,
+         boolean resume, boolean follow) {
+        _configuration = readConfiguration(args.get(0));
+        if (_reload) {
+            _reloader = new ConfigurationReloader(
+                new File(args.get(0)), _configuration,
+                f -> readConfiguration(f.getPath()),
+                ConfigurationReloader.POLL_INTERVAL);
+        }
+        _interval = interval;
+        if (follow) {
+            if (args.size() < 2) {
+                throw error("following requires a named input file");
+            }
+            _followed = new File(args.get(1));
+        }
+        if (checkpoint != null) {
+            _checkpointFile = new File(checkpoint);
+            if (resume && _checkpointFile.exists()) {
+                if (args.size() < 3) {
+                    throw error("resuming requires named input and "
+                                + "output files");
+                }
+                _resumeFrom = Checkpoint.read(_checkpointFile);
+            }
+        }
+        long inputOffset =
+            _resumeFrom == null ? 0 : _resumeFrom.inputOffset();
+        long outputOffset =
+            _resumeFrom == null ? -1 : _resumeFrom.outputOffset();
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            openInput(getInput(args.get(1), inputOffset), inputOffset);
         } else {
-            _input = new Scanner(System.in);
+            openInput(System.in, 0);
         }
 
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+            _output = getOutput(args.get(2), outputOffset);
+        } else if (_compress) {
+            _output = new PrintStream(Compression.compress(System.out));
         } else {
             _output = System.out;
         }
+        openPacker();
+        openKeystreams();
+    }
+
+    /** Convert the messages in the file named INPUT under CONFIGURATION,
+     *  writing them to the file named OUTPUT. */
+    Main(Configuration configuration, String input, String output) {
+        _configuration = configuration;
+        _interval = DEFAULT_INTERVAL;
+        openInput(getInput(input, 0), 0);
+        _output = getOutput(output, -1);
+        openPacker();
+        openKeystreams();
+    }
+
+    /** Return a Configuration read from the file named NAME, using the
+     *  settings cache size and catalog mode given on the command line. */
+    static Configuration readConfiguration(String name) {
+        if (_lazy) {
+            return Configuration.index(new File(name), _cacheSize);
+        }
+        try (Scanner config = getInput(name)) {
+            return Configuration.read(config, _cacheSize);
+        }
     }
 
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    private static Scanner getInput(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -74,124 +299,544 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a stream reading from the file named NAME, starting
+     *  at byte OFFSET. */
+    private InputStream getInput(String name, long offset) {
         try {
-            return new PrintStream(new File(name));
+            FileInputStream in = new FileInputStream(name);
+            in.getChannel().position(offset);
+            return in;
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine machine = readConfig();
+    /** Read input from IN, whose first byte is at OFFSET in its file,
+     *  decompressing it first if it starts at the beginning of a
+     *  compressed file: through _packed or _framed if IN starts at the
+     *  beginning of a file in packed or framed format, and otherwise
+     *  through _input. */
+    private void openInput(InputStream in, long offset) {
+        if (offset == 0) {
+            in = new BufferedInputStream(in, Compression.BUFFER_SIZE);
+            int compression = Compression.format(in);
+            if (compression != Compression.NONE) {
+                if (_checkpointFile != null) {
+                    throw error("compressed input cannot be checkpointed");
+                } else if (_followed != null) {
+                    throw error("compressed input cannot be followed");
+                }
+                in = new BufferedInputStream(
+                    Compression.decompress(in, compression),
+                    Compression.BUFFER_SIZE);
+            }
+            int framing = FramedReader.framing(in);
+            boolean packed = framing == FramedReader.NONE
+                && PackedReader.isPacked(in);
+            String format = packed ? "packed" : "framed";
+            if (packed || framing != FramedReader.NONE) {
+                if (_checkpointFile != null) {
+                    throw error("%s input cannot be checkpointed", format);
+                } else if (_followed != null) {
+                    throw error("%s input cannot be followed", format);
+                }
+            }
+            if (packed) {
+                _packed = new PackedReader(in, _configuration.alphabet());
+                return;
+            } else if (framing != FramedReader.NONE) {
+                _framed = new FramedReader(in, framing);
+                return;
+            }
+        }
+        _input = new LineReader(in, offset);
+    }
+
+    /** If --pack was specified, start writing packed output to
+     *  _output. */
+    private void openPacker() {
+        if (_pack) {
+            _packer = new PackedWriter(_output, _configuration.alphabet());
+        }
+    }
+
+    /** If --keystream was specified, map its store. */
+    private void openKeystreams() {
+        if (_keystreamFile != null) {
+            _keystreams =
+                KeystreamStore.open(_keystreamFile, _configuration.alphabet());
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  if --compress was specified.  If OFFSET is non-negative, the file
+     *  is first truncated to OFFSET bytes and then appended to;
+     *  otherwise it is overwritten. */
+    private PrintStream getOutput(String name, long offset) {
+        try {
+            if (_compress) {
+                return new PrintStream(Compression.compress(
+                    new FileOutputStream(name)));
+            }
+            FileOutputStream out;
+            if (offset >= 0) {
+                out = new FileOutputStream(name, true);
+                if (out.getChannel().size() < offset) {
+                    throw error("output %s is shorter than its checkpoint",
+                                name);
+                }
+                out.getChannel().truncate(offset);
+            } else {
+                out = new FileOutputStream(name);
+            }
+            _outputFile = out;
+            _written = Math.max(offset, 0);
+            return new PrintStream(new BufferedOutputStream(out) {
+                @Override
+                public synchronized void write(int b) throws IOException {
+                    super.write(b);
+                    _written += 1;
+                }
+
+                @Override
+                public synchronized void write(byte[] b, int off, int len)
+                    throws IOException {
+                    super.write(b, off, len);
+                    _written += len;
+                }
+            });
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Configure an Enigma machine from _configuration and apply it to
+     *  the messages in _input, sending the results to _output. */
+    void process() {
+        try {
+            if (_reloader != null) {
+                _reloader.start();
+            }
+            Machine machine = newMachine();
+            if (_packed != null) {
+                processPacked(machine);
+            } else if (_framed != null) {
+                processFramed(machine);
+            } else {
+                processLines(machine);
+            }
+            if (_output.checkError()) {
+                throw error("error writing output");
+            }
+        } finally {
+            close();
+        }
+        if (_cacheStats) {
+            System.err.printf("settings cache: %d hits, %d misses%n",
+                              _configuration.settingsCache().hits(),
+                              _configuration.settingsCache().misses());
+        }
+    }
+
+    /** Return a new machine of _configuration, converting with the
+     *  engine chosen on the command line. */
+    private Machine newMachine() {
+        Machine machine = _configuration.newMachine();
+        if (_specializeThreshold > 0) {
+            machine.setSpecializeThreshold(_specializeThreshold);
+        } else if (_engine != null) {
+            machine.setEngine(_engine, 0);
+        } else {
+            machine.setEngineSelector(SELECTOR);
+        }
+        return machine;
+    }
+
+    /** Return the machine with which to start a new section, given that
+     *  the previous section used M: M itself, unless _reloader has
+     *  published a new configuration since M's, in which case that
+     *  becomes _configuration and the result is a new machine of it. */
+    private Machine sectionMachine(Machine M) {
+        if (_reloader != null) {
+            Configuration latest = _reloader.current();
+            if (latest != _configuration) {
+                _configuration = latest;
+                return newMachine();
+            }
+        }
+        return M;
+    }
+
+    /** Tell _reloader, if there is one, that the rotors of M are in
+     *  use. */
+    private void rotorsInUse(Machine M) {
+        if (_reloader != null) {
+            String[] names = new String[M.numRotors()];
+            for (int k = 0; k < names.length; k += 1) {
+                names[k] = M.getRotor(k).name();
+            }
+            _reloader.inUse(names);
+        }
+    }
+
+    /** Apply M to the lines of _input, sending the results to
+     *  _output. */
+    private void processLines(Machine M) {
         String settings = "";
-        Pattern settingsPattern = Pattern
-                .compile("^\\*([\\s|\\t]\\w+)+([\\s|\\t](\\(\\w+\\))+)*");
-        do {
+        if (_resumeFrom != null) {
+            settings = _resumeFrom.key();
+            setUp(M, settings);
+            rotorsInUse(M);
+            M.setRingSetting(_resumeFrom.rings());
+            M.setRotors(_resumeFrom.positions());
+        } else if (_followed == null && !_input.hasNextLine()) {
+            throw error("no input");
+        }
+        long pending = 0;
+        while (true) {
+            if (_followed == null) {
+                if (!_input.hasNextLine()) {
+                    break;
+                }
+            } else if (!_input.hasCompleteLine()) {
+                _output.flush();
+                if (_checkpointFile != null && pending > 0) {
+                    checkpoint(M, settings);
+                    pending = 0;
+                }
+                if (!_inputWait.getAsBoolean()) {
+                    break;
+                }
+                continue;
+            }
             String currentLine = _input.nextLine();
-            if (checkMatch(settingsPattern, currentLine)) {
+            if (isSettingsLine(currentLine)) {
                 settings = currentLine;
-                setUp(machine, settings);
+                M = sectionMachine(M);
+                setUp(M, settings);
+                rotorsInUse(M);
+                startKeystream(M);
+                if (_packer != null) {
+                    _packer.section(currentLine);
+                }
             } else if (!settings.equals("")) {
-                printMessageLine(machine.convert(currentLine));
+                convertLine(M, currentLine,
+                            _followed != null || _input.hasNextLine());
+                pending += currentLine.length();
+                if (_checkpointFile != null && pending >= _interval) {
+                    checkpoint(M, settings);
+                    pending = 0;
+                }
             } else {
                 throw new EnigmaException("Missing or Invalid setting!");
             }
-        } while (_input.hasNextLine());
+        }
+        _output.flush();
+        if (_checkpointFile != null && !settings.equals("")) {
+            checkpoint(M, settings);
+        }
     }
 
-    /**
-     * Returns true if the string s matches pattern p
-     * (referenced from hw4).
-     * @param p Pattern object
-     * @param s regrex String
-     * @return true if pattern and string matches.
-     */
-    private static boolean checkMatch(Pattern p, String s) {
-        Matcher mat = p.matcher(s);
-        return mat.matches();
+    /** Wait until _followed may have grown, returning false if I have
+     *  been stopped instead.  Changes are noticed through a WatchService
+     *  where possible, but the file is also polled every POLL_INTERVAL
+     *  milliseconds in case its changes are not reported. */
+    private boolean awaitInput() {
+        if (_followed.length() < _input.offset()) {
+            throw error("input %s was truncated", _followed);
+        }
+        try {
+            if (_watcher == null && !_stopped) {
+                _watcher = watch(_followed);
+            }
+            if (_watcher == null) {
+                Thread.sleep(POLL_INTERVAL);
+            } else {
+                WatchKey key =
+                    _watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException excp) {
+            return false;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !_stopped;
     }
 
-    /** Return an Enigma machine configured from the contents
-     *  of configuration file _config. */
-    private Machine readConfig() {
+    /** Return a WatchService reporting changes to the directory
+     *  containing FILE, or null if there is none. */
+    private static WatchService watch(File file) {
+        Path dir = file.getAbsoluteFile().toPath().getParent();
+        WatchService watcher = null;
         try {
-            _allRotors = new HashMap<>();
-            String alphabet = _config.next();
-            _alphabet = new Alphabet(alphabet);
-
-            _numRotors = _config.nextInt();
-            _numPawls = _config.nextInt();
-
-            Pattern rotorDescPattern = Pattern
-                    .compile("^(\\s*[^\\(\\)\\s]+\\s*){2}"
-                            + "(\\([\\w|.]*\\)\\s*)*");
-            while (_config.hasNextLine()) {
-                String rotorDesc = _config.nextLine().trim();
-
-                if (checkMatch(rotorDescPattern, rotorDesc)) {
-                    while (_config.hasNext("(\\s*\\([\\w|.]"
-                            + "*\\)\\s*)*")) {
-                        rotorDesc += _config.nextLine().trim();
-                    }
-                    if (rotorDesc.equals("")) {
-                        continue;
-                    } else {
-                        String[] components = rotorDesc
-                                .split("[\s|\t]+");
-                        String rotorName = components[0];
-                        _allRotors.put(rotorName, readRotor(components));
-                    }
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                         StandardWatchEventKinds.ENTRY_CREATE);
+            return watcher;
+        } catch (IOException | UnsupportedOperationException excp) {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException excp2) {
+                    /* Ignore: we fall back to polling. */
                 }
             }
-            return new Machine(_alphabet, _numRotors, _numPawls, _allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            return null;
         }
     }
 
-    /**
-     * Return a rotor, reading its description from _config.
-     * @param components String array of rotor descriptions
-     * @return a Rotor
-     */
-    private Rotor readRotor(String[] components) {
-        try {
-            String rotorName = "", rotorTypeAndNotches = "", cycles = "";
-            for (int i = 0; i < components.length; i++) {
-                if (i == 0) {
-                    rotorName = components[i];
-                } else if (i == 1) {
-                    rotorTypeAndNotches = components[i];
+    /** Wait for a followed input to grow by calling WAIT in place of
+     *  watching and polling its file.  WAIT is called each time the
+     *  complete lines of the input have all been converted (and the
+     *  output flushed and checkpointed), and returns false to stop
+     *  following.  This lets a follower be driven step by step. */
+    void setInputWait(BooleanSupplier wait) {
+        _inputWait = wait;
+    }
+
+    /** Take new configurations from RELOADER, as with --reload, in
+     *  place of a reloader of my own, starting with its current one.
+     *  This lets a test publish a configuration when it chooses. */
+    void setReloader(ConfigurationReloader reloader) {
+        _reloader = reloader;
+        _configuration = reloader.current();
+    }
+
+    /** Stop following the input, ending a call to process (from another
+     *  thread) once the input converted so far has been written. */
+    void stop() {
+        _stopped = true;
+        WatchService watcher = _watcher;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException excp) {
+                /* Ignore: process notices _stopped within
+                 * POLL_INTERVAL. */
+            }
+        }
+    }
+
+    /** Apply M to the messages of _packed, sending the results to
+     *  _output.  Each section of _packed must record its settings
+     *  line. */
+    private void processPacked(Machine M) {
+        int kind = _packed.next();
+        if (kind == PackedReader.END) {
+            throw error("no input");
+        }
+        boolean configured = false;
+        while (kind != PackedReader.END) {
+            if (kind == PackedReader.SECTION_RECORD) {
+                String settings = _packed.settings();
+                if (!isSettingsLine(settings)) {
+                    throw new EnigmaException("Missing or Invalid setting!");
+                }
+                M = sectionMachine(M);
+                setUp(M, settings);
+                rotorsInUse(M);
+                startKeystream(M);
+                configured = true;
+                if (_packer != null) {
+                    _packer.section(settings);
+                }
+                kind = _packed.next();
+            } else if (!configured) {
+                throw new EnigmaException("Missing or Invalid setting!");
+            } else {
+                int[] msg = _packed.message();
+                int len = _packed.length();
+                convertIndices(M, msg, len);
+                if (_packer != null) {
+                    _packer.message(msg, len);
+                    kind = _packed.next();
                 } else {
-                    cycles += components[i];
+                    String text =
+                        _configuration.alphabet().toText(msg, len);
+                    kind = _packed.next();
+                    printMessageLine(text, kind != PackedReader.END);
                 }
             }
-            Permutation perm = new Permutation(cycles, _alphabet);
-            char rotorType = rotorTypeAndNotches.charAt(0);
-            if (rotorType == 'M') {
-                String notches = rotorTypeAndNotches.substring(1);
-                return new MovingRotor(rotorName, perm, notches);
-            } else if (rotorType == 'N') {
-                return new FixedRotor(rotorName, perm);
-            } else if (rotorType == 'R') {
-                return new Reflector(rotorName, perm);
+        }
+        _output.flush();
+    }
+
+    /** Apply M to the framed messages of _framed, sending the results to
+     *  _output. */
+    private void processFramed(Machine M) {
+        int kind = _framed.next();
+        if (kind == FramedReader.END) {
+            throw error("no input");
+        }
+        boolean configured = false;
+        while (kind != FramedReader.END) {
+            String line = _framed.line();
+            if (kind == FramedReader.SECTION_FRAME) {
+                if (!isSettingsLine(line)) {
+                    throw new EnigmaException("Missing or Invalid setting!");
+                }
+                M = sectionMachine(M);
+                setUp(M, line);
+                rotorsInUse(M);
+                startKeystream(M);
+                configured = true;
+                if (_packer != null) {
+                    _packer.section(line);
+                }
+                kind = _framed.next();
+            } else if (!configured) {
+                throw new EnigmaException("Missing or Invalid setting!");
             } else {
-                throw new EnigmaException("Invalid rotor type found!");
+                kind = _framed.next();
+                convertLine(M, line, kind != FramedReader.END);
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
         }
+        _output.flush();
+    }
+
+    /** Apply M to the message line LINE, sending the result to _output
+     *  as text (followed by a line terminator iff MORE) or, with --pack,
+     *  as a packed message. */
+    private void convertLine(Machine M, String line, boolean more) {
+        if (_packer == null && _keystream == null) {
+            printMessageLine(M.convert(line), more);
+            return;
+        }
+        if (_indices.length < line.length()) {
+            _indices = new int[Math.max(line.length(), 2 * _indices.length)];
+        }
+        int len = _configuration.alphabet().toIndices(line, _indices);
+        convertIndices(M, _indices, len);
+        if (_packer != null) {
+            _packer.message(_indices, len);
+        } else {
+            printMessageLine(_configuration.alphabet().toText(_indices, len),
+                             more);
+        }
+    }
+
+    /** Use the keystream of M's current state, if _keystreams holds it,
+     *  for the following messages. */
+    private void startKeystream(Machine M) {
+        _keystream = _keystreams == null ? null : _keystreams.lookup(M);
+        _position = 0;
+    }
+
+    /** Convert MSG[0 .. LEN-1] (as alphabet indices) in place: through
+     *  _keystream while it covers them, and otherwise with M. */
+    private void convertIndices(Machine M, int[] msg, int len) {
+        int done = 0;
+        if (_keystream != null) {
+            done = _keystream.periodic() ? len
+                : (int) Math.min(len, _keystream.rows() - _position);
+            _keystream.convert(_position, msg, 0, done, msg);
+            _position += done;
+            if (done < len) {
+                syncKeystream(M);
+                _keystream = null;
+            }
+        }
+        for (int i = done; i < len; i += 1) {
+            msg[i] = M.convert(msg[i]);
+        }
+    }
+
+    /** Set the rotors of M to where they would be had M, rather than
+     *  _keystream, converted the characters since the last settings
+     *  line. */
+    private void syncKeystream(Machine M) {
+        if (_keystream != null) {
+            M.setRotors(_keystream.settings(_position));
+        }
+    }
+
+    /** Close my input and, unless it is the standard output, my
+     *  output. */
+    private void close() {
+        if (_reloader != null) {
+            _reloader.stop();
+        }
+        if (_packed != null) {
+            _packed.close();
+        } else if (_framed != null) {
+            _framed.close();
+        } else {
+            _input.close();
+        }
+        if (_watcher != null) {
+            try {
+                _watcher.close();
+            } catch (IOException excp) {
+                /* Ignore. */
+            }
+        }
+        if (_output != System.out) {
+            _output.close();
+            if (_output.checkError()) {
+                throw error("error writing output");
+            }
+        }
+    }
+
+    /** Make all output so far durable and then record a Checkpoint of M,
+     *  which is running under settings line SETTINGS. */
+    private void checkpoint(Machine M, String settings) {
+        if (_outputFile == null) {
+            throw error("checkpointing requires a named output file");
+        }
+        _output.flush();
+        if (_output.checkError()) {
+            throw error("error writing output");
+        }
+        try {
+            _outputFile.getFD().sync();
+        } catch (IOException excp) {
+            throw error("could not sync output");
+        }
+        syncKeystream(M);
+        new Checkpoint(settings, M.rotorSettings(), M.ringSettings(),
+                       _input.offset(), _written).write(_checkpointFile);
+    }
+
+    /**
+     * Returns true if the string s matches pattern p
+     * (referenced from hw4).
+     * @param p Pattern object
+     * @param s regrex String
+     * @return true if pattern and string matches.
+     */
+    static boolean checkMatch(Pattern p, String s) {
+        Matcher mat = p.matcher(s);
+        return mat.matches();
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment.  Settings
+     *  lines already seen are not compiled again, but taken from the
+     *  settings cache of _configuration. */
     private void setUp(Machine M, String settings) {
-        String[] rotors = new String[_numRotors];
+        setUp(_configuration, M, settings);
+    }
+
+    /** Set M, a machine of CONFIG, according to the settings line
+     *  SETTINGS, taking its compiled form from the settings cache of
+     *  CONFIG if possible. */
+    static void setUp(Configuration config, Machine M, String settings) {
+        M.configure(config.settingsCache()
+                    .get(settings, s -> compile(config, M, s)));
+    }
+
+    /** Return the Settings specified by the settings line SETTINGS,
+     *  compiled and validated by M, a machine of CONFIG. */
+    private static Settings compile(Configuration config, Machine M,
+                                    String settings) {
+        int numRotors = config.numRotors();
+        String[] rotors = new String[numRotors];
         if (settings.trim().startsWith("*")) {
             settings = settings.substring(2);
         } else {
@@ -200,68 +845,164 @@ public final class Main {
         String[] settingArr = settings.split("\s");
         String cycles = "", initialSetting = "", ringSetting = "";
         for (int i = 0; i < settingArr.length; i++) {
-            if (i < _numRotors) {
+            if (i < numRotors) {
                 rotors[i] = settingArr[i];
             } else if (settingArr[i].startsWith("(")
                     && settingArr[i].endsWith(")")) {
                 cycles += settingArr[i] + " ";
-            } else if (i == _numRotors) {
+            } else if (i == numRotors) {
                 initialSetting = settingArr[i];
             } else {
                 ringSetting = settingArr[i];
             }
         }
-        M.insertRotors(rotors);
-        M.setRotors(initialSetting);
-        M.setRingSetting(ringSetting);
-        Permutation plugboard = new Permutation(cycles, _alphabet);
-        M.setPlugboard(plugboard);
+        Permutation plugboard =
+            new Permutation(cycles, config.alphabet());
+        return M.compile(rotors, initialSetting, ringSetting, plugboard);
     }
 
+    /** Return true iff LINE is a settings line.  Only lines that start
+     *  with '*' are matched against SETTINGS_LINE; any other is known at
+     *  once to be a message line. */
+    static boolean isSettingsLine(String line) {
+        return !line.isEmpty() && line.charAt(0) == '*'
+            && checkMatch(SETTINGS_LINE, line);
+    }
+
+    /** Form of a settings line. */
+    static final Pattern SETTINGS_LINE =
+        Pattern.compile("^\\*(?:[\\s|\\t]\\w+)++"
+                        + "(?:[\\s|\\t](?:\\(\\w+\\))++)*+",
+                        Pattern.UNICODE_CHARACTER_CLASS);
+
     /** Return true iff verbose option specified. */
     static boolean verbose() {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        int start = 0, msgLength = msg.length(), size = 5;
-        String output = "";
-        while (msgLength >= size) {
-            output += msg.substring(start, start + size) + " ";
-            start += size; msgLength -= size;
-        }
-        if (msgLength > 0) {
-            output += msg.substring(start, start + msgLength);
+    /** Print MSG in groups of five characters (except that the last
+     *  group may have fewer), followed by a line terminator iff MORE. */
+    private void printMessageLine(String msg, boolean more) {
+        StringBuilder output = new StringBuilder(msg.length() * 6 / 5 + 1);
+        int size = 5, n = 0;
+        for (int i = 0; i < msg.length(); n += 1) {
+            if (n > 0 && n % size == 0) {
+                output.append(' ');
+            }
+            int c = msg.codePointAt(i);
+            output.appendCodePoint(c);
+            i += Character.charCount(c);
         }
-        _output.print(output.trim());
-        if (_input.hasNextLine()) {
+        _output.print(output);
+        if (more) {
             _output.print("\r\n");
         }
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** The configuration of my machines. */
+    private Configuration _configuration;
+
+    /** Source of input messages, unless they are packed or framed. */
+    private LineReader _input;
 
-    /** All Rotors read from config represented as Comparable. */
-    private HashMap<String, Rotor> _allRotors;
+    /** Source of packed input messages, or null. */
+    private PackedReader _packed;
 
-    /** Source of input messages. */
-    private Scanner _input;
+    /** Publishes the latest configuration read from CONFIG, if
+     *  --reload was specified; otherwise null. */
+    private ConfigurationReloader _reloader;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Source of framed input messages, or null. */
+    private FramedReader _framed;
+
+    /** Destination of packed output messages, or null. */
+    private PackedWriter _packer;
+
+    /** Keystreams available to me, or null. */
+    private KeystreamStore _keystreams;
+
+    /** Keystream of the current section, or null if converting with the
+     *  machine. */
+    private KeystreamStore.Entry _keystream;
+
+    /** Position in _keystream of the next character. */
+    private long _position;
+
+    /** Buffer for the alphabet indices of a message line. */
+    private int[] _indices = new int[256];
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** The file underlying _output, or null for the standard output. */
+    private FileOutputStream _outputFile;
+
+    /** Total number of bytes in the output file, including those
+     *  written by earlier runs that we resumed. */
+    private long _written;
+
+    /** Default number of converted characters between checkpoints. */
+    static final long DEFAULT_INTERVAL = 1 << 20;
+
+    /** File receiving checkpoints, or null if not checkpointing. */
+    private File _checkpointFile;
+
+    /** Number of converted characters between checkpoints. */
+    private long _interval;
+
+    /** Milliseconds between polls of a followed input file. */
+    static final long POLL_INTERVAL = 500;
+
+    /** The input file if following it, or null. */
+    private File _followed;
+
+    /** Watches the directory of _followed once following has waited for
+     *  input, or null. */
+    private volatile WatchService _watcher;
+
+    /** Called to wait for a followed input to grow, returning false to
+     *  stop following. */
+    private BooleanSupplier _inputWait = this::awaitInput;
+
+    /** True once I have been told to stop following. */
+    private volatile boolean _stopped;
+
+    /** Checkpoint from which this run resumes, or null. */
+    private Checkpoint _resumeFrom;
+
     /** True if --verbose specified. */
     private static boolean _verbose;
 
-    /** Number of Rotors. */
-    private int _numRotors;
+    /** True iff --lazy specified. */
+    private static boolean _lazy;
+
+    /** True iff --reload specified. */
+    private static boolean _reload;
+
+    /** True iff --pack specified. */
+    private static boolean _pack;
+
+    /** True iff --compress specified. */
+    private static boolean _compress;
+
+    /** The store named by --keystream, or null. */
+    private static File _keystreamFile;
+
+    /** Maximum number of compiled settings lines to keep. */
+    private static int _cacheSize = SettingsCache.DEFAULT_CAPACITY;
+
+    /** True if --cache specified, so that the settings cache's hits and
+     *  misses are reported. */
+    private static boolean _cacheStats;
+
+    /** Number of characters to convert under one settings line before
+     *  specializing, or 0 for never. */
+    private static long _specializeThreshold;
+
+    /** The engine named by --engine, or null to choose automatically. */
+    private static EnigmaEngine _engine;
 
-    /** Number of Pawls. */
-    private int _numPawls;
+    /** Chooses engines for all machines without a fixed engine. */
+    private static final EngineSelector SELECTOR =
+        new EngineSelector(EnigmaEngine.ENGINES);
 }
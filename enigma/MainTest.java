@@ -0,0 +1,278 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of JUnit tests of Main following a growing input file.
+ *  @author Zwea Htet
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Append TEXT to FILE, creating it if need be. */
+    private static void append(File file, String text) {
+        try {
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Return the lines of FILE (none if it does not exist). */
+    private static List<String> lines(File file) {
+        try {
+            if (!file.exists()) {
+                return new ArrayList<>();
+            }
+            String text = new String(Files.readAllBytes(file.toPath()),
+                                     StandardCharsets.UTF_8);
+            return text.isEmpty() ? new ArrayList<>()
+                : Arrays.asList(text.split("\\R"));
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Return MESSAGES converted in turn by the naval machine set up
+     *  with SETTINGS, each in groups of five as Main prints it. */
+    private static List<String> convert(String settings,
+                                        String... messages) {
+        Configuration config = navalConfiguration();
+        Machine machine = config.newMachine();
+        Main.setUp(config, machine, settings);
+        List<String> result = new ArrayList<>();
+        for (String message : messages) {
+            String converted = machine.convert(message.replace(" ", ""));
+            StringBuilder grouped = new StringBuilder();
+            for (int i = 0; i < converted.length(); i += 5) {
+                if (i > 0) {
+                    grouped.append(' ');
+                }
+                grouped.append(converted, i,
+                               Math.min(i + 5, converted.length()));
+            }
+            result.add(grouped.toString());
+        }
+        return result;
+    }
+
+    /** Return a follower of INPUT under the configuration in CONFIG,
+     *  writing OUTPUT, checkpointing to CHECKPOINT (if non-null), and
+     *  resuming from it iff RESUME. */
+    private static Main follower(File config, File input, File output,
+                                 File checkpoint, boolean resume) {
+        return new Main(Arrays.asList(config.getPath(), input.getPath(),
+                                      output.getPath()),
+                        checkpoint == null ? null : checkpoint.getPath(),
+                        Main.DEFAULT_INTERVAL, resume, true);
+    }
+
+    /** Return FRAMES (tags and lines in turn) in the binary framed
+     *  format, preceded by its header iff HEADER. */
+    private static byte[] framed(boolean header, Object... frames)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (header) {
+            out.writeInt(FramedReader.MAGIC);
+            out.writeShort(FramedReader.VERSION);
+        }
+        for (int k = 0; k < frames.length; k += 2) {
+            byte[] line =
+                ((String) frames[k + 1]).getBytes(StandardCharsets.UTF_8);
+            out.writeByte((Character) frames[k]);
+            out.writeInt(line.length);
+            out.write(line);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return a stream of FIRST and then REST, which runs BETWEEN when
+     *  it is first asked for more than FIRST. */
+    private static InputStream twoPart(byte[] first, byte[] rest,
+                                       Runnable between) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (_pos == first.length && _part == first) {
+                    between.run();
+                    _part = rest;
+                    _pos = 0;
+                }
+                if (_pos == _part.length) {
+                    return -1;
+                }
+                int n = Math.min(len, _part.length - _pos);
+                System.arraycopy(_part, _pos, b, off, n);
+                _pos += n;
+                return n;
+            }
+
+            /** The part being read. */
+            private byte[] _part = first;
+            /** Position in _part. */
+            private int _pos;
+        };
+    }
+
+    /** Delete the files in DIR, and DIR. */
+    private static void delete(File dir) {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFollow() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            File config = new File(dir, "naval.conf"),
+                input = new File(dir, "in.txt"),
+                output = new File(dir, "out.txt");
+            append(config, NAVAL_CONFIG);
+            append(input, "* B Beta I II III AAAA\nHELLO WO");
+            String[] appended = {
+                "RLD\n", "FROM HIS\nSHOULDER\n",
+                "* B Beta III II I AXLE\nHIAWATHA\n",
+            };
+            List<List<String>> seen = new ArrayList<>();
+            Main main = follower(config, input, output, null, false);
+            main.setInputWait(() -> {
+                seen.add(lines(output));
+                if (seen.size() > appended.length) {
+                    return false;
+                }
+                append(input, appended[seen.size() - 1]);
+                return true;
+            });
+            main.process();
+
+            List<String> expected = new ArrayList<>(convert(
+                "* B Beta I II III AAAA", "HELLO WORLD", "FROM HIS",
+                "SHOULDER"));
+            expected.addAll(convert("* B Beta III II I AXLE", "HIAWATHA"));
+            int[] converted = { 0, 1, 3, 4 };
+            assertEquals(converted.length, seen.size());
+            for (int k = 0; k < converted.length; k += 1) {
+                assertEquals(expected.subList(0, converted[k]),
+                             seen.get(k));
+            }
+            assertEquals(expected, lines(output));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testFollowResume() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        try {
+            File config = new File(dir, "naval.conf"),
+                input = new File(dir, "in.txt"),
+                output = new File(dir, "out.txt"),
+                checkpoint = new File(dir, "out.ckpt");
+            append(config, NAVAL_CONFIG);
+            append(input, "* B Beta I II III AAAA\nHELLO WORLD\n");
+            Main first = follower(config, input, output, checkpoint, true);
+            first.setInputWait(() -> false);
+            first.process();
+            assertTrue(checkpoint.exists());
+
+            append(input, "FROM HIS\nSHOULDER\n");
+            Main second = follower(config, input, output, checkpoint, true);
+            second.setInputWait(() -> false);
+            second.process();
+            assertEquals(convert("* B Beta I II III AAAA", "HELLO WORLD",
+                                 "FROM HIS", "SHOULDER"),
+                         lines(output));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testReloadFramed() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        try {
+            File config = new File(dir, "naval.conf");
+            append(config, NAVAL_CONFIG);
+            ConfigurationReloader reloader =
+                new ConfigurationReloader(config,
+                                          Main.readConfiguration(
+                                              config.getPath()),
+                                          f -> Main.readConfiguration(
+                                              f.getPath()),
+                                          60_000);
+            String settings = "* B Beta I II III AAAA";
+            byte[] first = framed(true, FramedReader.SECTION, settings,
+                                  FramedReader.MESSAGE, "HELLO WORLD");
+            byte[] rest = framed(false, FramedReader.SECTION, settings,
+                                 FramedReader.MESSAGE, "FROM HIS");
+            System.setIn(twoPart(first, rest, () -> {
+                        long modified = config.lastModified();
+                        try {
+                            Files.write(config.toPath(), NAVAL_CONFIG
+                                        .replaceAll("III MV .*\\n", "")
+                                        .getBytes(StandardCharsets.UTF_8));
+                        } catch (IOException excp) {
+                            throw new UncheckedIOException(excp);
+                        }
+                        config.setLastModified(modified + 2000);
+                        assertFalse(reloader.check());
+                        assertFalse(reloader.check());
+                    }));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(output, true, "UTF-8"));
+            Main main = new Main(Arrays.asList(config.getPath()));
+            main.setReloader(reloader);
+            main.process();
+
+            assertEquals(0, reloader.reloads());
+            List<String> expected = convert(settings, "HELLO WORLD");
+            expected.addAll(convert(settings, "FROM HIS"));
+            assertEquals(expected,
+                         Arrays.asList(output.toString("UTF-8")
+                                       .split("\\R")));
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+            delete(dir);
+        }
+    }
+}
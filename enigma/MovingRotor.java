@@ -19,6 +19,17 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _atNotch = new boolean[perm.size()];
+        notches.codePoints().forEach(c -> {
+                if (perm.alphabet().containsCodePoint(c)) {
+                    _atNotch[perm.alphabet().toIndex(c)] = true;
+                }
+            });
+    }
+
+    @Override
+    MovingRotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
     }
 
     @Override
@@ -36,4 +47,12 @@ class MovingRotor extends Rotor {
         return _notches;
     }
 
+    @Override
+    boolean atNotch() {
+        return _atNotch[permutation().wrap(setting())];
+    }
+
+    /** Element K is true iff I have a notch at setting K. */
+    private final boolean[] _atNotch;
+
 }
@@ -0,0 +1,381 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A table of the base-10 log probabilities of the n-grams (for one n
+ *  between MIN_ORDER and MAX_ORDER) of some language, over the indices
+ *  of an Alphabet, for scoring candidate decryptions.  The table is a
+ *  flat array of floats held outside the Java heap, either in a direct
+ *  buffer (when built by a Builder) or in a read-only mapping of a model
+ *  file (when loaded by map), so that even large models neither add to
+ *  garbage-collection work nor need to be read in before use.
+ *
+ *  The model file holds, in little-endian order, the ints MAGIC,
+ *  VERSION, n and the alphabet size, then each alphabet character as an
+ *  int, then the table, in which the entry for the n-gram c1 ... cn is
+ *  at index (...(c1 * size + c2) * size ...) + cn.
+ *
+ *  Scoring never allocates: score works directly on the int[] buffers
+ *  produced by Machine.convert, and a Scorer, created once, scores a
+ *  text one character at a time.
+ *  @author Zwea Htet
+ */
+class NGramModel {
+
+    /** Marks the start of every model file ("ENGN"). */
+    static final int MAGIC = 0x454e474e;
+
+    /** Current version of the file layout. */
+    static final int VERSION = 1;
+
+    /** Smallest and largest supported n. */
+    static final int MIN_ORDER = 2, MAX_ORDER = 4;
+
+    /** Largest supported number of table entries. */
+    static final int MAX_ENTRIES = 1 << 24;
+
+    /** A model for ALPHABET and n = ORDER whose file image (header and
+     *  table) is DATA. */
+    private NGramModel(Alphabet alphabet, int order, ByteBuffer data) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _order = order;
+        _high = entries(_size, order - 1);
+        _data = data;
+        _table = data.duplicate().position(headerSize(_size)).slice()
+            .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /** Return the model in the file FILE, which must be for ALPHABET,
+     *  mapped read-only into memory. */
+    static NGramModel map(File file, Alphabet alphabet) {
+        ByteBuffer data;
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.limit() < 16 || data.getInt(0) != MAGIC
+            || data.getInt(4) != VERSION) {
+            throw error("%s is not an n-gram model", file);
+        }
+        int order = data.getInt(8), size = data.getInt(12);
+        if (order < MIN_ORDER || order > MAX_ORDER || size != alphabet.size()
+            || entries(size, order) < 0
+            || data.limit() != headerSize(size)
+                                + 4L * entries(size, order)) {
+            throw error("%s is corrupt or for a different alphabet", file);
+        }
+        for (int k = 0; k < size; k += 1) {
+            if (data.getInt(16 + 4 * k) != alphabet.toCodePoint(k)) {
+                throw error("%s is for a different alphabet", file);
+            }
+        }
+        return new NGramModel(alphabet, order, data);
+    }
+
+    /** Write me to FILE, in the form read by map. */
+    void write(File file) {
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = _data.duplicate().clear();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return my n. */
+    int order() {
+        return _order;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the log probability of the n-gram TEXT[FROM .. FROM+n-1]
+     *  (as alphabet indices). */
+    float logProbability(int[] text, int from) {
+        int key = 0;
+        for (int i = from; i < from + _order; i += 1) {
+            key = key * _size + text[i];
+        }
+        return _table.get(key);
+    }
+
+    /** Return the sum of the log probabilities of the n-grams in
+     *  TEXT[FROM .. TO-1]. */
+    float score(int[] text, int from, int to) {
+        return score(text, from, to, Float.NEGATIVE_INFINITY);
+    }
+
+    /** Return the sum of the log probabilities of the n-grams in
+     *  TEXT[FROM .. TO-1], except that scoring stops as soon as the
+     *  partial sum falls below FLOOR, since (all log probabilities being
+     *  negative) the full sum must then fall below it too.  In that case,
+     *  the result is the partial sum. */
+    float score(int[] text, int from, int to, float floor) {
+        float total = 0;
+        int key = 0;
+        for (int i = from; i < Math.min(to, from + _order - 1); i += 1) {
+            key = key * _size + text[i];
+        }
+        for (int i = from + _order - 1; i < to; i += 1) {
+            key = key * _size + text[i];
+            total += _table.get(key);
+            if (total < floor) {
+                return total;
+            }
+            key -= text[i - _order + 1] * _high;
+        }
+        return total;
+    }
+
+    /** Return a new Scorer for this model. */
+    Scorer scorer() {
+        return new Scorer();
+    }
+
+    /** Scores a text presented one character at a time. */
+    class Scorer {
+
+        /** Forget all characters added so far. */
+        void reset() {
+            _key = 0;
+            _count = 0;
+            _total = 0;
+        }
+
+        /** Add C (an alphabet index) to the text, returning the new
+         *  score. */
+        float add(int c) {
+            _key = (_key % _high) * _size + c;
+            _count += 1;
+            if (_count >= _order) {
+                _total += _table.get(_key);
+            }
+            return _total;
+        }
+
+        /** Return the sum of the log probabilities of the n-grams of the
+         *  text added so far. */
+        float score() {
+            return _total;
+        }
+
+        /** Return the number of characters added so far. */
+        int count() {
+            return _count;
+        }
+
+        /** Table index of the last n (or fewer) characters added. */
+        private int _key;
+        /** Number of characters added. */
+        private int _count;
+        /** Current score. */
+        private float _total;
+    }
+
+    /** Accumulates n-gram counts from a corpus and builds a model. */
+    static class Builder {
+
+        /** A builder for a model for ALPHABET with n = ORDER. */
+        Builder(Alphabet alphabet, int order) {
+            if (order < MIN_ORDER || order > MAX_ORDER) {
+                throw error("n-gram order must be from %d to %d",
+                            MIN_ORDER, MAX_ORDER);
+            }
+            long entries = entries(alphabet.size(), order);
+            if (entries < 0) {
+                throw error("alphabet too large for %d-grams", order);
+            }
+            _alphabet = alphabet;
+            _order = order;
+            _counts = new long[(int) entries];
+            _high = entries(alphabet.size(), order - 1);
+        }
+
+        /** Count the n-grams of TEXT, continuing any n-gram begun by the
+         *  previous call.  A character that is not in the alphabet, even
+         *  after conversion to upper case, separates n-grams, as does a
+         *  call to endText.  Return this builder. */
+        Builder add(CharSequence text) {
+            for (int i = 0; i < text.length(); i += 1) {
+                add(text.charAt(i));
+            }
+            return this;
+        }
+
+        /** Count the n-grams of the text read from IN, as for add.
+         *  Return this builder. */
+        Builder add(Reader in) throws IOException {
+            char[] buffer = new char[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i += 1) {
+                    add(buffer[i]);
+                }
+            }
+            return endText();
+        }
+
+        /** Count the n-grams of the text in FILE (in the default
+         *  charset), as for add.  Return this builder. */
+        Builder add(File file) {
+            try (Reader in =
+                     new BufferedReader(new InputStreamReader(
+                                            new FileInputStream(file),
+                                            Charset.defaultCharset()))) {
+                return add(in);
+            } catch (IOException excp) {
+                throw error("could not read %s", file);
+            }
+        }
+
+        /** End the current text, so that no n-gram spans it and the next.
+         *  Return this builder. */
+        Builder endText() {
+            _run = 0;
+            _surrogate = 0;
+            return this;
+        }
+
+        /** Return the model built from the n-grams counted so far.  The
+         *  probability of an n-gram is its share of all those counted;
+         *  unseen n-grams are given a hundredth of the probability of one
+         *  occurrence. */
+        NGramModel build() {
+            long total = 0;
+            for (long count : _counts) {
+                total += count;
+            }
+            if (total == 0) {
+                throw error("no %d-grams in corpus", _order);
+            }
+            int size = _alphabet.size();
+            ByteBuffer data =
+                ByteBuffer.allocateDirect(headerSize(size)
+                                          + 4 * _counts.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            data.putInt(MAGIC).putInt(VERSION).putInt(_order).putInt(size);
+            for (int k = 0; k < size; k += 1) {
+                data.putInt(_alphabet.toCodePoint(k));
+            }
+            float unseen = (float) Math.log10(0.01 / total);
+            for (long count : _counts) {
+                data.putFloat(count == 0 ? unseen
+                              : (float) Math.log10((double) count / total));
+            }
+            return new NGramModel(_alphabet, _order, data.clear());
+        }
+
+        /** Count the UTF-16 unit C, which may be half of a surrogate
+         *  pair. */
+        private void add(char c) {
+            if (_surrogate != 0) {
+                char high = _surrogate;
+                _surrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    addCodePoint(Character.toCodePoint(high, c));
+                    return;
+                }
+                addCodePoint(high);
+            }
+            if (Character.isHighSurrogate(c)) {
+                _surrogate = c;
+            } else {
+                addCodePoint(c);
+            }
+        }
+
+        /** Count the character whose code point is C. */
+        private void addCodePoint(int c) {
+            if (!_alphabet.containsCodePoint(c)) {
+                c = Character.toUpperCase(c);
+                if (!_alphabet.containsCodePoint(c)) {
+                    _run = 0;
+                    return;
+                }
+            }
+            _key = (_key % _high) * _alphabet.size() + _alphabet.toIndex(c);
+            _run = Math.min(_run + 1, _order);
+            if (_run == _order) {
+                _counts[_key] += 1;
+            }
+        }
+
+        /** Alphabet of the model. */
+        private final Alphabet _alphabet;
+        /** The n of the model. */
+        private final int _order;
+        /** Count of each n-gram, by table index. */
+        private final long[] _counts;
+        /** Number of (n-1)-grams. */
+        private final int _high;
+        /** Table index of the last characters counted. */
+        private int _key;
+        /** Number of consecutive alphabet characters counted, up to n. */
+        private int _run;
+        /** The first half of a surrogate pair whose second is yet to
+         *  come, or 0. */
+        private char _surrogate;
+    }
+
+    /** Return SIZE ** ORDER, or -1 if that exceeds MAX_ENTRIES. */
+    private static int entries(int size, int order) {
+        long result = 1;
+        for (int k = 0; k < order; k += 1) {
+            result *= size;
+            if (result > MAX_ENTRIES) {
+                return -1;
+            }
+        }
+        return (int) result;
+    }
+
+    /** Return the size in bytes of the header of a model file for an
+     *  alphabet of SIZE characters. */
+    private static int headerSize(int size) {
+        return 16 + 4 * size;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** My n. */
+    private final int _order;
+
+    /** Number of (n-1)-grams: _size ** (_order - 1). */
+    private final int _high;
+
+    /** My file image. */
+    private final ByteBuffer _data;
+
+    /** Log probability of each n-gram, by table index. */
+    private final FloatBuffer _table;
+}
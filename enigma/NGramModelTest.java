@@ -0,0 +1,116 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NGramModel class.
+ *  @author Zwea Htet
+ */
+public class NGramModelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small training corpus. */
+    private static final String CORPUS =
+        "From his shoulder Hiawatha took the camera of rosewood, "
+        + "made of sliding, folding rosewood; neatly put it all together. "
+        + "In its case it lay compactly, folded into nearly nothing; "
+        + "but he opened out the hinges, pushed and pulled the joints "
+        + "and hinges, till it looked all squares and oblongs, like a "
+        + "complicated figure in the second book of Euclid.";
+
+    /** Return the alphabet indices of the letters of S. */
+    private static int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int k = 0; k < s.length(); k += 1) {
+            result[k] = UPPER.toInt(s.charAt(k));
+        }
+        return result;
+    }
+
+    /** Return a quadgram model of CORPUS. */
+    private static NGramModel model() {
+        return new NGramModel.Builder(UPPER, 4).add(CORPUS).build();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testScore() {
+        NGramModel model = model();
+        int[] english = indices("THECAMERAOFROSEWOOD");
+        int[] gibberish = indices("QXZJVKQWPZXJQVKZWQX");
+        float good = model.score(english, 0, english.length);
+        float bad = model.score(gibberish, 0, gibberish.length);
+        assertTrue(good > bad);
+        assertEquals(model.logProbability(english, 0),
+                     model.score(english, 0, 4), 0);
+        assertEquals(0, model.score(english, 0, 3), 0);
+        assertTrue(model.score(gibberish, 0, gibberish.length, good)
+                   < good);
+        assertTrue(model.score(gibberish, 0, gibberish.length, good)
+                   > bad);
+    }
+
+    @Test
+    public void testScorer() {
+        NGramModel model = model();
+        int[] text = indices("NEATLYPUTITALLTOGETHER");
+        NGramModel.Scorer scorer = model.scorer();
+        for (int k = 0; k < 2; k += 1) {
+            scorer.reset();
+            for (int c : text) {
+                scorer.add(c);
+            }
+            assertEquals(text.length, scorer.count());
+            assertEquals(model.score(text, 0, text.length), scorer.score(),
+                         1e-3);
+        }
+    }
+
+    @Test
+    public void testBreaks() {
+        NGramModel joined =
+            new NGramModel.Builder(UPPER, 2).add("AB").add("C").build();
+        NGramModel split =
+            new NGramModel.Builder(UPPER, 2).add("AB").endText().add("C")
+            .build();
+        int[] bc = indices("BC");
+        assertTrue(joined.score(bc, 0, 2) > split.score(bc, 0, 2));
+        assertEquals(split.score(bc, 0, 2),
+                     new NGramModel.Builder(UPPER, 2).add("AB, C").build()
+                     .score(bc, 0, 2), 0);
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        NGramModel model = model();
+        File file = File.createTempFile("enigma", ".ngram");
+        file.deleteOnExit();
+        model.write(file);
+        NGramModel mapped = NGramModel.map(file, UPPER);
+        assertEquals(4, mapped.order());
+        int[] text = indices("THECAMERAOFROSEWOOD");
+        assertEquals(model.score(text, 0, text.length),
+                     mapped.score(text, 0, text.length), 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWrongAlphabet() throws IOException {
+        File file = File.createTempFile("enigma", ".ngram");
+        file.deleteOnExit();
+        model().write(file);
+        NGramModel.map(file, new Alphabet("ZYXWVUTSRQPONMLKJIHGFEDCBA"));
+    }
+}
@@ -0,0 +1,16 @@
+package enigma;
+
+/** What the byte-oriented adapters (EnigmaInputStream,
+ *  EnigmaOutputStream, EnigmaChannels) do with a byte that does not
+ *  encode a character of the machine's alphabet.  Such bytes never
+ *  advance the machine.
+ *  @author Zwea Htet
+ */
+enum OutsideAlphabet {
+    /** Copy the byte unchanged, as Main does with line terminators. */
+    PASS,
+    /** Drop the byte, as Machine.convert does with blanks. */
+    DROP,
+    /** Fail with an IOException. */
+    REJECT
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static enigma.EnigmaException.*;
+import static enigma.PackedWriter.*;
+
+/** Reads the records of a file in the packed format described in
+ *  PackedWriter.
+ *  @author Zwea Htet
+ */
+class PackedReader {
+
+    /** Kinds of record returned by next: a section, a message, and the
+     *  end of the file. */
+    static final int SECTION_RECORD = 0, MESSAGE_RECORD = 1, END = 2;
+
+    /** A reader for the packed file IN, whose header it reads at once.
+     *  The file's alphabet must be ALPHABET. */
+    PackedReader(InputStream in, Alphabet alphabet) {
+        checkAlphabet(alphabet);
+        _in = new DataInputStream(in);
+        _size = alphabet.size();
+        _bits = bitsPerSymbol(_size);
+        try {
+            if (_in.readInt() != MAGIC) {
+                throw error("input is not in packed format");
+            }
+            int version = _in.readShort();
+            if (version != VERSION) {
+                throw error("unsupported packed format version %d",
+                            version);
+            }
+            boolean same = _in.readInt() == _size;
+            for (int k = 0; same && k < _size; k += 1) {
+                same = _in.readChar() == alphabet.toChar(k);
+            }
+            if (!same) {
+                throw error("packed input has a different alphabet");
+            }
+        } catch (IOException excp) {
+            throw error("packed input truncated");
+        }
+    }
+
+    /** Return true iff the packed file IN (which must support mark)
+     *  starts with the packed-format magic number, leaving IN
+     *  unchanged. */
+    static boolean isPacked(InputStream in) {
+        try {
+            in.mark(4);
+            int magic = 0;
+            for (int k = 0; k < 4; k += 1) {
+                int b = in.read();
+                if (b < 0) {
+                    in.reset();
+                    return false;
+                }
+                magic = magic << 8 | b;
+            }
+            in.reset();
+            return magic == MAGIC;
+        } catch (IOException excp) {
+            throw error("error reading input");
+        }
+    }
+
+    /** Read the next record, returning its kind (SECTION_RECORD,
+     *  MESSAGE_RECORD or END). */
+    int next() {
+        try {
+            int tag = _in.read();
+            if (tag < 0) {
+                return END;
+            } else if (tag == SECTION) {
+                _settings = _in.readUTF();
+                return SECTION_RECORD;
+            } else if (tag == MESSAGE) {
+                readMessage();
+                return MESSAGE_RECORD;
+            } else {
+                throw error("packed input is corrupt");
+            }
+        } catch (EOFException excp) {
+            throw error("packed input truncated");
+        } catch (IOException excp) {
+            throw error("error reading input");
+        }
+    }
+
+    /** Return the settings line of the last section record read (empty
+     *  if none was recorded). */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the length of the last message read. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the last message read, as alphabet indices in elements
+     *  0 .. length()-1.  The array is reused by the next call to
+     *  next. */
+    int[] message() {
+        return _message;
+    }
+
+    /** Close the underlying stream. */
+    void close() {
+        try {
+            _in.close();
+        } catch (IOException excp) {
+            throw error("could not close input");
+        }
+    }
+
+    /** Read the length and contents of a message record. */
+    private void readMessage() throws IOException {
+        long len = 0;
+        for (int shift = 0; true; shift += 7) {
+            int b = _in.readUnsignedByte();
+            len |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                break;
+            } else if (shift > 28) {
+                throw error("packed input is corrupt");
+            }
+        }
+        if (len > Integer.MAX_VALUE - 8) {
+            throw error("packed input is corrupt");
+        }
+        _length = (int) len;
+        int size = (int) ((len * _bits + 7) / 8);
+        if (_message.length < _length) {
+            _message = new int[Math.max(_length, 2 * _message.length)];
+        }
+        if (_buffer.length < size) {
+            _buffer = new byte[Math.max(size, 2 * _buffer.length)];
+        }
+        _in.readFully(_buffer, 0, size);
+        int mask = (1 << _bits) - 1;
+        long acc = 0;
+        int held = 0, pos = 0;
+        for (int i = 0; i < _length; i += 1) {
+            while (held < _bits) {
+                acc |= (long) (_buffer[pos] & 0xff) << held;
+                pos += 1;
+                held += 8;
+            }
+            int c = (int) acc & mask;
+            if (c >= _size) {
+                throw error("packed input is corrupt");
+            }
+            _message[i] = c;
+            acc >>>= _bits;
+            held -= _bits;
+        }
+    }
+
+    /** Source of records. */
+    private final DataInputStream _in;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Bits per character. */
+    private final int _bits;
+
+    /** Settings line of the last section read. */
+    private String _settings = "";
+
+    /** Length of the last message read. */
+    private int _length;
+
+    /** Characters of the last message read. */
+    private int[] _message = new int[256];
+
+    /** Buffer for packed bits. */
+    private byte[] _buffer = new byte[256];
+}
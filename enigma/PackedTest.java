@@ -0,0 +1,151 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for PackedWriter and PackedReader.
+ *  @author Zwea Htet
+ */
+public class PackedTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Return the indices in UPPER of the letters of S. */
+    private static int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the letters of UPPER whose indices are MSG[0 .. LEN-1]. */
+    private static String letters(int[] msg, int len) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            result.append(UPPER.toChar(msg[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return a packed file over UPPER holding a recorded section
+     *  followed by the messages MSGS. */
+    private static byte[] pack(String... msgs) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackedWriter out = new PackedWriter(bytes, UPPER);
+        out.section("* B Beta III IV I AXLE");
+        for (String msg : msgs) {
+            out.message(indices(msg), msg.length());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testBitsPerSymbol() {
+        assertEquals(1, PackedWriter.bitsPerSymbol(1));
+        assertEquals(1, PackedWriter.bitsPerSymbol(2));
+        assertEquals(2, PackedWriter.bitsPerSymbol(3));
+        assertEquals(5, PackedWriter.bitsPerSymbol(26));
+        assertEquals(5, PackedWriter.bitsPerSymbol(32));
+        assertEquals(6, PackedWriter.bitsPerSymbol(33));
+        assertEquals(16, PackedWriter.bitsPerSymbol(65536));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String longMsg = "HELLOWORLD".repeat(100);
+        byte[] data = pack("FROMHISSHOULDERHIAWATHA", "", "Z", longMsg);
+        InputStream in = new ByteArrayInputStream(data);
+        assertTrue(PackedReader.isPacked(in));
+        PackedReader reader = new PackedReader(in, UPPER);
+        assertEquals(PackedReader.SECTION_RECORD, reader.next());
+        assertEquals("* B Beta III IV I AXLE", reader.settings());
+        for (String msg : new String[] {
+                "FROMHISSHOULDERHIAWATHA", "", "Z", longMsg }) {
+            assertEquals(PackedReader.MESSAGE_RECORD, reader.next());
+            assertEquals(msg, letters(reader.message(), reader.length()));
+        }
+        assertEquals(PackedReader.END, reader.next());
+    }
+
+    @Test
+    public void testDensity() {
+        String msg = "A".repeat(800);
+        int header = 4 + 2 + 4 + 2 * 26;
+        int section = 1 + 2 + "* B Beta III IV I AXLE".length();
+        assertEquals(header + section + 1 + 2 + 500, pack(msg).length);
+    }
+
+    @Test
+    public void testNotPacked() throws IOException {
+        InputStream in =
+            new ByteArrayInputStream("* B Beta III IV I AXLE\n".getBytes());
+        assertFalse(PackedReader.isPacked(in));
+        assertEquals('*', in.read());
+        assertFalse(PackedReader.isPacked(new ByteArrayInputStream(
+                                               new byte[] { 'E' })));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWrongAlphabet() {
+        new PackedReader(new ByteArrayInputStream(pack("ABC")),
+                         new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSupplementaryAlphabet() {
+        new PackedWriter(new ByteArrayOutputStream(),
+                         new Alphabet("AB" + new String(
+                             Character.toChars(0x20000))));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncated() {
+        byte[] data = pack("ABCDEFGHIJ");
+        PackedReader reader = new PackedReader(
+            new ByteArrayInputStream(data, 0, data.length - 1), UPPER);
+        reader.next();
+        reader.next();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadIndex() {
+        byte[] data = pack("Z");
+        data[data.length - 1] = (byte) 0x1f;
+        PackedReader reader = new PackedReader(
+            new ByteArrayInputStream(data), UPPER);
+        reader.next();
+        reader.next();
+    }
+
+    @Test
+    public void testConvertPacked() {
+        Configuration config = navalConfiguration();
+        Machine M = config.newMachine();
+        Main.setUp(config, M, "* B Beta III II I AXLE");
+        String plain = "FROMHISSHOULDERHIAWATHA";
+        String expected = M.convert(plain);
+        Main.setUp(config, M, "* B Beta III II I AXLE");
+        PackedReader reader = new PackedReader(
+            new ByteArrayInputStream(pack(plain)), UPPER);
+        reader.next();
+        reader.next();
+        int[] msg = reader.message();
+        M.convert(msg, 0, reader.length(), msg);
+        assertEquals(expected, letters(msg, reader.length()));
+    }
+}
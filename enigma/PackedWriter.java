@@ -0,0 +1,142 @@
+package enigma;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Writes messages in the packed format, in which each character is
+ *  stored as its alphabet index in bitsPerSymbol(N) bits (N the alphabet
+ *  size): 5 bits for a 26-letter alphabet, against 8 bits plus blanks
+ *  and line terminators in Main's text output.  A packed file is
+ *
+ *      MAGIC VERSION N C1 ... CN
+ *
+ *  (ints, a short, an int and the alphabet's characters as chars),
+ *  followed by a sequence of records, each either
+ *
+ *      SECTION SETTINGS       a new section; SETTINGS (written as by
+ *                             DataOutput.writeUTF) is its settings line,
+ *                             or empty if not recorded
+ *      MESSAGE LENGTH BITS    a message of LENGTH characters (an
+ *                             unsigned varint, 7 bits per byte, least
+ *                             significant first) whose indices are
+ *                             packed least significant bit first into
+ *                             ceil(LENGTH * bitsPerSymbol(N) / 8) bytes.
+ *
+ *  Since the header holds chars, the format serves only alphabets
+ *  within the range of char.  PackedReader reads the format back.
+ *  @author Zwea Htet
+ */
+class PackedWriter {
+
+    /** Marks the start of every packed file ("ENGP"). */
+    static final int MAGIC = 0x454e4750;
+
+    /** Current version of the format. */
+    static final int VERSION = 1;
+
+    /** Record tags. */
+    static final byte SECTION = 'S', MESSAGE = 'M';
+
+    /** Return the number of bits used for each character of an alphabet
+     *  of SIZE characters. */
+    static int bitsPerSymbol(int size) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /** Check that every character of ALPHABET is within the range of
+     *  char, as the packed format requires. */
+    static void checkAlphabet(Alphabet alphabet) {
+        for (int k = 0; k < alphabet.size(); k += 1) {
+            if (alphabet.toCodePoint(k) > Character.MAX_VALUE) {
+                throw error("packed format does not support alphabets "
+                            + "with supplementary characters");
+            }
+        }
+    }
+
+    /** A writer of packed messages over ALPHABET to OUT, to which it
+     *  immediately writes the header. */
+    PackedWriter(OutputStream out, Alphabet alphabet) {
+        checkAlphabet(alphabet);
+        _out = new DataOutputStream(out);
+        _bits = bitsPerSymbol(alphabet.size());
+        try {
+            _out.writeInt(MAGIC);
+            _out.writeShort(VERSION);
+            _out.writeInt(alphabet.size());
+            for (int k = 0; k < alphabet.size(); k += 1) {
+                _out.writeChar(alphabet.toChar(k));
+            }
+        } catch (IOException excp) {
+            throw error("error writing output");
+        }
+    }
+
+    /** Start a new section whose settings line is SETTINGS (empty if it
+     *  is not to be recorded). */
+    void section(String settings) {
+        try {
+            _out.writeByte(SECTION);
+            _out.writeUTF(settings);
+        } catch (IOException excp) {
+            throw error("error writing output");
+        }
+    }
+
+    /** Write the message MSG[0 .. LEN-1] (as alphabet indices). */
+    void message(int[] msg, int len) {
+        try {
+            _out.writeByte(MESSAGE);
+            for (int n = len; true; n >>>= 7) {
+                if (n < 0x80) {
+                    _out.writeByte(n);
+                    break;
+                }
+                _out.writeByte(n & 0x7f | 0x80);
+            }
+            int size = (int) (((long) len * _bits + 7) / 8);
+            if (_buffer.length < size) {
+                _buffer = new byte[Math.max(size, 2 * _buffer.length)];
+            }
+            long acc = 0;
+            int held = 0, pos = 0;
+            for (int i = 0; i < len; i += 1) {
+                acc |= (long) msg[i] << held;
+                held += _bits;
+                while (held >= 8) {
+                    _buffer[pos] = (byte) acc;
+                    pos += 1;
+                    acc >>>= 8;
+                    held -= 8;
+                }
+            }
+            if (held > 0) {
+                _buffer[pos] = (byte) acc;
+            }
+            _out.write(_buffer, 0, size);
+        } catch (IOException excp) {
+            throw error("error writing output");
+        }
+    }
+
+    /** Flush buffered output. */
+    void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("error writing output");
+        }
+    }
+
+    /** Destination of records. */
+    private final DataOutputStream _out;
+
+    /** Bits per character. */
+    private final int _bits;
+
+    /** Buffer for packed bits. */
+    private byte[] _buffer = new byte[256];
+}
@@ -1,27 +1,36 @@
 package enigma;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
  *  @author Zwea Htet
  */
 class Permutation {
-    /** Store each cycle of a permutation in an String array. */
-    private String[] _cycles;
-
-    /** Store each character in a map to check for duplicates. */
-    private Map<Character, Integer> _charCount = new HashMap<>();
 
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored.  Only the compiled tables are kept, not the
+     *  cycles themselves. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = checkValidation(cycles);
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        for (int index = 0; index < size(); index++) {
+            _forward[index] = index;
+        }
+        for (String cycle : checkValidation(cycles)) {
+            int[] chars = cycle.codePoints().toArray();
+            for (int k = 0; k < chars.length; k++) {
+                _forward[_alphabet.toIndex(chars[k])] =
+                    _alphabet.toIndex(chars[(k + 1) % chars.length]);
+            }
+        }
+        for (int index = 0; index < size(); index++) {
+            _inverse[_forward[index]] = index;
+        }
     }
 
     /**
@@ -35,20 +44,20 @@ class Permutation {
         if (cycles.equals("")) {
             return new String[]{};
         }
+        boolean[] seen = new boolean[size()];
         String[] cyclesArr = cycles.split("[\\(|\\|\\s|\\t)]");
         for (int index = 0; index < cyclesArr.length; index++) {
-            cyclesArr[index] = cyclesArr[index];
-            char[] arr = cyclesArr[index].toCharArray();
-            for (char c : arr) {
-                if (!_alphabet.contains(c)) {
+            int[] arr = cyclesArr[index].codePoints().toArray();
+            for (int c : arr) {
+                if (!_alphabet.containsCodePoint(c)) {
                     throw new EnigmaException(String.format("%c is not "
                             + "in the alphabet!", c));
-                } else if (_charCount.containsKey(c)) {
+                } else if (seen[_alphabet.toIndex(c)]) {
                     throw new EnigmaException(String.format("Duplicate %c "
                             + "is found! A character should appear once "
                             + "and in only one cycle.", c));
                 } else {
-                    _charCount.put(c, 1);
+                    seen[_alphabet.toIndex(c)] = true;
                 }
             }
         }
@@ -72,74 +81,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int index = wrap(p);
-        char c = _alphabet.toChar(index);
-        char rightNeighbor = permute(c);
-        return _alphabet.toInt(rightNeighbor);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int index = wrap(c);
-        char ch = _alphabet.toChar(index);
-        char leftNeighbor = invert(ch);
-        return _alphabet.toInt(leftNeighbor);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        assert (_alphabet.contains(p));
-        String cCycle = permutationHelper(p);
-        int cPermIndex = cCycle.indexOf(p);
-
-        if (cPermIndex < 0 || cCycle.length() == 1) {
-            return p;
-        }
-
-        int rightNeighborIndex = (cPermIndex + 1) % cCycle.length();
-        return cCycle.charAt(rightNeighborIndex);
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        assert (_alphabet.contains(c));
-        String cCycle = permutationHelper(c);
-        int cPermIndex = cCycle.indexOf(c);
-
-        if (cPermIndex < 0 || cCycle.length() == 1) {
-            return c;
-        }
-
-        int leftNeighborIndex = (cPermIndex - 1) % cCycle.length();
-
-        if (leftNeighborIndex < 0) {
-            leftNeighborIndex += cCycle.length();
-        }
-
-        return cCycle.charAt(leftNeighborIndex);
-    }
-
-    /**
-     * This method returns a string representing a specific cycle in which the
-     * target character is in, so that way we could figure out which cycle this
-     * character is in and use its index (in permutation cycle) to find its left
-     * or right neighbor.
-     *
-     * @param ch char - a character in a permutation
-     * @return a string representing a specific cycle
-     */
-    private String permutationHelper(char ch) {
-        String cCycle = "";
-        for (String cycle: _cycles) {
-            int temp = cycle.indexOf(ch);
-            if (temp >= 0) {
-                cCycle = cycle;
-                break;
-            }
-        }
-        return cCycle;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -152,14 +111,48 @@ class Permutation {
     boolean derangement() {
         int numAlphabet = _alphabet.size();
         for (int index = 0; index < numAlphabet; index++) {
-            char alpha = _alphabet.toChar(index);
-            if (permute(alpha) == alpha) {
+            if (_forward[index] == index) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Return a copy of my mapping of indices: element K is the result
+     *  of applying me to K. */
+    int[] forwardTable() {
+        return _forward.clone();
+    }
+
+    /** Return a copy of my inverse mapping of indices. */
+    int[] inverseTable() {
+        return _inverse.clone();
+    }
+
+    /** Two Permutations are equal iff they have the same alphabet and map
+     *  every index alike. */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Permutation)) {
+            return false;
+        }
+        Permutation other = (Permutation) obj;
+        return _alphabet == other._alphabet
+            && Arrays.equals(_forward, other._forward);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
+
+    /** My mapping of indices, compiled from _cycles: _forward[K] is the
+     *  result of applying me to K. */
+    private final int[] _forward;
+
+    /** The inverse of _forward. */
+    private final int[] _inverse;
 }
@@ -0,0 +1,315 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** An index from the first k ciphertext characters of a message whose
+ *  plaintext starts with a known prefix of k characters to the keys (of
+ *  a KeySpace) that produce them, so that the candidate keys of such a
+ *  message are found by a lookup rather than a search.
+ *
+ *  The k ciphertext characters are coded as the base-2**B numeral (B
+ *  being the bits needed for an alphabet index) whose most significant
+ *  digit is the first character, so that codes sort as their texts do.
+ *  Codes are limited to MAX_CODE_BITS bits, which bounds k.
+ *
+ *  An index file is a KeyIndexFile whose header holds, in little-endian
+ *  order, the ints MAGIC, VERSION, the alphabet size N, k, 1 if ring
+ *  settings vary and 0 otherwise, and the length P of the plugboard,
+ *  then the alphabet, the prefix and the plugboard as ints, then padding
+ *  to a multiple of 8 bytes, then the long S, the size of the
+ *  KeySpace.
+ *  @author Zwea Htet
+ */
+class PrefixIndex {
+
+    /** Marks the start of every index file ("ENGX"). */
+    static final int MAGIC = 0x454e4758;
+
+    /** Current version of the file layout. */
+    static final int VERSION = 1;
+
+    /** Largest number of bits in a code. */
+    static final int MAX_CODE_BITS = 40;
+
+    /** Build or consult an index, as specified by ARGS:
+     *
+     *      java enigma.PrefixIndex --build [--rings] [--plugboard=CYCLES]
+     *          [--threads=N] [--lazy] CONFIG PREFIX INDEX
+     *
+     *  writes to the file INDEX an index of the keys of the configuration
+     *  file CONFIG (with all ring settings if --rings, and otherwise with
+     *  rings at the first letter; with the plugboard CYCLES, by default
+     *  none) for the plaintext PREFIX (whose blanks are ignored), on N
+     *  threads (by default, one per processor).
+     *
+     *      java enigma.PrefixIndex [--lazy] CONFIG INDEX CIPHERTEXT
+     *
+     *  prints the settings lines of the keys under which CIPHERTEXT (whose
+     *  blanks are ignored, and which must be at least as long as the
+     *  prefix) may start with the indexed prefix. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--build --rings --plugboard=(.*) "
+                                + "--threads=([1-9]\\d*) --lazy "
+                                + "--=(.*){3}", args);
+            boolean build = options.contains("--build");
+            if (!options.ok()
+                || (!build && (options.contains("--rings")
+                               || options.contains("--plugboard")
+                               || options.contains("--threads")))) {
+                throw error("Usage: java enigma.PrefixIndex --build "
+                            + "[--rings] [--plugboard=CYCLES] [--threads=N] "
+                            + "[--lazy] CONFIG PREFIX INDEX%n"
+                            + "   or: java enigma.PrefixIndex [--lazy] "
+                            + "CONFIG INDEX CIPHERTEXT");
+            }
+            List<String> files = options.get("--");
+            Configuration config = Search.readConfiguration(
+                new File(files.get(0)), options.contains("--lazy"));
+            if (build) {
+                build(config, files.get(1).replaceAll("\\s+", ""),
+                      options.contains("--rings"),
+                      options.contains("--plugboard")
+                      ? options.getFirst("--plugboard") : "",
+                      options.contains("--threads")
+                      ? Integer.parseInt(options.getFirst("--threads"))
+                      : Runtime.getRuntime().availableProcessors(),
+                      new File(files.get(2)));
+            } else {
+                PrefixIndex index =
+                    new PrefixIndex(new File(files.get(1)), config);
+                PrintStream out = System.out;
+                for (String line :
+                         index.lookup(files.get(2).replaceAll("\\s+", ""))) {
+                    out.println(line);
+                }
+                out.flush();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write to FILE (replacing it atomically) an index of the keys of
+     *  CONFIG (with all ring settings iff RINGS, and plugboard PLUGBOARD)
+     *  for the plaintext PREFIX, working on THREADS threads. */
+    static void build(Configuration config, String prefix, boolean rings,
+                      String plugboard, int threads, File file) {
+        build(config, prefix, rings, plugboard, threads, file,
+              KeyIndexFile.RUN_SIZE);
+    }
+
+    /** As for build(CONFIG, PREFIX, RINGS, PLUGBOARD, THREADS, FILE), but
+     *  sorting at most RUNSIZE keys at a time. */
+    static void build(Configuration config, String prefix, boolean rings,
+                      String plugboard, int threads, File file,
+                      int runSize) {
+        Alphabet alphabet = config.alphabet();
+        int bits = bitsPerSymbol(alphabet.size());
+        int[] prefixChars = prefix.codePoints().toArray(),
+            plugChars = plugboard.codePoints().toArray();
+        if (prefixChars.length == 0
+            || prefixChars.length * bits > MAX_CODE_BITS) {
+            throw error("prefix must have 1 to %d characters",
+                        MAX_CODE_BITS / bits);
+        }
+        int[] plain = new int[prefixChars.length];
+        for (int i = 0; i < plain.length; i += 1) {
+            if (!alphabet.containsCodePoint(prefixChars[i])) {
+                throw error("%c is not in the alphabet", prefixChars[i]);
+            }
+            plain[i] = alphabet.toIndex(prefixChars[i]);
+        }
+        Permutation board = new Permutation(plugboard, alphabet);
+        KeySpace keys = new KeySpace(config, rings);
+
+        int headerSize = headerSize(alphabet.size(), prefixChars.length,
+                                    plugChars.length);
+        ByteBuffer header = ByteBuffer.allocate(headerSize)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(alphabet.size())
+            .putInt(prefixChars.length).putInt(rings ? 1 : 0)
+            .putInt(plugChars.length);
+        for (int c = 0; c < alphabet.size(); c += 1) {
+            header.putInt(alphabet.toCodePoint(c));
+        }
+        for (int c : prefixChars) {
+            header.putInt(c);
+        }
+        for (int c : plugChars) {
+            header.putInt(c);
+        }
+        header.putLong(headerSize - 8, keys.size());
+
+        KeyIndexFile.write(file, header.array(), keys.size(),
+                           plain.length * bits, threads, runSize, () -> {
+                               Machine M = config.newMachine();
+                               M.setPlugboard(board);
+                               KeySpace.Cursor cursor = keys.cursor();
+                               int[] cipher = new int[plain.length];
+                               return key -> {
+                                   cursor.set(M, key);
+                                   M.convert(plain, 0, plain.length, cipher);
+                                   long code = 0;
+                                   for (int c : cipher) {
+                                       code = code << bits | c;
+                                   }
+                                   return code;
+                               };
+                           });
+    }
+
+    /** The index in FILE, mapped read-only into memory, which must be for
+     *  CONFIG. */
+    PrefixIndex(File file, Configuration config) {
+        _alphabet = config.alphabet();
+        int size = _alphabet.size();
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(24)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(start, 0);
+            if (start.position() < 24 || start.getInt(0) != MAGIC
+                || start.getInt(4) != VERSION) {
+                throw error("%s is not a prefix index", file);
+            }
+            int length = start.getInt(12), plugLength = start.getInt(20);
+            if (start.getInt(8) != size || length < 1 || length > 64
+                || plugLength < 0 || plugLength > 1 << 16) {
+                throw error("%s is corrupt or for a different alphabet",
+                            file);
+            }
+            int headerSize = headerSize(size, length, plugLength);
+            ByteBuffer header = ByteBuffer.allocate(headerSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw error("%s is truncated", file);
+                }
+            }
+            header.position(24);
+            for (int c = 0; c < size; c += 1) {
+                if (header.getInt() != _alphabet.toCodePoint(c)) {
+                    throw error("%s is for a different alphabet", file);
+                }
+            }
+            _prefix = text(header, length, file);
+            _prefixLength = length;
+            _plugboard = text(header, plugLength, file);
+            _keys = new KeySpace(config, start.getInt(16) != 0);
+            if (header.getLong(headerSize - 8) != _keys.size()) {
+                throw error("%s is for a different configuration", file);
+            }
+            _records = new KeyIndexFile(file, channel, headerSize);
+            if (_records.size() != _keys.size()) {
+                throw error("%s is corrupt", file);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        _bits = bitsPerSymbol(size);
+    }
+
+    /** Return the indexed plaintext prefix. */
+    String prefix() {
+        return _prefix;
+    }
+
+    /** Return the number of keys indexed. */
+    long size() {
+        return _records.size();
+    }
+
+    /** Return the numbers of the keys under which the ciphertext
+     *  CIPHERTEXT (at least as long as prefix()) may start with
+     *  prefix(), in increasing order. */
+    long[] keys(String ciphertext) {
+        int[] cipher =
+            ciphertext.codePoints().limit(_prefixLength).toArray();
+        if (cipher.length < _prefixLength) {
+            throw error("ciphertext is shorter than the prefix");
+        }
+        long code = 0;
+        for (int c : cipher) {
+            if (!_alphabet.containsCodePoint(c)) {
+                throw error("%c is not in the alphabet", c);
+            }
+            code = code << _bits | _alphabet.toIndex(c);
+        }
+        return _records.keys(code);
+    }
+
+    /** Return the settings lines of the keys under which the ciphertext
+     *  CIPHERTEXT may start with prefix(), as for keys. */
+    List<String> lookup(String ciphertext) {
+        List<String> result = new ArrayList<>();
+        for (long key : keys(ciphertext)) {
+            result.add(_keys.settingsLine(key, _plugboard));
+        }
+        return result;
+    }
+
+    /** Return the number of bits needed for an index into an alphabet of
+     *  SIZE characters. */
+    private static int bitsPerSymbol(int size) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /** Return the text of the next LENGTH characters (code points) in
+     *  HEADER, read from FILE. */
+    private static String text(ByteBuffer header, int length, File file) {
+        StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < length; i += 1) {
+            int c = header.getInt();
+            if (!Character.isValidCodePoint(c)) {
+                throw error("%s is corrupt", file);
+            }
+            result.appendCodePoint(c);
+        }
+        return result.toString();
+    }
+
+    /** Return the size of the header of an index for an alphabet of SIZE
+     *  characters, a prefix of LENGTH characters and a plugboard of
+     *  PLUGLENGTH characters. */
+    private static int headerSize(int size, int length, int plugLength) {
+        int ints = 6 + size + length + plugLength;
+        return (4 * ints + 7) / 8 * 8 + 8;
+    }
+
+    /** Alphabet of my configuration. */
+    private final Alphabet _alphabet;
+
+    /** Bits per ciphertext character in a code. */
+    private final int _bits;
+
+    /** The indexed plaintext prefix. */
+    private final String _prefix;
+
+    /** Number of characters (code points) in _prefix. */
+    private final int _prefixLength;
+
+    /** The plugboard of the indexed keys. */
+    private final String _plugboard;
+
+    /** The indexed keys. */
+    private final KeySpace _keys;
+
+    /** My records. */
+    private final KeyIndexFile _records;
+}
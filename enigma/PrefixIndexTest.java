@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PrefixIndex class.
+ *  @author Zwea Htet
+ */
+public class PrefixIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    /** Return the encryption of MSG by a machine of CONFIG set to
+     *  SETTINGS. */
+    private static String encrypt(Configuration config, String settings,
+                                  String msg) {
+        Machine M = config.newMachine();
+        Main.setUp(config, M, settings);
+        return M.convert(msg);
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        Configuration config = navalConfiguration();
+        File file = File.createTempFile("enigma", ".idx");
+        try {
+            PrefixIndex.build(config, "HELLO", false, "(AQ) (EP)", 3, file,
+                              1000);
+            PrefixIndex index = new PrefixIndex(file, config);
+            KeySpace keys = new KeySpace(config, false);
+            assertEquals(keys.size(), index.size());
+            assertEquals("HELLO", index.prefix());
+            String key = "* B Beta II III I QRSA (AQ) (EP)";
+            String cipher = encrypt(config, key, "HELLOWORLD");
+            List<String> found = index.lookup(cipher);
+            assertTrue(found.contains("* B Beta II III I QRSA AAAA "
+                                      + "(AQ) (EP)"));
+            for (String line : found) {
+                assertEquals(cipher.substring(0, 5),
+                             encrypt(config, line, "HELLO"));
+            }
+            long[] numbers = index.keys(cipher);
+            for (int k = 1; k < numbers.length; k += 1) {
+                assertTrue(numbers[k - 1] < numbers[k]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testComplete() throws IOException {
+        Configuration config = navalConfiguration();
+        File file = File.createTempFile("enigma", ".idx");
+        try {
+            PrefixIndex.build(config, "AB", false, "", 2, file, 4096);
+            PrefixIndex index = new PrefixIndex(file, config);
+            long total = 0;
+            for (char a = 'A'; a <= 'Z'; a += 1) {
+                for (char b = 'A'; b <= 'Z'; b += 1) {
+                    total += index.keys("" + a + b).length;
+                }
+            }
+            assertEquals(index.size(), total);
+            assertEquals(0, index.keys("AA").length);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortCiphertext() throws IOException {
+        Configuration config = navalConfiguration();
+        File file = File.createTempFile("enigma", ".idx");
+        try {
+            PrefixIndex.build(config, "HELLO", false, "", 1, file);
+            new PrefixIndex(file, config).keys("ABC");
+        } finally {
+            file.delete();
+        }
+    }
+}
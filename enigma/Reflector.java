@@ -18,6 +18,11 @@ class Reflector extends FixedRotor {
         return true;
     }
 
+    @Override
+    Reflector copy() {
+        return new Reflector(name(), permutation());
+    }
+
     @Override
     public String toString() {
         return "Reflector " + name();
@@ -66,6 +66,11 @@ class Rotor {
         set(_permutation.alphabet().toInt(cposn));
     }
 
+    /** Return my current ring setting. */
+    int ringSetting() {
+        return _ringSetting;
+    }
+
     /** Set ringSetting to POSN. */
     void setRingSetting(int posn) {
         _ringSetting = posn;
@@ -83,7 +88,7 @@ class Rotor {
                 .permute(p + _setting - _ringSetting)
                 - _setting + _ringSetting);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         return result;
     }
@@ -95,7 +100,7 @@ class Rotor {
                 .invert(e + _setting - _ringSetting)
                 - _setting + _ringSetting);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         return result;
     }
@@ -109,19 +114,20 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        char[] myNotches = notches().toCharArray();
-        for (char notch: myNotches) {
-            if (notch == alphabet().toChar(_permutation.wrap(_setting))) {
-                return true;
-            }
-        }
-        return false;
+        return notches().indexOf(
+            alphabet().toCodePoint(_permutation.wrap(_setting))) >= 0;
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new Rotor with my name and permutation (shared with me),
+     *  initially at setting 0. */
+    Rotor copy() {
+        return new Rotor(name(), permutation());
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -0,0 +1,180 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to the Machines of a Configuration, by name.
+ *  A catalog holds one prototype of each rotor; Machines receive their
+ *  own copies (sharing the prototype's Permutation) through rotor().
+ *
+ *  A catalog is either complete, holding prototypes for all the rotors
+ *  of a configuration file, or indexed, holding only the file offsets
+ *  of their descriptions.  An indexed catalog parses and compiles each
+ *  rotor the first time it is asked for, so that its cost in time and
+ *  space depends on the rotors actually used rather than on the number
+ *  described.  In both kinds, rotors with identical wirings share a
+ *  single Permutation.
+ *  @author Zwea Htet
+ */
+class RotorCatalog {
+
+    /** An empty complete catalog. */
+    RotorCatalog() {
+        _prototypes = new ConcurrentHashMap<>();
+        _index = null;
+        _file = null;
+        _alphabet = null;
+    }
+
+    /** An indexed catalog of the rotors over ALPHABET described in FILE,
+     *  whose descriptions (as [start, end) byte offsets into FILE) are
+     *  INDEX. */
+    private RotorCatalog(File file, Alphabet alphabet,
+                         Map<String, long[]> index) {
+        _prototypes = new ConcurrentHashMap<>();
+        _index = index;
+        _file = file;
+        _alphabet = alphabet;
+    }
+
+    /** Return an indexed catalog for the rotor descriptions over ALPHABET
+     *  in LINES, which reads the configuration file FILE and is positioned
+     *  at the start of a line following the header.  Each rotor description
+     *  must start on a new line; lines starting with '(' continue the
+     *  previous description. */
+    static RotorCatalog index(File file, Alphabet alphabet,
+                              LineReader lines) {
+        ConcurrentHashMap<String, long[]> index = new ConcurrentHashMap<>();
+        long[] current = null;
+        while (lines.hasNextLine()) {
+            long start = lines.offset();
+            String line = lines.nextLine().trim();
+            if (line.isEmpty()) {
+                continue;
+            } else if (line.startsWith("(")) {
+                if (current == null) {
+                    throw error("bad rotor description");
+                }
+                current[1] = lines.offset();
+            } else {
+                current = new long[] { start, lines.offset() };
+                index.put(line.split("\\s+", 2)[0], current);
+            }
+        }
+        return new RotorCatalog(file, alphabet, index);
+    }
+
+    /** Add PROTOTYPE to my rotors, replacing any rotor of the same
+     *  name. */
+    void add(Rotor prototype) {
+        _prototypes.put(prototype.name(), prototype);
+    }
+
+    /** Return true iff I have a rotor named NAME. */
+    boolean contains(String name) {
+        return _prototypes.containsKey(name)
+            || (_index != null && _index.containsKey(name));
+    }
+
+    /** Return the names of all my rotors, in increasing order. */
+    List<String> names() {
+        TreeSet<String> names = new TreeSet<>(_prototypes.keySet());
+        if (_index != null) {
+            names.addAll(_index.keySet());
+        }
+        return List.copyOf(names);
+    }
+
+    /** Return a new copy of my rotor named NAME, initially at setting 0,
+     *  or null if I have no such rotor. */
+    Rotor rotor(String name) {
+        Rotor prototype = _prototypes.get(name);
+        if (prototype == null) {
+            if (_index == null || !_index.containsKey(name)) {
+                return null;
+            }
+            prototype = _prototypes.computeIfAbsent(name, this::load);
+        }
+        return prototype.copy();
+    }
+
+    /** Return the number of rotors that have been parsed. */
+    int loaded() {
+        return _prototypes.size();
+    }
+
+    /** Return the number of distinct wirings among the rotors that have
+     *  been parsed. */
+    int wirings() {
+        return _wirings.size();
+    }
+
+    /** Return the Permutation equal to PERM that is shared by all my
+     *  rotors having that wiring. */
+    Permutation intern(Permutation perm) {
+        Permutation shared = _wirings.putIfAbsent(perm, perm);
+        return shared == null ? perm : shared;
+    }
+
+    /** Return a prototype of the rotor named NAME, parsed from its
+     *  description in _file. */
+    private Rotor load(String name) {
+        long[] extent = _index.get(name);
+        ByteBuffer bytes = ByteBuffer.allocate((int) (extent[1] - extent[0]));
+        try (FileChannel channel =
+                 new RandomAccessFile(_file, "r").getChannel()) {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, extent[0] + bytes.position()) < 0) {
+                    throw error("configuration file changed while in use");
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+        bytes.flip();
+        String rotorDesc = "";
+        for (String line : Charset.defaultCharset().decode(bytes).toString()
+                 .split("\n")) {
+            rotorDesc += line.trim();
+        }
+        if (!ROTOR_DESC.matcher(rotorDesc).matches()) {
+            throw error("bad rotor description for %s", name);
+        }
+        return Configuration.readRotor(rotorDesc.split("[\s|\t]+"),
+                                       _alphabet, this);
+    }
+
+    /** Form of a complete rotor description. */
+    static final Pattern ROTOR_DESC =
+        Pattern.compile("^(\\s*[^\\(\\)\\s]+\\s*){2}"
+                        + "(?:\\([\\w|.]*\\)\\s*)*+",
+                        Pattern.UNICODE_CHARACTER_CLASS);
+
+    /** Prototypes of the rotors parsed so far, by name. */
+    private final ConcurrentHashMap<String, Rotor> _prototypes;
+
+    /** For an indexed catalog, the [start, end) offsets of each rotor
+     *  description in _file, by name; otherwise null. */
+    private final Map<String, long[]> _index;
+
+    /** The configuration file of an indexed catalog, or null. */
+    private final File _file;
+
+    /** The alphabet of an indexed catalog, or null. */
+    private final Alphabet _alphabet;
+
+    /** The distinct wirings of my rotors. */
+    private final ConcurrentHashMap<Permutation, Permutation> _wirings =
+        new ConcurrentHashMap<>();
+}
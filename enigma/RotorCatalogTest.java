@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorCatalog class.
+ *  @author Zwea Htet
+ */
+public class RotorCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a configuration file describing the naval rotors, in which
+     *  rotor "Dup" has the same wiring as rotor I. */
+    private File navalConfig() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(file)) {
+            out.println(UPPER_STRING);
+            out.println(" 5 3");
+            out.println(" I MQ " + NAVALA.get("I"));
+            out.println(" Dup MQ (JZ) (AELTPHQXRU) (BKNW) (CMOY) (IV)");
+            out.println("     (DFG)");
+            out.println(" II ME " + NAVALA.get("II"));
+            out.println(" III MV " + NAVALA.get("III"));
+            out.println(" Beta N " + NAVALA.get("Beta"));
+            out.println(" B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW)");
+            out.println("     (IJ) (LO) (MP) (RX) (SZ) (TV)");
+        }
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLazyLoading() throws IOException {
+        Configuration config = Configuration.index(navalConfig(), 4);
+        RotorCatalog catalog = config.catalog();
+        assertEquals(0, catalog.loaded());
+        assertTrue(catalog.contains("Dup"));
+        assertFalse(catalog.contains("IV"));
+        assertNull(catalog.rotor("IV"));
+        Rotor dup = catalog.rotor("Dup");
+        Rotor one = catalog.rotor("I");
+        assertEquals(2, catalog.loaded());
+        assertSame(one.permutation(), dup.permutation());
+        assertEquals(1, catalog.wirings());
+        assertEquals("Q", dup.notches());
+    }
+
+    @Test
+    public void testLazyMatchesEager() throws IOException {
+        File file = navalConfig();
+        Configuration eager;
+        try (Scanner in = new Scanner(new FileInputStream(file))) {
+            eager = Configuration.read(in, 4);
+        }
+        Configuration lazy = Configuration.index(file, 4);
+        String[] rotors = { "B", "Beta", "Dup", "II", "III" };
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine m1 = eager.newMachine();
+        Machine m2 = lazy.newMachine();
+        m1.insertRotors(rotors);
+        m2.insertRotors(rotors);
+        m1.setRotors("AXLE");
+        m2.setRotors("AXLE");
+        assertEquals(m1.convert(msg), m2.convert(msg));
+        assertEquals(5, eager.catalog().wirings());
+        assertEquals(5, lazy.catalog().loaded());
+    }
+}
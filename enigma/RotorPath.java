@@ -0,0 +1,32 @@
+package enigma;
+
+/** The complete path of a character through a machine's plugboard and
+ *  rotors, for one fixed choice of rotors and plugboard.  The rotor
+ *  positions are supplied on each call.
+ *  @author Zwea Htet
+ */
+interface RotorPath {
+
+    /** Return the result of passing C (an alphabet index) through the
+     *  plugboard, the rotors from right to left, the reflector, the rotors
+     *  from left to right, and the plugboard again, where rotor #K is at
+     *  offset OFFSETS[K] (its setting minus its ring setting). */
+    int convert(int c, int[] offsets);
+
+    /** Return convert(C, OFFSETS), given that OFFSETS[0 .. CHANGED-1] are
+     *  as they were at the last call of this method on me with the same
+     *  array OFFSETS, if there was one.  A path that keeps state
+     *  depending on the offsets may then examine only those of rotors
+     *  #CHANGED and above; by default, CHANGED is ignored. */
+    default int convert(int c, int[] offsets, int changed) {
+        return convert(c, offsets);
+    }
+
+    /** Return a path like me, but through the plugboard whose table is
+     *  PLUGBOARD, sharing whatever of me does not depend on the
+     *  plugboard; or null if a path for PLUGBOARD must be compiled
+     *  afresh. */
+    default RotorPath withPlugboard(int[] plugboard) {
+        return null;
+    }
+}
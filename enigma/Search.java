@@ -0,0 +1,665 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A search of the KeySpace of a configuration for the keys under which
+ *  a ciphertext decrypts to the text scoring best under an NGramModel,
+ *  run by a coordinator (this class) and a number of worker processes
+ *  (SearchWorker) on the same host.
+ *
+ *  The coordinator divides the keys into leases of consecutive keys,
+ *  and hands them out over a Unix-domain socket to workers as they ask
+ *  for them, so that faster workers simply take more leases.  A worker
+ *  returns the K best keys of each lease with its request for the next,
+ *  and the coordinator merges them into the K best overall.  A lease
+ *  held by a worker that dies, or that holds it longer than the lease
+ *  timeout, is handed out again (and the worker, if alive, cut off);
+ *  workers that die while work remains are replaced.  With a checkpoint
+ *  file, the completed leases and the best keys so far are saved
+ *  periodically (see SearchState), and a search restarted with the same
+ *  parameters continues from them.
+ *  @author Zwea Htet
+ */
+class Search {
+
+    /** Default number of keys in a lease. */
+    static final long DEFAULT_LEASE = 1 << 16;
+
+    /** Default number of best keys reported. */
+    static final int DEFAULT_TOP = 10;
+
+    /** Default lease timeout, in milliseconds. */
+    static final long DEFAULT_TIMEOUT = 600_000;
+
+    /** Minimum time between checkpoints, in milliseconds. */
+    static final long SAVE_INTERVAL = 5_000;
+
+    /** Time between checks on workers and leases, in milliseconds. */
+    static final long MONITOR_INTERVAL = 250;
+
+    /** Time allowed for workers to exit once the search is complete, in
+     *  milliseconds. */
+    static final long EXIT_TIMEOUT = 30_000;
+
+    /** Number of worker failures allowed per worker. */
+    static final int MAX_RESTARTS = 3;
+
+    /** Message tags: worker result (and request for a lease),
+     *  coordinator lease, and coordinator end of search. */
+    static final byte RESULT = 'R', LEASE = 'L', DONE = 'D';
+
+    /** Search for keys, train a model, or serve as a worker, as
+     *  specified by ARGS:
+     *
+     *      java enigma.Search [--workers=N] [--top=K] [--lease=N]
+     *          [--rings] [--plugboard=CYCLES] [--checkpoint=FILE]
+     *          [--timeout=SECONDS] [--lazy] [--java-opts=OPTIONS]
+     *          CONFIG MODEL CIPHERTEXT
+     *
+     *  searches the keys of the configuration file CONFIG (with all ring
+     *  settings if --rings, and otherwise with rings at the first letter;
+     *  with the plugboard CYCLES, by default none) for the K best
+     *  decryptions of the text in the file CIPHERTEXT (whose blanks are
+     *  ignored), as scored by the NGramModel in the file MODEL.  It runs
+     *  N worker JVMs (by default, one per processor), started with the
+     *  given java OPTIONS, and prints the results as lines of the form
+     *
+     *      SCORE <tab> SETTINGS-LINE <tab> PLAINTEXT
+     *
+     *      java enigma.Search --train=CORPUS [--order=N] CONFIG MODEL
+     *
+     *  writes to the file MODEL an N-gram model (default 4) for the
+     *  alphabet of CONFIG, trained on the text file CORPUS.
+     *
+     *      java enigma.Search --worker=SOCKET
+     *
+     *  serves as a worker for the coordinator listening on SOCKET. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--workers=([1-9]\\d*) --top=([1-9]\\d*) "
+                                + "--lease=([1-9]\\d*) --rings "
+                                + "--plugboard=(.*) --checkpoint=(.+) "
+                                + "--timeout=([1-9]\\d*) --lazy "
+                                + "--java-opts=(.*) --worker=(.+) "
+                                + "--train=(.+) --order=([2-4]) "
+                                + "--=(.*){0,3}", args);
+            List<String> files = options.get("--");
+            if (!options.ok()) {
+                throw usage();
+            } else if (options.contains("--worker")) {
+                if (!files.isEmpty()) {
+                    throw usage();
+                }
+                new SearchWorker(options.getFirst("--worker")).run();
+            } else if (options.contains("--train")) {
+                if (files.size() != 2) {
+                    throw usage();
+                }
+                Configuration config =
+                    Configuration.read(new Scanner(new File(files.get(0))),
+                                       0);
+                int order = options.contains("--order")
+                    ? Integer.parseInt(options.getFirst("--order")) : 4;
+                new NGramModel.Builder(config.alphabet(), order)
+                    .add(new File(options.getFirst("--train"))).build()
+                    .write(new File(files.get(1)));
+            } else {
+                if (files.size() != 3) {
+                    throw usage();
+                }
+                Search search =
+                    new Search(new File(files.get(0)),
+                               new File(files.get(1)),
+                               readText(new File(files.get(2))),
+                               options.contains("--plugboard")
+                               ? options.getFirst("--plugboard") : "",
+                               options.contains("--rings"),
+                               options.contains("--top")
+                               ? Integer.parseInt(options.getFirst("--top"))
+                               : DEFAULT_TOP,
+                               options.contains("--lease")
+                               ? Long.parseLong(options.getFirst("--lease"))
+                               : DEFAULT_LEASE,
+                               options.contains("--lazy"));
+                if (options.contains("--checkpoint")) {
+                    search.setCheckpoint(
+                        new File(options.getFirst("--checkpoint")));
+                }
+                if (options.contains("--timeout")) {
+                    search.setTimeout(1000 * Long.parseLong(
+                                          options.getFirst("--timeout")));
+                }
+                List<String> javaOpts = new ArrayList<>();
+                if (options.contains("--java-opts")) {
+                    for (String opt : options.getFirst("--java-opts").trim()
+                             .split("\\s+")) {
+                        if (!opt.isEmpty()) {
+                            javaOpts.add(opt);
+                        }
+                    }
+                }
+                search.run(options.contains("--workers")
+                           ? Integer.parseInt(options.getFirst("--workers"))
+                           : Runtime.getRuntime().availableProcessors(),
+                           javaOpts);
+                search.report(System.out);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp);
+        }
+        System.exit(1);
+    }
+
+    /** Return the exception reporting a usage error. */
+    private static EnigmaException usage() {
+        return error("Usage: java enigma.Search [--workers=N] [--top=K] "
+                     + "[--lease=N] [--rings] [--plugboard=CYCLES] "
+                     + "[--checkpoint=FILE] [--timeout=SECONDS] [--lazy] "
+                     + "[--java-opts=OPTIONS] CONFIG MODEL CIPHERTEXT%n"
+                     + "   or: java enigma.Search --train=CORPUS "
+                     + "[--order=N] CONFIG MODEL%n"
+                     + "   or: java enigma.Search --worker=SOCKET");
+    }
+
+    /** Return the contents of FILE, without blanks. */
+    private static String readText(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()))
+                .replaceAll("\\s+", "");
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** A search of the keys of the configuration in CONFIG (with all
+     *  ring settings iff RINGS, and plugboard PLUGBOARD) for the K best
+     *  decryptions of CIPHERTEXT under the model in MODEL, handing out
+     *  leases of LEASESIZE keys.  CONFIG is indexed rather than read if
+     *  LAZY. */
+    Search(File config, File model, String ciphertext, String plugboard,
+           boolean rings, int k, long leaseSize, boolean lazy) {
+        _configFile = config;
+        _modelFile = model;
+        _lazy = lazy;
+        _configuration = readConfiguration(config, lazy);
+        _model = NGramModel.map(model, _configuration.alphabet());
+        _ciphertext = ciphertext;
+        _cipher = ciphertext.codePoints()
+            .map(_configuration.alphabet()::toIndex).toArray();
+        if (_cipher.length < _model.order()) {
+            throw error("ciphertext is shorter than an n-gram");
+        }
+        _plugboard = plugboard.trim();
+        new Permutation(_plugboard, _configuration.alphabet());
+        _rings = rings;
+        _keys = new KeySpace(_configuration, rings);
+        if (_keys.size() == 0) {
+            throw error("configuration has no complete rotor orders");
+        }
+        _leaseSize = leaseSize;
+        long numLeases = (_keys.size() - 1) / leaseSize + 1;
+        if (numLeases > Integer.MAX_VALUE) {
+            throw error("too many leases; use a larger lease size");
+        }
+        _state = new SearchState(fingerprint(k), (int) numLeases, k);
+    }
+
+    /** Return the configuration in FILE, indexed rather than read if
+     *  LAZY. */
+    static Configuration readConfiguration(File file, boolean lazy) {
+        if (lazy) {
+            return Configuration.index(file, 0);
+        }
+        try {
+            return Configuration.read(new Scanner(file), 0);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Save my progress to FILE, and if FILE already holds the progress
+     *  of this search, continue from it. */
+    void setCheckpoint(File file) {
+        _checkpointFile = file;
+        if (file.exists()) {
+            SearchState state = SearchState.read(file);
+            if (state.fingerprint() != _state.fingerprint()
+                || state.numLeases() != _state.numLeases()) {
+                throw error("%s is the checkpoint of a different search",
+                            file);
+            }
+            _state = state;
+        }
+    }
+
+    /** Hand out leases again once they have been held for TIMEOUT
+     *  milliseconds. */
+    void setTimeout(long timeout) {
+        _timeout = timeout;
+    }
+
+    /** Return the number of keys searched. */
+    long size() {
+        return _keys.size();
+    }
+
+    /** Return my progress so far. */
+    synchronized SearchState state() {
+        return _state;
+    }
+
+    /** Run the search to completion on WORKERS worker JVMs started with
+     *  the java options JAVAOPTS. */
+    void run(int workers, List<String> javaOpts) throws IOException {
+        if (finished()) {
+            return;
+        }
+        _javaOpts = javaOpts;
+        Path dir = Files.createTempDirectory("enigma-search");
+        _socket = dir.resolve("coordinator.sock");
+        ServerSocketChannel server =
+            ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        List<Process> processes = new ArrayList<>();
+        try {
+            server.bind(UnixDomainSocketAddress.of(_socket));
+            Thread acceptor = new Thread(() -> accept(server));
+            acceptor.setDaemon(true);
+            acceptor.start();
+            for (int i = 0; i < workers; i += 1) {
+                processes.add(launch());
+            }
+            monitor(processes, workers * MAX_RESTARTS);
+            save();
+            for (Process process : processes) {
+                process.waitFor(EXIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            server.close();
+            for (Process process : processes) {
+                process.destroy();
+            }
+            Files.deleteIfExists(_socket);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** Print my results on OUT, best first. */
+    void report(PrintStream out) {
+        TopK best = state().best();
+        long[] keys = best.keys();
+        float[] scores = best.scores();
+        Machine M = _configuration.newMachine();
+        M.setPlugboard(new Permutation(_plugboard, _configuration.alphabet()));
+        KeySpace.Cursor cursor = _keys.cursor();
+        int[] plain = new int[_cipher.length];
+        for (int i = 0; i < keys.length; i += 1) {
+            cursor.set(M, keys[i]);
+            M.convert(_cipher, 0, _cipher.length, plain);
+            StringBuilder text = new StringBuilder();
+            for (int c : plain) {
+                text.appendCodePoint(_configuration.alphabet()
+                                     .toCodePoint(c));
+            }
+            out.printf("%.2f\t%s\t%s%n", scores[i],
+                       _keys.settingsLine(keys[i], _plugboard), text);
+        }
+        out.flush();
+    }
+
+    /** Check on PROCESSES and outstanding leases until the search is
+     *  complete, replacing dead workers at most RESTARTS times in
+     *  all. */
+    private void monitor(List<Process> processes, int restarts)
+        throws IOException {
+        while (true) {
+            synchronized (this) {
+                if (finished()) {
+                    return;
+                }
+                try {
+                    wait(MONITOR_INTERVAL);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw error("interrupted");
+                }
+                expireLeases();
+                if (_dirty && System.currentTimeMillis() - _lastSave
+                    >= SAVE_INTERVAL) {
+                    save();
+                }
+                if (finished()) {
+                    return;
+                }
+            }
+            for (int i = 0; i < processes.size(); i += 1) {
+                if (!processes.get(i).isAlive()) {
+                    restarts -= 1;
+                    if (restarts < 0) {
+                        throw error("search workers keep failing");
+                    }
+                    processes.set(i, launch());
+                }
+            }
+        }
+    }
+
+    /** Return true iff all leases have been completed. */
+    private synchronized boolean finished() {
+        return _state.completed() == _state.numLeases();
+    }
+
+    /** Cut off workers that have held their leases too long. */
+    private synchronized void expireLeases() {
+        long now = System.currentTimeMillis();
+        for (Connection conn : _outstanding.values()) {
+            if (now >= conn._deadline) {
+                conn.close();
+            }
+        }
+    }
+
+    /** Save my state to the checkpoint file, if any. */
+    private synchronized void save() {
+        if (_checkpointFile != null) {
+            _state.write(_checkpointFile);
+        }
+        _dirty = false;
+        _lastSave = System.currentTimeMillis();
+    }
+
+    /** Start a worker JVM. */
+    private Process launch() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        command.addAll(_javaOpts);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("enigma.Search");
+        command.add("--worker=" + _socket);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /** Accept connections from workers on SERVER until it is closed,
+     *  serving each on its own thread. */
+    private void accept(ServerSocketChannel server) {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                Thread handler = new Thread(() -> serve(channel));
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** A worker's connection and the lease it holds. */
+    private static class Connection {
+        /** A connection over CHANNEL. */
+        Connection(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        /** Close my channel, cutting off my worker. */
+        void close() {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+
+        /** The channel to the worker. */
+        private final SocketChannel _channel;
+        /** The lease held, or -1. */
+        private int _lease = -1;
+        /** Time at which the lease held expires. */
+        private long _deadline;
+    }
+
+    /** Serve the worker connected by CHANNEL: describe the search, then
+     *  hand out leases and collect results until the search is done or
+     *  the connection fails. */
+    private void serve(SocketChannel channel) {
+        Connection conn = new Connection(channel);
+        try (channel) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                                         Channels.newOutputStream(channel)));
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                                        Channels.newInputStream(channel)));
+            out.writeUTF(_configFile.getAbsolutePath());
+            out.writeBoolean(_lazy);
+            out.writeUTF(_modelFile.getAbsolutePath());
+            out.writeInt(_cipher.length);
+            for (int c : _cipher) {
+                out.writeInt(c);
+            }
+            out.writeUTF(_plugboard);
+            out.writeBoolean(_rings);
+            out.writeInt(_state.best().capacity());
+            out.writeLong(_leaseSize);
+            out.flush();
+            TopK results = new TopK(_state.best().capacity());
+            while (true) {
+                if (in.readByte() != RESULT) {
+                    throw new IOException("protocol error");
+                }
+                int lease = in.readInt();
+                results.clear();
+                for (int n = in.readInt(); n > 0; n -= 1) {
+                    results.add(in.readLong(), in.readFloat());
+                }
+                complete(conn, lease, results);
+                int next = take(conn);
+                if (next < 0) {
+                    out.writeByte(DONE);
+                    out.flush();
+                    return;
+                }
+                out.writeByte(LEASE);
+                out.writeInt(next);
+                out.writeFloat(floor());
+                out.flush();
+            }
+        } catch (IOException | InterruptedException excp) {
+            return;
+        } finally {
+            release(conn);
+        }
+    }
+
+    /** Record the completion by CONN of LEASE (if non-negative and still
+     *  held by CONN), with RESULTS. */
+    private synchronized void complete(Connection conn, int lease,
+                                       TopK results) {
+        if (lease >= 0 && conn._lease == lease) {
+            _outstanding.remove(lease);
+            conn._lease = -1;
+            if (_state.complete(lease, results)) {
+                _dirty = true;
+            }
+            notifyAll();
+        }
+    }
+
+    /** Return the score that a key must beat to be among the best. */
+    private synchronized float floor() {
+        return _state.best().floor();
+    }
+
+    /** Return the next lease for CONN, waiting until one is available,
+     *  or -1 once the search is complete. */
+    private synchronized int take(Connection conn)
+        throws InterruptedException {
+        while (true) {
+            if (finished()) {
+                return -1;
+            }
+            Integer lease = null;
+            while (!_requeued.isEmpty() && lease == null) {
+                lease = _requeued.poll();
+                if (_state.isDone(lease) || _outstanding.containsKey(lease)) {
+                    lease = null;
+                }
+            }
+            if (lease == null) {
+                while (_next < _state.numLeases()
+                       && (_state.isDone(_next)
+                           || _outstanding.containsKey(_next))) {
+                    _next += 1;
+                }
+                if (_next < _state.numLeases()) {
+                    lease = _next;
+                    _next += 1;
+                }
+            }
+            if (lease != null) {
+                conn._lease = lease;
+                conn._deadline = System.currentTimeMillis() + _timeout;
+                _outstanding.put(lease, conn);
+                return lease;
+            }
+            wait();
+        }
+    }
+
+    /** Return any lease held by CONN to the pool. */
+    private synchronized void release(Connection conn) {
+        if (conn._lease >= 0) {
+            _outstanding.remove(conn._lease);
+            _requeued.add(conn._lease);
+            conn._lease = -1;
+            notifyAll();
+        }
+    }
+
+    /** Return a fingerprint of the parameters of this search that keep
+     *  K keys. */
+    private long fingerprint(int k) {
+        CRC32 crc = new CRC32();
+        update(crc, _configFile);
+        update(crc, _modelFile);
+        crc.update(String.join("\0", _ciphertext, _plugboard,
+                               Boolean.toString(_rings),
+                               Long.toString(_leaseSize),
+                               Integer.toString(k))
+                   .getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /** Add the contents of FILE to CRC. */
+    private static void update(CRC32 crc, File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** The configuration file. */
+    private final File _configFile;
+
+    /** The model file. */
+    private final File _modelFile;
+
+    /** True iff configuration files are indexed rather than read. */
+    private final boolean _lazy;
+
+    /** The configuration searched. */
+    private final Configuration _configuration;
+
+    /** The model scoring decryptions. */
+    private final NGramModel _model;
+
+    /** The ciphertext. */
+    private final String _ciphertext;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The plugboard cycles. */
+    private final String _plugboard;
+
+    /** True iff all ring settings are searched. */
+    private final boolean _rings;
+
+    /** The keys searched. */
+    private final KeySpace _keys;
+
+    /** Number of keys per lease. */
+    private final long _leaseSize;
+
+    /** Progress so far. */
+    private SearchState _state;
+
+    /** File receiving my state, or null. */
+    private File _checkpointFile;
+
+    /** True iff my state has changed since it was last saved. */
+    private boolean _dirty;
+
+    /** Time of the last save. */
+    private long _lastSave;
+
+    /** Lease timeout, in milliseconds. */
+    private long _timeout = DEFAULT_TIMEOUT;
+
+    /** Java options for worker JVMs. */
+    private List<String> _javaOpts = List.of();
+
+    /** Path of the coordinator socket. */
+    private Path _socket;
+
+    /** Leases held by workers, and the connections holding them. */
+    private final Map<Integer, Connection> _outstanding = new HashMap<>();
+
+    /** Leases to be handed out again. */
+    private final ArrayDeque<Integer> _requeued = new ArrayDeque<>();
+
+    /** Lowest lease that may not yet have been handed out. */
+    private int _next;
+}
@@ -0,0 +1,174 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** The durable progress of a Search: which of its leases have been
+ *  completed, and the best keys found in them.  A state records a
+ *  fingerprint of the search parameters so that it is never applied to
+ *  a different search.
+ *  @author Zwea Htet
+ */
+class SearchState {
+
+    /** Marks the start of every search state record ("ENGS"). */
+    static final int MAGIC = 0x454e4753;
+
+    /** Current version of the record layout. */
+    static final int VERSION = 1;
+
+    /** The initial state of a search with fingerprint FINGERPRINT,
+     *  NUMLEASES leases, and keeping the K best keys. */
+    SearchState(long fingerprint, int numLeases, int k) {
+        _fingerprint = fingerprint;
+        _numLeases = numLeases;
+        _done = new BitSet(numLeases);
+        _best = new TopK(k);
+    }
+
+    /** Return my fingerprint. */
+    long fingerprint() {
+        return _fingerprint;
+    }
+
+    /** Return the number of leases. */
+    int numLeases() {
+        return _numLeases;
+    }
+
+    /** Return the number of completed leases. */
+    int completed() {
+        return _done.cardinality();
+    }
+
+    /** Return true iff lease LEASE has been completed. */
+    boolean isDone(int lease) {
+        return _done.get(lease);
+    }
+
+    /** Return the first lease at or after LEASE that has not been
+     *  completed, or numLeases() if there is none. */
+    int nextUndone(int lease) {
+        return Math.min(_done.nextClearBit(lease), _numLeases);
+    }
+
+    /** Return the best keys found so far. */
+    TopK best() {
+        return _best;
+    }
+
+    /** Record that lease LEASE has been completed, finding the keys in
+     *  RESULTS.  Return false (and do nothing) if LEASE was already
+     *  complete. */
+    boolean complete(int lease, TopK results) {
+        if (_done.get(lease)) {
+            return false;
+        }
+        _done.set(lease);
+        _best.addAll(results);
+        return true;
+    }
+
+    /** Return my encoding as a record: magic number, version,
+     *  fingerprint, number of leases, completed-lease bitmap, best keys
+     *  and scores, followed by a CRC-32 of all of those. */
+    byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(_fingerprint);
+            out.writeInt(_numLeases);
+            byte[] done = _done.toByteArray();
+            out.writeInt(done.length);
+            out.write(done);
+            out.writeInt(_best.capacity());
+            long[] keys = _best.keys();
+            float[] scores = _best.scores();
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i += 1) {
+                out.writeLong(keys[i]);
+                out.writeFloat(scores[i]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw error("could not encode search state");
+        }
+    }
+
+    /** Return the state encoded in DATA, as produced by toBytes. */
+    static SearchState fromBytes(byte[] data) {
+        if (data.length < 4) {
+            throw error("search state record truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC) {
+                throw error("not a search state file");
+            }
+            int version = in.readShort();
+            if (version != VERSION) {
+                throw error("unsupported search state version %d", version);
+            }
+            long fingerprint = in.readLong();
+            int numLeases = in.readInt();
+            byte[] done = new byte[in.readInt()];
+            in.readFully(done);
+            SearchState result =
+                new SearchState(fingerprint, numLeases, in.readInt());
+            result._done.or(BitSet.valueOf(done));
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                result._best.add(in.readLong(), in.readFloat());
+            }
+            if (in.readInt() != (int) crc.getValue()) {
+                throw error("search state record is corrupt");
+            }
+            return result;
+        } catch (IOException | NegativeArraySizeException excp) {
+            throw error("search state record truncated");
+        }
+    }
+
+    /** Durably write me to FILE (see Checkpoint.write). */
+    void write(File file) {
+        Checkpoint.write(file, toBytes());
+    }
+
+    /** Return the state stored in FILE. */
+    static SearchState read(File file) {
+        try {
+            return fromBytes(Files.readAllBytes(file.toPath()));
+        } catch (IOException excp) {
+            throw error("could not read search state %s", file);
+        }
+    }
+
+    /** Fingerprint of the search parameters. */
+    private final long _fingerprint;
+
+    /** Number of leases. */
+    private final int _numLeases;
+
+    /** Completed leases. */
+    private final BitSet _done;
+
+    /** Best keys found in completed leases. */
+    private final TopK _best;
+}
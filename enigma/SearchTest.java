@@ -0,0 +1,126 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for Search, SearchWorker, SearchState
+ *  and TopK.
+ *  @author Zwea Htet
+ */
+public class SearchTest {
+
+    /** Testing time limit (the search test starts worker JVMs). */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plaintext of the search test. */
+    private static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /** Return a new temporary file with suffix SUFFIX. */
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("enigma", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTopK() {
+        TopK top = new TopK(3);
+        assertEquals(Float.NEGATIVE_INFINITY, top.floor(), 0);
+        float[] scores = { -5, -1, -7, -3, -2, -9 };
+        for (int i = 0; i < scores.length; i += 1) {
+            top.add(i, scores[i]);
+        }
+        assertArrayEquals(new long[] { 1, 4, 3 }, top.keys());
+        assertArrayEquals(new float[] { -1, -2, -3 }, top.scores(), 0);
+        assertEquals(-3, top.floor(), 0);
+        assertFalse(top.add(10, -3));
+        top.clear();
+        assertEquals(0, top.size());
+    }
+
+    @Test
+    public void testState() throws IOException {
+        SearchState state = new SearchState(1234, 10, 2);
+        TopK results = new TopK(2);
+        results.add(17, -4);
+        results.add(3, -2);
+        assertTrue(state.complete(3, results));
+        assertFalse(state.complete(3, results));
+        assertEquals(0, state.nextUndone(0));
+        assertEquals(4, state.nextUndone(3));
+        File file = tempFile(".state");
+        state.write(file);
+        SearchState copy = SearchState.read(file);
+        assertEquals(1234, copy.fingerprint());
+        assertEquals(1, copy.completed());
+        assertTrue(copy.isDone(3));
+        assertArrayEquals(new long[] { 3, 17 }, copy.best().keys());
+        byte[] data = state.toBytes();
+        data[12] ^= 1;
+        try {
+            SearchState.fromBytes(data);
+            fail("corrupt state accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("corrupt"));
+        }
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        File config = tempFile(".conf");
+        try (PrintStream out = new PrintStream(config)) {
+            out.println(UPPER_STRING + " 3 1");
+            for (String name : new String[] { "I", "II", "III" }) {
+                out.println(name + " MQ " + NAVALA.get(name));
+            }
+            out.println("Beta N " + NAVALA.get("Beta"));
+            out.println("B R " + NAVALA.get("B"));
+        }
+        Configuration configuration = Configuration.read(
+            new java.util.Scanner(config), 0);
+        File model = tempFile(".ngram");
+        new NGramModel.Builder(UPPER, 3).add(PLAIN).build().write(model);
+        Machine M = configuration.newMachine();
+        String key = "* B Beta II QE AA (TR)";
+        Main.setUp(configuration, M, key);
+        File cipher = tempFile(".txt");
+        Files.writeString(cipher.toPath(), M.convert(PLAIN) + "\n");
+
+        File checkpoint = tempFile(".state");
+        checkpoint.delete();
+        for (int run = 0; run < 2; run += 1) {
+            Search search = new Search(config, model,
+                                       Files.readString(cipher.toPath())
+                                       .trim(),
+                                       "(TR)", false, 2, 100, false);
+            search.setCheckpoint(checkpoint);
+            assertEquals(3 * 26 * 26, search.size());
+            search.run(2, List.of());
+            assertEquals(search.state().numLeases(),
+                         search.state().completed());
+            java.io.ByteArrayOutputStream bytes =
+                new java.io.ByteArrayOutputStream();
+            search.report(new PrintStream(bytes));
+            String[] lines = bytes.toString().split("\n");
+            assertEquals(2, lines.length);
+            assertEquals(key, lines[0].split("\t")[1]);
+            assertEquals(PLAIN, lines[0].split("\t")[2]);
+        }
+    }
+}
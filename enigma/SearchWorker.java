@@ -0,0 +1,103 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A worker for a Search, normally run in its own JVM as
+ *  "java enigma.Search --worker=SOCKET".  It receives the search
+ *  parameters from the coordinator listening on SOCKET, and then
+ *  repeatedly asks for a lease, decrypts the ciphertext under each key
+ *  of the lease, and returns the best keys.  Scoring of a key stops
+ *  early once it can no longer be among the best, either of the lease
+ *  or (as reported by the coordinator) of the whole search.
+ *  @author Zwea Htet
+ */
+class SearchWorker {
+
+    /** A worker for the coordinator listening on SOCKET. */
+    SearchWorker(String socket) {
+        _socket = socket;
+    }
+
+    /** Serve the coordinator until it reports that the search is
+     *  done. */
+    void run() throws IOException {
+        try (SocketChannel channel =
+                 SocketChannel.open(UnixDomainSocketAddress.of(_socket))) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                                         Channels.newOutputStream(channel)));
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                                        Channels.newInputStream(channel)));
+            Configuration config =
+                Search.readConfiguration(new File(in.readUTF()),
+                                         in.readBoolean());
+            Alphabet alphabet = config.alphabet();
+            NGramModel model = NGramModel.map(new File(in.readUTF()),
+                                              alphabet);
+            int[] cipher = new int[in.readInt()];
+            for (int i = 0; i < cipher.length; i += 1) {
+                cipher[i] = in.readInt();
+            }
+            Permutation plugboard = new Permutation(in.readUTF(), alphabet);
+            KeySpace keys = new KeySpace(config, in.readBoolean());
+            TopK results = new TopK(in.readInt());
+            long leaseSize = in.readLong();
+
+            Machine M = config.newMachine();
+            M.setPlugboard(plugboard);
+            KeySpace.Cursor cursor = keys.cursor();
+            int[] plain = new int[cipher.length];
+            int lease = -1;
+            while (true) {
+                out.writeByte(Search.RESULT);
+                out.writeInt(lease);
+                long[] best = results.keys();
+                float[] scores = results.scores();
+                out.writeInt(best.length);
+                for (int i = 0; i < best.length; i += 1) {
+                    out.writeLong(best[i]);
+                    out.writeFloat(scores[i]);
+                }
+                out.flush();
+                byte tag = in.readByte();
+                if (tag == Search.DONE) {
+                    return;
+                } else if (tag != Search.LEASE) {
+                    throw error("protocol error");
+                }
+                lease = in.readInt();
+                float floor = in.readFloat();
+                results.clear();
+                long start = lease * leaseSize;
+                long end = Math.min(start + leaseSize, keys.size());
+                for (long key = start; key < end; key += 1) {
+                    cursor.set(M, key);
+                    M.convert(cipher, 0, cipher.length, plain);
+                    float score =
+                        model.score(plain, 0, plain.length,
+                                    Math.max(floor, results.floor()));
+                    if (score >= floor) {
+                        results.add(key, score);
+                    }
+                }
+            }
+        } catch (EOFException excp) {
+            throw error("coordinator closed the connection");
+        }
+    }
+
+    /** Path of the coordinator's socket. */
+    private final String _socket;
+}
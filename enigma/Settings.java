@@ -0,0 +1,131 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Supplier;
+
+/** A compiled settings line: the names of the rotors to insert, their
+ *  initial and ring settings as alphabet indices, and the plugboard.  A
+ *  Settings is validated once, when compiled by Machine.compile, and is
+ *  never modified afterwards, so that it may be applied any number of
+ *  times (to any Machine built from the same rotors) at the cost of
+ *  copying its values into place.  It also carries the RotorPaths
+ *  compiled for it by each EnigmaEngine.
+ *  @author Zwea Htet
+ */
+class Settings {
+
+    /** Settings that insert the rotors named ROTORS (ROTORS[0] names
+     *  the reflector), set rotor K (K >= 1) to POSITIONS[K - 1] and its
+     *  ring to RINGS[K - 1] (for those K covered by RINGS), and use
+     *  PLUGBOARD. */
+    Settings(String[] rotors, int[] positions, int[] rings,
+             Permutation plugboard) {
+        _rotors = rotors;
+        _positions = positions;
+        _rings = rings;
+        _plugboard = plugboard;
+    }
+
+    /** Return the canonical form of the settings line LINE, in which
+     *  runs of whitespace are replaced by single blanks. */
+    static String normalize(String line) {
+        return String.join(" ", line.trim().split("\\s+"));
+    }
+
+    /** Return the number of rotors I insert. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the name of rotor #K. */
+    String rotor(int k) {
+        return _rotors[k];
+    }
+
+    /** Return the initial setting of rotor #K, where 1 <= K. */
+    int position(int k) {
+        return _positions[k - 1];
+    }
+
+    /** Return the number of rotors (counting from #1) whose ring
+     *  settings I give. */
+    int numRings() {
+        return _rings.length;
+    }
+
+    /** Return the ring setting of rotor #K, where 1 <= K <= numRings(). */
+    int ring(int k) {
+        return _rings[k - 1];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the RotorPath compiled for me by ENGINE, compiling it
+     *  with GENERATOR on the first call for ENGINE.  Returns null if
+     *  ENGINE compiles none (and does not try again). */
+    synchronized RotorPath path(EnigmaEngine engine,
+                                Supplier<RotorPath> generator) {
+        if (!_paths.containsKey(engine)) {
+            _paths.put(engine, generator.get());
+        }
+        return _paths.get(engine);
+    }
+
+    /** Take as my own the RotorPaths already compiled for OTHER, which
+     *  inserts the same rotors as I do, for those engines that have not
+     *  compiled one for me.  If OTHER's plugboard differs from mine, a
+     *  path is taken only if it can be rewired to my plugboard (see
+     *  RotorPath.withPlugboard). */
+    void adoptPaths(Settings other) {
+        HashMap<EnigmaEngine, RotorPath> paths;
+        synchronized (other) {
+            paths = new HashMap<>(other._paths);
+        }
+        boolean rewire = !other._plugboard.equals(_plugboard);
+        int[] table = rewire ? _plugboard.forwardTable() : null;
+        synchronized (this) {
+            for (EnigmaEngine engine : paths.keySet()) {
+                RotorPath path = paths.get(engine);
+                if (rewire && path != null) {
+                    path = path.withPlugboard(table);
+                    if (path == null) {
+                        continue;
+                    }
+                }
+                _paths.putIfAbsent(engine, path);
+            }
+        }
+    }
+
+    /** Return true iff I insert the same rotors, in the same order, as
+     *  OTHER. */
+    boolean sameRotors(Settings other) {
+        return Arrays.equals(_rotors, other._rotors);
+    }
+
+    /** Return the RotorPath already compiled for me by ENGINE, or null
+     *  if there is none. */
+    synchronized RotorPath compiled(EnigmaEngine engine) {
+        return _paths.get(engine);
+    }
+
+    /** Names of my rotors. */
+    private final String[] _rotors;
+
+    /** Initial settings of rotors #1 onward. */
+    private final int[] _positions;
+
+    /** Ring settings of rotors #1 onward. */
+    private final int[] _rings;
+
+    /** My plugboard. */
+    private final Permutation _plugboard;
+
+    /** The RotorPaths compiled for me so far, by engine (null for an
+     *  engine that compiled none). */
+    private final HashMap<EnigmaEngine, RotorPath> _paths = new HashMap<>();
+}
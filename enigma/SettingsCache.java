@@ -0,0 +1,105 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of compiled Settings, keyed by normalized settings
+ *  line and evicting the least recently used entry when full.  It keeps
+ *  count of its hits and misses.  A line is compiled outside the lock,
+ *  by the first thread to look it up; others looking up the same line
+ *  meanwhile wait for that compilation, while lookups of other lines
+ *  go ahead.
+ *  @author Zwea Htet
+ */
+class SettingsCache {
+
+    /** Default maximum number of entries. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** A cache holding at most CAPACITY entries.  A CAPACITY of 0
+     *  disables caching, so that every lookup is a miss. */
+    SettingsCache(int capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, FutureTask<Settings>> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the Settings for settings line LINE, using COMPILER to
+     *  compile its normalized form if it is not already cached. */
+    Settings get(String line, Function<String, Settings> compiler) {
+        String key = Settings.normalize(line);
+        FutureTask<Settings> task;
+        boolean compile;
+        synchronized (this) {
+            task = _entries.get(key);
+            compile = task == null;
+            if (compile) {
+                _misses += 1;
+                task = new FutureTask<>(() -> compiler.apply(key));
+                if (_capacity > 0) {
+                    _entries.put(key, task);
+                }
+            } else {
+                _hits += 1;
+            }
+        }
+        if (compile) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException excp) {
+            synchronized (this) {
+                _entries.remove(key, task);
+            }
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw error("cannot compile %s", key);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the number of lookups satisfied from the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that required compilation. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries currently cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+
+    /** Cached Settings, being compiled or compiled, in order of last
+     *  use. */
+    private final LinkedHashMap<String, FutureTask<Settings>> _entries;
+
+    /** Number of hits. */
+    private long _hits;
+
+    /** Number of misses. */
+    private long _misses;
+}
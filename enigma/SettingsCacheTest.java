@@ -0,0 +1,115 @@
+package enigma;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Zwea Htet
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a trivial Settings, ignoring LINE. */
+    private static Settings compile(String line) {
+        return new Settings(new String[] { line }, new int[0], new int[0],
+                            new Permutation("", AZ));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        SettingsCache cache = new SettingsCache(4);
+        Settings first = cache.get("* B Beta I II III AAAA",
+                                   SettingsCacheTest::compile);
+        assertSame(first, cache.get("*  B Beta I\tII III AAAA ",
+                                    SettingsCacheTest::compile));
+        assertEquals("* B Beta I II III AAAA", first.rotor(0));
+        cache.get("* B Beta I II III AAAB", SettingsCacheTest::compile);
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        SettingsCache cache = new SettingsCache(2);
+        cache.get("* A", SettingsCacheTest::compile);
+        cache.get("* B", SettingsCacheTest::compile);
+        cache.get("* A", SettingsCacheTest::compile);
+        cache.get("* C", SettingsCacheTest::compile);
+        assertEquals(2, cache.size());
+        cache.get("* A", SettingsCacheTest::compile);
+        assertEquals(2, cache.hits());
+        cache.get("* B", SettingsCacheTest::compile);
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testDisabled() {
+        SettingsCache cache = new SettingsCache(0);
+        cache.get("* A", SettingsCacheTest::compile);
+        cache.get("* A", SettingsCacheTest::compile);
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCompileOutsideLock() throws InterruptedException {
+        SettingsCache cache = new SettingsCache(4);
+        CountDownLatch started = new CountDownLatch(1),
+            release = new CountDownLatch(1);
+        AtomicInteger compilations = new AtomicInteger();
+        Settings[] results = new Settings[2];
+        Thread slow = new Thread(() -> results[0] = cache.get("* A", line -> {
+            compilations.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException excp) {
+                throw new AssertionError(excp);
+            }
+            return compile(line);
+        }));
+        slow.start();
+        started.await();
+        Thread waiting = new Thread(() -> results[1] = cache.get(
+            "*  A", line -> compile("wrong")));
+        waiting.start();
+        assertNotNull(cache.get("* B", SettingsCacheTest::compile));
+        release.countDown();
+        slow.join();
+        waiting.join();
+        assertSame(results[0], results[1]);
+        assertEquals("* A", results[0].rotor(0));
+        assertEquals(1, compilations.get());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testFailureNotCached() {
+        SettingsCache cache = new SettingsCache(4);
+        try {
+            cache.get("* A", line -> {
+                throw new EnigmaException("bad settings");
+            });
+            fail("expected EnigmaException");
+        } catch (EnigmaException excp) {
+            assertEquals("bad settings", excp.getMessage());
+        }
+        assertEquals(0, cache.size());
+        assertEquals("* A", cache.get("* A", SettingsCacheTest::compile)
+                     .rotor(0));
+    }
+}
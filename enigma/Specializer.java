@@ -0,0 +1,420 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+
+/** Generates, for one choice of rotors and plugboard, a hidden class
+ *  implementing RotorPath whose convert method is the straight-line
+ *  sequence of table lookups for those rotors.  The tables are held in
+ *  static final fields of the generated class (initialized from its
+ *  class data), so the JIT compiler can treat them as constants.
+ *
+ *  Every rotor step has the form W[T[W[c + d + N]] - d + N], where N is
+ *  the alphabet size, d the rotor's offset, T its (forward or inverse)
+ *  table and W a table of size 3N with W[i] = i mod N.  As a result the
+ *  generated code has no branches and needs no stack map frames.
+ *  @author Zwea Htet
+ */
+class Specializer {
+
+    /** Largest number of rotors for which we generate code.  Beyond this
+     *  the generated method grows past the size the JIT compiler is
+     *  willing to compile. */
+    static final int MAX_ROTORS = 64;
+
+    /** Return a RotorPath for an alphabet of SIZE characters, plugboard
+     *  table PLUGBOARD, and rotors whose forward and inverse tables are
+     *  FORWARD[K] and BACKWARD[K] (rotor #0 being the reflector), or null
+     *  if a specialized class cannot be generated. */
+    static RotorPath specialize(int size, int[] plugboard,
+                                int[][] forward, int[][] backward) {
+        int numRotors = forward.length;
+        if (numRotors > MAX_ROTORS) {
+            return null;
+        }
+        int[][] tables = new int[2 + 2 * numRotors][];
+        tables[WRAP] = new int[3 * size];
+        for (int i = 0; i < 3 * size; i++) {
+            tables[WRAP][i] = i % size;
+        }
+        tables[PLUGBOARD] = plugboard;
+        for (int k = 0; k < numRotors; k++) {
+            tables[forwardField(k)] = forward[k];
+            tables[backwardField(numRotors, k)] = backward[k];
+        }
+        try {
+            byte[] bytes = new Specializer(size, numRotors, tables.length)
+                .generate();
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes, tables, true);
+            return (RotorPath) lookup.lookupClass()
+                .getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException
+                 | LinkageError | IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Index of the wrap-around table among the generated fields. */
+    private static final int WRAP = 0;
+
+    /** Index of the plugboard table among the generated fields. */
+    private static final int PLUGBOARD = 1;
+
+    /** Return the index of the forward table of rotor #K. */
+    private static int forwardField(int k) {
+        return 2 + k;
+    }
+
+    /** Return the index of the inverse table of rotor #K among
+     *  NUMROTORS rotors. */
+    private static int backwardField(int numRotors, int k) {
+        return 2 + numRotors + k;
+    }
+
+    /** A generator for an alphabet of SIZE characters and NUMROTORS
+     *  rotors, whose class has NUMFIELDS table fields. */
+    private Specializer(int size, int numRotors, int numFields) {
+        _size = size;
+        _numRotors = numRotors;
+        _numFields = numFields;
+        _constants = new HashMap<>();
+        _poolBytes = new ByteArrayOutputStream();
+        _pool = new DataOutputStream(_poolBytes);
+        _poolCount = 1;
+    }
+
+    /** Return the contents of the class file. */
+    private byte[] generate() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        out.writeShort(ACC_FINAL | ACC_SUPER);
+        out.writeShort(classRef(CLASS_NAME));
+        out.writeShort(classRef("java/lang/Object"));
+        out.writeShort(1);
+        out.writeShort(classRef("enigma/RotorPath"));
+
+        out.writeShort(_numFields);
+        for (int i = 0; i < _numFields; i++) {
+            out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+            out.writeShort(utf8(fieldName(i)));
+            out.writeShort(utf8("[I"));
+            out.writeShort(0);
+        }
+
+        out.writeShort(3);
+        writeMethod(out, ACC_PUBLIC, "<init>", "()V", 1, 1,
+                    constructorCode());
+        writeMethod(out, ACC_STATIC, "<clinit>", "()V", 3, 1,
+                    initializerCode());
+        writeMethod(out, ACC_PUBLIC, "convert", "(I[I)I", 5,
+                    FIRST_OFFSET + 2 * _numRotors, convertCode());
+        out.writeShort(0);
+        out.flush();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream file = new DataOutputStream(result);
+        file.writeInt(0xcafebabe);
+        file.writeShort(0);
+        file.writeShort(CLASS_VERSION);
+        file.writeShort(_poolCount);
+        _pool.flush();
+        file.write(_poolBytes.toByteArray());
+        file.write(body.toByteArray());
+        file.flush();
+        return result.toByteArray();
+    }
+
+    /** Write to OUT a method with modifiers ACCESS, name NAME, and
+     *  descriptor DESC, having bytecode CODE that uses at most MAXSTACK
+     *  operand stack entries and MAXLOCALS local variables. */
+    private void writeMethod(DataOutputStream out, int access, String name,
+                             String desc, int maxStack, int maxLocals,
+                             byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(desc));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /** Return the code of the constructor, which only calls Object(). */
+    private byte[] constructorCode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        code.writeByte(ALOAD_0);
+        code.writeByte(INVOKESPECIAL);
+        code.writeShort(methodRef("java/lang/Object", "<init>", "()V"));
+        code.writeByte(RETURN);
+        code.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Return the code of the static initializer, which copies the
+     *  tables from the class data into the static fields. */
+    private byte[] initializerCode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        code.writeByte(INVOKESTATIC);
+        code.writeShort(methodRef("java/lang/invoke/MethodHandles", "lookup",
+                                  "()" + LOOKUP_DESC));
+        code.writeByte(LDC_W);
+        code.writeShort(string("_"));
+        code.writeByte(LDC_W);
+        code.writeShort(classRef("[[I"));
+        code.writeByte(INVOKESTATIC);
+        code.writeShort(methodRef("java/lang/invoke/MethodHandles",
+                                  "classData",
+                                  "(" + LOOKUP_DESC + "Ljava/lang/String;"
+                                  + "Ljava/lang/Class;)Ljava/lang/Object;"));
+        code.writeByte(CHECKCAST);
+        code.writeShort(classRef("[[I"));
+        code.writeByte(ASTORE_0);
+        for (int i = 0; i < _numFields; i++) {
+            code.writeByte(ALOAD_0);
+            code.writeByte(SIPUSH);
+            code.writeShort(i);
+            code.writeByte(AALOAD);
+            code.writeByte(PUTSTATIC);
+            code.writeShort(field(i));
+        }
+        code.writeByte(RETURN);
+        code.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Return the code of convert(c, offsets).  Local 1 holds c, local 2
+     *  the offsets, and for each rotor K, local FIRST_OFFSET + 2K holds
+     *  OFFSETS[K] + N and the next local holds N - OFFSETS[K]. */
+    private byte[] convertCode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        int size = integer(_size);
+        for (int k = 0; k < _numRotors; k++) {
+            code.writeByte(ALOAD_2);
+            code.writeByte(SIPUSH);
+            code.writeShort(k);
+            code.writeByte(IALOAD);
+            code.writeByte(LDC_W);
+            code.writeShort(size);
+            code.writeByte(IADD);
+            code.writeByte(ISTORE);
+            code.writeByte(FIRST_OFFSET + 2 * k);
+            code.writeByte(LDC_W);
+            code.writeShort(size);
+            code.writeByte(ALOAD_2);
+            code.writeByte(SIPUSH);
+            code.writeShort(k);
+            code.writeByte(IALOAD);
+            code.writeByte(ISUB);
+            code.writeByte(ISTORE);
+            code.writeByte(FIRST_OFFSET + 2 * k + 1);
+        }
+        lookupStep(code, PLUGBOARD);
+        for (int k = _numRotors - 1; k >= 0; k--) {
+            rotorStep(code, forwardField(k), k);
+        }
+        for (int k = 1; k < _numRotors; k++) {
+            rotorStep(code, backwardField(_numRotors, k), k);
+        }
+        lookupStep(code, PLUGBOARD);
+        code.writeByte(ILOAD_1);
+        code.writeByte(IRETURN);
+        code.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Emit to CODE the statement c = T[c], where T is field #TABLE. */
+    private void lookupStep(DataOutputStream code, int table)
+        throws IOException {
+        code.writeByte(GETSTATIC);
+        code.writeShort(field(table));
+        code.writeByte(ILOAD_1);
+        code.writeByte(IALOAD);
+        code.writeByte(ISTORE_1);
+    }
+
+    /** Emit to CODE the statement c = W[T[W[c + d + N]] - d + N], where
+     *  T is field #TABLE and d is the offset of rotor #K. */
+    private void rotorStep(DataOutputStream code, int table, int k)
+        throws IOException {
+        code.writeByte(GETSTATIC);
+        code.writeShort(field(WRAP));
+        code.writeByte(GETSTATIC);
+        code.writeShort(field(table));
+        code.writeByte(GETSTATIC);
+        code.writeShort(field(WRAP));
+        code.writeByte(ILOAD_1);
+        code.writeByte(ILOAD);
+        code.writeByte(FIRST_OFFSET + 2 * k);
+        code.writeByte(IADD);
+        code.writeByte(IALOAD);
+        code.writeByte(IALOAD);
+        code.writeByte(ILOAD);
+        code.writeByte(FIRST_OFFSET + 2 * k + 1);
+        code.writeByte(IADD);
+        code.writeByte(IALOAD);
+        code.writeByte(ISTORE_1);
+    }
+
+    /** Return the name of table field #I. */
+    private static String fieldName(int i) {
+        return "t" + i;
+    }
+
+    /** Return the constant-pool index of table field #I. */
+    private int field(int i) throws IOException {
+        return fieldRef(CLASS_NAME, fieldName(i), "[I");
+    }
+
+    /** Return the constant-pool index of the UTF-8 constant S. */
+    private int utf8(String s) throws IOException {
+        String key = "U" + s;
+        if (!_constants.containsKey(key)) {
+            _pool.writeByte(CONSTANT_UTF8);
+            _pool.writeUTF(s);
+            _constants.put(key, _poolCount++);
+        }
+        return _constants.get(key);
+    }
+
+    /** Return the constant-pool index of the int constant VALUE. */
+    private int integer(int value) throws IOException {
+        String key = "I" + value;
+        if (!_constants.containsKey(key)) {
+            _pool.writeByte(CONSTANT_INTEGER);
+            _pool.writeInt(value);
+            _constants.put(key, _poolCount++);
+        }
+        return _constants.get(key);
+    }
+
+    /** Return the constant-pool index of a constant of kind TAG that
+     *  refers to the UTF-8 constant S. */
+    private int named(int tag, String s) throws IOException {
+        String key = tag + s;
+        if (!_constants.containsKey(key)) {
+            int name = utf8(s);
+            _pool.writeByte(tag);
+            _pool.writeShort(name);
+            _constants.put(key, _poolCount++);
+        }
+        return _constants.get(key);
+    }
+
+    /** Return the constant-pool index of the class named NAME. */
+    private int classRef(String name) throws IOException {
+        return named(CONSTANT_CLASS, name);
+    }
+
+    /** Return the constant-pool index of the string constant S. */
+    private int string(String s) throws IOException {
+        return named(CONSTANT_STRING, s);
+    }
+
+    /** Return the constant-pool index of a member reference of kind TAG
+     *  to member NAME, with descriptor DESC, of class OWNER. */
+    private int member(int tag, String owner, String name, String desc)
+        throws IOException {
+        String key = tag + owner + "." + name + ":" + desc;
+        if (!_constants.containsKey(key)) {
+            int ownerIndex = classRef(owner);
+            String typeKey = "T" + name + ":" + desc;
+            if (!_constants.containsKey(typeKey)) {
+                int nameIndex = utf8(name), descIndex = utf8(desc);
+                _pool.writeByte(CONSTANT_NAME_AND_TYPE);
+                _pool.writeShort(nameIndex);
+                _pool.writeShort(descIndex);
+                _constants.put(typeKey, _poolCount++);
+            }
+            int typeIndex = _constants.get(typeKey);
+            _pool.writeByte(tag);
+            _pool.writeShort(ownerIndex);
+            _pool.writeShort(typeIndex);
+            _constants.put(key, _poolCount++);
+        }
+        return _constants.get(key);
+    }
+
+    /** Return the constant-pool index of field NAME of type DESC in class
+     *  OWNER. */
+    private int fieldRef(String owner, String name, String desc)
+        throws IOException {
+        return member(CONSTANT_FIELDREF, owner, name, desc);
+    }
+
+    /** Return the constant-pool index of method NAME of type DESC in class
+     *  OWNER. */
+    private int methodRef(String owner, String name, String desc)
+        throws IOException {
+        return member(CONSTANT_METHODREF, owner, name, desc);
+    }
+
+    /** Name of the generated class (a hidden class must be in the package
+     *  of the Lookup that defines it). */
+    private static final String CLASS_NAME = "enigma/SpecializedPath";
+
+    /** Class file version (Java 8).  Branch-free code needs no stack map
+     *  frames. */
+    private static final int CLASS_VERSION = 52;
+
+    /** Descriptor of MethodHandles.Lookup. */
+    private static final String LOOKUP_DESC =
+        "Ljava/lang/invoke/MethodHandles$Lookup;";
+
+    /** First local variable of convert holding a rotor offset. */
+    private static final int FIRST_OFFSET = 3;
+
+    /** Access flags. */
+    private static final int
+        ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008,
+        ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /** Constant-pool tags. */
+    private static final int
+        CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3, CONSTANT_CLASS = 7,
+        CONSTANT_STRING = 8, CONSTANT_FIELDREF = 9, CONSTANT_METHODREF = 10,
+        CONSTANT_NAME_AND_TYPE = 12;
+
+    /** Opcodes. */
+    private static final int
+        SIPUSH = 0x11, LDC_W = 0x13, ILOAD = 0x15, ILOAD_1 = 0x1b,
+        ALOAD_0 = 0x2a, ALOAD_2 = 0x2c, IALOAD = 0x2e, AALOAD = 0x32,
+        ISTORE = 0x36, ISTORE_1 = 0x3c, ASTORE_0 = 0x4b, IADD = 0x60,
+        ISUB = 0x64, IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2,
+        PUTSTATIC = 0xb3, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+        CHECKCAST = 0xc0;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of rotors. */
+    private final int _numRotors;
+
+    /** Number of table fields. */
+    private final int _numFields;
+
+    /** Maps a key identifying each constant already in the pool to its
+     *  index. */
+    private final HashMap<String, Integer> _constants;
+
+    /** The constant pool entries written so far. */
+    private final ByteArrayOutputStream _poolBytes;
+
+    /** Stream writing to _poolBytes. */
+    private final DataOutputStream _pool;
+
+    /** One more than the number of constant-pool entries. */
+    private int _poolCount;
+}
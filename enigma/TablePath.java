@@ -0,0 +1,71 @@
+package enigma;
+
+/** A RotorPath that passes a character through copies of the tables of
+ *  a plugboard and rotors in a loop.  Each rotor step is the table
+ *  lookup W[T[W[c + d + N]] - d + N] used by Specializer, N being the
+ *  alphabet size, d the rotor's offset, T its table and W a table of
+ *  size 3N with W[i] = i mod N.
+ *  @author Zwea Htet
+ */
+class TablePath implements RotorPath {
+
+    /** A path for an alphabet of SIZE characters, plugboard table
+     *  PLUGBOARD, and rotors whose forward and inverse tables are
+     *  FORWARD[K] and BACKWARD[K] (rotor #0 being the reflector). */
+    TablePath(int size, int[] plugboard, int[][] forward,
+              int[][] backward) {
+        _size = size;
+        _wrap = wrapTable(size);
+        _plugboard = plugboard;
+        _forward = forward;
+        _backward = backward;
+    }
+
+    /** A path like PATH, but with plugboard table PLUGBOARD. */
+    private TablePath(TablePath path, int[] plugboard) {
+        _size = path._size;
+        _wrap = path._wrap;
+        _plugboard = plugboard;
+        _forward = path._forward;
+        _backward = path._backward;
+    }
+
+    @Override
+    public RotorPath withPlugboard(int[] plugboard) {
+        return new TablePath(this, plugboard);
+    }
+
+    @Override
+    public int convert(int c, int[] offsets) {
+        int[] wrap = _wrap;
+        int n = _size;
+        c = _plugboard[c];
+        for (int k = _forward.length - 1; k >= 0; k -= 1) {
+            int d = offsets[k];
+            c = wrap[_forward[k][wrap[c + d + n]] - d + n];
+        }
+        for (int k = 1; k < _backward.length; k += 1) {
+            int d = offsets[k];
+            c = wrap[_backward[k][wrap[c + d + n]] - d + n];
+        }
+        return _plugboard[c];
+    }
+
+    /** Return the table W of size 3 * SIZE with W[i] = i mod SIZE. */
+    static int[] wrapTable(int size) {
+        int[] wrap = new int[3 * size];
+        for (int i = 0; i < wrap.length; i += 1) {
+            wrap[i] = i % size;
+        }
+        return wrap;
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+    /** Wrap-around table. */
+    private final int[] _wrap;
+    /** Plugboard table. */
+    private final int[] _plugboard;
+    /** Forward and inverse tables of the rotors. */
+    private final int[][] _forward, _backward;
+}
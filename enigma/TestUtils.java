@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.HashMap;
+import java.util.Scanner;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -137,4 +138,18 @@ class TestUtils {
         CHECKPOINT.put("B", "(AZ) (BY) (CX) (DW) (EV) (FU) (GT) "
                 + "(HS) (IR) (JQ) (KP) (LO) (MN)");
     }
+
+    /** The text of a configuration over UPPER with the naval rotors I,
+     *  II, III, Beta and B, in the 5-rotor, 3-pawl arrangement. */
+    static final String NAVAL_CONFIG = UPPER_STRING + " 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    /** Return the configuration NAVAL_CONFIG. */
+    static Configuration navalConfiguration() {
+        return Configuration.read(new Scanner(NAVAL_CONFIG), 4);
+    }
 }
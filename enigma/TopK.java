@@ -0,0 +1,143 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The K best-scoring keys seen so far, kept in a min-heap of
+ *  parallel arrays so that adding a key never allocates.
+ *  @author Zwea Htet
+ */
+class TopK {
+
+    /** An empty collection of at most K keys. */
+    TopK(int k) {
+        _keys = new long[k];
+        _scores = new float[k];
+    }
+
+    /** Return the capacity K. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Return the number of keys held. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the lowest score a key must beat to be added, which is
+     *  negative infinity until K keys are held. */
+    float floor() {
+        return _size < _keys.length ? Float.NEGATIVE_INFINITY : _scores[0];
+    }
+
+    /** Remove all keys. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Add KEY with SCORE if it is among the K best so far (ties going to
+     *  the keys already held).  Return true iff it was added. */
+    boolean add(long key, float score) {
+        if (_size < _keys.length) {
+            _keys[_size] = key;
+            _scores[_size] = score;
+            _size += 1;
+            siftUp(_size - 1);
+            return true;
+        } else if (score > _scores[0]) {
+            _keys[0] = key;
+            _scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+        return false;
+    }
+
+    /** Add all keys of OTHER, as for add. */
+    void addAll(TopK other) {
+        for (int i = 0; i < other._size; i += 1) {
+            add(other._keys[i], other._scores[i]);
+        }
+    }
+
+    /** Return my keys, best first (ties by increasing key). */
+    long[] keys() {
+        Integer[] order = ranking();
+        long[] result = new long[_size];
+        for (int i = 0; i < _size; i += 1) {
+            result[i] = _keys[order[i]];
+        }
+        return result;
+    }
+
+    /** Return my scores, best first, corresponding to keys(). */
+    float[] scores() {
+        Integer[] order = ranking();
+        float[] result = new float[_size];
+        for (int i = 0; i < _size; i += 1) {
+            result[i] = _scores[order[i]];
+        }
+        return result;
+    }
+
+    /** Return the indices of my entries, best first. */
+    private Integer[] ranking() {
+        Integer[] order = new Integer[_size];
+        for (int i = 0; i < _size; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> _scores[a] != _scores[b]
+                    ? Float.compare(_scores[b], _scores[a])
+                    : Long.compare(_keys[a], _keys[b]));
+        return order;
+    }
+
+    /** Restore the heap property upward from entry I. */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (_scores[parent] <= _scores[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /** Restore the heap property downward from entry I. */
+    private void siftDown(int i) {
+        while (true) {
+            int least = i, left = 2 * i + 1, right = left + 1;
+            if (left < _size && _scores[left] < _scores[least]) {
+                least = left;
+            }
+            if (right < _size && _scores[right] < _scores[least]) {
+                least = right;
+            }
+            if (least == i) {
+                return;
+            }
+            swap(i, least);
+            i = least;
+        }
+    }
+
+    /** Exchange entries I and J. */
+    private void swap(int i, int j) {
+        long key = _keys[i];
+        _keys[i] = _keys[j];
+        _keys[j] = key;
+        float score = _scores[i];
+        _scores[i] = _scores[j];
+        _scores[j] = score;
+    }
+
+    /** Keys held, as a heap ordered by _scores. */
+    private final long[] _keys;
+
+    /** Score of each key in _keys. */
+    private final float[] _scores;
+
+    /** Number of keys held. */
+    private int _size;
+}
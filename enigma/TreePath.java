@@ -0,0 +1,204 @@
+package enigma;
+
+/** A RotorPath for machines with very many rotors, most of which seldom
+ *  move.  The fast rotor (the last), which moves with every character,
+ *  and the reflector are passed through by table lookup, as in
+ *  TablePath.  All the rotors between them are composed by a balanced
+ *  binary tree: each leaf is the table of one rotor at its current
+ *  offset, and each inner node the composition of its children's
+ *  tables, so that the root passes a character through all of them at
+ *  once, and its inverse back again.  When rotors move, only the nodes
+ *  on the paths from their leaves to the root are recomputed.  A
+ *  machine calling convert with the same array of offsets each time
+ *  says which of them may have changed, so that only those are
+ *  examined, and the cost per character follows how many rotors move
+ *  rather than how many there are.  (Other callers have all the
+ *  offsets compared.)  The tree is
+ *  persistent: a move produces new nodes on those paths and shares the
+ *  rest, and no node is changed once built, so that a TreePath may be
+ *  shared between threads as a FusedPath may.
+ *  @author Zwea Htet
+ */
+class TreePath implements RotorPath {
+
+    /** A path for an alphabet of SIZE characters, plugboard table
+     *  PLUGBOARD, and rotors whose forward and inverse tables are
+     *  FORWARD[K] and BACKWARD[K] (rotor #0 being the reflector).  There
+     *  must be at least one rotor besides the reflector. */
+    TreePath(int size, int[] plugboard, int[][] forward,
+             int[][] backward) {
+        _size = size;
+        _wrap = TablePath.wrapTable(size);
+        _plugboard = plugboard;
+        _forward = forward;
+        _backward = backward;
+        _fast = forward.length - 1;
+    }
+
+    /** A path like PATH, starting with its current tree, but with
+     *  plugboard table PLUGBOARD. */
+    private TreePath(TreePath path, int[] plugboard) {
+        _size = path._size;
+        _wrap = path._wrap;
+        _plugboard = plugboard;
+        _forward = path._forward;
+        _backward = path._backward;
+        _fast = path._fast;
+        _tree = path._tree;
+    }
+
+    @Override
+    public RotorPath withPlugboard(int[] plugboard) {
+        return new TreePath(this, plugboard);
+    }
+
+    @Override
+    public int convert(int c, int[] offsets) {
+        return convert(c, offsets, 0);
+    }
+
+    @Override
+    public int convert(int c, int[] offsets, int changed) {
+        Tree tree = _tree;
+        if (tree == null) {
+            tree = new Tree(build(1, _fast, offsets), offsets);
+            _tree = tree;
+        } else {
+            int from = tree._source == offsets ? Math.max(1, changed) : 1;
+            Node root = tree._root;
+            if (from < _fast) {
+                root = sync(root, 1, _fast, from, offsets);
+            }
+            if (root != tree._root || tree._source != offsets) {
+                tree = new Tree(root, offsets);
+                _tree = tree;
+            }
+        }
+        int[] wrap = _wrap;
+        int n = _size, d = offsets[_fast], r = offsets[0];
+        c = _plugboard[c];
+        c = wrap[_forward[_fast][wrap[c + d + n]] - d + n];
+        c = tree._root._table[c];
+        c = wrap[_forward[0][wrap[c + r + n]] - r + n];
+        c = tree._root._inverse[c];
+        c = wrap[_backward[_fast][wrap[c + d + n]] - d + n];
+        return _plugboard[c];
+    }
+
+    /** Return NODE, which composes rotors LO .. HI-1, with those of
+     *  rotors #FROM and above moved to OFFSETS.  Only the subtrees
+     *  holding those rotors are visited, and only those in which a
+     *  rotor has moved are rebuilt. */
+    private Node sync(Node node, int lo, int hi, int from, int[] offsets) {
+        if (hi <= from || hi <= lo) {
+            return node;
+        } else if (hi - lo == 1) {
+            return node._offset == offsets[lo] ? node
+                : leaf(lo, offsets[lo]);
+        }
+        int mid = (lo + hi) >>> 1;
+        Node left = sync(node._left, lo, mid, from, offsets),
+            right = sync(node._right, mid, hi, from, offsets);
+        return left == node._left && right == node._right ? node
+            : new Node(left, right);
+    }
+
+    /** Return the tree composing rotors LO .. HI-1 at OFFSETS. */
+    private Node build(int lo, int hi, int[] offsets) {
+        if (hi <= lo) {
+            return identity();
+        } else if (hi - lo == 1) {
+            return leaf(lo, offsets[lo]);
+        }
+        int mid = (lo + hi) >>> 1;
+        return new Node(build(lo, mid, offsets), build(mid, hi, offsets));
+    }
+
+    /** Return the leaf for rotor #K at offset D. */
+    private Node leaf(int k, int d) {
+        int n = _size;
+        int[] table = new int[n], inverse = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            table[c] = _wrap[_forward[k][_wrap[c + d + n]] - d + n];
+            inverse[c] = _wrap[_backward[k][_wrap[c + d + n]] - d + n];
+        }
+        return new Node(table, inverse, d);
+    }
+
+    /** Return a leaf passing every character through unchanged. */
+    private Node identity() {
+        int[] table = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            table[c] = c;
+        }
+        return new Node(table, table, 0);
+    }
+
+    /** A node of the tree, composing the tables of a range of
+     *  rotors. */
+    private static final class Node {
+
+        /** A leaf with forward table TABLE and inverse table INVERSE,
+         *  for its rotor at offset OFFSET. */
+        Node(int[] table, int[] inverse, int offset) {
+            _table = table;
+            _inverse = inverse;
+            _offset = offset;
+            _left = _right = null;
+        }
+
+        /** The composition of LEFT (the lower-numbered rotors) and RIGHT
+         *  (the higher-numbered), which a character passes through
+         *  first on its way to the reflector. */
+        Node(Node left, Node right) {
+            int n = left._table.length;
+            _table = new int[n];
+            _inverse = new int[n];
+            for (int c = 0; c < n; c += 1) {
+                _table[c] = left._table[right._table[c]];
+                _inverse[c] = right._inverse[left._inverse[c]];
+            }
+            _offset = 0;
+            _left = left;
+            _right = right;
+        }
+
+        /** Tables passing a character towards and away from the
+         *  reflector. */
+        private final int[] _table, _inverse;
+        /** In a leaf, the offset of its rotor. */
+        private final int _offset;
+        /** Children, or null in a leaf. */
+        private final Node _left, _right;
+    }
+
+    /** A tree and the array of offsets with which it was last brought
+     *  up to date. */
+    private static final class Tree {
+
+        /** The tree ROOT, brought up to date with SOURCE. */
+        Tree(Node root, int[] source) {
+            _root = root;
+            _source = source;
+        }
+
+        /** Root of the tree. */
+        private final Node _root;
+        /** The array of offsets (belonging to the caller of convert)
+         *  with which the tree agreed when built. */
+        private final int[] _source;
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+    /** Wrap-around table. */
+    private final int[] _wrap;
+    /** Plugboard table. */
+    private final int[] _plugboard;
+    /** Forward and inverse tables of the rotors. */
+    private final int[][] _forward, _backward;
+    /** Index of the fast rotor. */
+    private final int _fast;
+    /** The most recently used tree, or null. */
+    private Tree _tree;
+}
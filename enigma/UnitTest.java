@@ -16,6 +16,15 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class, CheckpointTest.class,
+                SettingsCacheTest.class, RotorCatalogTest.class,
+                EnigmaProcessorTest.class, EnigmaStreamTest.class,
+                NGramModelTest.class, KeySpaceTest.class, SearchTest.class,
+                PackedTest.class, LineReaderTest.class,
+                KeystreamStoreTest.class, PrefixIndexTest.class,
+                CycleCatalogTest.class, FramedTest.class,
+                ConfigurationReloaderTest.class,
+                CiphertextStatsTest.class, CompressionTest.class,
+                BatchTest.class, MainTest.class, AlphabetTest.class));
     }
 }
@@ -0,0 +1,162 @@
+# Usage: python3 bench.py [options]
+#     Generates a suite of synthetic workloads with loadgen.py, runs
+#     java enigma.Main over each, and reports characters converted per
+#     second, peak resident set size and total GC pause time.  With
+#     --save, the results are stored as the baseline (BASELINE, by default
+#     bench-baseline.json).  Otherwise, they are compared with the stored
+#     baseline, and the script exits with code 1 if any workload is slower,
+#     larger or spends longer in GC than the baseline by more than
+#     --threshold percent.  Uses the CLASSPATH environment variable to find
+#     the enigma classes, as test-correct does.
+
+import argparse, json, os, re, shlex, subprocess, sys, tempfile, time
+
+import loadgen
+
+# Name, loadgen arguments (before scaling).
+SUITE = [
+    ('long', dict(chars=2000000, sections=1)),
+    ('sections', dict(chars=2000000, sections=20000, settings='repeated',
+                      distinct=200)),
+    ('unique', dict(chars=2000000, sections=20000, settings='unique')),
+    ('rings', dict(chars=2000000, sections=100, rings=True, plugs=10)),
+]
+
+# Absolute slack allowed on GC time, so that tiny pauses do not fail runs.
+GC_SLACK_MS = 50.0
+
+def run(config, inp, out, gc_log, java_opts, main_opts):
+    """Run enigma.Main on CONFIG, INP and OUT, logging GC events to GC_LOG,
+    and return (seconds, peak RSS in KB, exit status)."""
+    cmd = ['java'] + java_opts + ['-Xlog:gc:file=' + gc_log,
+                                  'enigma.Main'] + main_opts \
+          + [config, inp, out]
+    start = time.monotonic()
+    proc = subprocess.Popen(cmd)
+    _, status, usage = os.wait4(proc.pid, 0)
+    proc.returncode = os.waitstatus_to_exitcode(status)
+    elapsed = time.monotonic() - start
+    # ru_maxrss is in KB on Linux.
+    return elapsed, usage.ru_maxrss, proc.returncode
+
+def gc_millis(gc_log):
+    """Return the total pause time, in milliseconds, recorded in GC_LOG."""
+    total = 0.0
+    with open(gc_log) as inp:
+        for line in inp:
+            if 'Pause' in line:
+                m = re.search(r'(\d+(?:\.\d+)?)ms\s*$', line)
+                if m:
+                    total += float(m.group(1))
+    return total
+
+def measure(args, work):
+    """Run the suite in directory WORK and return a dict of results by
+    workload name."""
+    results = {}
+    for name, params in SUITE:
+        params = dict(params)
+        params['chars'] = int(params['chars'] * args.scale)
+        params['sections'] = max(1, int(params['sections'] * args.scale))
+        inp = os.path.join(work, name + '.in')
+        out = os.path.join(work, name + '.out')
+        gc_log = os.path.join(work, name + '.gc')
+        with open(inp, 'w') as f:
+            chars = loadgen.generate(args.config, f, seed=args.seed,
+                                     **params)
+        best = None
+        for _ in range(args.repeat):
+            elapsed, rss, code = run(args.config, inp, out, gc_log,
+                                     shlex.split(args.java_opts),
+                                     shlex.split(args.main_opts))
+            if code != 0:
+                sys.exit("{}: enigma.Main exited with code {}"
+                         .format(name, code))
+            result = { 'chars_per_sec': chars / elapsed,
+                       'peak_rss_kb': rss,
+                       'gc_ms': gc_millis(gc_log) }
+            if best is None or result['chars_per_sec'] > best['chars_per_sec']:
+                best = result
+        results[name] = best
+        print("{:10s} {:12.0f} chars/s {:10d} KB {:10.1f} ms GC"
+              .format(name, best['chars_per_sec'], best['peak_rss_kb'],
+                      best['gc_ms']))
+    return results
+
+def compare(results, baseline, threshold):
+    """Return a list of messages describing each way in which RESULTS is
+    worse than BASELINE by more than THRESHOLD (a fraction)."""
+    problems = []
+    for name, result in results.items():
+        if name not in baseline:
+            continue
+        base = baseline[name]
+        if result['chars_per_sec'] < base['chars_per_sec'] * (1 - threshold):
+            problems.append("{}: {:.0f} chars/s, baseline {:.0f}"
+                            .format(name, result['chars_per_sec'],
+                                    base['chars_per_sec']))
+        if result['peak_rss_kb'] > base['peak_rss_kb'] * (1 + threshold):
+            problems.append("{}: peak RSS {} KB, baseline {} KB"
+                            .format(name, result['peak_rss_kb'],
+                                    base['peak_rss_kb']))
+        if result['gc_ms'] > base['gc_ms'] * (1 + threshold) + GC_SLACK_MS:
+            problems.append("{}: GC {:.1f} ms, baseline {:.1f} ms"
+                            .format(name, result['gc_ms'], base['gc_ms']))
+    return problems
+
+def main():
+    here = os.path.dirname(os.path.abspath(__file__))
+    parser = argparse.ArgumentParser(
+        description="Throughput regression suite for enigma.Main.")
+    parser.add_argument('--config',
+                        default=os.path.join(here, 'correct', 'default.conf'))
+    parser.add_argument('--baseline',
+                        default=os.path.join(here, 'bench-baseline.json'))
+    parser.add_argument('--save', action='store_true',
+                        help="store the results as the new baseline")
+    parser.add_argument('--threshold', type=float, default=20.0,
+                        help="allowed regression, in percent")
+    parser.add_argument('--scale', type=float, default=1.0,
+                        help="multiplier for workload sizes")
+    parser.add_argument('--repeat', type=int, default=3,
+                        help="runs per workload (the best is kept)")
+    parser.add_argument('--seed', type=int, default=61)
+    parser.add_argument('--java-opts', default='-Xmx512m')
+    parser.add_argument('--main-opts', default='',
+                        help="extra options for enigma.Main")
+    parser.add_argument('--keep', action='store_true',
+                        help="keep the generated workloads and outputs")
+    args = parser.parse_args()
+
+    work = tempfile.mkdtemp(prefix='enigma-bench-')
+    try:
+        results = measure(args, work)
+    finally:
+        if args.keep:
+            print("workloads kept in", work)
+        else:
+            for f in os.listdir(work):
+                os.remove(os.path.join(work, f))
+            os.rmdir(work)
+
+    if args.save:
+        with open(args.baseline, 'w') as out:
+            json.dump(results, out, indent=2, sort_keys=True)
+            out.write('\n')
+        print("baseline saved to", args.baseline)
+        return
+    if not os.path.exists(args.baseline):
+        print("no baseline in {}; run with --save to create one"
+              .format(args.baseline))
+        return
+    with open(args.baseline) as inp:
+        baseline = json.load(inp)
+    problems = compare(results, baseline, args.threshold / 100)
+    for problem in problems:
+        print("REGRESSION:", problem)
+    if problems:
+        sys.exit(1)
+    print("OK (within {}% of baseline)".format(args.threshold))
+
+if __name__ == '__main__':
+    main()
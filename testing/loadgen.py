@@ -0,0 +1,126 @@
+# Usage: python3 loadgen.py [options] CONFIG OUTPUT
+#     Writes to OUTPUT a synthetic input file for java enigma.Main that is
+#     valid for the configuration file CONFIG: SECTIONS sections, each a
+#     settings line followed by message lines, CHARS message characters in
+#     all.  Settings lines are either drawn from a pool of DISTINCT
+#     settings lines (--settings=repeated) or all different
+#     (--settings=unique).  Message characters are drawn from --alphabet,
+#     which must be a subset of the configuration's alphabet (default: all
+#     of it).  The same options and --seed always produce the same file.
+
+import argparse, random, re, sys
+
+def read_config(name):
+    """Return (alphabet, numRotors, numPawls, rotors) for the configuration
+    file NAME, where rotors maps each rotor type ('M', 'N', 'R') to the list
+    of names of rotors of that type."""
+    with open(name) as inp:
+        tokens = inp.read()
+    head = tokens.split(None, 3)
+    if len(head) < 4:
+        sys.exit("{}: configuration file truncated".format(name))
+    alphabet, num_rotors, num_pawls, rest = head
+    rotors = { 'M': [], 'N': [], 'R': [] }
+    for line in rest.splitlines():
+        line = line.strip()
+        if not line or line.startswith('('):
+            continue
+        fields = line.split()
+        if len(fields) >= 2 and fields[1][0] in rotors:
+            rotors[fields[1][0]].append(fields[0])
+    return alphabet, int(num_rotors), int(num_pawls), rotors
+
+class Workload:
+    """Generator of settings lines and messages for one configuration."""
+
+    def __init__(self, config, rng, plugs, rings):
+        self.alphabet, self.num_rotors, self.num_pawls, self.rotors = \
+            read_config(config)
+        self.rng = rng
+        self.plugs = plugs
+        self.rings = rings
+        # Settings lines are matched with \w, so positions, rings and
+        # plugboard cycles may only use word characters.
+        self.word_chars = [c for c in self.alphabet if re.match(r'\w', c)]
+        num_fixed = self.num_rotors - self.num_pawls - 1
+        if (not self.rotors['R'] or len(self.rotors['N']) < num_fixed
+            or len(self.rotors['M']) < self.num_pawls
+            or not self.word_chars):
+            sys.exit("configuration has too few rotors for its slots")
+
+    def settings(self):
+        """Return a random valid settings line."""
+        rng = self.rng
+        num_fixed = self.num_rotors - self.num_pawls - 1
+        names = [rng.choice(self.rotors['R'])] \
+            + rng.sample(self.rotors['N'], num_fixed) \
+            + rng.sample(self.rotors['M'], self.num_pawls)
+        fields = ['*'] + names
+        fields.append(''.join(rng.choice(self.word_chars)
+                              for _ in range(self.num_rotors - 1)))
+        if self.rings:
+            fields.append(''.join(rng.choice(self.word_chars)
+                                  for _ in range(self.num_rotors - 1)))
+        plugs = min(self.plugs, len(self.word_chars) // 2)
+        letters = rng.sample(self.word_chars, 2 * plugs)
+        for k in range(plugs):
+            fields.append('(' + letters[2 * k] + letters[2 * k + 1] + ')')
+        return ' '.join(fields)
+
+def generate(config, out, chars=1000000, sections=1, settings='repeated',
+             distinct=16, alphabet=None, line_length=80, plugs=5,
+             rings=False, seed=61):
+    """Write a workload as described at the top of this file to the stream
+    OUT.  Returns the number of message characters written."""
+    rng = random.Random(seed)
+    work = Workload(config, rng, plugs, rings)
+    if alphabet is None:
+        alphabet = work.alphabet
+    if not alphabet or any(c not in work.alphabet for c in alphabet):
+        sys.exit("--alphabet must be a subset of the configuration alphabet")
+    pool = [work.settings() for _ in range(max(distinct, 1))]
+    written = 0
+    for section in range(sections):
+        if settings == 'unique':
+            out.write(work.settings() + '\n')
+        else:
+            out.write(rng.choice(pool) + '\n')
+        size = chars * (section + 1) // sections - written
+        while size > 0:
+            n = min(size, line_length)
+            out.write(''.join(rng.choice(alphabet) for _ in range(n)) + '\n')
+            size -= n
+            written += n
+    return written
+
+def main():
+    parser = argparse.ArgumentParser(
+        description="Generate a synthetic workload for enigma.Main.")
+    parser.add_argument('config')
+    parser.add_argument('output')
+    parser.add_argument('--chars', type=int, default=1000000,
+                        help="total message characters")
+    parser.add_argument('--sections', type=int, default=1,
+                        help="number of settings lines")
+    parser.add_argument('--settings', choices=['repeated', 'unique'],
+                        default='repeated')
+    parser.add_argument('--distinct', type=int, default=16,
+                        help="size of the pool of repeated settings lines")
+    parser.add_argument('--alphabet', default=None,
+                        help="characters to draw messages from")
+    parser.add_argument('--line-length', type=int, default=80)
+    parser.add_argument('--plugs', type=int, default=5,
+                        help="plugboard pairs per settings line")
+    parser.add_argument('--rings', action='store_true',
+                        help="include ring settings")
+    parser.add_argument('--seed', type=int, default=61)
+    args = parser.parse_args()
+    if args.sections < 1 or args.chars < 0 or args.line_length < 1:
+        parser.error("bad size arguments")
+    with open(args.output, 'w') as out:
+        generate(args.config, out, args.chars, args.sections, args.settings,
+                 args.distinct, args.alphabet, args.line_length, args.plugs,
+                 args.rings, args.seed)
+
+if __name__ == '__main__':
+    main()